@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.benchmarks;
+
+import com.io7m.garriga.main.http.GAlertV4;
+import org.apache.commons.text.StringEscapeUtils;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The original stream-based alert formatting, kept as a baseline for the
+ * single-pass renderer.
+ */
+
+public final class GAlertV4LegacyRenderer
+{
+  private GAlertV4LegacyRenderer()
+  {
+
+  }
+
+  /**
+   * @param alert The alert
+   *
+   * @return The alert formatted as plain text
+   */
+
+  public static String formatText(
+    final GAlertV4 alert)
+  {
+    final var text = new StringBuilder(128);
+
+    switch (alert.status().toUpperCase(Locale.ROOT)) {
+      case "FIRING" -> {
+        text.append("ALERT FIRING!\n");
+      }
+      case "RESOLVED" -> {
+        text.append("Alert resolved.\n");
+      }
+      default -> {
+        text.append("Alert ");
+        text.append(alert.status());
+        text.append(".\n");
+      }
+    }
+
+    alert.labels()
+      .entrySet()
+      .stream()
+      .sorted(Map.Entry.comparingByKey())
+      .forEach(e -> {
+        text.append(String.format("# %-16s : %s\n", e.getKey(), e.getValue()));
+      });
+
+    text.append("\n");
+
+    alert.annotations()
+      .entrySet()
+      .stream()
+      .sorted(Map.Entry.comparingByKey())
+      .forEach(e -> {
+        text.append(String.format("@ %-16s : %s\n", e.getKey(), e.getValue()));
+      });
+
+    return text.toString();
+  }
+
+  /**
+   * @param alert The alert
+   *
+   * @return The alert formatted as HTML
+   */
+
+  public static String formatHTML(
+    final GAlertV4 alert)
+  {
+    final var sb = new StringBuilder(128);
+
+    switch (alert.status().toUpperCase(Locale.ROOT)) {
+      case "FIRING" -> {
+        sb.append("<p>\uD83D\uDEA8 <b data-mx-color=\"#ff0000\">ALERT FIRING!</b></p>");
+      }
+      case "RESOLVED" -> {
+        sb.append("<p>✅ <span data-mx-color=\"#00aa00\">Alert resolved.</b></p>");
+      }
+      default -> {
+        sb.append("<p>Alert ");
+        sb.append(StringEscapeUtils.escapeXml11(alert.status()));
+        sb.append("</p>");
+      }
+    }
+
+    formatTable(sb, alert.labels());
+    formatTable(sb, alert.annotations());
+    return sb.toString();
+  }
+
+  private static void formatTable(
+    final StringBuilder sb,
+    final Map<String, String> entries)
+  {
+    sb.append("<p>");
+    sb.append("<table>");
+    entries.entrySet()
+      .stream()
+      .sorted(Map.Entry.comparingByKey())
+      .forEach(e -> {
+        sb.append("<tr>");
+        sb.append("<td>");
+        sb.append("<tt>");
+        sb.append(StringEscapeUtils.escapeXml11(e.getKey()));
+        sb.append("</tt>");
+        sb.append("</td>");
+        sb.append("<td>");
+        sb.append("<tt>");
+        sb.append(StringEscapeUtils.escapeXml11(e.getValue()));
+        sb.append("</tt>");
+        sb.append("</td>");
+        sb.append("</tr>");
+      });
+    sb.append("</table>");
+    sb.append("</p>");
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.benchmarks;
+
+import com.io7m.garriga.main.http.GAlertV4;
+import com.io7m.garriga.main.http.GAlertV4Renderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the single-pass renderer against the original formatting. Run
+ * with {@code -prof gc} to compare allocation rates:
+ *
+ * <pre>
+ * java -jar com.io7m.garriga.benchmarks/target/benchmarks.jar -prof gc
+ * </pre>
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GAlertV4RenderBenchmark
+{
+  @Param({"50"})
+  private int labelCount;
+
+  private GAlertV4 alert;
+
+  /**
+   * Create an alert with the configured number of labels. A few values
+   * contain characters that must be escaped, as real descriptions do.
+   */
+
+  @Setup
+  public void setup()
+  {
+    final var labels = new HashMap<String, String>();
+    for (int index = 0; index < this.labelCount; ++index) {
+      labels.put(
+        "label_%02d".formatted(Integer.valueOf(index)),
+        "value-%d.example.com:9100".formatted(Integer.valueOf(index))
+      );
+    }
+    labels.put("severity", "critical");
+
+    final var annotations = new HashMap<String, String>();
+    annotations.put(
+      "summary",
+      "Host filesystem device error (instance srv.example.com:9100)"
+    );
+    annotations.put(
+      "description",
+      "Swap is filling up (>80%)\n  VALUE = 98.72\n  LABELS = map[a:b]"
+    );
+
+    this.alert = new GAlertV4(
+      "firing",
+      labels,
+      annotations,
+      "2024-06-13T17:06:10.763Z",
+      "0001-01-01T00:00:00Z",
+      "/graph?g0.expr=node_filesystem_device_error&g0.tab=1",
+      "530731b28264424f"
+    );
+  }
+
+  /**
+   * The original formatting: four sorts, one format call per text line,
+   * and escaping of every table cell.
+   *
+   * @param blackhole The blackhole
+   */
+
+  @Benchmark
+  public void legacy(
+    final Blackhole blackhole)
+  {
+    blackhole.consume(GAlertV4LegacyRenderer.formatText(this.alert));
+    blackhole.consume(GAlertV4LegacyRenderer.formatHTML(this.alert));
+  }
+
+  /**
+   * The single-pass renderer.
+   *
+   * @param blackhole The blackhole
+   */
+
+  @Benchmark
+  public void singlePass(
+    final Blackhole blackhole)
+  {
+    blackhole.consume(GAlertV4Renderer.render(this.alert));
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The configuration for the administrative endpoints, which control flight
+ * recordings of the running server. The endpoints are disabled by default,
+ * and require their own bearer token, separate from the token used by
+ * AlertManager.
+ *
+ * @param enabled                    {@code true} if the endpoints are
+ *                                   available
+ * @param authenticationToken        The required bearer token
+ * @param recordingMaximumAgeSeconds The maximum age of the data kept by a
+ *                                   recording
+ * @param recordingMaximumSize       The maximum size of the data kept by a
+ *                                   recording, in bytes
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GAdminConfiguration(
+  @JsonProperty(required = true, value = "Enabled")
+  boolean enabled,
+  @JsonProperty(required = true, value = "AuthenticationToken")
+  String authenticationToken,
+  @JsonProperty(required = true, value = "RecordingMaximumAgeSeconds")
+  long recordingMaximumAgeSeconds,
+  @JsonProperty(required = true, value = "RecordingMaximumSize")
+  long recordingMaximumSize)
+{
+  /**
+   * The configuration for the administrative endpoints.
+   *
+   * @param enabled                    {@code true} if the endpoints are
+   *                                   available
+   * @param authenticationToken        The required bearer token
+   * @param recordingMaximumAgeSeconds The maximum age of the data kept by
+   *                                   a recording
+   * @param recordingMaximumSize       The maximum size of the data kept by
+   *                                   a recording, in bytes
+   */
+
+  public GAdminConfiguration
+  {
+    Objects.requireNonNull(authenticationToken, "authenticationToken");
+
+    if (enabled && authenticationToken.isBlank()) {
+      throw new IllegalArgumentException(
+        "An authentication token is required when the admin endpoints are enabled"
+      );
+    }
+    if (recordingMaximumAgeSeconds < 1L) {
+      throw new IllegalArgumentException(
+        "Recording maximum age %d must be positive"
+          .formatted(Long.valueOf(recordingMaximumAgeSeconds))
+      );
+    }
+    if (recordingMaximumSize < 1L) {
+      throw new IllegalArgumentException(
+        "Recording maximum size %d must be positive"
+          .formatted(Long.valueOf(recordingMaximumSize))
+      );
+    }
+  }
+
+  /**
+   * @return The default admin configuration
+   */
+
+  public static GAdminConfiguration defaults()
+  {
+    return new GAdminConfiguration(false, "", 600L, 100_000_000L);
+  }
+
+  /**
+   * @return The maximum age of the data kept by a recording
+   */
+
+  public Duration recordingMaximumAge()
+  {
+    return Duration.ofSeconds(this.recordingMaximumAgeSeconds);
+  }
+}
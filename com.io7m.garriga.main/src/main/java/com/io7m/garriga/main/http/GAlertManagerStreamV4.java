@@ -0,0 +1,239 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A streaming reader of AlertManager v4 messages. Alerts are deserialized
+ * one at a time from the underlying stream, and passed to a consumer as
+ * soon as they are complete, so that neither the raw request nor the full
+ * message tree need be held in memory. The fields required by
+ * {@link GAlertManagerRequestV4} must all be present, and a message that
+ * is missing any of them fails once it has been read, after its alerts
+ * have been passed to the consumer.
+ */
+
+public final class GAlertManagerStreamV4
+{
+  private static final List<String> REQUIRED =
+    List.of(
+      "version",
+      "groupKey",
+      "truncatedAlerts",
+      "status",
+      "receiver",
+      "groupLabels",
+      "commonLabels",
+      "commonAnnotations",
+      "externalURL",
+      "alerts"
+    );
+
+  private final ObjectMapper mapper;
+
+  private GAlertManagerStreamV4(
+    final ObjectMapper inMapper)
+  {
+    this.mapper =
+      Objects.requireNonNull(inMapper, "mapper");
+  }
+
+  /**
+   * A consumer of alerts.
+   */
+
+  public interface AlertConsumerType
+  {
+    /**
+     * Accept an alert.
+     *
+     * @param receiver The receiver of the message containing the alert, or
+     *                 the empty string if the receiver had not been read
+     *                 when the alert was read
+     * @param alert    The alert
+     *
+     * @throws IOException On errors
+     */
+
+    void accept(
+      String receiver,
+      GAlertV4 alert)
+      throws IOException;
+  }
+
+  /**
+   * Create a streaming reader. Alerts are deserialized with the given
+   * mapper, and so are subject to any restrictions registered with it.
+   *
+   * @param mapper The mapper
+   *
+   * @return A streaming reader
+   *
+   * @see GMessageV4ObjectMappers#createMapper()
+   */
+
+  public static GAlertManagerStreamV4 create(
+    final ObjectMapper mapper)
+  {
+    return new GAlertManagerStreamV4(mapper);
+  }
+
+  /**
+   * Read a message from the given stream, passing each alert to the
+   * given consumer.
+   *
+   * @param stream   The stream
+   * @param consumer The alert consumer
+   *
+   * @return The number of alerts read
+   *
+   * @throws IOException On errors
+   */
+
+  public int read(
+    final InputStream stream,
+    final AlertConsumerType consumer)
+    throws IOException
+  {
+    Objects.requireNonNull(stream, "stream");
+    Objects.requireNonNull(consumer, "consumer");
+
+    try (var parser = this.mapper.getFactory().createParser(stream)) {
+      return this.readMessage(parser, consumer);
+    }
+  }
+
+  /*
+   * Each alert is passed on as soon as it has been read. AlertManager
+   * writes the receiver before the alerts (and the group key after them),
+   * so the receiver is the only property of the message that is passed on
+   * with each alert. The remaining fields are checked for presence and
+   * type, but are otherwise ignored.
+   */
+
+  private int readMessage(
+    final JsonParser parser,
+    final AlertConsumerType consumer)
+    throws IOException
+  {
+    expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+
+    final var seen = new HashSet<String>(REQUIRED.size());
+    var receiver = "";
+    var count = 0;
+
+    while (true) {
+      final var token = parser.nextToken();
+      if (token == JsonToken.END_OBJECT) {
+        break;
+      }
+      expect(parser, token, JsonToken.FIELD_NAME);
+
+      final var name = parser.currentName();
+      final var value = parser.nextToken();
+      switch (name) {
+        case "version", "truncatedAlerts" -> {
+          expectInteger(parser, value);
+        }
+        case "groupKey", "status", "externalURL" -> {
+          expect(parser, value, JsonToken.VALUE_STRING);
+        }
+        case "receiver" -> {
+          expect(parser, value, JsonToken.VALUE_STRING);
+          receiver = parser.getText();
+        }
+        case "groupLabels", "commonLabels", "commonAnnotations" -> {
+          expect(parser, value, JsonToken.START_OBJECT);
+          parser.skipChildren();
+        }
+        case "alerts" -> {
+          expect(parser, value, JsonToken.START_ARRAY);
+          while (parser.nextToken() != JsonToken.END_ARRAY) {
+            consumer.accept(
+              receiver,
+              this.mapper.readValue(parser, GAlertV4.class)
+            );
+            ++count;
+          }
+        }
+        default -> {
+          parser.skipChildren();
+        }
+      }
+      seen.add(name);
+    }
+
+    for (final var name : REQUIRED) {
+      if (!seen.contains(name)) {
+        throw new JsonParseException(
+          parser,
+          "Missing required field '%s'.".formatted(name)
+        );
+      }
+    }
+    return count;
+  }
+
+  /*
+   * AlertManager writes the version as a string, and so integers are
+   * accepted in either form, as they are by the object mapper.
+   */
+
+  private static void expectInteger(
+    final JsonParser parser,
+    final JsonToken received)
+    throws IOException
+  {
+    if (received == JsonToken.VALUE_NUMBER_INT) {
+      return;
+    }
+
+    expect(parser, received, JsonToken.VALUE_STRING);
+    try {
+      Integer.parseInt(parser.getText().trim());
+    } catch (final NumberFormatException e) {
+      throw new JsonParseException(
+        parser,
+        "Expected an integer but received '%s'.".formatted(parser.getText())
+      );
+    }
+  }
+
+  private static void expect(
+    final JsonParser parser,
+    final JsonToken received,
+    final JsonToken expected)
+    throws JsonParseException
+  {
+    if (received != expected) {
+      throw new JsonParseException(
+        parser,
+        "Expected %s but received %s.".formatted(expected, received)
+      );
+    }
+  }
+}
@@ -20,9 +20,7 @@ package com.io7m.garriga.main.http;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
-import org.apache.commons.text.StringEscapeUtils;
 
-import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 
@@ -62,46 +60,23 @@ public record GAlertV4(
   }
 
   /**
-   * @return This message formatted as plain text
+   * @return This message formatted as both plain text and HTML
+   *
+   * @see GAlertV4Renderer
    */
 
-  public String formatText()
+  public GAlertV4Renderer.Rendered format()
   {
-    final var text = new StringBuilder(128);
-
-    switch (this.status.toUpperCase(Locale.ROOT)) {
-      case "FIRING" -> {
-        text.append("ALERT FIRING!\n");
-      }
-      case "RESOLVED" -> {
-        text.append("Alert resolved.\n");
-      }
-      default -> {
-        text.append("Alert ");
-        text.append(this.status);
-        text.append(".\n");
-      }
-    }
-
-    this.labels()
-      .entrySet()
-      .stream()
-      .sorted(Map.Entry.comparingByKey())
-      .forEach(e -> {
-        text.append(String.format("# %-16s : %s\n", e.getKey(), e.getValue()));
-      });
-
-    text.append("\n");
+    return GAlertV4Renderer.render(this);
+  }
 
-    this.annotations()
-      .entrySet()
-      .stream()
-      .sorted(Map.Entry.comparingByKey())
-      .forEach(e -> {
-        text.append(String.format("@ %-16s : %s\n", e.getKey(), e.getValue()));
-      });
+  /**
+   * @return This message formatted as plain text
+   */
 
-    return text.toString();
+  public String formatText()
+  {
+    return this.format().text();
   }
 
   /**
@@ -110,67 +85,6 @@ public record GAlertV4(
 
   public String formatHTML()
   {
-    final var sb = new StringBuilder(128);
-
-    switch (this.status.toUpperCase(Locale.ROOT)) {
-      case "FIRING" -> {
-        sb.append("<p>\uD83D\uDEA8 <b data-mx-color=\"#ff0000\">ALERT FIRING!</b></p>");
-      }
-      case "RESOLVED" -> {
-        sb.append("<p>✅ <span data-mx-color=\"#00aa00\">Alert resolved.</b></p>");
-      }
-      default -> {
-        sb.append("<p>Alert ");
-        sb.append(StringEscapeUtils.escapeXml11(this.status));
-        sb.append("</p>");
-      }
-    }
-
-    sb.append("<p>");
-    sb.append("<table>");
-    this.labels()
-      .entrySet()
-      .stream()
-      .sorted(Map.Entry.comparingByKey())
-      .forEach(e -> {
-        sb.append("<tr>");
-        sb.append("<td>");
-        sb.append("<tt>");
-        sb.append(StringEscapeUtils.escapeXml11(e.getKey()));
-        sb.append("</tt>");
-        sb.append("</td>");
-        sb.append("<td>");
-        sb.append("<tt>");
-        sb.append(StringEscapeUtils.escapeXml11(e.getValue()));
-        sb.append("</tt>");
-        sb.append("</td>");
-        sb.append("</tr>");
-      });
-    sb.append("</table>");
-    sb.append("</p>");
-
-    sb.append("<p>");
-    sb.append("<table>");
-    this.annotations()
-      .entrySet()
-      .stream()
-      .sorted(Map.Entry.comparingByKey())
-      .forEach(e -> {
-        sb.append("<tr>");
-        sb.append("<td>");
-        sb.append("<tt>");
-        sb.append(StringEscapeUtils.escapeXml11(e.getKey()));
-        sb.append("</tt>");
-        sb.append("</td>");
-        sb.append("<td>");
-        sb.append("<tt>");
-        sb.append(StringEscapeUtils.escapeXml11(e.getValue()));
-        sb.append("</tt>");
-        sb.append("</td>");
-        sb.append("</tr>");
-      });
-    sb.append("</table>");
-    sb.append("</p>");
-    return sb.toString();
+    return this.format().html();
   }
 }
@@ -0,0 +1,240 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import org.apache.commons.text.StringEscapeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A renderer that produces both the plain text and HTML forms of an alert
+ * in a single pass. Labels and annotations are sorted once, and each entry
+ * is written to both outputs as it is visited.
+ */
+
+public final class GAlertV4Renderer
+{
+  private static final int KEY_WIDTH = 16;
+
+  private GAlertV4Renderer()
+  {
+
+  }
+
+  /**
+   * The rendered forms of an alert.
+   *
+   * @param text The plain text form
+   * @param html The HTML form
+   */
+
+  public record Rendered(
+    String text,
+    String html)
+  {
+    /**
+     * The rendered forms of an alert.
+     *
+     * @param text The plain text form
+     * @param html The HTML form
+     */
+
+    public Rendered
+    {
+      Objects.requireNonNull(text, "text");
+      Objects.requireNonNull(html, "html");
+    }
+  }
+
+  /**
+   * Render an alert.
+   *
+   * @param alert The alert
+   *
+   * @return The rendered forms
+   */
+
+  public static Rendered render(
+    final GAlertV4 alert)
+  {
+    Objects.requireNonNull(alert, "alert");
+
+    final var event = new GEventAlertRender();
+    event.begin();
+
+    final var labels =
+      sorted(alert.labels());
+    final var annotations =
+      sorted(alert.annotations());
+
+    final var contentSize =
+      contentSize(labels) + contentSize(annotations);
+    final var entries =
+      labels.size() + annotations.size();
+
+    final var text =
+      new StringBuilder(32 + contentSize + (entries * 24));
+    final var html =
+      new StringBuilder(128 + contentSize + (entries * 64));
+
+    final var status = alert.status();
+    switch (status.toUpperCase(Locale.ROOT)) {
+      case "FIRING" -> {
+        text.append("ALERT FIRING!\n");
+        html.append(
+          "<p>\uD83D\uDEA8 <b data-mx-color=\"#ff0000\">ALERT FIRING!</b></p>");
+      }
+      case "RESOLVED" -> {
+        text.append("Alert resolved.\n");
+        html.append(
+          "<p>✅ <span data-mx-color=\"#00aa00\">Alert resolved.</b></p>");
+      }
+      default -> {
+        text.append("Alert ");
+        text.append(status);
+        text.append(".\n");
+        html.append("<p>Alert ");
+        escapeXML(html, status);
+        html.append("</p>");
+      }
+    }
+
+    renderEntries(text, html, '#', labels);
+    text.append('\n');
+    renderEntries(text, html, '@', annotations);
+
+    if (event.shouldCommit()) {
+      event.fingerprint = alert.fingerprint();
+      event.alertStatus = status;
+      event.labels = labels.size();
+      event.annotations = annotations.size();
+      event.textLength = text.length();
+      event.htmlLength = html.length();
+      event.commit();
+    }
+    return new Rendered(text.toString(), html.toString());
+  }
+
+  private static void renderEntries(
+    final StringBuilder text,
+    final StringBuilder html,
+    final char prefix,
+    final List<Map.Entry<String, String>> entries)
+  {
+    html.append("<p><table>");
+    for (final var entry : entries) {
+      final var key = entry.getKey();
+      final var value = entry.getValue();
+
+      text.append(prefix);
+      text.append(' ');
+      text.append(key);
+      for (int index = key.length(); index < KEY_WIDTH; ++index) {
+        text.append(' ');
+      }
+      text.append(" : ");
+      text.append(value);
+      text.append('\n');
+
+      html.append("<tr><td><tt>");
+      escapeXML(html, key);
+      html.append("</tt></td><td><tt>");
+      escapeXML(html, value);
+      html.append("</tt></td></tr>");
+    }
+    html.append("</table></p>");
+  }
+
+  private static List<Map.Entry<String, String>> sorted(
+    final Map<String, String> map)
+  {
+    final var entries =
+      new ArrayList<Map.Entry<String, String>>(map.entrySet());
+    entries.sort(Map.Entry.comparingByKey());
+    return entries;
+  }
+
+  private static int contentSize(
+    final List<Map.Entry<String, String>> entries)
+  {
+    var size = 0;
+    for (final var entry : entries) {
+      size += entry.getKey().length() + entry.getValue().length();
+    }
+    return size;
+  }
+
+  /**
+   * Append the given text to the given builder, escaped as XML 1.1. The
+   * text is appended directly if it contains nothing that needs escaping,
+   * and is otherwise escaped exactly as
+   * {@link StringEscapeUtils#escapeXml11(String)} would escape it.
+   *
+   * @param output The output
+   * @param text   The text
+   */
+
+  static void escapeXML(
+    final StringBuilder output,
+    final String text)
+  {
+    if (isPlainXML(text)) {
+      output.append(text);
+    } else {
+      output.append(StringEscapeUtils.escapeXml11(text));
+    }
+  }
+
+  private static boolean isPlainXML(
+    final String text)
+  {
+    final var length = text.length();
+    for (int index = 0; index < length; ++index) {
+      if (!isPlainXML(text.charAt(index))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * The characters that escapeXml11 passes through unchanged. Surrogates
+   * are excluded so that unpaired surrogates are removed by the slow path.
+   */
+
+  private static boolean isPlainXML(
+    final char c)
+  {
+    if (c < 0x20) {
+      return c == '\t' || c == '\n' || c == '\r';
+    }
+    if (c < 0x7f) {
+      return c != '&' && c != '<' && c != '>' && c != '"' && c != '\'';
+    }
+    if (c < 0xa0) {
+      return c == 0x85;
+    }
+    if (Character.isSurrogate(c)) {
+      return false;
+    }
+    return c < 0xfffe;
+  }
+}
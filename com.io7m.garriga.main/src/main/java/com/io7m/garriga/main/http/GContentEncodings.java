@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Functions to decode request bodies according to their
+ * {@code Content-Encoding}.
+ */
+
+public final class GContentEncodings
+{
+  /**
+   * The encodings that can be decoded, in the form used by the
+   * {@code Accept-Encoding} header.
+   */
+
+  public static final String SUPPORTED = "gzip, deflate";
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private GContentEncodings()
+  {
+
+  }
+
+  /**
+   * Decode the given stream according to the given {@code Content-Encoding}
+   * header. Decoding happens as the returned stream is read, and the
+   * returned stream fails with {@link GRequestTooLargeException} as soon as
+   * more than {@code maximumSize} decoded bytes have been read, so that a
+   * small, highly compressed body cannot expand without bound. A body
+   * that cannot be decoded causes the returned stream to fail with
+   * {@link GContentEncodingException}.
+   *
+   * @param stream      The encoded stream
+   * @param encoding    The value of the {@code Content-Encoding} header, if
+   *                    any
+   * @param maximumSize The maximum decoded size in bytes
+   *
+   * @return The decoded stream
+   *
+   * @throws GUnsupportedContentEncodingException If an encoding is not
+   *                                              supported
+   * @throws GContentEncodingException            If the body cannot be
+   *                                              decoded
+   * @throws IOException                          On errors
+   */
+
+  public static GLimitedInputStream decode(
+    final InputStream stream,
+    final Optional<String> encoding,
+    final long maximumSize)
+    throws IOException
+  {
+    Objects.requireNonNull(stream, "stream");
+    Objects.requireNonNull(encoding, "encoding");
+
+    final var codings = codingsOf(encoding.orElse(""));
+
+    /*
+     * Codings are listed in the order in which they were applied, and so
+     * are removed in the reverse order.
+     */
+
+    if (codings.isEmpty()) {
+      return GLimitedInputStream.create(stream, maximumSize);
+    }
+
+    var decoded = stream;
+    try {
+      for (int index = codings.size() - 1; index >= 0; --index) {
+        decoded = switch (codings.get(index)) {
+          case "gzip", "x-gzip" -> new GZIPInputStream(decoded, BUFFER_SIZE);
+          case "deflate" -> new InflaterInputStream(decoded);
+          default -> throw new IllegalStateException();
+        };
+      }
+    } catch (final ZipException | EOFException e) {
+      throw new GContentEncodingException(e);
+    }
+    return GLimitedInputStream.create(new Decoded(decoded), maximumSize);
+  }
+
+  /*
+   * The decompressors report corrupt data with ZipException, and data
+   * that ends early with EOFException. Any other exception (such as the
+   * received body exceeding its limit) comes from the underlying stream
+   * and is passed through unchanged.
+   */
+
+  private static final class Decoded extends FilterInputStream
+  {
+    Decoded(
+      final InputStream inStream)
+    {
+      super(inStream);
+    }
+
+    @Override
+    public int read()
+      throws IOException
+    {
+      try {
+        return super.read();
+      } catch (final ZipException | EOFException e) {
+        throw new GContentEncodingException(e);
+      }
+    }
+
+    @Override
+    public int read(
+      final byte[] buffer,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      try {
+        return super.read(buffer, offset, length);
+      } catch (final ZipException | EOFException e) {
+        throw new GContentEncodingException(e);
+      }
+    }
+
+    @Override
+    public long skip(
+      final long n)
+      throws IOException
+    {
+      try {
+        return super.skip(n);
+      } catch (final ZipException | EOFException e) {
+        throw new GContentEncodingException(e);
+      }
+    }
+  }
+
+  private static ArrayList<String> codingsOf(
+    final String header)
+    throws GUnsupportedContentEncodingException
+  {
+    final var codings = new ArrayList<String>();
+    for (final var part : header.split(",")) {
+      final var coding = part.trim().toLowerCase(Locale.ROOT);
+      switch (coding) {
+        case "", "identity" -> {
+          // Nothing to decode.
+        }
+        case "gzip", "x-gzip", "deflate" -> {
+          codings.add(coding);
+        }
+        default -> {
+          throw new GUnsupportedContentEncodingException(coding);
+        }
+      }
+    }
+    return codings;
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import com.io7m.garriga.main.matrix.GMatrixAlertStatus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded cache of recently accepted alerts, used to suppress the
+ * repeated deliveries made by AlertManager on every repeat interval and
+ * by each replica of a highly-available AlertManager cluster.
+ */
+
+public final class GDeduplicationCache
+{
+  private final GDeduplicationConfiguration configuration;
+  private final LongSupplier clock;
+  private final LinkedHashMap<String, Entry> entries;
+  private final long[] windows;
+
+  private record Entry(
+    GMatrixAlertStatus status,
+    long timeAccepted)
+  {
+
+  }
+
+  private GDeduplicationCache(
+    final GDeduplicationConfiguration inConfiguration,
+    final LongSupplier inClock)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.clock =
+      Objects.requireNonNull(inClock, "clock");
+
+    final var statuses = GMatrixAlertStatus.values();
+    this.windows = new long[statuses.length];
+    for (final var status : statuses) {
+      this.windows[status.ordinal()] =
+        inConfiguration.windowFor(status).toNanos();
+    }
+
+    final var maximum = inConfiguration.maximumEntries();
+    this.entries = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(
+        final Map.Entry<String, Entry> eldest)
+      {
+        return this.size() > maximum;
+      }
+    };
+  }
+
+  /**
+   * Create a deduplication cache.
+   *
+   * @param configuration The configuration
+   *
+   * @return A cache
+   */
+
+  public static GDeduplicationCache create(
+    final GDeduplicationConfiguration configuration)
+  {
+    return new GDeduplicationCache(configuration, System::nanoTime);
+  }
+
+  /**
+   * Create a deduplication cache.
+   *
+   * @param configuration The configuration
+   * @param clock         A monotonic clock returning nanoseconds
+   *
+   * @return A cache
+   */
+
+  public static GDeduplicationCache createWithClock(
+    final GDeduplicationConfiguration configuration,
+    final LongSupplier clock)
+  {
+    return new GDeduplicationCache(configuration, clock);
+  }
+
+  /**
+   * Determine whether an alert should be sent, remembering it if it should.
+   * An alert is suppressed if an alert with the same fingerprint and the
+   * same status was accepted within the window for that status; a change
+   * of status is never suppressed.
+   *
+   * @param fingerprint The alert fingerprint
+   * @param status      The alert status
+   *
+   * @return {@code true} if the alert should be sent
+   */
+
+  public synchronized boolean admit(
+    final String fingerprint,
+    final GMatrixAlertStatus status)
+  {
+    Objects.requireNonNull(fingerprint, "fingerprint");
+    Objects.requireNonNull(status, "status");
+
+    final var window = this.windows[status.ordinal()];
+    if (fingerprint.isEmpty() || window == 0L) {
+      return true;
+    }
+
+    final var timeNow = this.clock.getAsLong();
+    final var existing = this.entries.get(fingerprint);
+    if (existing != null
+        && existing.status == status
+        && timeNow - existing.timeAccepted < window) {
+      return false;
+    }
+
+    this.entries.put(fingerprint, new Entry(status, timeNow));
+    this.purgeExpired(timeNow);
+    return true;
+  }
+
+  /*
+   * Entries are held in least-recently-used order, and so expired entries
+   * tend to collect at the head of the map. Removing them from there keeps
+   * the cost of eviction proportional to the number of expired entries.
+   */
+
+  private void purgeExpired(
+    final long timeNow)
+  {
+    final var iterator = this.entries.values().iterator();
+    while (iterator.hasNext()) {
+      final var entry = iterator.next();
+      final var window = this.windows[entry.status.ordinal()];
+      if (timeNow - entry.timeAccepted < window) {
+        return;
+      }
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Forget an alert that was admitted but could not be sent, so that the
+   * sender's retry is not suppressed.
+   *
+   * @param fingerprint The alert fingerprint
+   * @param status      The alert status
+   */
+
+  public synchronized void forget(
+    final String fingerprint,
+    final GMatrixAlertStatus status)
+  {
+    Objects.requireNonNull(fingerprint, "fingerprint");
+    Objects.requireNonNull(status, "status");
+
+    final var existing = this.entries.get(fingerprint);
+    if (existing != null && existing.status == status) {
+      this.entries.remove(fingerprint);
+    }
+  }
+
+  /**
+   * @return The number of alerts currently remembered
+   */
+
+  public synchronized int size()
+  {
+    return this.entries.size();
+  }
+
+  /**
+   * @return The configuration
+   */
+
+  public GDeduplicationConfiguration configuration()
+  {
+    return this.configuration;
+  }
+}
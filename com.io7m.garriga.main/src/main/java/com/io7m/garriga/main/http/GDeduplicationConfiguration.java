@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.io7m.garriga.main.matrix.GMatrixAlertStatus;
+
+import java.time.Duration;
+
+/**
+ * The configuration for suppressing repeated alerts. An alert that arrives
+ * with the same fingerprint and status as an alert that was accepted less
+ * than a window ago is not sent again. A window of {@code 0} disables
+ * suppression for alerts with that status.
+ *
+ * @param maximumEntries        The maximum number of alerts remembered
+ * @param firingWindowSeconds   The window for firing alerts
+ * @param resolvedWindowSeconds The window for resolved alerts
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GDeduplicationConfiguration(
+  @JsonProperty(required = true, value = "MaximumEntries")
+  int maximumEntries,
+  @JsonProperty(required = true, value = "FiringWindowSeconds")
+  long firingWindowSeconds,
+  @JsonProperty(required = true, value = "ResolvedWindowSeconds")
+  long resolvedWindowSeconds)
+{
+  /**
+   * The configuration for suppressing repeated alerts.
+   *
+   * @param maximumEntries        The maximum number of alerts remembered
+   * @param firingWindowSeconds   The window for firing alerts
+   * @param resolvedWindowSeconds The window for resolved alerts
+   */
+
+  public GDeduplicationConfiguration
+  {
+    if (maximumEntries < 1) {
+      throw new IllegalArgumentException(
+        "Maximum entries %d must be positive"
+          .formatted(Integer.valueOf(maximumEntries))
+      );
+    }
+    if (firingWindowSeconds < 0L) {
+      throw new IllegalArgumentException(
+        "Firing window %d must be non-negative"
+          .formatted(Long.valueOf(firingWindowSeconds))
+      );
+    }
+    if (resolvedWindowSeconds < 0L) {
+      throw new IllegalArgumentException(
+        "Resolved window %d must be non-negative"
+          .formatted(Long.valueOf(resolvedWindowSeconds))
+      );
+    }
+  }
+
+  /**
+   * @return The default deduplication configuration
+   */
+
+  public static GDeduplicationConfiguration defaults()
+  {
+    return new GDeduplicationConfiguration(10_000, 3_600L, 3_600L);
+  }
+
+  /**
+   * @param status The alert status
+   *
+   * @return The window for alerts with the given status
+   */
+
+  public Duration windowFor(
+    final GMatrixAlertStatus status)
+  {
+    return switch (status) {
+      case FIRING -> Duration.ofSeconds(this.firingWindowSeconds);
+      case RESOLVED -> Duration.ofSeconds(this.resolvedWindowSeconds);
+      case UNKNOWN -> Duration.ZERO;
+    };
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An event recorded when an alert is rendered. Alerts served from the
+ * render cache are not rendered, and so do not produce events.
+ */
+
+@Name("com.io7m.garriga.AlertRender")
+@Label("Alert Render")
+@Category({"Garriga", "Alerts"})
+@Description("The rendering of an alert as text and HTML.")
+@StackTrace(false)
+final class GEventAlertRender extends Event
+{
+  @Label("Fingerprint")
+  @Description("The alert fingerprint.")
+  String fingerprint;
+
+  @Label("Alert Status")
+  @Description("The alert status.")
+  String alertStatus;
+
+  @Label("Labels")
+  @Description("The number of alert labels.")
+  int labels;
+
+  @Label("Annotations")
+  @Description("The number of alert annotations.")
+  int annotations;
+
+  @Label("Text Length")
+  @Description("The length of the rendered text.")
+  int textLength;
+
+  @Label("HTML Length")
+  @Description("The length of the rendered HTML.")
+  int htmlLength;
+}
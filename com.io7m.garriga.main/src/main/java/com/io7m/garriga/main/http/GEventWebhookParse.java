@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An event recorded when a webhook request body is parsed. When requests
+ * are processed synchronously, the body is parsed as it is read, and so
+ * the event also covers the time taken to read the body.
+ */
+
+@Name("com.io7m.garriga.WebhookParse")
+@Label("Webhook Body Parse")
+@Category({"Garriga", "Webhook"})
+@Description("The parsing of a webhook request body, and the queueing of its alerts.")
+@StackTrace(false)
+final class GEventWebhookParse extends Event
+{
+  @Label("Asynchronous")
+  @Description("Whether the request was processed asynchronously.")
+  boolean asynchronous;
+
+  @Label("Bytes")
+  @Description("The number of decoded bytes parsed.")
+  @DataAmount
+  long bytes;
+
+  @Label("Alerts")
+  @Description("The number of alerts parsed.")
+  int alerts;
+}
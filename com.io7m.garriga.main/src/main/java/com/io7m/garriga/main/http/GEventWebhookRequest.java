@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An event recorded for each request received on the AlertManager
+ * webhook, covering the entire request.
+ */
+
+@Name("com.io7m.garriga.WebhookRequest")
+@Label("Webhook Request")
+@Category({"Garriga", "Webhook"})
+@Description("A request received on the AlertManager webhook.")
+@StackTrace(false)
+final class GEventWebhookRequest extends Event
+{
+  @Label("Status")
+  @Description("The HTTP status code of the response.")
+  int status;
+
+  @Label("Asynchronous")
+  @Description("Whether the request was processed asynchronously.")
+  boolean asynchronous;
+
+  @Label("Content Encoding")
+  @Description("The content encoding of the request body.")
+  String encoding;
+
+  @Label("Content Length")
+  @Description("The declared length of the request body, or -1.")
+  @DataAmount
+  long contentLength;
+
+  @Label("Bytes Read")
+  @Description("The number of bytes of the request body that were read.")
+  @DataAmount
+  long bytesRead;
+
+  @Label("Bytes Decoded")
+  @Description("The number of bytes of the request body after decoding.")
+  @DataAmount
+  long bytesDecoded;
+
+  @Label("Alerts")
+  @Description("The number of alerts in the request.")
+  int alerts;
+}
@@ -29,6 +29,9 @@ import java.net.InetAddress;
 import java.util.Map;
 import java.util.Objects;
 
+import static com.io7m.garriga.main.http.GHandlerAdminJFR.Operation.SNAPSHOT;
+import static com.io7m.garriga.main.http.GHandlerAdminJFR.Operation.START;
+import static com.io7m.garriga.main.http.GHandlerAdminJFR.Operation.STOP;
 import static java.net.StandardSocketOptions.SO_REUSEADDR;
 import static java.net.StandardSocketOptions.SO_REUSEPORT;
 
@@ -42,12 +45,16 @@ public final class GHTTPServer implements AutoCloseable, RPServiceType
     LoggerFactory.getLogger(GHTTPServer.class);
 
   private final WebServer webServer;
+  private final GHandlerV4 handlerV4;
 
   private GHTTPServer(
-    final WebServer inWebServer)
+    final WebServer inWebServer,
+    final GHandlerV4 inHandlerV4)
   {
     this.webServer =
       Objects.requireNonNull(inWebServer, "webServer");
+    this.handlerV4 =
+      Objects.requireNonNull(inHandlerV4, "handlerV4");
   }
 
   /**
@@ -66,10 +73,27 @@ public final class GHTTPServer implements AutoCloseable, RPServiceType
     final GHTTPServerConfiguration configuration)
     throws Exception
   {
+    final var handlerV4 =
+      new GHandlerV4(services, configuration);
     final var routing =
       HttpRouting.builder()
         .get("/health", new GHandlerHealth(services))
-        .post("/4/send", new GHandlerV4(services, configuration));
+        .get("/metrics", new GHandlerMetrics(services))
+        .post("/4/send", handlerV4);
+
+    final var admin = configuration.admin();
+    if (admin.enabled()) {
+      routing
+        .post(
+          "/admin/jfr/start",
+          new GHandlerAdminJFR(services, admin, START))
+        .get(
+          "/admin/jfr/snapshot",
+          new GHandlerAdminJFR(services, admin, SNAPSHOT))
+        .post(
+          "/admin/jfr/stop",
+          new GHandlerAdminJFR(services, admin, STOP));
+    }
 
     final var webServerBuilder =
       WebServerConfig.builder();
@@ -88,9 +112,15 @@ public final class GHTTPServer implements AutoCloseable, RPServiceType
         .routing(routing)
         .build();
 
-    webServer.start();
+    try {
+      webServer.start();
+    } catch (final Exception e) {
+      handlerV4.close();
+      throw e;
+    }
+
     LOG.info("[{}] Server started", address);
-    return new GHTTPServer(webServer);
+    return new GHTTPServer(webServer, handlerV4);
   }
 
   @Override
@@ -106,6 +136,7 @@ public final class GHTTPServer implements AutoCloseable, RPServiceType
   public void close()
   {
     this.webServer.stop();
+    this.handlerV4.close();
   }
 
   @Override
@@ -29,6 +29,11 @@ import java.util.Objects;
  * @param listenAddress       The listen address
  * @param listenPort          The listen port
  * @param authenticationToken The required bearer token
+ * @param deduplication       The alert deduplication configuration
+ * @param ingest              The request ingest configuration
+ * @param requestLimits       The request limits
+ * @param renderCache         The rendered alert cache configuration
+ * @param admin               The administrative endpoint configuration
  */
 
 @JsonDeserialize
@@ -39,7 +44,17 @@ public record GHTTPServerConfiguration(
   @JsonProperty(required = true, value = "ListenPort")
   int listenPort,
   @JsonProperty(required = true, value = "AuthenticationToken")
-  String authenticationToken)
+  String authenticationToken,
+  @JsonProperty(required = false, value = "Deduplication")
+  GDeduplicationConfiguration deduplication,
+  @JsonProperty(required = false, value = "Ingest")
+  GIngestConfiguration ingest,
+  @JsonProperty(required = false, value = "RequestLimits")
+  GRequestLimitsConfiguration requestLimits,
+  @JsonProperty(required = false, value = "RenderCache")
+  GRenderCacheConfiguration renderCache,
+  @JsonProperty(required = false, value = "Admin")
+  GAdminConfiguration admin)
 {
   /**
    * The HTTP server configuration.
@@ -47,11 +62,37 @@ public record GHTTPServerConfiguration(
    * @param listenAddress       The listen address
    * @param listenPort          The listen port
    * @param authenticationToken The required bearer token
+   * @param deduplication       The alert deduplication configuration
+   * @param ingest              The request ingest configuration
+   * @param requestLimits       The request limits
+   * @param renderCache         The rendered alert cache configuration
+   * @param admin               The administrative endpoint configuration
    */
 
   public GHTTPServerConfiguration
   {
     Objects.requireNonNull(listenAddress, "listenAddress");
     Objects.requireNonNull(authenticationToken, "authenticationToken");
+
+    deduplication = Objects.requireNonNullElseGet(
+      deduplication,
+      GDeduplicationConfiguration::defaults
+    );
+    ingest = Objects.requireNonNullElseGet(
+      ingest,
+      GIngestConfiguration::defaults
+    );
+    requestLimits = Objects.requireNonNullElseGet(
+      requestLimits,
+      GRequestLimitsConfiguration::defaults
+    );
+    renderCache = Objects.requireNonNullElseGet(
+      renderCache,
+      GRenderCacheConfiguration::defaults
+    );
+    admin = Objects.requireNonNullElseGet(
+      admin,
+      GAdminConfiguration::defaults
+    );
   }
 }
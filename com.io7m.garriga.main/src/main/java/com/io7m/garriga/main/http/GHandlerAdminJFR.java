@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import com.io7m.garriga.main.jfr.GFlightRecorder;
+import com.io7m.garriga.main.jfr.GFlightRecorder.Settings;
+import com.io7m.repetoir.core.RPServiceDirectoryType;
+import io.helidon.http.HeaderNames;
+import io.helidon.webserver.http.Handler;
+import io.helidon.webserver.http.ServerRequest;
+import io.helidon.webserver.http.ServerResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A handler for the administrative flight recording endpoints.
+ */
+
+public final class GHandlerAdminJFR implements Handler
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(GHandlerAdminJFR.class);
+
+  private static final DateTimeFormatter FILE_TIME =
+    DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+  private final GFlightRecorder recorder;
+  private final Operation operation;
+  private final byte[] bearerToken;
+
+  /**
+   * The operation performed by the handler.
+   */
+
+  public enum Operation
+  {
+    /**
+     * Start a recording.
+     */
+
+    START,
+
+    /**
+     * Return the data kept by the running recording.
+     */
+
+    SNAPSHOT,
+
+    /**
+     * Stop the running recording.
+     */
+
+    STOP
+  }
+
+  /**
+   * A handler for the administrative flight recording endpoints.
+   *
+   * @param inServices      The services
+   * @param inConfiguration The admin configuration
+   * @param inOperation     The operation performed by the handler
+   */
+
+  public GHandlerAdminJFR(
+    final RPServiceDirectoryType inServices,
+    final GAdminConfiguration inConfiguration,
+    final Operation inOperation)
+  {
+    this.recorder =
+      inServices.requireService(GFlightRecorder.class);
+    this.operation =
+      Objects.requireNonNull(inOperation, "operation");
+    this.bearerToken =
+      "Bearer %s".formatted(inConfiguration.authenticationToken())
+        .trim()
+        .getBytes(UTF_8);
+  }
+
+  @Override
+  public void handle(
+    final ServerRequest request,
+    final ServerResponse response)
+  {
+    LOG.info(
+      "{} {}",
+      request.prologue().uriPath(),
+      request.prologue().method()
+    );
+
+    if (!this.authenticate(request)) {
+      LOG.error("Authentication failed.");
+      response.status(401);
+      response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+      response.send("Authentication failed.");
+      return;
+    }
+
+    try {
+      switch (this.operation) {
+        case START -> this.start(request, response);
+        case SNAPSHOT -> this.snapshot(response);
+        case STOP -> this.stop(response);
+      }
+    } catch (final IOException e) {
+      LOG.error("I/O: ", e);
+      response.status(500);
+      response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+      response.send(e.getMessage());
+    }
+  }
+
+  /*
+   * The token is compared in constant time, as the admin endpoints grant
+   * rather more access than the webhook.
+   */
+
+  private boolean authenticate(
+    final ServerRequest request)
+  {
+    return request.headers()
+      .value(HeaderNames.AUTHORIZATION)
+      .map(value -> {
+        return MessageDigest.isEqual(
+          value.trim().getBytes(UTF_8),
+          this.bearerToken
+        );
+      })
+      .orElse(Boolean.FALSE)
+      .booleanValue();
+  }
+
+  private void start(
+    final ServerRequest request,
+    final ServerResponse response)
+    throws IOException
+  {
+    final var query = request.query();
+    final var name =
+      query.contains("settings") ? query.get("settings") : "profile";
+    final var settingsOpt = Settings.ofName(name);
+
+    if (settingsOpt.isEmpty()) {
+      response.status(400);
+      response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+      response.send(
+        "Unrecognized settings '%s' (use 'default' or 'profile')."
+          .formatted(name)
+      );
+      return;
+    }
+
+    if (!this.recorder.start(settingsOpt.get())) {
+      sendConflict(response, "A recording is already running.");
+      return;
+    }
+
+    response.status(200);
+    response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+    response.send("Started\r\n");
+  }
+
+  /*
+   * The recording is dumped to a temporary file (the only form in which
+   * the JDK can produce it) and then streamed to the client, so that a
+   * large recording is never held in memory.
+   */
+
+  private void snapshot(
+    final ServerResponse response)
+    throws IOException
+  {
+    final var fileOpt = this.recorder.snapshot();
+    if (fileOpt.isEmpty()) {
+      sendConflict(response, "No recording is running.");
+      return;
+    }
+
+    final var file = fileOpt.get();
+    try {
+      final var name =
+        "garriga-%s.jfr".formatted(
+          FILE_TIME.format(OffsetDateTime.now(ZoneOffset.UTC)));
+
+      response.status(200);
+      response.header(HeaderNames.CONTENT_TYPE, "application/octet-stream");
+      response.header(
+        HeaderNames.CONTENT_DISPOSITION,
+        "attachment; filename=\"%s\"".formatted(name)
+      );
+      response.header(
+        HeaderNames.CONTENT_LENGTH,
+        Long.toString(Files.size(file))
+      );
+
+      try (var output = response.outputStream()) {
+        Files.copy(file, output);
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private void stop(
+    final ServerResponse response)
+  {
+    if (!this.recorder.stop()) {
+      sendConflict(response, "No recording is running.");
+      return;
+    }
+
+    response.status(200);
+    response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+    response.send("Stopped\r\n");
+  }
+
+  private static void sendConflict(
+    final ServerResponse response,
+    final String message)
+  {
+    response.status(409);
+    response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+    response.send(message);
+  }
+}
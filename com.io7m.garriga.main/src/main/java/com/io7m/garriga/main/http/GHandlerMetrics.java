@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import com.io7m.garriga.main.metrics.GMetrics;
+import com.io7m.repetoir.core.RPServiceDirectoryType;
+import io.helidon.http.HeaderNames;
+import io.helidon.webserver.http.Handler;
+import io.helidon.webserver.http.ServerRequest;
+import io.helidon.webserver.http.ServerResponse;
+
+/**
+ * The metrics handler. Metrics are returned in the Prometheus text
+ * exposition format.
+ */
+
+public final class GHandlerMetrics implements Handler
+{
+  private final GMetrics metrics;
+
+  /**
+   * The metrics handler.
+   *
+   * @param inServices The services
+   */
+
+  public GHandlerMetrics(
+    final RPServiceDirectoryType inServices)
+  {
+    this.metrics =
+      inServices.optionalService(GMetrics.class)
+        .orElseGet(GMetrics::create);
+  }
+
+  @Override
+  public void handle(
+    final ServerRequest request,
+    final ServerResponse response)
+  {
+    response.status(200);
+    response.header(
+      HeaderNames.CONTENT_TYPE,
+      "text/plain; version=0.0.4; charset=utf-8"
+    );
+    response.send(this.metrics.text());
+  }
+}
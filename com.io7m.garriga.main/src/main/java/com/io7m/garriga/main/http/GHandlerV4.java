@@ -17,33 +17,64 @@
 
 package com.io7m.garriga.main.http;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.io7m.garriga.main.matrix.GMatrixAlertStatus;
 import com.io7m.garriga.main.matrix.GMatrixMessage;
+import com.io7m.garriga.main.matrix.GMatrixQueueFullException;
+import com.io7m.garriga.main.matrix.GMatrixRouter;
 import com.io7m.garriga.main.matrix.GMatrixServiceType;
+import com.io7m.garriga.main.metrics.GMetricClock;
+import com.io7m.garriga.main.metrics.GMetricCounter;
+import com.io7m.garriga.main.metrics.GMetricHistogram;
+import com.io7m.garriga.main.metrics.GMetrics;
 import com.io7m.repetoir.core.RPServiceDirectoryType;
 import io.helidon.http.HeaderNames;
+import io.helidon.http.ServerRequestHeaders;
 import io.helidon.webserver.http.Handler;
 import io.helidon.webserver.http.ServerRequest;
 import io.helidon.webserver.http.ServerResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * The v1 handler.
  */
 
-public final class GHandlerV4 implements Handler
+public final class GHandlerV4 implements Handler, AutoCloseable
 {
   private static final Logger LOG =
     LoggerFactory.getLogger(GHandlerV4.class);
 
+  /*
+   * Every status with which the handler can respond.
+   */
+
+  private static final int[] RESPONSE_CODES = {
+    200, 202, 400, 401, 413, 415, 500, 503,
+  };
+
   private final GMatrixServiceType matrixClient;
   private final GHTTPServerConfiguration configuration;
-  private final ObjectMapper mapper;
+  private final GAlertManagerStreamV4 reader;
+  private final GDeduplicationCache deduplication;
+  private final GRenderCache renderCache;
+  private final GMatrixRouter router;
+  private final GIngestStage ingest;
+  private final Map<Integer, GMetricCounter> responses;
+  private final GMetricCounter alertsReceived;
+  private final GMetricCounter alertsSuppressed;
+  private final GMetricHistogram requestDuration;
 
   /**
    * The v1 handler.
@@ -60,8 +91,122 @@ public final class GHandlerV4 implements Handler
       inServices.requireService(GMatrixServiceType.class);
     this.configuration =
       Objects.requireNonNull(inConfiguration, "configuration");
-    this.mapper =
-      GMessageV4ObjectMappers.createMapper();
+    this.reader =
+      GAlertManagerStreamV4.create(GMessageV4ObjectMappers.createMapper());
+    this.deduplication =
+      GDeduplicationCache.create(inConfiguration.deduplication());
+    this.renderCache =
+      GRenderCache.create(inConfiguration.renderCache());
+    this.router =
+      inServices.optionalService(GMatrixRouter.class)
+        .orElseGet(GMatrixRouter::empty);
+
+    final var ingestConfiguration = inConfiguration.ingest();
+    if (ingestConfiguration.asynchronous()) {
+      this.ingest = GIngestStage.create(ingestConfiguration, this::process);
+    } else {
+      this.ingest = null;
+    }
+
+    final var metrics =
+      inServices.optionalService(GMetrics.class)
+        .orElseGet(GMetrics::create);
+
+    final var counters = new HashMap<Integer, GMetricCounter>();
+    for (final var code : RESPONSE_CODES) {
+      counters.put(
+        Integer.valueOf(code),
+        metrics.counter(
+          "garriga_webhook_requests_total",
+          "The webhook requests received, by response status.",
+          "code",
+          Integer.toString(code)
+        )
+      );
+    }
+    this.responses = Map.copyOf(counters);
+    this.alertsReceived =
+      metrics.counter(
+        "garriga_webhook_alerts_total",
+        "The alerts received in webhook requests."
+      );
+    this.alertsSuppressed =
+      metrics.counter(
+        "garriga_webhook_alerts_suppressed_total",
+        "The alerts discarded as repeats of recently accepted alerts."
+      );
+    this.requestDuration =
+      metrics.histogram(
+        "garriga_webhook_request_duration_seconds",
+        "The time taken to handle webhook requests.",
+        GMetricHistogram.LATENCY_BUCKETS
+      );
+    this.registerFunctions(metrics);
+  }
+
+  private void registerFunctions(
+    final GMetrics metrics)
+  {
+    final var dedup = this.deduplication;
+    metrics.gauge(
+      "garriga_deduplication_entries",
+      "The alerts remembered for deduplication.",
+      () -> dedup.size()
+    );
+
+    final var cache = this.renderCache;
+    metrics.counterFunction(
+      "garriga_render_cache_hits_total",
+      "The alerts that reused a cached rendering.",
+      cache::hits
+    );
+    metrics.counterFunction(
+      "garriga_render_cache_misses_total",
+      "The alerts that had to be rendered.",
+      cache::misses
+    );
+    metrics.gauge(
+      "garriga_render_cache_characters",
+      "The total length of the cached renderings.",
+      () -> cache.characters()
+    );
+
+    final var stage = this.ingest;
+    if (stage != null) {
+      metrics.gauge(
+        "garriga_ingest_queue_depth",
+        "The accepted requests waiting to be processed.",
+        () -> stage.size()
+      );
+      metrics.counterFunction(
+        "garriga_ingest_accepted_total",
+        "The requests accepted for asynchronous processing.",
+        stage::accepted
+      );
+      metrics.counterFunction(
+        "garriga_ingest_rejected_total",
+        "The requests refused because too many were waiting.",
+        stage::rejected
+      );
+      metrics.counterFunction(
+        "garriga_ingest_processed_total",
+        "The accepted requests that were processed successfully.",
+        stage::processed
+      );
+      metrics.counterFunction(
+        "garriga_ingest_failed_total",
+        "The accepted requests that could not be processed.",
+        stage::failed
+      );
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    if (this.ingest != null) {
+      this.ingest.close();
+    }
   }
 
   @Override
@@ -75,70 +220,342 @@ public final class GHandlerV4 implements Handler
       request.prologue().method()
     );
 
+    final var event = new GEventWebhookRequest();
+    event.begin();
+
+    final var timeReceived = GMetricClock.now();
+    final var timeStart = System.nanoTime();
+    final var status =
+      this.handleRequest(request, response, timeReceived, event);
+    this.requestDuration.observeNanos(System.nanoTime() - timeStart);
+    this.responses.get(Integer.valueOf(status)).increment();
+
+    event.status = status;
+    event.asynchronous = this.ingest != null;
+    event.commit();
+  }
+
+  private int handleRequest(
+    final ServerRequest request,
+    final ServerResponse response,
+    final long timeReceived,
+    final GEventWebhookRequest event)
+  {
     try {
       final var headers =
         request.headers();
 
-      final var authorizationOpt =
-        headers.value(HeaderNames.AUTHORIZATION);
-
-      if (authorizationOpt.isEmpty()) {
+      if (!this.authenticate(headers)) {
         LOG.error("Authentication failed.");
         response.status(401);
         response.header(HeaderNames.CONTENT_TYPE, "text/plain");
         response.send("Authentication failed.");
-        return;
+        return 401;
       }
 
-      final var authorization = authorizationOpt.get().trim();
-      if (!authorization.equals(this.bearerToken())) {
-        LOG.error("Authentication failed.");
-        response.status(401);
-        response.header(HeaderNames.CONTENT_TYPE, "text/plain");
-        response.send("Authentication failed.");
-        return;
-      }
+      /*
+       * A declared length that is too large is refused immediately. The
+       * limit is otherwise enforced as the body is read, so that requests
+       * without a declared length (such as chunked requests) are accepted.
+       */
 
+      final var limits =
+        this.configuration.requestLimits();
+      final var maximumSize =
+        limits.maximumSize();
       final var length =
-        headers.contentLength()
-          .orElse(Long.MAX_VALUE);
+        headers.contentLength();
+      final var encoding =
+        headers.value(HeaderNames.CONTENT_ENCODING);
 
-      if (length >= 1_000_000L) {
-        LOG.error("Request too large: {}", length);
-        response.status(413);
-        response.header(HeaderNames.CONTENT_TYPE, "text/plain");
-        response.send("Request too large.");
-        return;
-      }
+      event.contentLength = length.orElse(-1L);
+      event.encoding = encoding.orElse("");
 
-      final byte[] jsonBytes;
-      try (var stream = request.content().inputStream()) {
-        jsonBytes = stream.readAllBytes();
+      if (length.isPresent() && length.getAsLong() > maximumSize) {
+        LOG.error("Request too large: {}", Long.valueOf(length.getAsLong()));
+        return this.sendTooLarge(response);
       }
 
-      if (LOG.isTraceEnabled()) {
-        // CHECKSTYLE:OFF
-        LOG.trace("{}", new String(jsonBytes, StandardCharsets.UTF_8));
-        // CHECKSTYLE:ON
+      final var wire =
+        GLimitedInputStream.create(
+          request.content().inputStream(),
+          maximumSize
+        );
+
+      if (this.ingest != null) {
+        final var read = new GEventWebhookRead();
+        read.begin();
+
+        final byte[] jsonBytes;
+        try (var stream = decode(wire, encoding, limits)) {
+          jsonBytes = stream.readAllBytes();
+        }
+
+        read.bytesRead = wire.count();
+        read.bytesDecoded = jsonBytes.length;
+        read.commit();
+        event.bytesRead = wire.count();
+        event.bytesDecoded = jsonBytes.length;
+
+        if (LOG.isTraceEnabled()) {
+          // CHECKSTYLE:OFF
+          LOG.trace("{}", new String(jsonBytes, StandardCharsets.UTF_8));
+          // CHECKSTYLE:ON
+        }
+
+        return this.submit(jsonBytes, timeReceived, response);
       }
 
-      final var message =
-        this.mapper.readValue(jsonBytes, GAlertManagerRequestV4.class);
+      /*
+       * Alerts are queued as they are read from the request, so a request
+       * that turns out to be malformed part of the way through is refused
+       * with 400 after the alerts that precede the error have been queued.
+       * Those alerts are delivered. AlertManager does not retry requests
+       * that are refused with a 4xx status, and so the rest of the alerts
+       * in such a request are lost.
+       */
 
-      for (final var alert : message.alerts()) {
-        this.matrixClient.send(
-          new GMatrixMessage(alert.formatText(), alert.formatHTML())
-        );
+      final var parse = new GEventWebhookParse();
+      parse.begin();
+
+      final int alerts;
+      final long bytesDecoded;
+      try (var stream = decode(wire, encoding, limits)) {
+        alerts = this.reader.read(stream, (receiver, alert) -> {
+          this.sendAlert(receiver, alert, timeReceived);
+        });
+        bytesDecoded = stream.count();
       }
 
+      parse.asynchronous = false;
+      parse.bytes = bytesDecoded;
+      parse.alerts = alerts;
+      parse.commit();
+      event.bytesRead = wire.count();
+      event.bytesDecoded = bytesDecoded;
+      event.alerts = alerts;
+
       response.status(200);
       response.header(HeaderNames.CONTENT_TYPE, "text/plain");
       response.send("OK\r\n");
+      return 200;
+    } catch (final GRequestTooLargeException e) {
+      LOG.error("Request too large: {}", e.getMessage());
+      return this.sendTooLarge(response);
+    } catch (final GUnsupportedContentEncodingException e) {
+      LOG.error("Unsupported encoding: {}", e.encoding());
+      response.status(415);
+      response.header(HeaderNames.ACCEPT_ENCODING, GContentEncodings.SUPPORTED);
+      response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+      response.send(e.getMessage());
+      return 415;
+    } catch (final GMatrixQueueFullException e) {
+      LOG.warn("Rejected alerts: {}", e.getMessage());
+      response.status(503);
+      response.header(
+        HeaderNames.RETRY_AFTER,
+        Long.toString(e.retryAfter().toSeconds())
+      );
+      response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+      response.send(e.getMessage());
+      return 503;
+    } catch (final GContentEncodingException e) {
+      LOG.error("Malformed request: {}", e.getMessage());
+      response.status(400);
+      response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+      response.send(e.getMessage());
+      return 400;
+    } catch (final JsonProcessingException e) {
+      LOG.error("Malformed request: {}", e.getMessage());
+      response.status(400);
+      response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+      response.send(e.getMessage());
+      return 400;
     } catch (final IOException e) {
       LOG.error("I/O: ", e);
       response.status(500);
       response.header(HeaderNames.CONTENT_TYPE, "text/plain");
       response.send(e.getMessage());
+      return 500;
+    }
+  }
+
+  /*
+   * The received size is limited before decoding, and the decoded size
+   * after, so that neither the network nor a compressed body can
+   * supply more than its limit.
+   */
+
+  private static GLimitedInputStream decode(
+    final GLimitedInputStream wire,
+    final Optional<String> encoding,
+    final GRequestLimitsConfiguration limits)
+    throws IOException
+  {
+    return GContentEncodings.decode(
+      wire,
+      encoding,
+      limits.maximumDecompressedSize().longValue()
+    );
+  }
+
+  private boolean authenticate(
+    final ServerRequestHeaders headers)
+  {
+    final var event = new GEventWebhookAuthentication();
+    event.begin();
+
+    final var authorization =
+      headers.value(HeaderNames.AUTHORIZATION);
+    final var succeeded =
+      authorization.isPresent()
+      && authorization.get().trim().equals(this.bearerToken());
+
+    event.succeeded = succeeded;
+    event.commit();
+    return succeeded;
+  }
+
+  private int sendTooLarge(
+    final ServerResponse response)
+  {
+    response.status(413);
+    response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+    response.send("Request too large.");
+    return 413;
+  }
+
+  private int submit(
+    final byte[] jsonBytes,
+    final long timeReceived,
+    final ServerResponse response)
+  {
+    if (this.ingest.offer(jsonBytes, timeReceived)) {
+      response.status(202);
+      response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+      response.send("Accepted\r\n");
+      return 202;
+    }
+
+    LOG.warn("Rejected request: Too many requests are waiting.");
+    response.status(503);
+    response.header(
+      HeaderNames.RETRY_AFTER,
+      Long.toString(this.configuration.ingest().retryAfter().toSeconds())
+    );
+    response.header(HeaderNames.CONTENT_TYPE, "text/plain");
+    response.send("Too many requests are waiting to be processed.");
+    return 503;
+  }
+
+  /*
+   * A request that has already been acknowledged cannot be refused, so a
+   * full message queue is waited out rather than reported.
+   */
+
+  private void process(
+    final byte[] jsonBytes,
+    final long timeReceived)
+    throws IOException
+  {
+    final var event = new GEventWebhookParse();
+    event.begin();
+
+    final int alerts;
+    try (var stream = new ByteArrayInputStream(jsonBytes)) {
+      alerts = this.reader.read(stream, (receiver, alert) -> {
+        this.sendAlertWaiting(receiver, alert, timeReceived);
+      });
+    }
+
+    event.asynchronous = true;
+    event.bytes = jsonBytes.length;
+    event.alerts = alerts;
+    event.commit();
+  }
+
+  private void sendAlertWaiting(
+    final String receiver,
+    final GAlertV4 alert,
+    final long timeReceived)
+    throws IOException
+  {
+    while (true) {
+      try {
+        this.sendAlert(receiver, alert, timeReceived);
+        return;
+      } catch (final GMatrixQueueFullException e) {
+        if (this.ingest.isClosed()) {
+          throw e;
+        }
+        LOG.warn("Message queue is full; retrying in {}", e.retryAfter());
+        try {
+          Thread.sleep(e.retryAfter().toMillis());
+        } catch (final InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException(ex.getMessage());
+        }
+      }
+    }
+  }
+
+  /*
+   * Repeated alerts are discarded before they are formatted. An alert is
+   * forgotten again if it could not be queued, so that AlertManager's
+   * retry of the request is not itself discarded as a repeat.
+   */
+
+  private void sendAlert(
+    final String receiver,
+    final GAlertV4 alert,
+    final long timeReceived)
+    throws IOException
+  {
+    final var status =
+      GMatrixAlertStatus.ofAlertManagerStatus(alert.status());
+    final var fingerprint =
+      alert.fingerprint();
+
+    this.alertsReceived.increment();
+    if (!this.deduplication.admit(fingerprint, status)) {
+      LOG.debug("Suppressed repeated alert {} ({})", fingerprint, status);
+      this.alertsSuppressed.increment();
+      return;
+    }
+
+    final var rendered = this.renderCache.render(alert);
+    try {
+      this.matrixClient.send(
+        new GMatrixMessage(
+          rendered.text(),
+          rendered.html(),
+          status,
+          fingerprint,
+          this.router.route(alert.labels()),
+          this.router.priority(alert.labels()),
+          receiver,
+          timeReceived,
+          timeStarted(alert)
+        )
+      );
+    } catch (final IOException e) {
+      this.deduplication.forget(fingerprint, status);
+      throw e;
+    }
+  }
+
+  /*
+   * AlertManager always sets a start time, but an unparseable time is
+   * treated as unknown rather than causing the alert to be refused.
+   */
+
+  private static long timeStarted(
+    final GAlertV4 alert)
+  {
+    try {
+      return GMetricClock.ofInstant(Instant.parse(alert.startsAt()));
+    } catch (final DateTimeParseException e) {
+      return 0L;
     }
   }
 
@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.time.Duration;
+
+/**
+ * The configuration for ingesting webhook requests. By default, requests
+ * are parsed, formatted, and queued before the response is sent. In
+ * asynchronous mode, requests are acknowledged as soon as they have been
+ * authenticated and read, and are parsed and formatted by a separate
+ * bounded stage.
+ *
+ * @param asynchronous      {@code true} if requests are acknowledged before
+ *                          they are processed
+ * @param queueCapacity     The number of requests that may wait to be
+ *                          processed
+ * @param workers           The number of threads processing requests
+ * @param retryAfterSeconds The time clients are asked to wait when the
+ *                          stage is full
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GIngestConfiguration(
+  @JsonProperty(required = true, value = "Asynchronous")
+  boolean asynchronous,
+  @JsonProperty(required = true, value = "QueueCapacity")
+  int queueCapacity,
+  @JsonProperty(required = true, value = "Workers")
+  int workers,
+  @JsonProperty(required = true, value = "RetryAfterSeconds")
+  long retryAfterSeconds)
+{
+  /**
+   * The configuration for ingesting webhook requests.
+   *
+   * @param asynchronous      {@code true} if requests are acknowledged
+   *                          before they are processed
+   * @param queueCapacity     The number of requests that may wait to be
+   *                          processed
+   * @param workers           The number of threads processing requests
+   * @param retryAfterSeconds The time clients are asked to wait when the
+   *                          stage is full
+   */
+
+  public GIngestConfiguration
+  {
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException(
+        "Queue capacity %d must be positive"
+          .formatted(Integer.valueOf(queueCapacity))
+      );
+    }
+    if (workers < 1) {
+      throw new IllegalArgumentException(
+        "Workers %d must be positive"
+          .formatted(Integer.valueOf(workers))
+      );
+    }
+    if (retryAfterSeconds < 1L) {
+      throw new IllegalArgumentException(
+        "Retry after %d must be positive"
+          .formatted(Long.valueOf(retryAfterSeconds))
+      );
+    }
+  }
+
+  /**
+   * @return The default ingest configuration
+   */
+
+  public static GIngestConfiguration defaults()
+  {
+    return new GIngestConfiguration(false, 1_000, 1, 5L);
+  }
+
+  /**
+   * @return The time clients are asked to wait when the stage is full
+   */
+
+  public Duration retryAfter()
+  {
+    return Duration.ofSeconds(this.retryAfterSeconds);
+  }
+}
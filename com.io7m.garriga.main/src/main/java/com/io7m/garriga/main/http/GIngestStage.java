@@ -0,0 +1,263 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import com.io7m.garriga.main.metrics.GMetricClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded stage that processes request bodies on worker threads, so that
+ * requests can be acknowledged before they are processed. A request that
+ * arrives when the stage is full is refused, so that the client can retry
+ * it later.
+ */
+
+public final class GIngestStage implements AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(GIngestStage.class);
+
+  private final ProcessorType processor;
+  private final ArrayBlockingQueue<Request> queue;
+  private final ExecutorService executor;
+  private final AtomicBoolean closed;
+  private final AtomicLong accepted;
+  private final AtomicLong rejected;
+  private final AtomicLong processed;
+  private final AtomicLong failed;
+
+  /**
+   * A function that processes a request body.
+   */
+
+  public interface ProcessorType
+  {
+    /**
+     * Process a request body.
+     *
+     * @param body         The request body
+     * @param timeReceived The time the request was received, in
+     *                     nanoseconds since the epoch
+     *
+     * @throws IOException          On errors
+     * @throws InterruptedException If processing is interrupted
+     */
+
+    void process(
+      byte[] body,
+      long timeReceived)
+      throws IOException, InterruptedException;
+  }
+
+  private record Request(
+    byte[] body,
+    long timeReceived)
+  {
+
+  }
+
+  private GIngestStage(
+    final GIngestConfiguration configuration,
+    final ProcessorType inProcessor)
+  {
+    this.processor =
+      Objects.requireNonNull(inProcessor, "processor");
+    this.queue =
+      new ArrayBlockingQueue<>(configuration.queueCapacity());
+    this.executor =
+      Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual()
+          .name("com.io7m.garriga.ingest-", 0L)
+          .factory()
+      );
+    this.closed =
+      new AtomicBoolean(false);
+    this.accepted =
+      new AtomicLong();
+    this.rejected =
+      new AtomicLong();
+    this.processed =
+      new AtomicLong();
+    this.failed =
+      new AtomicLong();
+  }
+
+  /**
+   * Create and start a stage.
+   *
+   * @param configuration The configuration
+   * @param processor     The function that processes request bodies
+   *
+   * @return The stage
+   */
+
+  public static GIngestStage create(
+    final GIngestConfiguration configuration,
+    final ProcessorType processor)
+  {
+    final var stage = new GIngestStage(configuration, processor);
+    for (int index = 0; index < configuration.workers(); ++index) {
+      stage.executor.execute(stage::run);
+    }
+    return stage;
+  }
+
+  /**
+   * Submit a request body, received now, for processing.
+   *
+   * @param body The request body
+   *
+   * @return {@code false} if the stage is full (or closed)
+   */
+
+  public boolean offer(
+    final byte[] body)
+  {
+    return this.offer(body, GMetricClock.now());
+  }
+
+  /**
+   * Submit a request body for processing.
+   *
+   * @param body         The request body
+   * @param timeReceived The time the request was received, in nanoseconds
+   *                     since the epoch
+   *
+   * @return {@code false} if the stage is full (or closed)
+   */
+
+  public boolean offer(
+    final byte[] body,
+    final long timeReceived)
+  {
+    Objects.requireNonNull(body, "body");
+
+    final var request = new Request(body, timeReceived);
+    if (!this.closed.get() && this.queue.offer(request)) {
+      this.accepted.incrementAndGet();
+      return true;
+    }
+    this.rejected.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * @return {@code true} if the stage has been closed
+   */
+
+  public boolean isClosed()
+  {
+    return this.closed.get();
+  }
+
+  private void run()
+  {
+    try {
+      while (true) {
+        final var request = this.queue.poll(1L, TimeUnit.SECONDS);
+        if (request == null) {
+          if (this.closed.get()) {
+            return;
+          }
+          continue;
+        }
+
+        try {
+          this.processor.process(request.body, request.timeReceived);
+          this.processed.incrementAndGet();
+        } catch (final IOException | RuntimeException e) {
+          final var count = this.failed.incrementAndGet();
+          LOG.error(
+            "Failed to process request ({} failures so far): ",
+            Long.valueOf(count),
+            e
+          );
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return The number of requests accepted
+   */
+
+  public long accepted()
+  {
+    return this.accepted.get();
+  }
+
+  /**
+   * @return The number of requests refused because the stage was full
+   */
+
+  public long rejected()
+  {
+    return this.rejected.get();
+  }
+
+  /**
+   * @return The number of requests processed successfully
+   */
+
+  public long processed()
+  {
+    return this.processed.get();
+  }
+
+  /**
+   * @return The number of requests that could not be processed
+   */
+
+  public long failed()
+  {
+    return this.failed.get();
+  }
+
+  /**
+   * @return The number of requests waiting to be processed
+   */
+
+  public int size()
+  {
+    return this.queue.size();
+  }
+
+  /*
+   * Requests that were accepted have already been acknowledged, so the
+   * workers are allowed to finish processing them before the stage closes.
+   */
+
+  @Override
+  public void close()
+  {
+    if (this.closed.compareAndSet(false, true)) {
+      this.executor.close();
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that fails with {@link GRequestTooLargeException} as soon
+ * as more than a given number of bytes have been read from it. At most one
+ * byte past the limit is ever read from the underlying stream.
+ */
+
+public final class GLimitedInputStream extends FilterInputStream
+{
+  private final long limit;
+  private long count;
+
+  private GLimitedInputStream(
+    final InputStream inStream,
+    final long inLimit)
+  {
+    super(inStream);
+    this.limit = inLimit;
+  }
+
+  /**
+   * Create a limited stream.
+   *
+   * @param stream The underlying stream
+   * @param limit  The maximum number of bytes that may be read
+   *
+   * @return A limited stream
+   */
+
+  public static GLimitedInputStream create(
+    final InputStream stream,
+    final long limit)
+  {
+    if (limit < 0L) {
+      throw new IllegalArgumentException(
+        "Limit %d must be non-negative".formatted(Long.valueOf(limit))
+      );
+    }
+    return new GLimitedInputStream(stream, limit);
+  }
+
+  /**
+   * @return The number of bytes read so far
+   */
+
+  public long count()
+  {
+    return this.count;
+  }
+
+  @Override
+  public int read()
+    throws IOException
+  {
+    this.checkNotExceeded();
+
+    final var r = super.read();
+    if (r != -1) {
+      this.onRead(1L);
+    }
+    return r;
+  }
+
+  @Override
+  public int read(
+    final byte[] buffer,
+    final int offset,
+    final int length)
+    throws IOException
+  {
+    this.checkNotExceeded();
+
+    /*
+     * Never ask for more than one byte past the limit, so that exceeding
+     * the limit is noticed without reading an unbounded amount.
+     */
+
+    final var allowed =
+      (int) Math.min(length, (this.limit - this.count) + 1L);
+    final var r = super.read(buffer, offset, allowed);
+    if (r > 0) {
+      this.onRead(r);
+    }
+    return r;
+  }
+
+  @Override
+  public long skip(
+    final long n)
+    throws IOException
+  {
+    this.checkNotExceeded();
+
+    final var allowed =
+      Math.min(n, (this.limit - this.count) + 1L);
+    final var r = super.skip(allowed);
+    if (r > 0L) {
+      this.onRead(r);
+    }
+    return r;
+  }
+
+  @Override
+  public boolean markSupported()
+  {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(
+    final int readLimit)
+  {
+
+  }
+
+  @Override
+  public synchronized void reset()
+    throws IOException
+  {
+    throw new IOException("mark/reset not supported");
+  }
+
+  private void onRead(
+    final long n)
+    throws GRequestTooLargeException
+  {
+    this.count += n;
+    this.checkNotExceeded();
+  }
+
+  private void checkNotExceeded()
+    throws GRequestTooLargeException
+  {
+    if (this.count > this.limit) {
+      throw new GRequestTooLargeException(this.limit);
+    }
+  }
+}
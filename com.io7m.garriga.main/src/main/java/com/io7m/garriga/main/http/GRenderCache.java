@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded cache of rendered alerts. AlertManager resends unchanged alerts
+ * on every repeat interval (and once per replica in a highly-available
+ * cluster), and those alerts render identically each time.
+ */
+
+public final class GRenderCache
+{
+  private final GRenderCacheConfiguration configuration;
+  private final LinkedHashMap<Key, GAlertV4Renderer.Rendered> entries;
+  private long characters;
+  private long hits;
+  private long misses;
+
+  /*
+   * The labels and annotations are part of the key, so that an alert whose
+   * content has changed is never given a stale rendering. Map hash codes
+   * are computed from their contents.
+   */
+
+  private record Key(
+    String fingerprint,
+    String status,
+    Map<String, String> labels,
+    Map<String, String> annotations)
+  {
+
+  }
+
+  private GRenderCache(
+    final GRenderCacheConfiguration inConfiguration)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Create a render cache.
+   *
+   * @param configuration The configuration
+   *
+   * @return A cache
+   */
+
+  public static GRenderCache create(
+    final GRenderCacheConfiguration configuration)
+  {
+    return new GRenderCache(configuration);
+  }
+
+  /**
+   * Render an alert, reusing an earlier rendering of an identical alert if
+   * one is cached.
+   *
+   * @param alert The alert
+   *
+   * @return The rendered alert
+   */
+
+  public GAlertV4Renderer.Rendered render(
+    final GAlertV4 alert)
+  {
+    Objects.requireNonNull(alert, "alert");
+
+    if (!this.configuration.enabled()) {
+      return GAlertV4Renderer.render(alert);
+    }
+
+    final var key =
+      new Key(
+        alert.fingerprint(),
+        alert.status(),
+        alert.labels(),
+        alert.annotations()
+      );
+
+    synchronized (this) {
+      final var existing = this.entries.get(key);
+      if (existing != null) {
+        ++this.hits;
+        return existing;
+      }
+      ++this.misses;
+    }
+
+    /*
+     * Rendering happens outside the lock; two threads that miss on the
+     * same alert at once will both render it, and the later rendering
+     * replaces the earlier one.
+     */
+
+    final var rendered = GAlertV4Renderer.render(alert);
+    final var weight = weightOf(rendered);
+    if (weight > this.configuration.maximumCharacters()) {
+      return rendered;
+    }
+
+    synchronized (this) {
+      final var previous = this.entries.put(key, rendered);
+      if (previous != null) {
+        this.characters -= weightOf(previous);
+      }
+      this.characters += weight;
+      this.evict();
+    }
+    return rendered;
+  }
+
+  private void evict()
+  {
+    final Iterator<GAlertV4Renderer.Rendered> iterator =
+      this.entries.values().iterator();
+
+    while (this.characters > this.configuration.maximumCharacters()) {
+      this.characters -= weightOf(iterator.next());
+      iterator.remove();
+    }
+  }
+
+  private static long weightOf(
+    final GAlertV4Renderer.Rendered rendered)
+  {
+    return (long) rendered.text().length() + rendered.html().length();
+  }
+
+  /**
+   * @return The number of renderings currently cached
+   */
+
+  public synchronized int size()
+  {
+    return this.entries.size();
+  }
+
+  /**
+   * @return The total length of the cached renderings, in characters
+   */
+
+  public synchronized long characters()
+  {
+    return this.characters;
+  }
+
+  /**
+   * @return The number of alerts that reused a cached rendering
+   */
+
+  public synchronized long hits()
+  {
+    return this.hits;
+  }
+
+  /**
+   * @return The number of alerts that had to be rendered
+   */
+
+  public synchronized long misses()
+  {
+    return this.misses;
+  }
+}
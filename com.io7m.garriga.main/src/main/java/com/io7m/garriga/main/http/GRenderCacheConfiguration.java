@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * The configuration for caching rendered alerts. An alert that arrives with
+ * the same fingerprint, status, labels, and annotations as a recently
+ * rendered alert reuses the earlier rendering.
+ *
+ * @param enabled           {@code true} if rendered alerts are cached
+ * @param maximumCharacters The maximum total length of the cached
+ *                          renderings, in characters
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GRenderCacheConfiguration(
+  @JsonProperty(required = true, value = "Enabled")
+  boolean enabled,
+  @JsonProperty(required = true, value = "MaximumCharacters")
+  long maximumCharacters)
+{
+  /**
+   * The configuration for caching rendered alerts.
+   *
+   * @param enabled           {@code true} if rendered alerts are cached
+   * @param maximumCharacters The maximum total length of the cached
+   *                          renderings, in characters
+   */
+
+  public GRenderCacheConfiguration
+  {
+    if (maximumCharacters < 1L) {
+      throw new IllegalArgumentException(
+        "Maximum characters %d must be positive"
+          .formatted(Long.valueOf(maximumCharacters))
+      );
+    }
+  }
+
+  /**
+   * @return The default render cache configuration
+   */
+
+  public static GRenderCacheConfiguration defaults()
+  {
+    return new GRenderCacheConfiguration(true, 4_000_000L);
+  }
+}
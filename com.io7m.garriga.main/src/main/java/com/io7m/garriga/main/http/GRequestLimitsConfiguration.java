@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Objects;
+
+/**
+ * The limits placed on webhook requests. The size limits are enforced as the
+ * request body is read, and so apply equally to requests that do not
+ * declare a length (such as chunked requests).
+ *
+ * @param maximumSize             The maximum size of a request body in bytes,
+ *                                as received
+ * @param maximumDecompressedSize The maximum size of a request body in bytes,
+ *                                after any content encoding is removed (by
+ *                                default, the same as the maximum size)
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GRequestLimitsConfiguration(
+  @JsonProperty(required = true, value = "MaximumSize")
+  long maximumSize,
+  @JsonProperty(required = false, value = "MaximumDecompressedSize")
+  Long maximumDecompressedSize)
+{
+  /**
+   * The limits placed on webhook requests.
+   *
+   * @param maximumSize             The maximum size of a request body in
+   *                                bytes, as received
+   * @param maximumDecompressedSize The maximum size of a request body in
+   *                                bytes, after any content encoding is
+   *                                removed (by default, the same as the
+   *                                maximum size)
+   */
+
+  public GRequestLimitsConfiguration
+  {
+    if (maximumSize < 1L) {
+      throw new IllegalArgumentException(
+        "Maximum size %d must be positive"
+          .formatted(Long.valueOf(maximumSize))
+      );
+    }
+    maximumDecompressedSize = Objects.requireNonNullElse(
+      maximumDecompressedSize,
+      Long.valueOf(maximumSize)
+    );
+
+    if (maximumDecompressedSize.longValue() < 1L) {
+      throw new IllegalArgumentException(
+        "Maximum decompressed size %d must be positive"
+          .formatted(maximumDecompressedSize)
+      );
+    }
+  }
+
+  /**
+   * @return The default request limits
+   */
+
+  public static GRequestLimitsConfiguration defaults()
+  {
+    return new GRequestLimitsConfiguration(
+      1_000_000L,
+      Long.valueOf(10_000_000L)
+    );
+  }
+}
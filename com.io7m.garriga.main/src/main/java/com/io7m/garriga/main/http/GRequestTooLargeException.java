@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.http;
+
+import java.io.IOException;
+
+/**
+ * A request body exceeded the configured size limit.
+ */
+
+public final class GRequestTooLargeException extends IOException
+{
+  private final long limit;
+
+  /**
+   * A request body exceeded the configured size limit.
+   *
+   * @param inLimit The limit in bytes
+   */
+
+  public GRequestTooLargeException(
+    final long inLimit)
+  {
+    super("Request exceeds the size limit of %d bytes."
+            .formatted(Long.valueOf(inLimit)));
+    this.limit = inLimit;
+  }
+
+  /**
+   * @return The limit in bytes
+   */
+
+  public long limit()
+  {
+    return this.limit;
+  }
+}
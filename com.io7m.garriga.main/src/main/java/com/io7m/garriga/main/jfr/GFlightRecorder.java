@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.jfr;
+
+import com.io7m.repetoir.core.RPServiceType;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A service that controls a single bounded, continuous flight recording of
+ * the running server. The recording keeps at most a configured age and
+ * size of data, and so may be left running indefinitely.
+ */
+
+public final class GFlightRecorder implements RPServiceType, AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(GFlightRecorder.class);
+
+  private final Duration maximumAge;
+  private final long maximumSize;
+  private Recording recording;
+
+  /**
+   * The recording settings.
+   */
+
+  public enum Settings
+  {
+    /**
+     * The JDK's low overhead settings, suitable for leaving enabled.
+     */
+
+    DEFAULT("default"),
+
+    /**
+     * The JDK's profiling settings, which include more frequent execution
+     * samples, allocation profiling, and lock contention.
+     */
+
+    PROFILE("profile");
+
+    private final String configurationName;
+
+    Settings(
+      final String inConfigurationName)
+    {
+      this.configurationName = inConfigurationName;
+    }
+
+    /**
+     * @return The name of the JDK configuration
+     */
+
+    public String configurationName()
+    {
+      return this.configurationName;
+    }
+
+    /**
+     * Parse settings from the name of a JDK configuration.
+     *
+     * @param name The name
+     *
+     * @return The settings, if the name is recognized
+     */
+
+    public static Optional<Settings> ofName(
+      final String name)
+    {
+      return switch (name.toLowerCase(Locale.ROOT)) {
+        case "default" -> Optional.of(DEFAULT);
+        case "profile" -> Optional.of(PROFILE);
+        default -> Optional.empty();
+      };
+    }
+  }
+
+  private GFlightRecorder(
+    final Duration inMaximumAge,
+    final long inMaximumSize)
+  {
+    this.maximumAge =
+      Objects.requireNonNull(inMaximumAge, "maximumAge");
+    this.maximumSize =
+      inMaximumSize;
+  }
+
+  /**
+   * Create a flight recorder service. No recording is started.
+   *
+   * @param maximumAge  The maximum age of the data kept by a recording
+   * @param maximumSize The maximum size of the data kept by a recording,
+   *                    in bytes
+   *
+   * @return The service
+   */
+
+  public static GFlightRecorder create(
+    final Duration maximumAge,
+    final long maximumSize)
+  {
+    return new GFlightRecorder(maximumAge, maximumSize);
+  }
+
+  /**
+   * Start a recording.
+   *
+   * @param settings The recording settings
+   *
+   * @return {@code false} if a recording is already running
+   *
+   * @throws IOException On errors
+   */
+
+  public synchronized boolean start(
+    final Settings settings)
+    throws IOException
+  {
+    Objects.requireNonNull(settings, "settings");
+
+    if (this.recording != null) {
+      return false;
+    }
+
+    final Configuration configuration;
+    try {
+      configuration =
+        Configuration.getConfiguration(settings.configurationName());
+    } catch (final ParseException e) {
+      throw new IOException(e);
+    }
+
+    final var newRecording = new Recording(configuration);
+    newRecording.setName("com.io7m.garriga");
+    newRecording.setToDisk(true);
+    newRecording.setMaxAge(this.maximumAge);
+    newRecording.setMaxSize(this.maximumSize);
+    newRecording.start();
+    this.recording = newRecording;
+
+    LOG.info(
+      "Started flight recording {} ({} settings, {}, {} bytes)",
+      Long.valueOf(newRecording.getId()),
+      settings.configurationName(),
+      this.maximumAge,
+      Long.valueOf(this.maximumSize)
+    );
+    return true;
+  }
+
+  /**
+   * Write the data kept by the running recording to a new temporary file.
+   * The recording continues to run. The caller is responsible for deleting
+   * the file.
+   *
+   * @return The file, or nothing if no recording is running
+   *
+   * @throws IOException On errors
+   */
+
+  public synchronized Optional<Path> snapshot()
+    throws IOException
+  {
+    if (this.recording == null) {
+      return Optional.empty();
+    }
+
+    final var file = Files.createTempFile("garriga-", ".jfr");
+    try {
+      this.recording.dump(file);
+    } catch (final IOException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+    return Optional.of(file);
+  }
+
+  /**
+   * Stop and discard the running recording.
+   *
+   * @return {@code false} if no recording is running
+   */
+
+  public synchronized boolean stop()
+  {
+    if (this.recording == null) {
+      return false;
+    }
+
+    LOG.info("Stopped flight recording {}", Long.valueOf(this.recording.getId()));
+    this.recording.close();
+    this.recording = null;
+    return true;
+  }
+
+  /**
+   * @return {@code true} if a recording is running
+   */
+
+  public synchronized boolean isRunning()
+  {
+    return this.recording != null;
+  }
+
+  @Override
+  public void close()
+  {
+    this.stop();
+  }
+
+  @Override
+  public String description()
+  {
+    return "Flight recorder service.";
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[%s 0x%s]".formatted(
+      this.getClass().getSimpleName(),
+      Integer.toUnsignedString(this.hashCode(), 16)
+    );
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An event recorded when messages are taken from a queue to be sent.
+ * The event covers the time spent waiting for earlier sends about the
+ * same alerts and for the rate limiter.
+ */
+
+@Name("com.io7m.garriga.MatrixDequeue")
+@Label("Matrix Dequeue")
+@Category({"Garriga", "Matrix"})
+@Description("The removal of messages from a queue, up to the start of their send.")
+@StackTrace(false)
+final class GEventMatrixDequeue extends Event
+{
+  @Label("Channel")
+  @Description("The channel of the queue.")
+  String channel;
+
+  @Label("Messages")
+  @Description("The number of messages taken from the queue.")
+  int messages;
+
+  @Label("Queue Depth")
+  @Description("The number of messages left waiting.")
+  int queueDepth;
+
+  @Label("Edit")
+  @Description("Whether the message is sent as an edit of an earlier message.")
+  boolean edit;
+
+  @Label("Sent")
+  @Description("Whether the send was started.")
+  boolean sent;
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An event recorded when a message is queued to be sent to the Matrix
+ * server. The event covers any time spent waiting for space in the queue.
+ */
+
+@Name("com.io7m.garriga.MatrixEnqueue")
+@Label("Matrix Enqueue")
+@Category({"Garriga", "Matrix"})
+@Description("The queueing of a message to be sent to the Matrix server.")
+@StackTrace(false)
+final class GEventMatrixEnqueue extends Event
+{
+  @Label("Channel")
+  @Description("The channel to which the message was routed.")
+  String channel;
+
+  @Label("Fingerprint")
+  @Description("The fingerprint of the alert the message describes.")
+  String fingerprint;
+
+  @Label("Alert Status")
+  @Description("The status of the alert the message describes.")
+  String alertStatus;
+
+  @Label("Priority")
+  @Description("The message priority.")
+  String priority;
+
+  @Label("Text Length")
+  @Description("The length of the message text.")
+  int textLength;
+
+  @Label("HTML Length")
+  @Description("The length of the message HTML.")
+  int htmlLength;
+
+  @Label("Queue Depth")
+  @Description("The number of messages waiting after the message was queued.")
+  int queueDepth;
+
+  @Label("Accepted")
+  @Description("Whether the message was accepted by the queue.")
+  boolean accepted;
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * An event recorded for each HTTP request made to the Matrix server.
+ * The event is committed when the exchange completes, on the thread that
+ * completed it, and so the time taken by the entire exchange (including
+ * reading the response) is recorded in a field rather than as the duration
+ * of the event.
+ */
+
+@Name("com.io7m.garriga.MatrixRequest")
+@Label("Matrix Request")
+@Category({"Garriga", "Matrix"})
+@Description("An HTTP request made to the Matrix server.")
+@StackTrace(false)
+final class GEventMatrixRequest extends Event
+{
+  @Label("Request Duration")
+  @Description("The time taken by the entire exchange.")
+  @Timespan(Timespan.NANOSECONDS)
+  long requestDuration;
+
+  @Label("Method")
+  @Description("The HTTP method.")
+  String method;
+
+  @Label("Path")
+  @Description("The request path.")
+  String path;
+
+  @Label("Status")
+  @Description("The HTTP status code of the response, or -1 if the request failed.")
+  int status;
+
+  @Label("Request Size")
+  @Description("The size of the request body, or -1 if unknown.")
+  @DataAmount
+  long requestSize;
+
+  @Label("Response Size")
+  @Description("The size of the response body.")
+  @DataAmount
+  long responseSize;
+
+  @Label("Failure")
+  @Description("The reason the request failed, if it failed.")
+  String failure;
+}
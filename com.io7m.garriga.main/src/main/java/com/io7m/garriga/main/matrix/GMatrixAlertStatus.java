@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import java.util.Locale;
+
+/**
+ * The status of the alert described by a message.
+ */
+
+public enum GMatrixAlertStatus
+{
+  /**
+   * The alert is firing.
+   */
+
+  FIRING,
+
+  /**
+   * The alert has been resolved.
+   */
+
+  RESOLVED,
+
+  /**
+   * The alert has some other (or no) status.
+   */
+
+  UNKNOWN;
+
+  /**
+   * Parse an AlertManager alert status.
+   *
+   * @param status The status string
+   *
+   * @return The status
+   */
+
+  public static GMatrixAlertStatus ofAlertManagerStatus(
+    final String status)
+  {
+    return switch (status.toUpperCase(Locale.ROOT)) {
+      case "FIRING" -> FIRING;
+      case "RESOLVED" -> RESOLVED;
+      default -> UNKNOWN;
+    };
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * The message batching configuration. Queued messages are combined into a
+ * single Matrix message containing at most {@code maximumMessages} alerts
+ * and at most {@code maximumBytes} bytes of encoded message content.
+ *
+ * @param maximumMessages The maximum number of messages in a batch
+ * @param maximumBytes    The maximum size of a batch in bytes
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixBatchingConfiguration(
+  @JsonProperty(required = true, value = "MaximumMessages")
+  int maximumMessages,
+  @JsonProperty(required = true, value = "MaximumBytes")
+  int maximumBytes)
+{
+  /**
+   * The largest permitted value for {@code maximumBytes}. The Matrix
+   * specification limits events to 65536 bytes, and this leaves room for
+   * the event envelope added by the server.
+   */
+
+  public static final int MAXIMUM_BYTES_LIMIT = 60_000;
+
+  /**
+   * The message batching configuration.
+   *
+   * @param maximumMessages The maximum number of messages in a batch
+   * @param maximumBytes    The maximum size of a batch in bytes
+   */
+
+  public GMatrixBatchingConfiguration
+  {
+    if (maximumMessages < 1) {
+      throw new IllegalArgumentException(
+        "Maximum messages %d must be positive"
+          .formatted(Integer.valueOf(maximumMessages))
+      );
+    }
+    if (maximumBytes < 1 || maximumBytes > MAXIMUM_BYTES_LIMIT) {
+      throw new IllegalArgumentException(
+        "Maximum bytes %d must be in the range [1, %d]"
+          .formatted(
+            Integer.valueOf(maximumBytes),
+            Integer.valueOf(MAXIMUM_BYTES_LIMIT))
+      );
+    }
+  }
+
+  /**
+   * @return The default batching configuration
+   */
+
+  public static GMatrixBatchingConfiguration defaults()
+  {
+    return new GMatrixBatchingConfiguration(20, 32_000);
+  }
+}
@@ -21,20 +21,33 @@ import com.io7m.garriga.main.matrix.GMatrixJSON.MError;
 import com.io7m.garriga.main.matrix.GMatrixJSON.MLoginRequest;
 import com.io7m.garriga.main.matrix.GMatrixJSON.MLoginResponse;
 import com.io7m.garriga.main.matrix.GMatrixJSON.MMatrixJSONResponseType;
+import com.io7m.garriga.main.matrix.GMatrixJSON.MRelatesTo;
 import com.io7m.garriga.main.matrix.GMatrixJSON.MRoomMessage;
 import com.io7m.garriga.main.matrix.GMatrixJSON.MRoomResolveAliasResponse;
+import com.io7m.garriga.main.matrix.GMatrixJSON.MRoomSendResponse;
+import com.io7m.garriga.main.metrics.GMetricCounter;
+import com.io7m.garriga.main.metrics.GMetricHistogram;
+import com.io7m.garriga.main.metrics.GMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.math.BigInteger;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -50,12 +63,18 @@ public final class GMatrixClient
   private final HttpClient client;
   private final ObjectMapper objectMapper;
   private final URI serverBaseURI;
-  private volatile BigInteger transactionId;
+  private final GMatrixTimeoutConfiguration timeouts;
+  private final GMetricHistogram requestDuration;
+  private final GMetricCounter[] responses;
+  private final GMetricCounter failures;
+  private volatile long timeLastRequest;
 
   private GMatrixClient(
     final HttpClient inClient,
     final ObjectMapper inObjectMapper,
-    final URI inServerBaseURI)
+    final URI inServerBaseURI,
+    final GMatrixTimeoutConfiguration inTimeouts,
+    final GMetrics inMetrics)
   {
     this.client =
       Objects.requireNonNull(inClient, "client");
@@ -63,8 +82,34 @@ public final class GMatrixClient
       Objects.requireNonNull(inObjectMapper, "inObjectMapper");
     this.serverBaseURI =
       Objects.requireNonNull(inServerBaseURI, "serverBaseURI");
-    this.transactionId =
-      BigInteger.ONE;
+    this.timeouts =
+      Objects.requireNonNull(inTimeouts, "timeouts");
+    this.timeLastRequest =
+      System.nanoTime();
+
+    Objects.requireNonNull(inMetrics, "metrics");
+    this.requestDuration =
+      inMetrics.histogram(
+        "garriga_matrix_request_duration_seconds",
+        "The time taken by requests to the Matrix server.",
+        GMetricHistogram.LATENCY_BUCKETS
+      );
+    this.responses =
+      new GMetricCounter[6];
+    for (int index = 1; index < this.responses.length; ++index) {
+      this.responses[index] =
+        inMetrics.counter(
+          "garriga_matrix_responses_total",
+          "The responses received from the Matrix server, by status class.",
+          "class",
+          "%dxx".formatted(Integer.valueOf(index))
+        );
+    }
+    this.failures =
+      inMetrics.counter(
+        "garriga_matrix_request_failures_total",
+        "The requests to the Matrix server that received no response."
+      );
   }
 
   private static String agent()
@@ -78,30 +123,94 @@ public final class GMatrixClient
   }
 
   /**
-   * Create a new client.
+   * Create a new client. The connect timeout is a property of the
+   * underlying HTTP client; the request timeout and the total deadline are
+   * applied to every request made by this client.
    *
    * @param inClient        The underlying HTTP client
    * @param inServerBaseURI The server base URI
+   * @param inTimeouts      The request timeouts
    *
    * @return A new client
    */
 
   public static GMatrixClient create(
     final HttpClient inClient,
-    final URI inServerBaseURI)
+    final URI inServerBaseURI,
+    final GMatrixTimeoutConfiguration inTimeouts)
+  {
+    return create(inClient, inServerBaseURI, inTimeouts, GMetrics.create());
+  }
+
+  /**
+   * Create a new client that records its requests in the given metrics.
+   *
+   * @param inClient        The underlying HTTP client
+   * @param inServerBaseURI The server base URI
+   * @param inTimeouts      The request timeouts
+   * @param inMetrics       The metrics
+   *
+   * @return A new client
+   *
+   * @see #create(HttpClient, URI, GMatrixTimeoutConfiguration)
+   */
+
+  public static GMatrixClient create(
+    final HttpClient inClient,
+    final URI inServerBaseURI,
+    final GMatrixTimeoutConfiguration inTimeouts,
+    final GMetrics inMetrics)
   {
     return new GMatrixClient(
       inClient,
-      GMatrixObjectMappers.createMapper(),
-      inServerBaseURI
+      GMatrixObjectMappers.sharedMapper(),
+      inServerBaseURI,
+      inTimeouts,
+      inMetrics
     );
   }
 
+  /**
+   * @return The time since this client last started a request
+   */
+
+  public Duration idleTime()
+  {
+    return Duration.ofNanos(System.nanoTime() - this.timeLastRequest);
+  }
+
+  /**
+   * Fetch the versions supported by the server. The request requires no
+   * authentication and is cheap for the server to answer, and so is used
+   * to establish (or keep open) a connection to the server ahead of any
+   * messages that need to be sent.
+   *
+   * @throws IOException          On I/O errors
+   * @throws InterruptedException If the operation is interrupted
+   */
+
+  public void versions()
+    throws IOException, InterruptedException
+  {
+    final var targetURI =
+      this.serverBaseURI.resolve("/_matrix/client/versions");
+    final var httpRequest =
+      HttpRequest.newBuilder(targetURI)
+        .header("User-Agent", agent())
+        .timeout(this.timeouts.requestTimeout())
+        .build();
+    final var response =
+      this.send(httpRequest);
+
+    this.checkResponse(targetURI, response);
+  }
+
   /**
    * Login request to the server.
    *
    * @param password The password
    * @param userName The user name
+   * @param deviceId The ID of a device to reuse, if any
    *
    * @return A response
    *
@@ -111,15 +220,18 @@ public final class GMatrixClient
 
   public MMatrixJSONResponseType login(
     final String userName,
-    final String password)
+    final String password,
+    final Optional<String> deviceId)
     throws IOException, InterruptedException
   {
     Objects.requireNonNull(userName, "userName");
     Objects.requireNonNull(password, "password");
+    Objects.requireNonNull(deviceId, "deviceId");
 
     final var request = new MLoginRequest();
     request.userName = userName;
     request.password = password;
+    request.deviceId = deviceId.orElse(null);
 
     final var targetURI =
       this.serverBaseURI.resolve("/_matrix/client/r0/login");
@@ -129,9 +241,10 @@ public final class GMatrixClient
       HttpRequest.newBuilder(targetURI)
         .POST(HttpRequest.BodyPublishers.ofByteArray(serialized))
         .header("User-Agent", agent())
+        .timeout(this.timeouts.requestTimeout())
         .build();
     final var response =
-      this.client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+      this.send(httpRequest);
 
     final var statusCode =
       response.statusCode();
@@ -140,14 +253,12 @@ public final class GMatrixClient
         .orElse("application/octet-stream");
 
     LOG.debug("{} status {}", targetURI, Integer.valueOf(statusCode));
-    try (var stream = response.body()) {
-      return this.parseResponse(
-        statusCode,
-        contentType,
-        stream,
-        MLoginResponse.class
-      );
-    }
+    return this.parseResponse(
+      statusCode,
+      contentType,
+      response.body(),
+      MLoginResponse.class
+    );
   }
 
   /**
@@ -182,9 +293,10 @@ public final class GMatrixClient
       HttpRequest.newBuilder(targetURI)
         .header("User-Agent", agent())
         .header("Authorization", String.format("Bearer %s", accessToken))
+        .timeout(this.timeouts.requestTimeout())
         .build();
     final var response =
-      this.client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+      this.send(httpRequest);
 
     final var statusCode =
       response.statusCode();
@@ -193,14 +305,12 @@ public final class GMatrixClient
         .orElse("application/octet-stream");
 
     LOG.debug("{} status {}", targetURI, Integer.valueOf(statusCode));
-    try (var stream = response.body()) {
-      return this.parseResponse(
-        statusCode,
-        contentType,
-        stream,
-        MRoomResolveAliasResponse.class
-      );
-    }
+    return this.parseResponse(
+      statusCode,
+      contentType,
+      response.body(),
+      MRoomResolveAliasResponse.class
+    );
   }
 
   /**
@@ -221,9 +331,6 @@ public final class GMatrixClient
     Objects.requireNonNull(accessToken, "accessToken");
     Objects.requireNonNull(roomId, "roomId");
 
-    this.transactionId =
-      this.transactionId.add(BigInteger.ONE);
-
     final var targetURI =
       this.serverBaseURI.resolve(
         String.format(
@@ -236,79 +343,373 @@ public final class GMatrixClient
         .header("User-Agent", agent())
         .header("Authorization", String.format("Bearer %s", accessToken))
         .POST(HttpRequest.BodyPublishers.noBody())
+        .timeout(this.timeouts.requestTimeout())
         .build();
     final var response =
-      this.client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+      this.send(httpRequest);
 
-    final var statusCode = response.statusCode();
-    LOG.debug("{} status {}", targetURI, Integer.valueOf(statusCode));
-    if (statusCode >= 400) {
-      throw new IOException(
-        String.format("Server responded: %d", Integer.valueOf(statusCode)));
-    }
+    this.checkResponse(targetURI, response);
   }
 
   /**
-   * Send a plain text message to the server.
+   * Send a plain text message to the server without waiting for the
+   * response. Sending a message more than once with the same transaction
+   * ID (and the same access token) results in at most one message
+   * appearing in the room. If {@code replaces} is present, the message is
+   * sent as an edit of the given (original) event. Any number of messages
+   * may be in flight at once; the server does not guarantee that
+   * concurrent messages appear in the room in the order in which they were
+   * sent.
    *
-   * @param accessToken The access token
-   * @param roomId      The room ID
-   * @param message     The message text
+   * @param accessToken   The access token
+   * @param roomId        The room ID
+   * @param transactionId The transaction ID
+   * @param message       The message text
+   * @param replaces      The ID of the event to edit, if any
    *
-   * @throws IOException          On I/O errors
-   * @throws InterruptedException If the operation is interrupted
+   * @return A future that completes with the ID of the new event (if the
+   * server returned one) when the server has accepted the message, or that
+   * fails with a {@link GMatrixRequestException} if the
+   * server rejects the message, with an {@link HttpTimeoutException} if the
+   * request exceeds its deadline, or with an {@link IOException} on I/O
+   * errors
+   *
+   * @throws IOException If the message cannot be serialized
    */
 
-  public void roomSendMessage(
+  public CompletableFuture<Optional<String>> roomSendMessageAsync(
     final String accessToken,
     final String roomId,
-    final GMatrixMessage message)
-    throws IOException, InterruptedException
+    final String transactionId,
+    final GMatrixMessage message,
+    final Optional<String> replaces)
+    throws IOException
+  {
+    final var httpRequest =
+      this.roomSendMessageRequest(
+        accessToken, roomId, transactionId, message, replaces);
+
+    final var exchange =
+      this.exchange(httpRequest);
+    final var result =
+      exchange.handle((response, error) -> {
+        try {
+          if (error != null) {
+            throw this.failureOf(httpRequest, error);
+          }
+          this.checkResponse(httpRequest.uri(), response);
+          return this.eventIdOf(response);
+        } catch (final IOException e) {
+          throw new CompletionException(e);
+        }
+      });
+
+    /*
+     * A caller that gives up on the send (by failing the returned future)
+     * also abandons the underlying HTTP exchange.
+     */
+
+    result.whenComplete((eventId, error) -> {
+      if (error != null) {
+        exchange.cancel(true);
+      }
+    });
+    return result;
+  }
+
+  private HttpRequest roomSendMessageRequest(
+    final String accessToken,
+    final String roomId,
+    final String transactionId,
+    final GMatrixMessage message,
+    final Optional<String> replaces)
+    throws IOException
   {
     Objects.requireNonNull(accessToken, "accessToken");
     Objects.requireNonNull(roomId, "roomId");
+    Objects.requireNonNull(transactionId, "transactionId");
     Objects.requireNonNull(message, "message");
-
-    final var messageReq = new MRoomMessage();
-    messageReq.body = message.text();
-    messageReq.formattedBody = message.html();
-    messageReq.msgtype = "m.text";
-
-    this.transactionId =
-      this.transactionId.add(BigInteger.ONE);
+    Objects.requireNonNull(replaces, "replaces");
+
+    final var content = new MRoomMessage();
+    content.body = message.text();
+    content.formattedBody = message.html();
+    content.msgtype = "m.text";
+
+    /*
+     * An edit carries the replacement content in m.new_content, and a
+     * fallback (conventionally prefixed with an asterisk) for clients
+     * that don't understand edits.
+     */
+
+    final MRoomMessage messageReq;
+    if (replaces.isPresent()) {
+      final var relation = new MRelatesTo();
+      relation.relationType = "m.replace";
+      relation.eventId = replaces.get();
+
+      messageReq = new MRoomMessage();
+      messageReq.body = "* " + message.text();
+      messageReq.formattedBody = "* " + message.html();
+      messageReq.msgtype = "m.text";
+      messageReq.newContent = content;
+      messageReq.relatesTo = relation;
+    } else {
+      messageReq = content;
+    }
 
     final var targetURI =
       this.serverBaseURI.resolve(
         String.format(
           "/_matrix/client/r0/rooms/%s/send/m.room.message/%s",
           URLEncoder.encode(roomId, UTF_8),
-          this.transactionId
+          URLEncoder.encode(transactionId, UTF_8)
         ));
 
     final var messageData =
       this.objectMapper.writeValueAsBytes(messageReq);
 
-    final var httpRequest =
-      HttpRequest.newBuilder(targetURI)
-        .header("User-Agent", agent())
-        .header("Authorization", String.format("Bearer %s", accessToken))
-        .PUT(HttpRequest.BodyPublishers.ofByteArray(messageData))
-        .build();
-    final var response =
-      this.client.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+    return HttpRequest.newBuilder(targetURI)
+      .header("User-Agent", agent())
+      .header("Authorization", String.format("Bearer %s", accessToken))
+      .PUT(HttpRequest.BodyPublishers.ofByteArray(messageData))
+      .timeout(this.timeouts.requestTimeout())
+      .build();
+  }
+
+  /*
+   * The request timeout only covers the time taken for the server to
+   * start responding, so a server that sends response headers and then
+   * stalls halfway through the body could otherwise hold a request open
+   * indefinitely. The deadline covers the entire exchange, and cancels
+   * the underlying request when it expires.
+   *
+   * The exchange completes on one of the HTTP client's threads, and an
+   * event must be committed on the thread that began it, so the flight
+   * recorder event is created and committed on completion and records the
+   * duration of the exchange in a field.
+   */
+
+  private CompletableFuture<HttpResponse<byte[]>> exchange(
+    final HttpRequest request)
+  {
+    final var timeStart = System.nanoTime();
+    this.timeLastRequest = timeStart;
+
+    final var exchange =
+      this.client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+    final var result =
+      new CompletableFuture<HttpResponse<byte[]>>();
+
+    exchange.whenComplete((response, error) -> {
+      if (error == null) {
+        result.complete(response);
+      } else {
+        result.completeExceptionally(error);
+      }
+    });
+
+    result.orTimeout(this.timeouts.deadlineMs(), TimeUnit.MILLISECONDS);
+    result.whenComplete((response, error) -> {
+      final var elapsed = System.nanoTime() - timeStart;
+      this.requestDuration.observeNanos(elapsed);
+      if (error != null) {
+        this.failures.increment();
+        exchange.cancel(true);
+      } else {
+        this.onResponse(response.statusCode());
+      }
+      commitRequest(request, elapsed, response, error);
+    });
+    return result;
+  }
+
+  private static void commitRequest(
+    final HttpRequest request,
+    final long elapsed,
+    final HttpResponse<byte[]> response,
+    final Throwable error)
+  {
+    final var event = new GEventMatrixRequest();
+    if (!event.shouldCommit()) {
+      return;
+    }
+
+    event.requestDuration = elapsed;
+    event.method = request.method();
+    event.path = request.uri().getRawPath();
+    event.requestSize =
+      request.bodyPublisher()
+        .map(HttpRequest.BodyPublisher::contentLength)
+        .orElse(0L);
+
+    if (error == null) {
+      event.status = response.statusCode();
+      event.responseSize = response.body().length;
+    } else {
+      final var cause =
+        error instanceof CompletionException && error.getCause() != null
+          ? error.getCause()
+          : error;
+      event.status = -1;
+      event.failure = cause.getClass().getSimpleName();
+    }
+    event.commit();
+  }
+
+  private void onResponse(
+    final int statusCode)
+  {
+    final var index = statusCode / 100;
+    if (index >= 1 && index < this.responses.length) {
+      this.responses[index].increment();
+    }
+  }
+
+  private HttpResponse<byte[]> send(
+    final HttpRequest request)
+    throws IOException, InterruptedException
+  {
+    final var future = this.exchange(request);
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      future.cancel(true);
+      throw e;
+    } catch (final ExecutionException e) {
+      throw this.failureOf(request, e);
+    }
+  }
+
+  private IOException failureOf(
+    final HttpRequest request,
+    final Throwable error)
+  {
+    var cause = error;
+    while ((cause instanceof CompletionException
+            || cause instanceof ExecutionException)
+           && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+
+    return switch (cause) {
+      case final TimeoutException e -> {
+        yield new HttpTimeoutException(
+          "Request to %s did not complete within %s"
+            .formatted(request.uri(), this.timeouts.deadline())
+        );
+      }
+      case final CancellationException e -> {
+        yield new InterruptedIOException(
+          "Request to %s was cancelled".formatted(request.uri())
+        );
+      }
+      case final IOException e -> {
+        yield e;
+      }
+      default -> {
+        yield new IOException(cause);
+      }
+    };
+  }
+
+  private Optional<String> eventIdOf(
+    final HttpResponse<byte[]> response)
+  {
+    try {
+      final var sent =
+        this.objectMapper.readValue(response.body(), MRoomSendResponse.class);
+      return Optional.ofNullable(sent.eventId);
+    } catch (final IOException e) {
+      LOG.debug("Unparseable send response: ", e);
+      return Optional.empty();
+    }
+  }
 
+  private void checkResponse(
+    final URI targetURI,
+    final HttpResponse<byte[]> response)
+    throws IOException
+  {
     final var statusCode = response.statusCode();
     LOG.debug("{} status {}", targetURI, Integer.valueOf(statusCode));
+
     if (statusCode >= 400) {
-      throw new IOException(
-        String.format("Server responded: %d", Integer.valueOf(statusCode)));
+      throw this.errorFor(response);
+    }
+  }
+
+  private GMatrixRequestException errorFor(
+    final HttpResponse<byte[]> response)
+  {
+    final var statusCode =
+      response.statusCode();
+    final var contentType =
+      response.headers().firstValue("content-type")
+        .orElse("application/octet-stream");
+
+    MError error = null;
+    if (Objects.equals(contentType, "application/json")) {
+      try {
+        error = this.objectMapper.readValue(response.body(), MError.class);
+        LOG.trace("error: {}", error);
+      } catch (final IOException e) {
+        LOG.debug("Unparseable error response: ", e);
+      }
+    }
+
+    if (error == null) {
+      return new GMatrixRequestException(
+        String.format("Server responded: %d", Integer.valueOf(statusCode)),
+        statusCode,
+        Optional.empty(),
+        retryAfterHeader(response)
+      );
+    }
+
+    final Optional<Duration> retryAfter;
+    if (error.retryAfterMs != null) {
+      retryAfter = Optional.of(Duration.ofMillis(error.retryAfterMs.longValue()));
+    } else {
+      retryAfter = retryAfterHeader(response);
+    }
+
+    return new GMatrixRequestException(
+      String.format(
+        "Server responded: %d %s %s",
+        Integer.valueOf(statusCode),
+        error.errorCode,
+        error.errorMessage
+      ),
+      statusCode,
+      Optional.ofNullable(error.errorCode),
+      retryAfter
+    );
+  }
+
+  private static Optional<Duration> retryAfterHeader(
+    final HttpResponse<?> response)
+  {
+    final var valueOpt =
+      response.headers().firstValue("retry-after");
+
+    if (valueOpt.isEmpty()) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(
+        Duration.ofSeconds(Long.parseUnsignedLong(valueOpt.get().trim()))
+      );
+    } catch (final NumberFormatException e) {
+      return Optional.empty();
     }
   }
 
   private MMatrixJSONResponseType parseResponse(
     final int statusCode,
     final String contentType,
-    final InputStream stream,
+    final byte[] data,
     final Class<? extends MMatrixJSONResponseType> responseClass)
     throws IOException
   {
@@ -319,7 +720,6 @@ public final class GMatrixClient
       );
     }
 
-    final var data = stream.readAllBytes();
     // CHECKSTYLE:OFF
     final var text = new String(data, UTF_8);
     // CHECKSTYLE:ON
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.time.Duration;
+
+/**
+ * The configuration for editing messages in place. When enabled, later
+ * messages about an alert (such as its resolution) are sent as edits of
+ * the first message that was sent about the alert, rather than as new
+ * messages.
+ *
+ * @param enabled           {@code true} if messages should be edited
+ * @param maximumEntries    The maximum number of alerts remembered
+ * @param maximumAgeSeconds The age after which a message is no longer
+ *                          edited, and a new message is sent instead
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixEditingConfiguration(
+  @JsonProperty(required = true, value = "Enabled")
+  boolean enabled,
+  @JsonProperty(required = true, value = "MaximumEntries")
+  int maximumEntries,
+  @JsonProperty(required = true, value = "MaximumAgeSeconds")
+  long maximumAgeSeconds)
+{
+  /**
+   * The configuration for editing messages in place.
+   *
+   * @param enabled           {@code true} if messages should be edited
+   * @param maximumEntries    The maximum number of alerts remembered
+   * @param maximumAgeSeconds The age after which a message is no longer
+   *                          edited, and a new message is sent instead
+   */
+
+  public GMatrixEditingConfiguration
+  {
+    if (maximumEntries < 1) {
+      throw new IllegalArgumentException(
+        "Maximum entries %d must be positive"
+          .formatted(Integer.valueOf(maximumEntries))
+      );
+    }
+    if (maximumAgeSeconds < 1L) {
+      throw new IllegalArgumentException(
+        "Maximum age %d must be positive"
+          .formatted(Long.valueOf(maximumAgeSeconds))
+      );
+    }
+  }
+
+  /**
+   * @return The default editing configuration
+   */
+
+  public static GMatrixEditingConfiguration defaults()
+  {
+    return new GMatrixEditingConfiguration(true, 10_000, 604_800L);
+  }
+
+  /**
+   * @return The age after which a message is no longer edited
+   */
+
+  public Duration maximumAge()
+  {
+    return Duration.ofSeconds(this.maximumAgeSeconds);
+  }
+}
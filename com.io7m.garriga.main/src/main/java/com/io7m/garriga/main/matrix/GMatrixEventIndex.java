@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded index from alert fingerprints to the IDs of the events that
+ * were first sent to describe those alerts. The least recently used
+ * entries are evicted first, and entries older than the maximum age are
+ * ignored.
+ */
+
+public final class GMatrixEventIndex
+{
+  private final LongSupplier clock;
+  private final long maximumAge;
+  private final LinkedHashMap<String, Entry> entries;
+
+  private record Entry(
+    String roomId,
+    String eventId,
+    long timeSent)
+  {
+
+  }
+
+  private GMatrixEventIndex(
+    final GMatrixEditingConfiguration inConfiguration,
+    final LongSupplier inClock)
+  {
+    Objects.requireNonNull(inConfiguration, "configuration");
+
+    this.clock =
+      Objects.requireNonNull(inClock, "clock");
+    this.maximumAge =
+      inConfiguration.maximumAge().toNanos();
+
+    final var maximum = inConfiguration.maximumEntries();
+    this.entries = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(
+        final Map.Entry<String, Entry> eldest)
+      {
+        return this.size() > maximum;
+      }
+    };
+  }
+
+  /**
+   * Create an event index.
+   *
+   * @param configuration The configuration
+   *
+   * @return An index
+   */
+
+  public static GMatrixEventIndex create(
+    final GMatrixEditingConfiguration configuration)
+  {
+    return new GMatrixEventIndex(configuration, System::nanoTime);
+  }
+
+  /**
+   * Create an event index.
+   *
+   * @param configuration The configuration
+   * @param clock         A monotonic clock returning nanoseconds
+   *
+   * @return An index
+   */
+
+  public static GMatrixEventIndex createWithClock(
+    final GMatrixEditingConfiguration configuration,
+    final LongSupplier clock)
+  {
+    return new GMatrixEventIndex(configuration, clock);
+  }
+
+  /**
+   * Find the event that describes the given alert in the given room.
+   *
+   * @param fingerprint The alert fingerprint
+   * @param roomId      The room ID
+   *
+   * @return The event ID, if any
+   */
+
+  public synchronized Optional<String> find(
+    final String fingerprint,
+    final String roomId)
+  {
+    Objects.requireNonNull(fingerprint, "fingerprint");
+    Objects.requireNonNull(roomId, "roomId");
+
+    final var entry = this.entries.get(fingerprint);
+    if (entry == null) {
+      return Optional.empty();
+    }
+
+    if (this.clock.getAsLong() - entry.timeSent >= this.maximumAge) {
+      this.entries.remove(fingerprint);
+      return Optional.empty();
+    }
+
+    /*
+     * Events can only be edited in the room in which they were sent. The
+     * room changes if the configured alias is pointed at a different room.
+     */
+
+    if (!Objects.equals(entry.roomId, roomId)) {
+      return Optional.empty();
+    }
+    return Optional.of(entry.eventId);
+  }
+
+  /**
+   * @param fingerprint The alert fingerprint
+   *
+   * @return {@code true} if the index holds an event for the given alert
+   */
+
+  public synchronized boolean contains(
+    final String fingerprint)
+  {
+    return this.entries.containsKey(
+      Objects.requireNonNull(fingerprint, "fingerprint")
+    );
+  }
+
+  /**
+   * Record the event that describes the given alert.
+   *
+   * @param fingerprint The alert fingerprint
+   * @param roomId      The room ID
+   * @param eventId     The event ID
+   */
+
+  public synchronized void put(
+    final String fingerprint,
+    final String roomId,
+    final String eventId)
+  {
+    this.entries.put(
+      Objects.requireNonNull(fingerprint, "fingerprint"),
+      new Entry(
+        Objects.requireNonNull(roomId, "roomId"),
+        Objects.requireNonNull(eventId, "eventId"),
+        this.clock.getAsLong()
+      )
+    );
+  }
+
+  /**
+   * Forget the event that describes the given alert.
+   *
+   * @param fingerprint The alert fingerprint
+   */
+
+  public synchronized void remove(
+    final String fingerprint)
+  {
+    this.entries.remove(Objects.requireNonNull(fingerprint, "fingerprint"));
+  }
+
+  /**
+   * @return The number of alerts in the index
+   */
+
+  public synchronized int size()
+  {
+    return this.entries.size();
+  }
+}
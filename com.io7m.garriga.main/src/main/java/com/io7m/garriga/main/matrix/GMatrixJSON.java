@@ -16,6 +16,7 @@
 
 package com.io7m.garriga.main.matrix;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -59,6 +60,8 @@ public final class GMatrixJSON
     public String errorCode;
     @JsonProperty(required = true, value = "error")
     public String errorMessage;
+    @JsonProperty(required = false, value = "retry_after_ms")
+    public Long retryAfterMs;
 
     public MError()
     {
@@ -74,6 +77,7 @@ public final class GMatrixJSON
         "]")
         .add("errorCode='" + this.errorCode + "'")
         .add("errorMessage='" + this.errorMessage + "'")
+        .add("retryAfterMs=" + this.retryAfterMs)
         .toString();
     }
   }
@@ -89,6 +93,9 @@ public final class GMatrixJSON
     public String userName;
     @JsonProperty(required = true, value = "password")
     public String password;
+    @JsonProperty(required = false, value = "device_id")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String deviceId;
 
     public MLoginRequest()
     {
@@ -101,6 +108,7 @@ public final class GMatrixJSON
       final var sb = new StringBuilder("MLoginRequest{");
       sb.append("userName='").append(this.userName).append('\'');
       sb.append(", password='").append(this.password).append('\'');
+      sb.append(", deviceId='").append(this.deviceId).append('\'');
       sb.append(", type='").append(this.type).append('\'');
       sb.append('}');
       return sb.toString();
@@ -116,6 +124,8 @@ public final class GMatrixJSON
     public String userId;
     @JsonProperty(required = true, value = "access_token")
     public String accessToken;
+    @JsonProperty(required = false, value = "device_id")
+    public String deviceId;
 
     public MLoginResponse()
     {
@@ -128,6 +138,7 @@ public final class GMatrixJSON
       final var sb = new StringBuilder("MLoginResponse{");
       sb.append("userId='").append(this.userId).append('\'');
       sb.append(", accessToken='").append(this.accessToken).append('\'');
+      sb.append(", deviceId='").append(this.deviceId).append('\'');
       sb.append('}');
       return sb.toString();
     }
@@ -169,6 +180,12 @@ public final class GMatrixJSON
     public String body;
     @JsonProperty(required = true, value = "formatted_body")
     public String formattedBody;
+    @JsonProperty(required = false, value = "m.new_content")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public MRoomMessage newContent;
+    @JsonProperty(required = false, value = "m.relates_to")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public MRelatesTo relatesTo;
 
     public MRoomMessage()
     {
@@ -183,6 +200,57 @@ public final class GMatrixJSON
       sb.append(", format='").append(this.format).append('\'');
       sb.append(", body='").append(this.body).append('\'');
       sb.append(", formattedBody='").append(this.formattedBody).append('\'');
+      sb.append(", newContent=").append(this.newContent);
+      sb.append(", relatesTo=").append(this.relatesTo);
+      sb.append('}');
+      return sb.toString();
+    }
+  }
+
+  @JsonSerialize
+  @JsonDeserialize
+  public static final class MRelatesTo
+    implements MMatrixJSONObjectType
+  {
+    @JsonProperty(required = true, value = "rel_type")
+    public String relationType;
+    @JsonProperty(required = true, value = "event_id")
+    public String eventId;
+
+    public MRelatesTo()
+    {
+
+    }
+
+    @Override
+    public String toString()
+    {
+      final var sb = new StringBuilder("MRelatesTo{");
+      sb.append("relationType='").append(this.relationType).append('\'');
+      sb.append(", eventId='").append(this.eventId).append('\'');
+      sb.append('}');
+      return sb.toString();
+    }
+  }
+
+  @JsonSerialize
+  @JsonDeserialize
+  public static final class MRoomSendResponse
+    implements MMatrixJSONObjectType
+  {
+    @JsonProperty(required = true, value = "event_id")
+    public String eventId;
+
+    public MRoomSendResponse()
+    {
+
+    }
+
+    @Override
+    public String toString()
+    {
+      final var sb = new StringBuilder("MRoomSendResponse{");
+      sb.append("eventId='").append(this.eventId).append('\'');
       sb.append('}');
       return sb.toString();
     }
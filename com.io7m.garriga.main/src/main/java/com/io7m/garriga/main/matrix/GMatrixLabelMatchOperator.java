@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+/**
+ * The operator used to compare a label value in a routing rule. The
+ * operators have the same meaning as those of AlertManager matchers.
+ */
+
+public enum GMatrixLabelMatchOperator
+{
+  /**
+   * The label value is equal to the given value.
+   */
+
+  EQUALS,
+
+  /**
+   * The label value is not equal to the given value.
+   */
+
+  NOT_EQUALS,
+
+  /**
+   * The label value matches the given regular expression.
+   */
+
+  MATCHES,
+
+  /**
+   * The label value does not match the given regular expression.
+   */
+
+  NOT_MATCHES
+}
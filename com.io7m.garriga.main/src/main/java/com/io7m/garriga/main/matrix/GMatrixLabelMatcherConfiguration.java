@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A condition on the value of a single alert label. An alert that does
+ * not have the label is treated as having the label with an empty value.
+ * Regular expressions must match the entire label value.
+ *
+ * @param label    The label name
+ * @param operator The comparison operator
+ * @param value    The value or regular expression
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixLabelMatcherConfiguration(
+  @JsonProperty(required = true, value = "Label")
+  String label,
+  @JsonProperty(required = true, value = "Operator")
+  GMatrixLabelMatchOperator operator,
+  @JsonProperty(required = true, value = "Value")
+  String value)
+{
+  /**
+   * A condition on the value of a single alert label.
+   *
+   * @param label    The label name
+   * @param operator The comparison operator
+   * @param value    The value or regular expression
+   */
+
+  public GMatrixLabelMatcherConfiguration
+  {
+    Objects.requireNonNull(label, "label");
+    Objects.requireNonNull(operator, "operator");
+    Objects.requireNonNull(value, "value");
+
+    switch (operator) {
+      case MATCHES, NOT_MATCHES -> {
+        try {
+          Pattern.compile(value);
+        } catch (final PatternSyntaxException e) {
+          throw new IllegalArgumentException(
+            "Invalid regular expression for label %s: %s"
+              .formatted(label, e.getMessage()),
+            e
+          );
+        }
+      }
+      case EQUALS, NOT_EQUALS -> {
+        // Nothing to check
+      }
+    }
+  }
+}
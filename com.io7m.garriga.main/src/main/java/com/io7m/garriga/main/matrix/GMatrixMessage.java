@@ -21,24 +21,95 @@ import java.util.Objects;
 /**
  * A formatted Matrix message.
  *
- * @param text The text as plain text
- * @param html The text as HTML
+ * @param text         The text as plain text
+ * @param html         The text as HTML
+ * @param status       The status of the alert the message describes
+ * @param fingerprint  The fingerprint of the alert the message describes,
+ *                     or the empty string if the message does not describe
+ *                     a single alert
+ * @param channel      The channel to which the message should be sent, or
+ *                     the empty string for the default channel
+ * @param priority     The priority of the message
+ * @param receiver     The AlertManager receiver that sent the alert, or
+ *                     the empty string if the receiver is unknown
+ * @param timeReceived The time the alert was received, in nanoseconds
+ *                     since the epoch, or {@code 0} if unknown
+ * @param timeStarted  The time the alert started, in nanoseconds since
+ *                     the epoch, or {@code 0} if unknown
  */
 
 public record GMatrixMessage(
   String text,
-  String html)
+  String html,
+  GMatrixAlertStatus status,
+  String fingerprint,
+  String channel,
+  GMatrixPriority priority,
+  String receiver,
+  long timeReceived,
+  long timeStarted)
 {
   /**
    * A formatted Matrix message.
    *
-   * @param text The text as plain text
-   * @param html The text as HTML
+   * @param text         The text as plain text
+   * @param html         The text as HTML
+   * @param status       The status of the alert the message describes
+   * @param fingerprint  The fingerprint of the alert the message describes,
+   *                     or the empty string if the message does not describe
+   *                     a single alert
+   * @param channel      The channel to which the message should be sent, or
+   *                     the empty string for the default channel
+   * @param priority     The priority of the message
+   * @param receiver     The AlertManager receiver that sent the alert, or
+   *                     the empty string if the receiver is unknown
+   * @param timeReceived The time the alert was received, in nanoseconds
+   *                     since the epoch, or {@code 0} if unknown
+   * @param timeStarted  The time the alert started, in nanoseconds since
+   *                     the epoch, or {@code 0} if unknown
    */
 
   public GMatrixMessage
   {
     Objects.requireNonNull(text, "text");
     Objects.requireNonNull(html, "html");
+    Objects.requireNonNull(status, "status");
+    Objects.requireNonNull(fingerprint, "fingerprint");
+    Objects.requireNonNull(channel, "channel");
+    Objects.requireNonNull(priority, "priority");
+    Objects.requireNonNull(receiver, "receiver");
+  }
+
+  /**
+   * A formatted Matrix message of normal priority for the default channel,
+   * from an unknown receiver, and for which timing information is unknown.
+   *
+   * @param text        The text as plain text
+   * @param html        The text as HTML
+   * @param status      The status of the alert the message describes
+   * @param fingerprint The fingerprint of the alert the message describes,
+   *                    or the empty string if the message does not describe
+   *                    a single alert
+   *
+   * @return A message
+   */
+
+  public static GMatrixMessage create(
+    final String text,
+    final String html,
+    final GMatrixAlertStatus status,
+    final String fingerprint)
+  {
+    return new GMatrixMessage(
+      text,
+      html,
+      status,
+      fingerprint,
+      "",
+      GMatrixPriority.NORMAL,
+      "",
+      0L,
+      0L
+    );
   }
 }
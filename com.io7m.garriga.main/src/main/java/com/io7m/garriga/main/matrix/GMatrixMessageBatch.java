@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A batch of messages that will be sent as a single Matrix message.
+ */
+
+public final class GMatrixMessageBatch
+{
+  private static final String TEXT_SEPARATOR = "\n";
+  private static final String HTML_SEPARATOR = "<hr/>";
+
+  private final GMatrixBatchingConfiguration configuration;
+  private final ArrayList<GMatrixMessage> messages;
+  private long size;
+
+  /**
+   * A batch of messages that will be sent as a single Matrix message.
+   *
+   * @param inConfiguration The batching configuration
+   */
+
+  public GMatrixMessageBatch(
+    final GMatrixBatchingConfiguration inConfiguration)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.messages =
+      new ArrayList<>(inConfiguration.maximumMessages());
+    this.size =
+      0L;
+  }
+
+  /**
+   * Determine the size of the given string when encoded as a UTF-8 JSON
+   * string (excluding the surrounding quotes).
+   *
+   * @param text The text
+   *
+   * @return The encoded size in bytes
+   */
+
+  public static long jsonSize(
+    final String text)
+  {
+    long size = 0L;
+    final var length = text.length();
+    for (int index = 0; index < length; ++index) {
+      final var c = text.charAt(index);
+      if (c == '"' || c == '\\' || c == '\n' || c == '\r' || c == '\t') {
+        size += 2L;
+      } else if (c < 0x20) {
+        size += 6L;
+      } else if (c < 0x80) {
+        size += 1L;
+      } else if (c < 0x800) {
+        size += 2L;
+      } else if (Character.isHighSurrogate(c)) {
+        // A surrogate pair is four bytes; the low surrogate accounts for three.
+        size += 1L;
+      } else {
+        size += 3L;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Determine the size of the given message when encoded as the content
+   * of a Matrix message.
+   *
+   * @param message The message
+   *
+   * @return The encoded size in bytes
+   */
+
+  public static long jsonSize(
+    final GMatrixMessage message)
+  {
+    return jsonSize(message.text()) + jsonSize(message.html());
+  }
+
+  /**
+   * Try to add a message to the batch. The first message is always
+   * accepted.
+   *
+   * @param message The message
+   *
+   * @return {@code true} if the message fit into the batch
+   */
+
+  public boolean tryAdd(
+    final GMatrixMessage message)
+  {
+    Objects.requireNonNull(message, "message");
+
+    if (this.messages.isEmpty()) {
+      this.messages.add(message);
+      this.size = jsonSize(message);
+      return true;
+    }
+
+    if (this.messages.size() >= this.configuration.maximumMessages()) {
+      return false;
+    }
+
+    final var sizeNext =
+      this.size
+      + TEXT_SEPARATOR.length()
+      + HTML_SEPARATOR.length()
+      + jsonSize(message);
+
+    if (sizeNext > this.configuration.maximumBytes()) {
+      return false;
+    }
+
+    this.messages.add(message);
+    this.size = sizeNext;
+    return true;
+  }
+
+  /**
+   * Add a message to the batch regardless of the batch limits. This is
+   * used to assemble a batch that has already been sent once, and so must
+   * be sent again exactly as it was.
+   *
+   * @param message The message
+   */
+
+  public void add(
+    final GMatrixMessage message)
+  {
+    Objects.requireNonNull(message, "message");
+
+    if (this.messages.isEmpty()) {
+      this.size = jsonSize(message);
+    } else {
+      this.size +=
+        TEXT_SEPARATOR.length()
+        + HTML_SEPARATOR.length()
+        + jsonSize(message);
+    }
+    this.messages.add(message);
+  }
+
+  /**
+   * @return {@code true} if no more messages can be added to the batch
+   */
+
+  public boolean isFull()
+  {
+    return this.messages.size() >= this.configuration.maximumMessages();
+  }
+
+  /**
+   * @return The number of messages in the batch
+   */
+
+  public int size()
+  {
+    return this.messages.size();
+  }
+
+  /**
+   * @return The messages in the batch
+   */
+
+  public List<GMatrixMessage> messages()
+  {
+    return List.copyOf(this.messages);
+  }
+
+  /**
+   * Combine the messages in the batch into a single message.
+   *
+   * @return The combined message
+   */
+
+  public GMatrixMessage combine()
+  {
+    if (this.messages.size() == 1) {
+      return this.messages.get(0);
+    }
+
+    final var capacity = (int) Math.min(Integer.MAX_VALUE, this.size);
+    final var text = new StringBuilder(capacity);
+    final var html = new StringBuilder(capacity);
+
+    for (int index = 0; index < this.messages.size(); ++index) {
+      final var message = this.messages.get(index);
+      if (index > 0) {
+        text.append(TEXT_SEPARATOR);
+        html.append(HTML_SEPARATOR);
+      }
+      text.append(message.text());
+      html.append(message.html());
+    }
+
+    final var first = this.messages.get(0);
+    return new GMatrixMessage(
+      text.toString(),
+      html.toString(),
+      GMatrixAlertStatus.UNKNOWN,
+      "",
+      first.channel(),
+      first.priority(),
+      "",
+      first.timeReceived(),
+      first.timeStarted()
+    );
+  }
+}
@@ -0,0 +1,1123 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * A bounded queue of messages awaiting delivery. The queue holds only
+ * message IDs; the messages themselves are held in a
+ * {@link GMatrixMessageStoreType}. Messages taken from the queue remain in
+ * the store until they are acknowledged, so messages that were taken but
+ * never acknowledged are delivered again when a persistent store is reopened.
+ *
+ * The queue is bounded both by the number of messages and by the estimated
+ * size of the messages it holds. When a message arrives at a full queue, the
+ * configured {@link GMatrixOverflowPolicy} decides whether the message is
+ * rejected, whether older messages are discarded to make room, or whether
+ * the sender waits for room to become available. A message is always
+ * accepted by an empty queue, regardless of its size.
+ *
+ * Messages that could not be delivered can be returned to the queue with
+ * {@link #retry(GMatrixQueuedMessage, Duration)}. Such messages are held
+ * separately until their delay has elapsed, and are then delivered ahead of
+ * any newer messages. Newer messages are not held up while a message is
+ * waiting to be retried.
+ *
+ * Messages are held in a separate lane for each {@link GMatrixPriority},
+ * and higher priorities are always served first, except that a lower
+ * priority that has messages waiting is served once it has been passed
+ * over the configured number of times in succession. This bounds the delay
+ * that a flood of high priority messages can impose on everything else.
+ *
+ * A message about an alert replaces any message about the same alert (sent
+ * by the same AlertManager receiver) that is still waiting in the queue, so
+ * that a slow server is sent only the latest state of each alert rather
+ * than every intermediate state. A message that replaces another is always
+ * accepted, as it does not increase the number of messages in the queue.
+ * If a resolution arrives while the notification that the alert was firing
+ * is still waiting, and nothing about the alert has been taken from the
+ * queue, the two cancel out and neither is delivered.
+ */
+
+public final class GMatrixMessageQueue implements AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(GMatrixMessageQueue.class);
+
+  private final GMatrixMessageStoreType store;
+  private final GMatrixQueueLimitsConfiguration limits;
+  private final LongSupplier clock;
+  private final ReentrantLock lock;
+  private final Condition nonEmpty;
+  private final Condition nonFull;
+  private final int starvationLimit;
+  private final List<ArrayDeque<Entry>> pending;
+  private final int[] passedOver;
+  private final PriorityQueue<Entry> retrying;
+  private final GMatrixSupersedingConfiguration superseding;
+  private final Map<Key, Entry> waiting;
+  private final LinkedHashMap<Key, Boolean> taken;
+  private long pendingBytes;
+  private long dropped;
+  private long superseded;
+
+  private record Key(
+    String receiver,
+    String fingerprint)
+  {
+
+  }
+
+  private record Entry(
+    long id,
+    long size,
+    GMatrixAlertStatus status,
+    GMatrixPriority priority,
+    Key key,
+    boolean cancellable,
+    int attempts,
+    long timeAccepted,
+    long timeDue,
+    String transactionId)
+  {
+
+  }
+
+  private GMatrixMessageQueue(
+    final GMatrixMessageStoreType inStore,
+    final GMatrixQueueLimitsConfiguration inLimits,
+    final GMatrixPriorityConfiguration inPriorities,
+    final GMatrixSupersedingConfiguration inSuperseding,
+    final LongSupplier inClock)
+  {
+    this.store =
+      Objects.requireNonNull(inStore, "store");
+    this.limits =
+      Objects.requireNonNull(inLimits, "limits");
+    this.clock =
+      Objects.requireNonNull(inClock, "clock");
+    this.lock =
+      new ReentrantLock();
+    this.nonEmpty =
+      this.lock.newCondition();
+    this.nonFull =
+      this.lock.newCondition();
+    this.starvationLimit =
+      inPriorities.starvationLimit();
+
+    final var priorityCount = GMatrixPriority.values().length;
+    this.pending =
+      new ArrayList<>(priorityCount);
+    for (int index = 0; index < priorityCount; ++index) {
+      this.pending.add(new ArrayDeque<>());
+    }
+    this.passedOver =
+      new int[priorityCount];
+    this.superseding =
+      Objects.requireNonNull(inSuperseding, "superseding");
+    this.waiting =
+      new HashMap<>();
+
+    final var maximum = inSuperseding.maximumEntries();
+    this.taken = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(
+        final Map.Entry<Key, Boolean> eldest)
+      {
+        return this.size() > maximum;
+      }
+    };
+    this.retrying =
+      new PriorityQueue<>(
+        Comparator.comparingLong(Entry::timeDue)
+          .thenComparingLong(Entry::id)
+      );
+  }
+
+  /**
+   * Create a queue. Any messages that are pending in the store are
+   * placed into the queue, even if this exceeds the configured limits.
+   *
+   * @param store  The underlying store
+   * @param limits The queue limits
+   *
+   * @return The queue
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static GMatrixMessageQueue create(
+    final GMatrixMessageStoreType store,
+    final GMatrixQueueLimitsConfiguration limits)
+    throws IOException
+  {
+    return create(
+      store,
+      limits,
+      GMatrixPriorityConfiguration.defaults(),
+      GMatrixSupersedingConfiguration.defaults()
+    );
+  }
+
+  /**
+   * Create a queue. Any messages that are pending in the store are
+   * placed into the queue, even if this exceeds the configured limits.
+   *
+   * @param store       The underlying store
+   * @param limits      The queue limits
+   * @param priorities  The priority configuration
+   * @param superseding The superseding configuration
+   *
+   * @return The queue
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static GMatrixMessageQueue create(
+    final GMatrixMessageStoreType store,
+    final GMatrixQueueLimitsConfiguration limits,
+    final GMatrixPriorityConfiguration priorities,
+    final GMatrixSupersedingConfiguration superseding)
+    throws IOException
+  {
+    return createWithClock(
+      store,
+      limits,
+      priorities,
+      superseding,
+      System::nanoTime
+    );
+  }
+
+  /**
+   * Create a queue. Any messages that are pending in the store are
+   * placed into the queue, even if this exceeds the configured limits.
+   *
+   * @param store  The underlying store
+   * @param limits The queue limits
+   * @param clock  A monotonic clock returning nanoseconds
+   *
+   * @return The queue
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static GMatrixMessageQueue createWithClock(
+    final GMatrixMessageStoreType store,
+    final GMatrixQueueLimitsConfiguration limits,
+    final LongSupplier clock)
+    throws IOException
+  {
+    return createWithClock(
+      store,
+      limits,
+      GMatrixPriorityConfiguration.defaults(),
+      GMatrixSupersedingConfiguration.defaults(),
+      clock
+    );
+  }
+
+  /**
+   * Create a queue. Any messages that are pending in the store are
+   * placed into the queue, even if this exceeds the configured limits.
+   *
+   * @param store       The underlying store
+   * @param limits      The queue limits
+   * @param priorities  The priority configuration
+   * @param superseding The superseding configuration
+   * @param clock       A monotonic clock returning nanoseconds
+   *
+   * @return The queue
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static GMatrixMessageQueue createWithClock(
+    final GMatrixMessageStoreType store,
+    final GMatrixQueueLimitsConfiguration limits,
+    final GMatrixPriorityConfiguration priorities,
+    final GMatrixSupersedingConfiguration superseding,
+    final LongSupplier clock)
+    throws IOException
+  {
+    final var queue =
+      new GMatrixMessageQueue(store, limits, priorities, superseding, clock);
+    final var timeNow = clock.getAsLong();
+    for (final var id : store.pending()) {
+      final var message = store.read(id.longValue());
+      final var state = store.state(id.longValue());
+      final var size = GMatrixMessageBatch.jsonSize(message);
+      final var key = queue.keyOf(message);
+
+      /*
+       * Messages from a previous run may already have been delivered, and
+       * so are never cancelled out. The number of attempts and the time
+       * of acceptance are restored, so that the retry limits still apply.
+       * A message that was not assigned to a batch may have been sent on
+       * its own, and so is sent on its own again.
+       */
+
+      final var transactionId =
+        state.transactionId().isEmpty()
+          ? GMatrixTransactionIds.transactionIdFor(id.longValue())
+          : state.transactionId();
+
+      final var entry =
+        new Entry(
+          id.longValue(),
+          size,
+          message.status(),
+          message.priority(),
+          key,
+          false,
+          state.attempts(),
+          state.timeAccepted(),
+          timeNow,
+          transactionId
+        );
+
+      queue.laneOf(message.priority()).add(entry);
+      queue.index(entry);
+      queue.pendingBytes += size;
+    }
+    return queue;
+  }
+
+  private Key keyOf(
+    final GMatrixMessage message)
+  {
+    if (!this.superseding.enabled() || message.fingerprint().isEmpty()) {
+      return null;
+    }
+    return new Key(message.receiver(), message.fingerprint());
+  }
+
+  private void index(
+    final Entry entry)
+  {
+    if (entry.key() != null) {
+      this.waiting.put(entry.key(), entry);
+    }
+  }
+
+  private void unindex(
+    final Entry entry)
+  {
+    if (entry.key() != null) {
+      this.waiting.remove(entry.key(), entry);
+    }
+  }
+
+  private ArrayDeque<Entry> laneOf(
+    final GMatrixPriority priority)
+  {
+    return this.pending.get(priority.ordinal());
+  }
+
+  /**
+   * Add a message to the queue. The message is durable (if the underlying
+   * store is persistent) when this method returns.
+   *
+   * @param message The message
+   *
+   * @throws GMatrixQueueFullException If the queue is full and the overflow
+   *                                   policy does not permit the message
+   * @throws IOException               On I/O errors
+   * @throws InterruptedException      If the operation is interrupted
+   */
+
+  public void add(
+    final GMatrixMessage message)
+    throws IOException, InterruptedException
+  {
+    Objects.requireNonNull(message, "message");
+
+    final var size = GMatrixMessageBatch.jsonSize(message);
+    final var key = this.keyOf(message);
+    final List<Entry> discarded;
+    final Entry previous;
+
+    this.lock.lock();
+    try {
+      var found = this.waitingFor(key);
+      if (found == null) {
+        discarded = this.makeRoom(size);
+
+        /*
+         * The lock may have been released while waiting for room.
+         */
+
+        found = this.waitingFor(key);
+      } else {
+        discarded = List.of();
+      }
+
+      previous = found;
+      if (previous != null) {
+        this.unlink(previous);
+      }
+
+      if (previous != null && this.cancels(previous, message)) {
+        LOG.debug(
+          "Alert {} resolved before it was sent; discarding both messages.",
+          message.fingerprint()
+        );
+      } else {
+        final var cancellable =
+          previous != null
+            ? previous.cancellable()
+            : key != null && !this.taken.containsKey(key);
+
+        final var id = this.store.append(message);
+        final var state = this.store.state(id);
+        final var entry =
+          new Entry(
+            id,
+            size,
+            message.status(),
+            message.priority(),
+            key,
+            cancellable,
+            state.attempts(),
+            state.timeAccepted(),
+            this.clock.getAsLong(),
+            ""
+          );
+
+        this.laneOf(message.priority()).add(entry);
+        this.index(entry);
+        this.pendingBytes += size;
+        this.nonEmpty.signal();
+      }
+    } finally {
+      this.lock.unlock();
+    }
+
+    /*
+     * Superseded and discarded messages are acknowledged, and the store is
+     * synced, outside of the lock so that writers are not serialized
+     * behind the disk.
+     */
+
+    if (previous != null) {
+      this.store.acknowledge(previous.id());
+    }
+
+    if (!discarded.isEmpty()) {
+      LOG.warn(
+        "Message queue is full; discarded {} queued messages.",
+        Integer.valueOf(discarded.size())
+      );
+    }
+    for (final var entry : discarded) {
+      this.store.acknowledge(entry.id());
+    }
+    this.store.sync();
+  }
+
+  private Entry waitingFor(
+    final Key key)
+  {
+    if (key == null) {
+      return null;
+    }
+    return this.waiting.get(key);
+  }
+
+  private boolean cancels(
+    final Entry previous,
+    final GMatrixMessage message)
+  {
+    return this.superseding.cancelResolved()
+           && previous.cancellable()
+           && previous.status() == GMatrixAlertStatus.FIRING
+           && message.status() == GMatrixAlertStatus.RESOLVED;
+  }
+
+  /*
+   * Remove a waiting message that has been superseded by a newer message.
+   */
+
+  private void unlink(
+    final Entry entry)
+  {
+    if (!this.retrying.remove(entry)) {
+      this.laneOf(entry.priority()).removeFirstOccurrence(entry);
+    }
+    this.unindex(entry);
+    this.pendingBytes -= entry.size();
+    ++this.superseded;
+    this.nonFull.signalAll();
+  }
+
+  /**
+   * Return a message that could not be delivered to the queue.
+   *
+   * @param message The message
+   * @param delay   The time to wait before delivering the message again
+   *
+   * @throws IOException On I/O errors
+   *
+   * @see #retry(List, Duration)
+   */
+
+  public void retry(
+    final GMatrixQueuedMessage message,
+    final Duration delay)
+    throws IOException
+  {
+    this.retry(List.of(message), delay);
+  }
+
+  /**
+   * Return messages that could not be delivered to the queue. The messages
+   * will be delivered again once {@code delay} has elapsed, in order of
+   * their IDs, ahead of any messages that are waiting in the queue at that
+   * point. Returned messages are always accepted regardless of the queue
+   * limits, as they were already accounted for when they were first added.
+   * Messages that have been superseded by a newer message about the same
+   * alert in the meantime are discarded instead.
+   *
+   * @param messages The messages
+   * @param delay    The time to wait before delivering the messages again
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void retry(
+    final List<GMatrixQueuedMessage> messages,
+    final Duration delay)
+    throws IOException
+  {
+    this.requeue(messages, delay, 1);
+  }
+
+  /**
+   * Return messages that were not delivered to the queue without counting
+   * a delivery attempt, such as when the server asked us to slow down.
+   *
+   * @param messages The messages
+   * @param delay    The time to wait before delivering the messages again
+   *
+   * @throws IOException On I/O errors
+   *
+   * @see #retry(List, Duration)
+   */
+
+  public void requeue(
+    final List<GMatrixQueuedMessage> messages,
+    final Duration delay)
+    throws IOException
+  {
+    this.requeue(messages, delay, 0);
+  }
+
+  private void requeue(
+    final List<GMatrixQueuedMessage> messages,
+    final Duration delay,
+    final int attempts)
+    throws IOException
+  {
+    Objects.requireNonNull(messages, "messages");
+    Objects.requireNonNull(delay, "delay");
+
+    /*
+     * The number of attempts is recorded in the store before the messages
+     * become visible to consumers, so that it survives a restart.
+     */
+
+    if (attempts > 0) {
+      for (final var message : messages) {
+        this.store.update(
+          message.id(),
+          this.store.state(message.id())
+            .withAttempts(message.attempts() + attempts)
+        );
+      }
+      this.store.sync();
+    }
+
+    final var stale = new ArrayList<GMatrixQueuedMessage>();
+
+    this.lock.lock();
+    try {
+      final var timeDue = this.clock.getAsLong() + delay.toNanos();
+      for (final var message : messages) {
+        final var key = this.keyOf(message.message());
+        if (this.waitingFor(key) != null) {
+          stale.add(message);
+          ++this.superseded;
+          continue;
+        }
+
+        final var size = GMatrixMessageBatch.jsonSize(message.message());
+        final var entry =
+          new Entry(
+            message.id(),
+            size,
+            message.message().status(),
+            message.message().priority(),
+            key,
+            false,
+            message.attempts() + attempts,
+            message.timeAccepted(),
+            timeDue,
+            message.transactionId()
+          );
+
+        this.retrying.add(entry);
+        this.index(entry);
+        this.pendingBytes += size;
+      }
+
+      /*
+       * Wake any consumer so that it can recalculate how long it must wait
+       * for the earliest retry.
+       */
+
+      this.nonEmpty.signal();
+    } finally {
+      this.lock.unlock();
+    }
+
+    if (!stale.isEmpty()) {
+      this.acknowledge(stale);
+    }
+  }
+
+  private int count()
+  {
+    var count = this.retrying.size();
+    for (final var lane : this.pending) {
+      count += lane.size();
+    }
+    return count;
+  }
+
+  private boolean hasRoomFor(
+    final long size)
+  {
+    if (this.count() == 0) {
+      return true;
+    }
+    return this.count() < this.limits.maximumMessages()
+           && this.pendingBytes + size <= this.limits.maximumBytes();
+  }
+
+  private List<Entry> makeRoom(
+    final long size)
+    throws GMatrixQueueFullException, InterruptedException
+  {
+    if (this.hasRoomFor(size)) {
+      return List.of();
+    }
+
+    return switch (this.limits.overflowPolicy()) {
+      case REJECT -> {
+        throw this.errorFull();
+      }
+      case BLOCK -> {
+        var remaining = this.limits.blockTimeout().toNanos();
+        while (!this.hasRoomFor(size)) {
+          if (remaining <= 0L) {
+            throw this.errorFull();
+          }
+          remaining = this.nonFull.awaitNanos(remaining);
+        }
+        yield List.of();
+      }
+      case DROP_OLDEST -> {
+        final var results = new ArrayList<Entry>();
+        this.discardOldest(size, results);
+        yield results;
+      }
+      case DROP_RESOLVED_FIRST -> {
+        final var results = new ArrayList<Entry>();
+        this.discardResolved(size, this.retrying, results);
+        for (int index = this.pending.size() - 1; index >= 0; --index) {
+          this.discardResolved(size, this.pending.get(index), results);
+        }
+        this.discardOldest(size, results);
+        yield results;
+      }
+    };
+  }
+
+  private void discardResolved(
+    final long size,
+    final Iterable<Entry> entries,
+    final List<Entry> results)
+  {
+    final var iterator = entries.iterator();
+    while (iterator.hasNext() && !this.hasRoomFor(size)) {
+      final var entry = iterator.next();
+      if (entry.status() == GMatrixAlertStatus.RESOLVED) {
+        iterator.remove();
+        this.discard(entry, results);
+      }
+    }
+  }
+
+  /*
+   * Messages awaiting a retry were accepted before any of the messages
+   * waiting in the queue, and so are discarded first. Waiting messages are
+   * then discarded starting from the lowest priority.
+   */
+
+  private void discardOldest(
+    final long size,
+    final List<Entry> results)
+  {
+    while (!this.hasRoomFor(size)) {
+      final var retry = this.retrying.poll();
+      if (retry != null) {
+        this.discard(retry, results);
+        continue;
+      }
+
+      for (int index = this.pending.size() - 1; index >= 0; --index) {
+        final var lane = this.pending.get(index);
+        if (!lane.isEmpty()) {
+          this.discard(lane.poll(), results);
+          break;
+        }
+      }
+    }
+  }
+
+  private void discard(
+    final Entry entry,
+    final List<Entry> results)
+  {
+    this.unindex(entry);
+    this.pendingBytes -= entry.size();
+    ++this.dropped;
+    results.add(entry);
+  }
+
+  private GMatrixQueueFullException errorFull()
+  {
+    return new GMatrixQueueFullException(
+      "Message queue is full (%d messages, %d bytes)."
+        .formatted(
+          Integer.valueOf(this.count()),
+          Long.valueOf(this.pendingBytes)
+        ),
+      this.limits.retryAfter()
+    );
+  }
+
+  private Entry head(
+    final long timeNow)
+  {
+    final var retry = this.retrying.peek();
+    if (retry != null && retry.timeDue() - timeNow <= 0L) {
+      return retry;
+    }
+
+    final var index = this.nextLane();
+    if (index < 0) {
+      return null;
+    }
+    return this.pending.get(index).peek();
+  }
+
+  /*
+   * The highest priority lane that has messages waiting is served, unless
+   * a lane has been passed over too many times, in which case the highest
+   * priority such lane is served instead.
+   */
+
+  private int nextLane()
+  {
+    var first = -1;
+    for (int index = 0; index < this.pending.size(); ++index) {
+      if (this.pending.get(index).isEmpty()) {
+        continue;
+      }
+      if (this.passedOver[index] >= this.starvationLimit) {
+        return index;
+      }
+      if (first < 0) {
+        first = index;
+      }
+    }
+    return first;
+  }
+
+  private void onServed(
+    final int served)
+  {
+    this.passedOver[served] = 0;
+    for (int index = served + 1; index < this.pending.size(); ++index) {
+      if (this.pending.get(index).isEmpty()) {
+        this.passedOver[index] = 0;
+      } else {
+        ++this.passedOver[index];
+      }
+    }
+  }
+
+  private GMatrixQueuedMessage remove(
+    final Entry entry,
+    final GMatrixMessage message)
+  {
+    if (this.retrying.peek() == entry) {
+      this.retrying.poll();
+    } else {
+      final var index = entry.priority().ordinal();
+      this.pending.get(index).poll();
+      this.onServed(index);
+    }
+    return this.taken(entry, message);
+  }
+
+  private GMatrixQueuedMessage taken(
+    final Entry entry,
+    final GMatrixMessage message)
+  {
+    this.unindex(entry);
+    if (entry.key() != null) {
+      this.taken.put(entry.key(), Boolean.TRUE);
+    }
+
+    this.pendingBytes -= entry.size();
+    this.nonFull.signalAll();
+    return new GMatrixQueuedMessage(
+      entry.id(),
+      message,
+      entry.attempts(),
+      entry.timeAccepted(),
+      entry.transactionId()
+    );
+  }
+
+  /**
+   * Take the message at the head of the queue, waiting if necessary.
+   *
+   * @param time The maximum time to wait
+   * @param unit The time unit
+   *
+   * @return The message, or nothing if the time elapsed
+   *
+   * @throws IOException          On I/O errors
+   * @throws InterruptedException If the operation is interrupted
+   */
+
+  public Optional<GMatrixQueuedMessage> poll(
+    final long time,
+    final TimeUnit unit)
+    throws IOException, InterruptedException
+  {
+    this.lock.lock();
+    try {
+      var remaining = unit.toNanos(time);
+      while (true) {
+        final var timeNow = this.clock.getAsLong();
+        final var entry = this.head(timeNow);
+        if (entry != null) {
+          return Optional.of(this.remove(entry, this.store.read(entry.id())));
+        }
+        if (remaining <= 0L) {
+          return Optional.empty();
+        }
+
+        var wait = remaining;
+        final var retry = this.retrying.peek();
+        if (retry != null) {
+          wait = Math.min(wait, retry.timeDue() - timeNow);
+        }
+
+        remaining -= wait - this.nonEmpty.awaitNanos(wait);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Take the message at the head of the queue if it satisfies the given
+   * predicate. A message that may already have been sent (see
+   * {@link #assign(List, String)}) is never taken by this method, so that
+   * it is not combined with other messages.
+   *
+   * @param predicate The predicate
+   *
+   * @return The message, or nothing if the queue was empty or the predicate
+   * was not satisfied
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public Optional<GMatrixQueuedMessage> pollIf(
+    final Predicate<GMatrixMessage> predicate)
+    throws IOException
+  {
+    Objects.requireNonNull(predicate, "predicate");
+
+    this.lock.lock();
+    try {
+      final var entry = this.head(this.clock.getAsLong());
+      if (entry == null || !entry.transactionId().isEmpty()) {
+        return Optional.empty();
+      }
+
+      final var message = this.store.read(entry.id());
+      if (!predicate.test(message)) {
+        return Optional.empty();
+      }
+
+      return Optional.of(this.remove(entry, message));
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Take every message in the queue that was assigned the given
+   * transaction ID, wherever the messages are in the queue.
+   *
+   * @param transactionId The transaction ID
+   *
+   * @return The messages, in order of their IDs
+   *
+   * @throws IOException On I/O errors
+   *
+   * @see #assign(List, String)
+   */
+
+  public List<GMatrixQueuedMessage> pollTransaction(
+    final String transactionId)
+    throws IOException
+  {
+    Objects.requireNonNull(transactionId, "transactionId");
+
+    final var results = new ArrayList<GMatrixQueuedMessage>();
+    this.lock.lock();
+    try {
+      this.pollTransactionFrom(this.retrying, transactionId, results);
+      for (final var lane : this.pending) {
+        this.pollTransactionFrom(lane, transactionId, results);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+
+    results.sort(Comparator.comparingLong(GMatrixQueuedMessage::id));
+    return results;
+  }
+
+  private void pollTransactionFrom(
+    final Iterable<Entry> entries,
+    final String transactionId,
+    final List<GMatrixQueuedMessage> results)
+    throws IOException
+  {
+    final var iterator = entries.iterator();
+    while (iterator.hasNext()) {
+      final var entry = iterator.next();
+      if (transactionId.equals(entry.transactionId())) {
+        iterator.remove();
+        results.add(this.taken(entry, this.store.read(entry.id())));
+      }
+    }
+  }
+
+  /**
+   * Assign a transaction ID to messages that are about to be sent. From
+   * then on, the messages are only ever sent together with the other
+   * messages assigned the same ID (less any that are superseded or
+   * discarded in the meantime), and with the same ID, so that the server
+   * recognizes a repeated request. The assignment of a batch of more than
+   * one message is durable when this method returns; a message sent on
+   * its own needs no record, as a message that was not assigned to a
+   * batch is always sent on its own after a restart.
+   *
+   * @param messages      The messages
+   * @param transactionId The transaction ID
+   *
+   * @return The messages with their transaction IDs
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public List<GMatrixQueuedMessage> assign(
+    final List<GMatrixQueuedMessage> messages,
+    final String transactionId)
+    throws IOException
+  {
+    Objects.requireNonNull(messages, "messages");
+    Objects.requireNonNull(transactionId, "transactionId");
+
+    if (messages.size() > 1) {
+      for (final var message : messages) {
+        this.store.update(
+          message.id(),
+          this.store.state(message.id()).withTransactionId(transactionId)
+        );
+      }
+      this.store.sync();
+    }
+
+    final var results = new ArrayList<GMatrixQueuedMessage>(messages.size());
+    for (final var message : messages) {
+      results.add(message.withTransactionId(transactionId));
+    }
+    return results;
+  }
+
+  /**
+   * Indicate that a message has been delivered or discarded, and can be
+   * removed from the store.
+   *
+   * @param message The message
+   *
+   * @throws IOException On I/O errors
+   *
+   * @see #acknowledge(List)
+   */
+
+  public void acknowledge(
+    final GMatrixQueuedMessage message)
+    throws IOException
+  {
+    this.acknowledge(List.of(message));
+  }
+
+  /**
+   * Indicate that messages have been delivered or discarded, and can be
+   * removed from the store. The acknowledgements are durable (if the
+   * underlying store is persistent) when this method returns, so that
+   * the messages are not delivered again after a restart.
+   *
+   * @param messages The messages
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void acknowledge(
+    final List<GMatrixQueuedMessage> messages)
+    throws IOException
+  {
+    Objects.requireNonNull(messages, "messages");
+
+    for (final var message : messages) {
+      this.store.acknowledge(message.id());
+    }
+    this.store.sync();
+  }
+
+  /**
+   * @return The number of messages in the queue, including messages
+   * awaiting a retry
+   */
+
+  public int size()
+  {
+    this.lock.lock();
+    try {
+      return this.count();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of messages awaiting a retry
+   */
+
+  public int sizeRetrying()
+  {
+    this.lock.lock();
+    try {
+      return this.retrying.size();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return The estimated size in bytes of the messages in the queue
+   */
+
+  public long sizeBytes()
+  {
+    this.lock.lock();
+    try {
+      return this.pendingBytes;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of messages discarded to make room for newer messages
+   */
+
+  public long droppedCount()
+  {
+    this.lock.lock();
+    try {
+      return this.dropped;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of messages replaced by newer messages about the
+   * same alerts
+   */
+
+  public long supersededCount()
+  {
+    this.lock.lock();
+    try {
+      return this.superseded;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.store.close();
+  }
+}
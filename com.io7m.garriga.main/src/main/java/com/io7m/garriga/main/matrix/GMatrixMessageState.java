@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import java.util.Objects;
+
+/**
+ * The delivery state of a stored message. The state is kept with the
+ * message so that the retry limits continue to apply across restarts.
+ *
+ * @param attempts      The number of delivery attempts already made
+ * @param timeAccepted  The time the message was accepted into the store,
+ *                      in nanoseconds since the epoch
+ * @param transactionId The transaction ID of the batch with which the
+ *                      message was sent, or the empty string if the
+ *                      message has not been sent as part of a batch
+ */
+
+public record GMatrixMessageState(
+  int attempts,
+  long timeAccepted,
+  String transactionId)
+{
+  /**
+   * The delivery state of a stored message.
+   *
+   * @param attempts      The number of delivery attempts already made
+   * @param timeAccepted  The time the message was accepted into the store,
+   *                      in nanoseconds since the epoch
+   * @param transactionId The transaction ID of the batch with which the
+   *                      message was sent, or the empty string if the
+   *                      message has not been sent as part of a batch
+   */
+
+  public GMatrixMessageState
+  {
+    Objects.requireNonNull(transactionId, "transactionId");
+
+    if (attempts < 0) {
+      throw new IllegalArgumentException(
+        "Attempts must be non-negative (got %d)"
+          .formatted(Integer.valueOf(attempts))
+      );
+    }
+  }
+
+  /**
+   * @param newAttempts The number of delivery attempts
+   *
+   * @return This state with the given number of attempts
+   */
+
+  public GMatrixMessageState withAttempts(
+    final int newAttempts)
+  {
+    return new GMatrixMessageState(
+      newAttempts,
+      this.timeAccepted,
+      this.transactionId
+    );
+  }
+
+  /**
+   * @param newTransactionId The transaction ID
+   *
+   * @return This state with the given transaction ID
+   */
+
+  public GMatrixMessageState withTransactionId(
+    final String newTransactionId)
+  {
+    return new GMatrixMessageState(
+      this.attempts,
+      this.timeAccepted,
+      newTransactionId
+    );
+  }
+}
@@ -0,0 +1,868 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.io7m.garriga.main.metrics.GMetricClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * <p>A message store backed by an append-only log of memory-mapped segment
+ * files.</p>
+ *
+ * <p>Each segment begins with a small header, followed by a sequence of
+ * records. A record consists of a length, a CRC32C checksum, a type, a
+ * message ID, and (for messages) the encoded message. Each message is
+ * followed by a state record holding its delivery state, and a new state
+ * record is appended whenever the state changes; the latest state record
+ * for a message wins. Acknowledging a
+ * message appends an acknowledgement record; the oldest segments are
+ * deleted once every message in them has been acknowledged. On startup,
+ * the segments are scanned in order, stopping at the first record in
+ * each segment that is incomplete or fails its checksum.</p>
+ *
+ * <p>Calls to {@link #sync()} are group-committed: one caller flushes the
+ * current segment on behalf of every caller that is waiting. Both messages
+ * and acknowledgements are made durable by a sync, so that messages that
+ * were delivered before a crash are not delivered again.</p>
+ */
+
+public final class GMatrixMessageStoreMapped
+  implements GMatrixMessageStoreType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(GMatrixMessageStoreMapped.class);
+
+  private static final int FILE_MAGIC = 0x4752_4C47;
+  private static final int FILE_VERSION = 1;
+  private static final int FILE_HEADER_SIZE = 8;
+  private static final int RECORD_HEADER_SIZE = 17;
+  private static final int RECORD_CHECKED_OFFSET = 8;
+  private static final byte RECORD_MESSAGE = 1;
+  private static final byte RECORD_ACKNOWLEDGE = 2;
+  private static final byte RECORD_STATE = 3;
+  private static final byte STATE_VERSION = 1;
+  private static final byte PAYLOAD_VERSION = 1;
+  private static final byte[] PAYLOAD_EMPTY = new byte[0];
+  private static final Pattern SEGMENT_NAME =
+    Pattern.compile("([0-9a-f]{16})\\.seg");
+
+  private final Path directory;
+  private final int segmentSize;
+  private final boolean syncEnabled;
+  private final ReentrantLock lock;
+  private final ReentrantLock syncLock;
+  private final TreeMap<Long, Segment> segments;
+  private final LinkedHashMap<Long, Location> index;
+  private final HashMap<Long, GMatrixMessageState> states;
+  private Segment current;
+  private long idNext;
+  private long written;
+  private long synced;
+  private boolean closed;
+
+  private GMatrixMessageStoreMapped(
+    final GMatrixPersistenceConfiguration configuration)
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    this.directory =
+      Path.of(configuration.directory()).toAbsolutePath();
+    this.segmentSize =
+      configuration.segmentSize();
+    this.syncEnabled =
+      configuration.sync();
+    this.lock =
+      new ReentrantLock();
+    this.syncLock =
+      new ReentrantLock();
+    this.segments =
+      new TreeMap<>();
+    this.index =
+      new LinkedHashMap<>();
+    this.states =
+      new HashMap<>();
+    this.idNext =
+      0L;
+  }
+
+  /**
+   * Open a message store, replaying any existing segments.
+   *
+   * @param configuration The configuration
+   *
+   * @return The message store
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static GMatrixMessageStoreMapped open(
+    final GMatrixPersistenceConfiguration configuration)
+    throws IOException
+  {
+    final var store = new GMatrixMessageStoreMapped(configuration);
+    store.replay();
+    return store;
+  }
+
+  private static final class Segment
+  {
+    private final long number;
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private int position;
+    private int live;
+
+    Segment(
+      final long inNumber,
+      final Path inFile,
+      final MappedByteBuffer inBuffer)
+    {
+      this.number = inNumber;
+      this.file = inFile;
+      this.buffer = inBuffer;
+      this.position = FILE_HEADER_SIZE;
+      this.live = 0;
+    }
+  }
+
+  private record Location(
+    Segment segment,
+    int offset,
+    int length)
+  {
+
+  }
+
+  private void replay()
+    throws IOException
+  {
+    Files.createDirectories(this.directory);
+
+    final var numbers = new ArrayList<Long>();
+    try (var stream = Files.list(this.directory)) {
+      for (final var file : stream.toList()) {
+        final var matcher =
+          SEGMENT_NAME.matcher(file.getFileName().toString());
+        if (matcher.matches()) {
+          numbers.add(Long.valueOf(Long.parseUnsignedLong(matcher.group(1), 16)));
+        }
+      }
+    }
+    numbers.sort(Long::compareUnsigned);
+
+    for (final var number : numbers) {
+      final var segment = this.segmentOpen(number.longValue());
+      this.segments.put(number, segment);
+      this.segmentScan(segment);
+      this.current = segment;
+    }
+
+    if (this.current == null) {
+      this.current = this.segmentCreate(0L);
+    } else {
+      this.segmentClearTail(this.current);
+    }
+
+    this.discardStateless();
+
+    this.deleteAcknowledgedSegments();
+
+    this.idNext =
+      GMatrixTransactionIds.firstId(
+        System.currentTimeMillis(),
+        this.idNext - 1L
+      );
+
+    LOG.info(
+      "Opened message store {} ({} segments, {} undelivered messages)",
+      this.directory,
+      Integer.valueOf(this.segments.size()),
+      Integer.valueOf(this.index.size())
+    );
+  }
+
+  private Path segmentFile(
+    final long number)
+  {
+    return this.directory.resolve("%016x.seg".formatted(Long.valueOf(number)));
+  }
+
+  private Segment segmentOpen(
+    final long number)
+    throws IOException
+  {
+    final var file = this.segmentFile(number);
+    final MappedByteBuffer buffer;
+    try (var channel = FileChannel.open(file, READ, WRITE)) {
+      final var size = channel.size();
+      if (size < FILE_HEADER_SIZE || size > Integer.MAX_VALUE) {
+        throw new IOException(
+          "Segment file %s has an invalid size %d"
+            .formatted(file, Long.valueOf(size))
+        );
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+    }
+
+    final var magic = buffer.getInt(0);
+    final var version = buffer.getInt(4);
+    if (magic != FILE_MAGIC || version != FILE_VERSION) {
+      throw new IOException(
+        "Segment file %s has an unrecognized header (magic 0x%08x version %d)"
+          .formatted(file, Integer.valueOf(magic), Integer.valueOf(version))
+      );
+    }
+    return new Segment(number, file, buffer);
+  }
+
+  private Segment segmentCreate(
+    final long number)
+    throws IOException
+  {
+    final var file = this.segmentFile(number);
+    final MappedByteBuffer buffer;
+    try (var channel = FileChannel.open(file, CREATE_NEW, READ, WRITE)) {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, this.segmentSize);
+    }
+
+    buffer.putInt(0, FILE_MAGIC);
+    buffer.putInt(4, FILE_VERSION);
+    if (this.syncEnabled) {
+      buffer.force();
+    }
+
+    final var segment = new Segment(number, file, buffer);
+    this.segments.put(Long.valueOf(number), segment);
+    LOG.debug("Created segment {}", file);
+    return segment;
+  }
+
+  private void segmentScan(
+    final Segment segment)
+  {
+    final var buffer = segment.buffer;
+    final var limit = buffer.capacity();
+
+    var position = FILE_HEADER_SIZE;
+    while (position + RECORD_HEADER_SIZE <= limit) {
+      final var length = buffer.getInt(position);
+      if (length < RECORD_HEADER_SIZE || length > limit - position) {
+        break;
+      }
+
+      final var checksum = buffer.getInt(position + 4);
+      if (checksum != checksumOf(buffer, position, length)) {
+        LOG.warn(
+          "Segment {}: Record at offset {} has an invalid checksum",
+          segment.file,
+          Integer.valueOf(position)
+        );
+        break;
+      }
+
+      final var type = buffer.get(position + RECORD_CHECKED_OFFSET);
+      final var id = buffer.getLong(position + RECORD_CHECKED_OFFSET + 1);
+      if (type == RECORD_MESSAGE) {
+        this.index.put(
+          Long.valueOf(id),
+          new Location(segment, position, length)
+        );
+        segment.live += 1;
+        this.idNext = Math.max(this.idNext, id + 1L);
+      } else if (type == RECORD_ACKNOWLEDGE) {
+        final var location = this.index.remove(Long.valueOf(id));
+        this.states.remove(Long.valueOf(id));
+        if (location != null) {
+          location.segment.live -= 1;
+        }
+      } else if (type == RECORD_STATE) {
+        if (this.index.containsKey(Long.valueOf(id))) {
+          final var state =
+            this.stateDecode(segment, position, length);
+          if (state == null) {
+            break;
+          }
+          this.states.put(Long.valueOf(id), state);
+        }
+      } else {
+        LOG.warn(
+          "Segment {}: Record at offset {} has an unrecognized type {}",
+          segment.file,
+          Integer.valueOf(position),
+          Byte.valueOf(type)
+        );
+        break;
+      }
+      position += length;
+    }
+
+    segment.position = position;
+  }
+
+  private GMatrixMessageState stateDecode(
+    final Segment segment,
+    final int position,
+    final int length)
+  {
+    final var payload = new byte[length - RECORD_HEADER_SIZE];
+    segment.buffer.get(position + RECORD_HEADER_SIZE, payload);
+
+    try {
+      return decodeState(payload);
+    } catch (final IOException e) {
+      LOG.warn(
+        "Segment {}: Record at offset {} has an invalid state: {}",
+        segment.file,
+        Integer.valueOf(position),
+        e.getMessage()
+      );
+      return null;
+    }
+  }
+
+  /**
+   * A message is always written together with its first state record, and
+   * the pair is made durable by the same sync. A message without a state
+   * record was therefore never durably accepted, and is discarded.
+   */
+
+  private void discardStateless()
+  {
+    final var iterator = this.index.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final var entry = iterator.next();
+      if (!this.states.containsKey(entry.getKey())) {
+        LOG.warn(
+          "Discarding message {} that has no recorded state",
+          entry.getKey()
+        );
+        entry.getValue().segment.live -= 1;
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Zero everything after the last valid record, so that the remains of
+   * any partially written records cannot be mistaken for valid records
+   * once new records have been appended.
+   */
+
+  private void segmentClearTail(
+    final Segment segment)
+  {
+    final var buffer = segment.buffer;
+    final var zeroes = new byte[4096];
+    var position = segment.position;
+    while (position < buffer.capacity()) {
+      final var count = Math.min(zeroes.length, buffer.capacity() - position);
+      buffer.put(position, zeroes, 0, count);
+      position += count;
+    }
+    if (this.syncEnabled) {
+      buffer.force();
+    }
+  }
+
+  private static int checksumOf(
+    final ByteBuffer buffer,
+    final int position,
+    final int length)
+  {
+    final var crc = new CRC32C();
+    crc.update(buffer.slice(
+      position + RECORD_CHECKED_OFFSET,
+      length - RECORD_CHECKED_OFFSET
+    ));
+    return (int) crc.getValue();
+  }
+
+  private int recordWrite(
+    final byte type,
+    final long id,
+    final byte[] payload)
+    throws IOException
+  {
+    final var length = RECORD_HEADER_SIZE + payload.length;
+    if (length > this.current.buffer.capacity() - this.current.position) {
+      this.segmentRoll(length);
+    }
+
+    final var buffer = this.current.buffer;
+    final var position = this.current.position;
+    buffer.put(position + RECORD_CHECKED_OFFSET, type);
+    buffer.putLong(position + RECORD_CHECKED_OFFSET + 1, id);
+    buffer.put(position + RECORD_HEADER_SIZE, payload);
+    buffer.putInt(position + 4, checksumOf(buffer, position, length));
+    buffer.putInt(position, length);
+    this.current.position += length;
+    return position;
+  }
+
+  private void segmentRoll(
+    final int length)
+    throws IOException
+  {
+    if (length > this.segmentSize - FILE_HEADER_SIZE) {
+      throw new IOException(
+        "Message of size %d is too large for segments of size %d"
+          .formatted(
+            Integer.valueOf(length),
+            Integer.valueOf(this.segmentSize))
+      );
+    }
+
+    if (this.syncEnabled) {
+      this.current.buffer.force();
+    }
+    this.current = this.segmentCreate(this.current.number + 1L);
+  }
+
+  /*
+   * A deleted segment is unmapped when its buffer is garbage collected.
+   * Segment numbers only ever increase, so a file is never reused while
+   * an old mapping of it may still exist.
+   */
+
+  private void deleteAcknowledgedSegments()
+  {
+    while (!this.segments.isEmpty()) {
+      final var oldest = this.segments.firstEntry().getValue();
+      if (oldest == this.current || oldest.live > 0) {
+        return;
+      }
+
+      this.segments.pollFirstEntry();
+      try {
+        Files.deleteIfExists(oldest.file);
+        LOG.debug("Deleted segment {}", oldest.file);
+      } catch (final IOException e) {
+        LOG.warn("Unable to delete segment {}: ", oldest.file, e);
+      }
+    }
+  }
+
+  @Override
+  public long append(
+    final GMatrixMessage message)
+    throws IOException
+  {
+    final var payload = encode(message);
+    final var state = new GMatrixMessageState(0, GMetricClock.now(), "");
+    final var statePayload = encodeState(state);
+
+    this.lock.lock();
+    try {
+      this.checkOpen();
+      final var id = this.idNext;
+      final var position = this.recordWrite(RECORD_MESSAGE, id, payload);
+      final var segment = this.current;
+      this.recordWrite(RECORD_STATE, id, statePayload);
+      this.idNext = id + 1L;
+      this.index.put(
+        Long.valueOf(id),
+        new Location(segment, position, RECORD_HEADER_SIZE + payload.length)
+      );
+      this.states.put(Long.valueOf(id), state);
+      segment.live += 1;
+      this.written += 2L;
+      return id;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private void checkOpen()
+    throws IOException
+  {
+    if (this.closed) {
+      throw new IOException("Message store is closed.");
+    }
+  }
+
+  @Override
+  public void sync()
+    throws IOException
+  {
+    if (!this.syncEnabled) {
+      return;
+    }
+
+    final long target;
+    this.lock.lock();
+    try {
+      target = this.written;
+    } finally {
+      this.lock.unlock();
+    }
+
+    /*
+     * Whichever thread holds the sync lock flushes everything that has
+     * been written so far. Threads that were waiting for the lock will
+     * usually find that their records were flushed along with it.
+     */
+
+    this.syncLock.lock();
+    try {
+      if (this.synced >= target) {
+        return;
+      }
+
+      final long upTo;
+      final MappedByteBuffer buffer;
+      this.lock.lock();
+      try {
+        this.checkOpen();
+        upTo = this.written;
+        buffer = this.current.buffer;
+      } finally {
+        this.lock.unlock();
+      }
+
+      buffer.force();
+      this.synced = upTo;
+    } finally {
+      this.syncLock.unlock();
+    }
+  }
+
+  @Override
+  public GMatrixMessage read(
+    final long id)
+    throws IOException
+  {
+    final byte[] payload;
+
+    this.lock.lock();
+    try {
+      this.checkOpen();
+      final var location = this.index.get(Long.valueOf(id));
+      if (location == null) {
+        throw new IOException("No such message: %d".formatted(Long.valueOf(id)));
+      }
+      payload = new byte[location.length - RECORD_HEADER_SIZE];
+      location.segment.buffer.get(
+        location.offset + RECORD_HEADER_SIZE,
+        payload
+      );
+    } finally {
+      this.lock.unlock();
+    }
+
+    return decode(payload);
+  }
+
+  @Override
+  public GMatrixMessageState state(
+    final long id)
+    throws IOException
+  {
+    this.lock.lock();
+    try {
+      this.checkOpen();
+      final var state = this.states.get(Long.valueOf(id));
+      if (state == null) {
+        throw new IOException("No such message: %d".formatted(Long.valueOf(id)));
+      }
+      return state;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void update(
+    final long id,
+    final GMatrixMessageState state)
+    throws IOException
+  {
+    Objects.requireNonNull(state, "state");
+
+    final var payload = encodeState(state);
+    this.lock.lock();
+    try {
+      this.state(id);
+      this.recordWrite(RECORD_STATE, id, payload);
+      this.written += 1L;
+      this.states.put(Long.valueOf(id), state);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void acknowledge(
+    final long id)
+    throws IOException
+  {
+    this.lock.lock();
+    try {
+      this.checkOpen();
+      final var location = this.index.remove(Long.valueOf(id));
+      if (location == null) {
+        return;
+      }
+      this.recordWrite(RECORD_ACKNOWLEDGE, id, PAYLOAD_EMPTY);
+      this.written += 1L;
+      this.states.remove(Long.valueOf(id));
+      location.segment.live -= 1;
+      this.deleteAcknowledgedSegments();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public List<Long> pending()
+  {
+    this.lock.lock();
+    try {
+      return List.copyOf(this.index.keySet());
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    this.syncLock.lock();
+    try {
+      this.lock.lock();
+      try {
+        if (this.closed) {
+          return;
+        }
+        this.closed = true;
+
+        if (this.syncEnabled && this.current != null) {
+          this.current.buffer.force();
+        }
+
+        /*
+         * Dropping the references to the segments allows their buffers to
+         * be garbage collected, and so unmapped.
+         */
+
+        this.segments.clear();
+        this.index.clear();
+        this.states.clear();
+        this.current = null;
+      } finally {
+        this.lock.unlock();
+      }
+    } finally {
+      this.syncLock.unlock();
+    }
+  }
+
+  private static byte[] encode(
+    final GMatrixMessage message)
+  {
+    final var text = message.text().getBytes(UTF_8);
+    final var html = message.html().getBytes(UTF_8);
+    final var fingerprint = message.fingerprint().getBytes(UTF_8);
+    final var channel = message.channel().getBytes(UTF_8);
+    final var receiver = message.receiver().getBytes(UTF_8);
+
+    final var buffer =
+      ByteBuffer.allocate(
+        1 + 4 + text.length + 4 + html.length + 1 + 4 + fingerprint.length
+        + 4 + channel.length + 1 + 4 + receiver.length + 8 + 8
+      );
+
+    buffer.put(PAYLOAD_VERSION);
+    buffer.putInt(text.length);
+    buffer.put(text);
+    buffer.putInt(html.length);
+    buffer.put(html);
+    buffer.put((byte) message.status().ordinal());
+    buffer.putInt(fingerprint.length);
+    buffer.put(fingerprint);
+    buffer.putInt(channel.length);
+    buffer.put(channel);
+    buffer.put((byte) message.priority().ordinal());
+    buffer.putInt(receiver.length);
+    buffer.put(receiver);
+    buffer.putLong(message.timeReceived());
+    buffer.putLong(message.timeStarted());
+    return buffer.array();
+  }
+
+  /*
+   * Every field of a payload is required, and a payload with bytes left
+   * over is rejected. The version is checked so that a future change to
+   * the encoding is not mistaken for a damaged payload.
+   */
+
+  private static GMatrixMessage decode(
+    final byte[] payload)
+    throws IOException
+  {
+    final var buffer = ByteBuffer.wrap(payload);
+    try {
+      final var version = buffer.get();
+      if (version != PAYLOAD_VERSION) {
+        throw new IOException(
+          "Unrecognized message encoding version %d"
+            .formatted(Byte.valueOf(version))
+        );
+      }
+
+      final var text = decodeString(buffer);
+      final var html = decodeString(buffer);
+      final var status = decodeStatus(buffer);
+      final var fingerprint = decodeString(buffer);
+      final var channel = decodeString(buffer);
+      final var priority = decodePriority(buffer);
+      final var receiver = decodeString(buffer);
+      final var timeReceived = buffer.getLong();
+      final var timeStarted = buffer.getLong();
+
+      if (buffer.hasRemaining()) {
+        throw new IOException(
+          "Message has %d unexpected trailing bytes"
+            .formatted(Integer.valueOf(buffer.remaining()))
+        );
+      }
+
+      return new GMatrixMessage(
+        text,
+        html,
+        status,
+        fingerprint,
+        channel,
+        priority,
+        receiver,
+        timeReceived,
+        timeStarted
+      );
+    } catch (final BufferUnderflowException e) {
+      throw new IOException("Truncated message", e);
+    }
+  }
+
+  private static byte[] encodeState(
+    final GMatrixMessageState state)
+  {
+    final var transactionId = state.transactionId().getBytes(UTF_8);
+    final var buffer =
+      ByteBuffer.allocate(1 + 4 + 8 + 4 + transactionId.length);
+
+    buffer.put(STATE_VERSION);
+    buffer.putInt(state.attempts());
+    buffer.putLong(state.timeAccepted());
+    buffer.putInt(transactionId.length);
+    buffer.put(transactionId);
+    return buffer.array();
+  }
+
+  private static GMatrixMessageState decodeState(
+    final byte[] payload)
+    throws IOException
+  {
+    final var buffer = ByteBuffer.wrap(payload);
+    try {
+      final var version = buffer.get();
+      if (version != STATE_VERSION) {
+        throw new IOException(
+          "Unrecognized state encoding version %d"
+            .formatted(Byte.valueOf(version))
+        );
+      }
+
+      final var attempts = buffer.getInt();
+      final var timeAccepted = buffer.getLong();
+      final var transactionId = decodeString(buffer);
+
+      if (buffer.hasRemaining()) {
+        throw new IOException(
+          "State has %d unexpected trailing bytes"
+            .formatted(Integer.valueOf(buffer.remaining()))
+        );
+      }
+      return new GMatrixMessageState(attempts, timeAccepted, transactionId);
+    } catch (final BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Malformed state", e);
+    }
+  }
+
+  private static GMatrixAlertStatus decodeStatus(
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    final var values = GMatrixAlertStatus.values();
+    final var index = buffer.get();
+    if (index < 0 || index >= values.length) {
+      throw new IOException("Invalid status %d".formatted(Byte.valueOf(index)));
+    }
+    return values[index];
+  }
+
+  private static GMatrixPriority decodePriority(
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    final var values = GMatrixPriority.values();
+    final var index = buffer.get();
+    if (index < 0 || index >= values.length) {
+      throw new IOException(
+        "Invalid priority %d".formatted(Byte.valueOf(index)));
+    }
+    return values[index];
+  }
+
+  private static String decodeString(
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    final var length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IOException("Invalid string length %d".formatted(
+        Integer.valueOf(length)));
+    }
+
+    final var data = new byte[length];
+    buffer.get(data);
+    // CHECKSTYLE:OFF
+    return new String(data, UTF_8);
+    // CHECKSTYLE:ON
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.io7m.garriga.main.metrics.GMetricClock;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A message store that keeps messages in memory. Messages are lost when
+ * the process exits.
+ */
+
+public final class GMatrixMessageStoreMemory
+  implements GMatrixMessageStoreType
+{
+  private final LinkedHashMap<Long, GMatrixMessage> messages;
+  private final HashMap<Long, GMatrixMessageState> states;
+  private long idNext;
+
+  private GMatrixMessageStoreMemory()
+  {
+    this.messages = new LinkedHashMap<>();
+    this.states = new HashMap<>();
+    this.idNext =
+      GMatrixTransactionIds.firstId(System.currentTimeMillis(), 0L);
+  }
+
+  /**
+   * @return A new, empty message store
+   */
+
+  public static GMatrixMessageStoreMemory create()
+  {
+    return new GMatrixMessageStoreMemory();
+  }
+
+  @Override
+  public synchronized long append(
+    final GMatrixMessage message)
+  {
+    Objects.requireNonNull(message, "message");
+
+    final var id = this.idNext++;
+    this.messages.put(Long.valueOf(id), message);
+    this.states.put(
+      Long.valueOf(id),
+      new GMatrixMessageState(0, GMetricClock.now(), "")
+    );
+    return id;
+  }
+
+  @Override
+  public void sync()
+  {
+
+  }
+
+  @Override
+  public synchronized GMatrixMessage read(
+    final long id)
+    throws IOException
+  {
+    final var message = this.messages.get(Long.valueOf(id));
+    if (message == null) {
+      throw new IOException("No such message: %d".formatted(Long.valueOf(id)));
+    }
+    return message;
+  }
+
+  @Override
+  public synchronized GMatrixMessageState state(
+    final long id)
+    throws IOException
+  {
+    final var state = this.states.get(Long.valueOf(id));
+    if (state == null) {
+      throw new IOException("No such message: %d".formatted(Long.valueOf(id)));
+    }
+    return state;
+  }
+
+  @Override
+  public synchronized void update(
+    final long id,
+    final GMatrixMessageState state)
+    throws IOException
+  {
+    Objects.requireNonNull(state, "state");
+
+    this.state(id);
+    this.states.put(Long.valueOf(id), state);
+  }
+
+  @Override
+  public synchronized void acknowledge(
+    final long id)
+  {
+    this.messages.remove(Long.valueOf(id));
+    this.states.remove(Long.valueOf(id));
+  }
+
+  @Override
+  public synchronized List<Long> pending()
+  {
+    return List.copyOf(this.messages.keySet());
+  }
+
+  @Override
+  public void close()
+  {
+
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A store of messages that have been accepted for delivery but have not
+ * yet been delivered.
+ */
+
+public interface GMatrixMessageStoreType extends AutoCloseable
+{
+  /**
+   * Append a message to the store. The message is not guaranteed to be
+   * durable until {@link #sync()} has returned. The message is given a
+   * state with no delivery attempts, accepted at the current time.
+   *
+   * @param message The message
+   *
+   * @return The message ID, which is never reused by any instance of
+   * the store (see {@link GMatrixTransactionIds})
+   *
+   * @throws IOException On I/O errors
+   */
+
+  long append(GMatrixMessage message)
+    throws IOException;
+
+  /**
+   * Wait until all messages appended so far are durable.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void sync()
+    throws IOException;
+
+  /**
+   * Read a message from the store.
+   *
+   * @param id The message ID
+   *
+   * @return The message
+   *
+   * @throws IOException On I/O errors, or if the message does not exist
+   */
+
+  GMatrixMessage read(long id)
+    throws IOException;
+
+  /**
+   * Read the delivery state of a message from the store.
+   *
+   * @param id The message ID
+   *
+   * @return The state
+   *
+   * @throws IOException On I/O errors, or if the message does not exist
+   */
+
+  GMatrixMessageState state(long id)
+    throws IOException;
+
+  /**
+   * Replace the delivery state of a message. The state is not guaranteed
+   * to be durable until {@link #sync()} has returned.
+   *
+   * @param id    The message ID
+   * @param state The new state
+   *
+   * @throws IOException On I/O errors, or if the message does not exist
+   */
+
+  void update(
+    long id,
+    GMatrixMessageState state)
+    throws IOException;
+
+  /**
+   * Indicate that a message has been delivered (or discarded) and no longer
+   * needs to be stored.
+   *
+   * @param id The message ID
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void acknowledge(long id)
+    throws IOException;
+
+  /**
+   * @return The IDs of the messages that have not been acknowledged, in
+   * the order they were appended
+   */
+
+  List<Long> pending();
+
+  @Override
+  void close()
+    throws IOException;
+}
@@ -27,8 +27,10 @@ import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKN
 import static com.io7m.garriga.main.matrix.GMatrixJSON.MError;
 import static com.io7m.garriga.main.matrix.GMatrixJSON.MLoginRequest;
 import static com.io7m.garriga.main.matrix.GMatrixJSON.MLoginResponse;
+import static com.io7m.garriga.main.matrix.GMatrixJSON.MRelatesTo;
 import static com.io7m.garriga.main.matrix.GMatrixJSON.MRoomMessage;
 import static com.io7m.garriga.main.matrix.GMatrixJSON.MRoomResolveAliasResponse;
+import static com.io7m.garriga.main.matrix.GMatrixJSON.MRoomSendResponse;
 
 /**
  * Functions to create JSON mappers for Matrix messages.
@@ -41,6 +43,28 @@ public final class GMatrixObjectMappers
 
   }
 
+  private static final class Shared
+  {
+    private static final ObjectMapper MAPPER = createMapper();
+
+    private Shared()
+    {
+
+    }
+  }
+
+  /**
+   * Mappers are expensive to construct but are safe to share between
+   * threads once configured, so all clients use a single shared instance.
+   *
+   * @return The shared mapper for Matrix messages
+   */
+
+  public static ObjectMapper sharedMapper()
+  {
+    return Shared.MAPPER;
+  }
+
   /**
    * @return A new mapper for Matrix messages
    */
@@ -53,6 +77,9 @@ public final class GMatrixObjectMappers
       MLoginResponse.class.getCanonicalName(),
       MRoomResolveAliasResponse.class.getCanonicalName(),
       MRoomMessage.class.getCanonicalName(),
+      MRelatesTo.class.getCanonicalName(),
+      MRoomSendResponse.class.getCanonicalName(),
+      "java.lang.Long",
       "java.lang.String",
       "java.net.URI",
       "java.util.List<java.lang.String>"
@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+/**
+ * The action taken when a message is sent to a queue that is full.
+ */
+
+public enum GMatrixOverflowPolicy
+{
+  /**
+   * Reject the new message.
+   */
+
+  REJECT,
+
+  /**
+   * Discard the oldest queued messages to make room for the new message.
+   */
+
+  DROP_OLDEST,
+
+  /**
+   * Discard the oldest queued messages describing resolved alerts to make
+   * room for the new message, and then the oldest queued messages if that
+   * is not sufficient.
+   */
+
+  DROP_RESOLVED_FIRST,
+
+  /**
+   * Wait for room to become available, rejecting the new message if
+   * the timeout elapses first.
+   */
+
+  BLOCK
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Objects;
+
+/**
+ * The configuration for the persistent message queue. Accepted messages
+ * are written to an append-only log of memory-mapped segment files in
+ * {@code directory}, and are replayed on startup if they have not been
+ * delivered.
+ *
+ * @param directory   The directory holding the segment files
+ * @param segmentSize The size of each segment file in bytes
+ * @param sync        {@code true} if messages should be flushed to disk
+ *                    before they are acknowledged to the sender
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixPersistenceConfiguration(
+  @JsonProperty(required = true, value = "Directory")
+  String directory,
+  @JsonProperty(required = true, value = "SegmentSize")
+  int segmentSize,
+  @JsonProperty(required = true, value = "Sync")
+  boolean sync)
+{
+  /**
+   * The smallest permitted segment size.
+   */
+
+  public static final int SEGMENT_SIZE_MINIMUM = 1_048_576;
+
+  /**
+   * The largest permitted segment size.
+   */
+
+  public static final int SEGMENT_SIZE_MAXIMUM = 1_073_741_824;
+
+  /**
+   * The configuration for the persistent message queue.
+   *
+   * @param directory   The directory holding the segment files
+   * @param segmentSize The size of each segment file in bytes
+   * @param sync        {@code true} if messages should be flushed to disk
+   *                    before they are acknowledged to the sender
+   */
+
+  public GMatrixPersistenceConfiguration
+  {
+    Objects.requireNonNull(directory, "directory");
+
+    if (segmentSize < SEGMENT_SIZE_MINIMUM
+        || segmentSize > SEGMENT_SIZE_MAXIMUM) {
+      throw new IllegalArgumentException(
+        "Segment size %d must be in the range [%d, %d]"
+          .formatted(
+            Integer.valueOf(segmentSize),
+            Integer.valueOf(SEGMENT_SIZE_MINIMUM),
+            Integer.valueOf(SEGMENT_SIZE_MAXIMUM))
+      );
+    }
+  }
+}
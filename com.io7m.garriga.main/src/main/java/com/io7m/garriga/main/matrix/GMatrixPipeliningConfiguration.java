@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * The message pipelining configuration. Up to {@code maximumInFlight}
+ * messages may be awaiting a response from the Matrix server at any one
+ * time. Messages describing the same alert are never in flight at the
+ * same time, so that they arrive in the order in which they were sent.
+ *
+ * @param maximumInFlight The maximum number of messages in flight
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixPipeliningConfiguration(
+  @JsonProperty(required = true, value = "MaximumInFlight")
+  int maximumInFlight)
+{
+  /**
+   * The largest permitted value for {@code maximumInFlight}.
+   */
+
+  public static final int MAXIMUM_IN_FLIGHT_LIMIT = 256;
+
+  /**
+   * The message pipelining configuration.
+   *
+   * @param maximumInFlight The maximum number of messages in flight
+   */
+
+  public GMatrixPipeliningConfiguration
+  {
+    if (maximumInFlight < 1 || maximumInFlight > MAXIMUM_IN_FLIGHT_LIMIT) {
+      throw new IllegalArgumentException(
+        "Maximum in-flight messages %d must be in the range [1, %d]"
+          .formatted(
+            Integer.valueOf(maximumInFlight),
+            Integer.valueOf(MAXIMUM_IN_FLIGHT_LIMIT))
+      );
+    }
+  }
+
+  /**
+   * @return The default pipelining configuration
+   */
+
+  public static GMatrixPipeliningConfiguration defaults()
+  {
+    return new GMatrixPipeliningConfiguration(4);
+  }
+}
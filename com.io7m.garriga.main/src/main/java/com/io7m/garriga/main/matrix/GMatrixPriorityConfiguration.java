@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The configuration for message priorities. The priority of an alert is
+ * taken from the value of one of its labels, and messages are delivered in
+ * order of priority. A lower priority is served once higher priorities
+ * have been served {@code starvationLimit} times in succession while it
+ * had messages waiting, so that it is never starved entirely.
+ *
+ * @param label           The label holding the alert severity
+ * @param levels          The priority for each value of the label
+ * @param defaultPriority The priority of alerts that have no (or an
+ *                        unrecognized) value for the label
+ * @param starvationLimit The number of times a priority may be passed over
+ *                        before it is served
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixPriorityConfiguration(
+  @JsonProperty(required = true, value = "Label")
+  String label,
+  @JsonProperty(required = true, value = "Levels")
+  Map<String, GMatrixPriority> levels,
+  @JsonProperty(required = true, value = "Default")
+  GMatrixPriority defaultPriority,
+  @JsonProperty(required = true, value = "StarvationLimit")
+  int starvationLimit)
+{
+  /**
+   * The configuration for message priorities.
+   *
+   * @param label           The label holding the alert severity
+   * @param levels          The priority for each value of the label
+   * @param defaultPriority The priority of alerts that have no (or an
+   *                        unrecognized) value for the label
+   * @param starvationLimit The number of times a priority may be passed over
+   *                        before it is served
+   */
+
+  public GMatrixPriorityConfiguration
+  {
+    Objects.requireNonNull(label, "label");
+    Objects.requireNonNull(defaultPriority, "defaultPriority");
+    levels = Map.copyOf(Objects.requireNonNull(levels, "levels"));
+
+    if (starvationLimit < 1) {
+      throw new IllegalArgumentException(
+        "Starvation limit %d must be positive"
+          .formatted(Integer.valueOf(starvationLimit))
+      );
+    }
+  }
+
+  /**
+   * @return The default priority configuration
+   */
+
+  public static GMatrixPriorityConfiguration defaults()
+  {
+    return new GMatrixPriorityConfiguration(
+      "severity",
+      Map.of(
+        "critical", GMatrixPriority.HIGH,
+        "error", GMatrixPriority.HIGH,
+        "warning", GMatrixPriority.NORMAL,
+        "info", GMatrixPriority.LOW,
+        "none", GMatrixPriority.LOW
+      ),
+      GMatrixPriority.NORMAL,
+      10
+    );
+  }
+
+  /**
+   * Determine the priority of an alert.
+   *
+   * @param labels The alert labels
+   *
+   * @return The priority
+   */
+
+  public GMatrixPriority priorityOf(
+    final Map<String, String> labels)
+  {
+    final var value = labels.get(this.label);
+    if (value == null) {
+      return this.defaultPriority;
+    }
+    return this.levels.getOrDefault(value, this.defaultPriority);
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * A message could not be accepted because the queue is full.
+ */
+
+public final class GMatrixQueueFullException extends IOException
+{
+  private final Duration retryAfter;
+
+  /**
+   * A message could not be accepted because the queue is full.
+   *
+   * @param inMessage    The error message
+   * @param inRetryAfter The time the sender should wait before retrying
+   */
+
+  public GMatrixQueueFullException(
+    final String inMessage,
+    final Duration inRetryAfter)
+  {
+    super(Objects.requireNonNull(inMessage, "message"));
+    this.retryAfter = Objects.requireNonNull(inRetryAfter, "retryAfter");
+  }
+
+  /**
+   * @return The time the sender should wait before retrying
+   */
+
+  public Duration retryAfter()
+  {
+    return this.retryAfter;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The message queue capacity configuration.
+ *
+ * @param maximumMessages  The maximum number of queued messages
+ * @param maximumBytes     The maximum estimated size of queued messages
+ * @param overflowPolicy   The action taken when the queue is full
+ * @param blockTimeoutMs   The maximum time to wait for room in the queue,
+ *                         for the {@link GMatrixOverflowPolicy#BLOCK} policy
+ * @param retryAfterSeconds The time senders are asked to wait before
+ *                          retrying when a message is rejected
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixQueueLimitsConfiguration(
+  @JsonProperty(required = true, value = "MaximumMessages")
+  int maximumMessages,
+  @JsonProperty(required = true, value = "MaximumBytes")
+  long maximumBytes,
+  @JsonProperty(required = true, value = "OverflowPolicy")
+  GMatrixOverflowPolicy overflowPolicy,
+  @JsonProperty(required = true, value = "BlockTimeoutMilliseconds")
+  long blockTimeoutMs,
+  @JsonProperty(required = true, value = "RetryAfterSeconds")
+  int retryAfterSeconds)
+{
+  /**
+   * The message queue capacity configuration.
+   *
+   * @param maximumMessages  The maximum number of queued messages
+   * @param maximumBytes     The maximum estimated size of queued messages
+   * @param overflowPolicy   The action taken when the queue is full
+   * @param blockTimeoutMs   The maximum time to wait for room in the queue,
+   *                         for the {@link GMatrixOverflowPolicy#BLOCK} policy
+   * @param retryAfterSeconds The time senders are asked to wait before
+   *                          retrying when a message is rejected
+   */
+
+  public GMatrixQueueLimitsConfiguration
+  {
+    Objects.requireNonNull(overflowPolicy, "overflowPolicy");
+
+    if (maximumMessages < 1) {
+      throw new IllegalArgumentException(
+        "Maximum messages %d must be positive"
+          .formatted(Integer.valueOf(maximumMessages))
+      );
+    }
+    if (maximumBytes < 1L) {
+      throw new IllegalArgumentException(
+        "Maximum bytes %d must be positive"
+          .formatted(Long.valueOf(maximumBytes))
+      );
+    }
+    if (blockTimeoutMs < 0L) {
+      throw new IllegalArgumentException(
+        "Block timeout %d must be non-negative"
+          .formatted(Long.valueOf(blockTimeoutMs))
+      );
+    }
+    if (retryAfterSeconds < 0) {
+      throw new IllegalArgumentException(
+        "Retry after %d must be non-negative"
+          .formatted(Integer.valueOf(retryAfterSeconds))
+      );
+    }
+  }
+
+  /**
+   * @return The default queue capacity configuration
+   */
+
+  public static GMatrixQueueLimitsConfiguration defaults()
+  {
+    return new GMatrixQueueLimitsConfiguration(
+      10_000,
+      64L * 1024L * 1024L,
+      GMatrixOverflowPolicy.REJECT,
+      0L,
+      30
+    );
+  }
+
+  /**
+   * @return The maximum time to wait for room in the queue
+   */
+
+  public Duration blockTimeout()
+  {
+    return Duration.ofMillis(this.blockTimeoutMs);
+  }
+
+  /**
+   * @return The time senders are asked to wait before retrying
+   */
+
+  public Duration retryAfter()
+  {
+    return Duration.ofSeconds(this.retryAfterSeconds);
+  }
+}
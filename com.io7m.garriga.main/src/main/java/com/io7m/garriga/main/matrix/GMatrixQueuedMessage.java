@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import java.util.Objects;
+
+/**
+ * A message that has been taken from the queue but not yet acknowledged.
+ *
+ * @param id            The message ID in the store
+ * @param message       The message
+ * @param attempts      The number of delivery attempts already made
+ * @param timeAccepted  The time the message was accepted into the queue,
+ *                      in nanoseconds since the epoch
+ * @param transactionId The transaction ID with which the message may
+ *                      already have been sent, or the empty string if
+ *                      the message has not been sent
+ */
+
+public record GMatrixQueuedMessage(
+  long id,
+  GMatrixMessage message,
+  int attempts,
+  long timeAccepted,
+  String transactionId)
+{
+  /**
+   * A message that has been taken from the queue but not yet acknowledged.
+   *
+   * @param id            The message ID in the store
+   * @param message       The message
+   * @param attempts      The number of delivery attempts already made
+   * @param timeAccepted  The time the message was accepted into the queue,
+   *                      in nanoseconds since the epoch
+   * @param transactionId The transaction ID with which the message may
+   *                      already have been sent, or the empty string if
+   *                      the message has not been sent
+   */
+
+  public GMatrixQueuedMessage
+  {
+    Objects.requireNonNull(message, "message");
+    Objects.requireNonNull(transactionId, "transactionId");
+  }
+
+  /**
+   * A message that has been taken from the queue but not yet sent.
+   *
+   * @param id           The message ID in the store
+   * @param message      The message
+   * @param attempts     The number of delivery attempts already made
+   * @param timeAccepted The time the message was accepted into the queue,
+   *                     in nanoseconds since the epoch
+   */
+
+  public GMatrixQueuedMessage(
+    final long id,
+    final GMatrixMessage message,
+    final int attempts,
+    final long timeAccepted)
+  {
+    this(id, message, attempts, timeAccepted, "");
+  }
+
+  /**
+   * @param newTransactionId The transaction ID
+   *
+   * @return This message with the given transaction ID
+   */
+
+  public GMatrixQueuedMessage withTransactionId(
+    final String newTransactionId)
+  {
+    return new GMatrixQueuedMessage(
+      this.id,
+      this.message,
+      this.attempts,
+      this.timeAccepted,
+      newTransactionId
+    );
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * The Matrix rate limiting configuration. Messages are sent at a rate
+ * that starts at {@code maximumRate}, is halved each time the server
+ * reports that we are being rate limited, and recovers by
+ * {@code recoveryRate} after each successful send.
+ *
+ * @param maximumRate  The maximum number of messages per second
+ * @param minimumRate  The minimum number of messages per second
+ * @param burst        The number of messages that can be sent in a burst
+ * @param recoveryRate The amount by which the rate increases after a success
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixRateLimitConfiguration(
+  @JsonProperty(required = true, value = "MaximumMessagesPerSecond")
+  double maximumRate,
+  @JsonProperty(required = true, value = "MinimumMessagesPerSecond")
+  double minimumRate,
+  @JsonProperty(required = true, value = "Burst")
+  int burst,
+  @JsonProperty(required = true, value = "RecoveryMessagesPerSecond")
+  double recoveryRate)
+{
+  /**
+   * The Matrix rate limiting configuration.
+   *
+   * @param maximumRate  The maximum number of messages per second
+   * @param minimumRate  The minimum number of messages per second
+   * @param burst        The number of messages that can be sent in a burst
+   * @param recoveryRate The amount by which the rate increases after a success
+   */
+
+  public GMatrixRateLimitConfiguration
+  {
+    if (!(minimumRate > 0.0)) {
+      throw new IllegalArgumentException(
+        "Minimum rate %s must be positive".formatted(Double.valueOf(minimumRate))
+      );
+    }
+    if (maximumRate < minimumRate) {
+      throw new IllegalArgumentException(
+        "Maximum rate %s must be >= minimum rate %s"
+          .formatted(
+            Double.valueOf(maximumRate),
+            Double.valueOf(minimumRate))
+      );
+    }
+    if (burst < 1) {
+      throw new IllegalArgumentException(
+        "Burst %d must be positive".formatted(Integer.valueOf(burst))
+      );
+    }
+    if (recoveryRate < 0.0) {
+      throw new IllegalArgumentException(
+        "Recovery rate %s must be non-negative".formatted(Double.valueOf(recoveryRate))
+      );
+    }
+  }
+
+  /**
+   * @return The default rate limiting configuration
+   */
+
+  public static GMatrixRateLimitConfiguration defaults()
+  {
+    return new GMatrixRateLimitConfiguration(10.0, 0.2, 10, 0.5);
+  }
+}
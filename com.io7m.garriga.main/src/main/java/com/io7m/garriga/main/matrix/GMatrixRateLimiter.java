@@ -0,0 +1,204 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * An adaptive token bucket rate limiter. The refill rate is reduced
+ * multiplicatively when the server reports that we are being rate limited,
+ * and increased additively after each successful send.
+ */
+
+public final class GMatrixRateLimiter
+{
+  private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+  private final GMatrixRateLimitConfiguration configuration;
+  private final LongSupplier clock;
+  private double rate;
+  private double tokens;
+  private long timeLast;
+  private long timeBlockedUntil;
+
+  private GMatrixRateLimiter(
+    final GMatrixRateLimitConfiguration inConfiguration,
+    final LongSupplier inClock)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.clock =
+      Objects.requireNonNull(inClock, "clock");
+    this.rate =
+      inConfiguration.maximumRate();
+    this.tokens =
+      inConfiguration.burst();
+    this.timeLast =
+      inClock.getAsLong();
+    this.timeBlockedUntil =
+      this.timeLast;
+  }
+
+  /**
+   * Create a rate limiter.
+   *
+   * @param configuration The configuration
+   *
+   * @return A rate limiter
+   */
+
+  public static GMatrixRateLimiter create(
+    final GMatrixRateLimitConfiguration configuration)
+  {
+    return new GMatrixRateLimiter(configuration, System::nanoTime);
+  }
+
+  /**
+   * Create a rate limiter.
+   *
+   * @param configuration The configuration
+   * @param clock         A monotonic clock returning nanoseconds
+   *
+   * @return A rate limiter
+   */
+
+  public static GMatrixRateLimiter createWithClock(
+    final GMatrixRateLimitConfiguration configuration,
+    final LongSupplier clock)
+  {
+    return new GMatrixRateLimiter(configuration, clock);
+  }
+
+  /**
+   * Wait until a message may be sent.
+   *
+   * @throws InterruptedException If the operation is interrupted
+   */
+
+  public void acquire()
+    throws InterruptedException
+  {
+    final var waitNanos = this.reserve();
+    if (waitNanos > 0L) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /**
+   * Take a permit from the bucket, returning the time that the caller must
+   * wait before the permit becomes valid.
+   *
+   * @return The time to wait in nanoseconds
+   */
+
+  public synchronized long reserve()
+  {
+    final var timeNow = this.clock.getAsLong();
+    this.refill(timeNow);
+
+    final var waitBlocked =
+      Math.max(0L, this.timeBlockedUntil - timeNow);
+
+    this.tokens -= 1.0;
+    if (this.tokens >= 0.0) {
+      return waitBlocked;
+    }
+
+    /*
+     * Tokens only start accumulating again once any server-requested
+     * wait has elapsed.
+     */
+
+    final var waitRefill =
+      Math.max(0L, this.timeLast - timeNow);
+    final var waitTokens =
+      (long) Math.ceil((-this.tokens / this.rate) * NANOS_PER_SECOND);
+
+    return Math.max(waitBlocked, waitRefill + waitTokens);
+  }
+
+  private void refill(
+    final long timeNow)
+  {
+    final var elapsed = timeNow - this.timeLast;
+    if (elapsed <= 0L) {
+      return;
+    }
+
+    this.tokens = Math.min(
+      this.configuration.burst(),
+      this.tokens + ((elapsed / NANOS_PER_SECOND) * this.rate)
+    );
+    this.timeLast = timeNow;
+  }
+
+  /**
+   * Indicate that a message was sent successfully.
+   */
+
+  public synchronized void onSuccess()
+  {
+    this.rate = Math.min(
+      this.configuration.maximumRate(),
+      this.rate + this.configuration.recoveryRate()
+    );
+  }
+
+  /**
+   * Indicate that the server told us that we are being rate limited.
+   *
+   * @param retryAfter The time the server asked us to wait
+   */
+
+  public synchronized void onRateLimited(
+    final Duration retryAfter)
+  {
+    Objects.requireNonNull(retryAfter, "retryAfter");
+
+    final var timeNow = this.clock.getAsLong();
+    this.refill(timeNow);
+
+    this.rate = Math.max(
+      this.configuration.minimumRate(),
+      this.rate / 2.0
+    );
+
+    /*
+     * Discard any accumulated burst, and don't allow tokens to accumulate
+     * while the server has asked us to wait.
+     */
+
+    this.tokens = Math.min(this.tokens, 0.0);
+    this.timeBlockedUntil = Math.max(
+      this.timeBlockedUntil,
+      timeNow + retryAfter.toNanos()
+    );
+    this.timeLast = Math.max(this.timeLast, this.timeBlockedUntil);
+  }
+
+  /**
+   * @return The current rate in messages per second
+   */
+
+  public synchronized double rate()
+  {
+    return this.rate;
+  }
+}
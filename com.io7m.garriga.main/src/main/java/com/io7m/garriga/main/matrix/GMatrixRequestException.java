@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.garriga.main.matrix;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The Matrix server rejected a request.
+ */
+
+public final class GMatrixRequestException extends IOException
+{
+  private final int statusCode;
+  private final String errorCode;
+  private final Duration retryAfter;
+
+  /**
+   * The Matrix server rejected a request.
+   *
+   * @param inMessage    The error message
+   * @param inStatusCode The HTTP status code
+   * @param inErrorCode  The Matrix error code, if any
+   * @param inRetryAfter The time the server asked us to wait, if any
+   */
+
+  public GMatrixRequestException(
+    final String inMessage,
+    final int inStatusCode,
+    final Optional<String> inErrorCode,
+    final Optional<Duration> inRetryAfter)
+  {
+    super(Objects.requireNonNull(inMessage, "message"));
+
+    this.statusCode =
+      inStatusCode;
+    this.errorCode =
+      Objects.requireNonNull(inErrorCode, "errorCode").orElse(null);
+    this.retryAfter =
+      Objects.requireNonNull(inRetryAfter, "retryAfter").orElse(null);
+  }
+
+  /**
+   * @return The HTTP status code
+   */
+
+  public int statusCode()
+  {
+    return this.statusCode;
+  }
+
+  /**
+   * @return The Matrix error code (such as {@code M_LIMIT_EXCEEDED}), if any
+   */
+
+  public Optional<String> errorCode()
+  {
+    return Optional.ofNullable(this.errorCode);
+  }
+
+  /**
+   * @return The time the server asked us to wait before retrying, if any
+   */
+
+  public Optional<Duration> retryAfter()
+  {
+    return Optional.ofNullable(this.retryAfter);
+  }
+
+  /**
+   * @return {@code true} if the server is rate limiting us
+   */
+
+  public boolean isRateLimited()
+  {
+    return this.statusCode == 429
+           || Objects.equals(this.errorCode, "M_LIMIT_EXCEEDED");
+  }
+
+  /**
+   * @return {@code true} if the server did not recognize our access token
+   */
+
+  public boolean isUnknownToken()
+  {
+    return Objects.equals(this.errorCode, "M_UNKNOWN_TOKEN");
+  }
+
+  /**
+   * @return {@code true} if the server refused the request because we
+   * are not permitted to perform it (such as sending to a room that we
+   * are not in)
+   */
+
+  public boolean isForbidden()
+  {
+    return Objects.equals(this.errorCode, "M_FORBIDDEN");
+  }
+
+  /**
+   * @return {@code true} if the request can never succeed, and so should
+   * not be retried
+   */
+
+  public boolean isPermanent()
+  {
+    return switch (this.statusCode) {
+      case 401, 403, 408, 429 -> false;
+      default -> this.statusCode >= 400 && this.statusCode < 500;
+    };
+  }
+}
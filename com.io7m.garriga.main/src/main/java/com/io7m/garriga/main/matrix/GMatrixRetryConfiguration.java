@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.time.Duration;
+
+/**
+ * The configuration for retrying messages that could not be delivered.
+ * The delay before the {@code n}th retry is
+ * {@code initialDelayMs * multiplier^(n - 1)}, capped at
+ * {@code maximumDelayMs}, and then reduced by a random fraction of at most
+ * {@code jitter}.
+ *
+ * @param initialDelayMs  The delay before the first retry
+ * @param maximumDelayMs  The maximum delay between retries
+ * @param multiplier      The factor by which the delay grows per attempt
+ * @param jitter          The maximum random fraction removed from a delay
+ * @param maximumAttempts The maximum number of delivery attempts
+ * @param maximumAgeSeconds The age after which a message is discarded
+ *                          rather than retried
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixRetryConfiguration(
+  @JsonProperty(required = true, value = "InitialDelayMilliseconds")
+  long initialDelayMs,
+  @JsonProperty(required = true, value = "MaximumDelayMilliseconds")
+  long maximumDelayMs,
+  @JsonProperty(required = true, value = "Multiplier")
+  double multiplier,
+  @JsonProperty(required = true, value = "Jitter")
+  double jitter,
+  @JsonProperty(required = true, value = "MaximumAttempts")
+  int maximumAttempts,
+  @JsonProperty(required = true, value = "MaximumAgeSeconds")
+  long maximumAgeSeconds)
+{
+  /**
+   * The configuration for retrying messages that could not be delivered.
+   *
+   * @param initialDelayMs  The delay before the first retry
+   * @param maximumDelayMs  The maximum delay between retries
+   * @param multiplier      The factor by which the delay grows per attempt
+   * @param jitter          The maximum random fraction removed from a delay
+   * @param maximumAttempts The maximum number of delivery attempts
+   * @param maximumAgeSeconds The age after which a message is discarded
+   *                          rather than retried
+   */
+
+  public GMatrixRetryConfiguration
+  {
+    if (initialDelayMs < 0L) {
+      throw new IllegalArgumentException(
+        "Initial delay %d must be non-negative"
+          .formatted(Long.valueOf(initialDelayMs))
+      );
+    }
+    if (maximumDelayMs < initialDelayMs) {
+      throw new IllegalArgumentException(
+        "Maximum delay %d must be >= the initial delay %d"
+          .formatted(
+            Long.valueOf(maximumDelayMs),
+            Long.valueOf(initialDelayMs))
+      );
+    }
+    if (!(multiplier >= 1.0)) {
+      throw new IllegalArgumentException(
+        "Multiplier %s must be >= 1.0"
+          .formatted(Double.valueOf(multiplier))
+      );
+    }
+    if (!(jitter >= 0.0 && jitter <= 1.0)) {
+      throw new IllegalArgumentException(
+        "Jitter %s must be in the range [0, 1]"
+          .formatted(Double.valueOf(jitter))
+      );
+    }
+    if (maximumAttempts < 1) {
+      throw new IllegalArgumentException(
+        "Maximum attempts %d must be positive"
+          .formatted(Integer.valueOf(maximumAttempts))
+      );
+    }
+    if (maximumAgeSeconds < 1L) {
+      throw new IllegalArgumentException(
+        "Maximum age %d must be positive"
+          .formatted(Long.valueOf(maximumAgeSeconds))
+      );
+    }
+  }
+
+  /**
+   * @return The default retry configuration
+   */
+
+  public static GMatrixRetryConfiguration defaults()
+  {
+    return new GMatrixRetryConfiguration(
+      1_000L,
+      300_000L,
+      2.0,
+      0.2,
+      50,
+      86_400L
+    );
+  }
+
+  /**
+   * @return The age after which a message is discarded
+   */
+
+  public Duration maximumAge()
+  {
+    return Duration.ofSeconds(this.maximumAgeSeconds);
+  }
+}
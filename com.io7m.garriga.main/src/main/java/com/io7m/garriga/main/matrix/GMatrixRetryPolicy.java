@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * An exponential backoff policy with jitter.
+ */
+
+public final class GMatrixRetryPolicy
+{
+  private final GMatrixRetryConfiguration configuration;
+  private final DoubleSupplier random;
+
+  private GMatrixRetryPolicy(
+    final GMatrixRetryConfiguration inConfiguration,
+    final DoubleSupplier inRandom)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.random =
+      Objects.requireNonNull(inRandom, "random");
+  }
+
+  /**
+   * Create a retry policy.
+   *
+   * @param configuration The configuration
+   *
+   * @return A retry policy
+   */
+
+  public static GMatrixRetryPolicy create(
+    final GMatrixRetryConfiguration configuration)
+  {
+    return new GMatrixRetryPolicy(
+      configuration,
+      () -> ThreadLocalRandom.current().nextDouble()
+    );
+  }
+
+  /**
+   * Create a retry policy.
+   *
+   * @param configuration The configuration
+   * @param random        A source of random values in the range {@code [0, 1)}
+   *
+   * @return A retry policy
+   */
+
+  public static GMatrixRetryPolicy createWithRandom(
+    final GMatrixRetryConfiguration configuration,
+    final DoubleSupplier random)
+  {
+    return new GMatrixRetryPolicy(configuration, random);
+  }
+
+  /**
+   * @param attempts The number of delivery attempts made so far
+   *
+   * @return The time to wait before the next attempt
+   */
+
+  public Duration delay(
+    final int attempts)
+  {
+    final var exponent =
+      Math.max(0, attempts - 1);
+    final var base =
+      Math.min(
+        (double) this.configuration.maximumDelayMs(),
+        this.configuration.initialDelayMs()
+        * Math.pow(this.configuration.multiplier(), exponent)
+      );
+    final var jittered =
+      base * (1.0 - this.configuration.jitter() * this.random.getAsDouble());
+
+    return Duration.ofMillis((long) jittered);
+  }
+
+  /**
+   * @param attempts The number of delivery attempts made so far
+   * @param age      The time since the message was accepted
+   *
+   * @return {@code true} if the message should be discarded rather than
+   * retried
+   */
+
+  public boolean isExhausted(
+    final int attempts,
+    final Duration age)
+  {
+    return attempts >= this.configuration.maximumAttempts()
+           || age.compareTo(this.configuration.maximumAge()) > 0;
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A routing rule. Alerts whose labels satisfy all of the matchers are
+ * sent to the given channel. A rule with no matchers matches every alert.
+ *
+ * @param channel  The Matrix channel name
+ * @param matchers The label matchers
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixRouteConfiguration(
+  @JsonProperty(required = true, value = "Channel")
+  String channel,
+  @JsonProperty(required = true, value = "Matchers")
+  List<GMatrixLabelMatcherConfiguration> matchers)
+{
+  /**
+   * A routing rule.
+   *
+   * @param channel  The Matrix channel name
+   * @param matchers The label matchers
+   */
+
+  public GMatrixRouteConfiguration
+  {
+    Objects.requireNonNull(channel, "channel");
+    matchers = List.copyOf(matchers);
+
+    if (channel.isBlank()) {
+      throw new IllegalArgumentException("Route channel must not be empty");
+    }
+  }
+}
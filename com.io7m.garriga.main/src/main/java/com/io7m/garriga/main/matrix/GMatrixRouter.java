@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.io7m.repetoir.core.RPServiceType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A router that selects the channel to which an alert is sent, and the
+ * priority with which it is sent, based on the alert's labels. The
+ * matchers of each route are compiled once when the router is created.
+ * Routes are tried in order, and the first route whose matchers all match
+ * wins; alerts that match no route are sent to the default channel.
+ */
+
+public final class GMatrixRouter implements RPServiceType
+{
+  private static final GMatrixRouter EMPTY =
+    new GMatrixRouter(List.of(), GMatrixPriorityConfiguration.defaults());
+
+  private final List<Route> routes;
+  private final GMatrixPriorityConfiguration priorities;
+
+  private record Route(
+    String channel,
+    List<Predicate<Map<String, String>>> matchers)
+  {
+
+  }
+
+  private GMatrixRouter(
+    final List<Route> inRoutes,
+    final GMatrixPriorityConfiguration inPriorities)
+  {
+    this.routes =
+      List.copyOf(inRoutes);
+    this.priorities =
+      Objects.requireNonNull(inPriorities, "priorities");
+  }
+
+  /**
+   * Create a router.
+   *
+   * @param configuration The configuration
+   *
+   * @return A router
+   */
+
+  public static GMatrixRouter create(
+    final GMatrixServiceConfiguration configuration)
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    final var routes = new ArrayList<Route>();
+    for (final var route : configuration.routes()) {
+      final var matchers =
+        new ArrayList<Predicate<Map<String, String>>>();
+      for (final var matcher : route.matchers()) {
+        matchers.add(compile(matcher));
+      }
+      routes.add(new Route(route.channel(), matchers));
+    }
+    return new GMatrixRouter(routes, configuration.priorities());
+  }
+
+  /**
+   * @return A router that sends every alert to the default channel, with
+   * the default priorities
+   */
+
+  public static GMatrixRouter empty()
+  {
+    return EMPTY;
+  }
+
+  private static Predicate<Map<String, String>> compile(
+    final GMatrixLabelMatcherConfiguration matcher)
+  {
+    final var label = matcher.label();
+    final var value = matcher.value();
+
+    return switch (matcher.operator()) {
+      case EQUALS -> {
+        yield labels -> value.equals(labels.getOrDefault(label, ""));
+      }
+      case NOT_EQUALS -> {
+        yield labels -> !value.equals(labels.getOrDefault(label, ""));
+      }
+      case MATCHES -> {
+        final var pattern = Pattern.compile(value);
+        yield labels -> {
+          return pattern.matcher(labels.getOrDefault(label, "")).matches();
+        };
+      }
+      case NOT_MATCHES -> {
+        final var pattern = Pattern.compile(value);
+        yield labels -> {
+          return !pattern.matcher(labels.getOrDefault(label, "")).matches();
+        };
+      }
+    };
+  }
+
+  /**
+   * Select the channel for an alert.
+   *
+   * @param labels The alert labels
+   *
+   * @return The channel name, or the empty string for the default channel
+   */
+
+  public String route(
+    final Map<String, String> labels)
+  {
+    Objects.requireNonNull(labels, "labels");
+
+    for (final var route : this.routes) {
+      if (matchesAll(route.matchers, labels)) {
+        return route.channel;
+      }
+    }
+    return "";
+  }
+
+  /**
+   * Select the priority for an alert.
+   *
+   * @param labels The alert labels
+   *
+   * @return The priority
+   */
+
+  public GMatrixPriority priority(
+    final Map<String, String> labels)
+  {
+    return this.priorities.priorityOf(
+      Objects.requireNonNull(labels, "labels"));
+  }
+
+  private static boolean matchesAll(
+    final List<Predicate<Map<String, String>>> matchers,
+    final Map<String, String> labels)
+  {
+    for (final var matcher : matchers) {
+      if (!matcher.test(labels)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return The channels named by the routes, in order, without duplicates
+   */
+
+  public Set<String> channels()
+  {
+    final var results = new LinkedHashSet<String>();
+    for (final var route : this.routes) {
+      results.add(route.channel);
+    }
+    return results;
+  }
+
+  @Override
+  public String description()
+  {
+    return "Matrix alert router.";
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[%s 0x%s]".formatted(
+      this.getClass().getSimpleName(),
+      Integer.toUnsignedString(this.hashCode(), 16)
+    );
+  }
+}
@@ -15,27 +15,38 @@
  */
 
 
+
 package com.io7m.garriga.main.matrix;
 
-import com.io7m.garriga.main.matrix.GMatrixServiceStatusType.UnhealthyType.Failed;
+import com.io7m.garriga.main.matrix.GMatrixServiceStatusType.UnhealthyType;
+import com.io7m.garriga.main.metrics.GMetricCounter;
+import com.io7m.garriga.main.metrics.GMetricLatency;
+import com.io7m.garriga.main.metrics.GMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
 import static com.io7m.garriga.main.matrix.GMatrixServiceStatusType.HealthyType.Connected.CONNECTED;
-import static com.io7m.garriga.main.matrix.GMatrixServiceStatusType.UnhealthyType.Starting.STARTING;
 
 /**
- * The matrix client service.
+ * The matrix client service. Messages are delivered to the default room,
+ * or to the room chosen for them by a route, with each room being served
+ * by an independent lane.
  */
 
 public final class GMatrixService
@@ -45,32 +56,68 @@ public final class GMatrixService
     LoggerFactory.getLogger(GMatrixService.class);
 
   private final ExecutorService executor;
-  private final GMatrixServiceConfiguration configuration;
+  private final ExecutorService httpExecutor;
   private final HttpClient httpClient;
+  private final GMatrixServiceConfiguration configuration;
   private final AtomicBoolean closed;
-  private final AtomicReference<GMatrixServiceStatusType> status;
-  private final LinkedBlockingQueue<GMatrixMessage> messageQueue;
-  private GMatrixClient client;
-  private String token;
-  private String roomId;
+  private final GMatrixClient client;
+  private final GMatrixSessionStore sessions;
+  private final GMatrixEventIndex eventIndex;
+  private final Map<String, GMatrixServiceLane> lanes;
+  private final GMetrics metrics;
+  private final GMetricCounter loginAttempts;
+  private final GMetricCounter loginFailures;
+  private final GMetricLatency alertAge;
+  private GMatrixServiceLane laneDefault;
 
   private GMatrixService(
     final ExecutorService inExecutor,
     final GMatrixServiceConfiguration inConfiguration,
-    final HttpClient inHttpClient)
+    final ExecutorService inHttpExecutor,
+    final HttpClient inHttpClient,
+    final GMatrixSessionStore inSessions,
+    final GMetrics inMetrics)
   {
     this.executor =
       Objects.requireNonNull(inExecutor, "executor");
-    this.configuration =
-      Objects.requireNonNull(inConfiguration, "configuration");
+    this.httpExecutor =
+      Objects.requireNonNull(inHttpExecutor, "httpExecutor");
     this.httpClient =
       Objects.requireNonNull(inHttpClient, "httpClient");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
     this.closed =
       new AtomicBoolean(false);
-    this.status =
-      new AtomicReference<>(STARTING);
-    this.messageQueue =
-      new LinkedBlockingQueue<GMatrixMessage>();
+    this.sessions =
+      Objects.requireNonNull(inSessions, "sessions");
+    this.eventIndex =
+      GMatrixEventIndex.create(inConfiguration.editing());
+    this.lanes =
+      new LinkedHashMap<>();
+    this.metrics =
+      Objects.requireNonNull(inMetrics, "metrics");
+    this.client =
+      GMatrixClient.create(
+        inHttpClient,
+        inConfiguration.matrixServerBase(),
+        inConfiguration.timeouts(),
+        inMetrics
+      );
+    this.loginAttempts =
+      inMetrics.counter(
+        "garriga_matrix_login_attempts_total",
+        "The attempts made to log in to the Matrix server."
+      );
+    this.loginFailures =
+      inMetrics.counter(
+        "garriga_matrix_login_failures_total",
+        "The attempts to log in to the Matrix server that failed."
+      );
+    this.alertAge =
+      inMetrics.latency(
+        "garriga_alert_age_at_receipt_seconds",
+        "The time between a firing alert starting and it being received."
+      );
   }
 
   /**
@@ -79,22 +126,183 @@ public final class GMatrixService
    * @param configuration The configuration
    *
    * @return A matrix service
+   *
+   * @throws IOException If the message store cannot be opened
    */
 
   public static GMatrixService create(
     final GMatrixServiceConfiguration configuration)
+    throws IOException
+  {
+    return create(configuration, GMetrics.create());
+  }
+
+  /**
+   * Create a matrix service that records its activity in the given
+   * metrics.
+   *
+   * @param configuration The configuration
+   * @param metrics       The metrics
+   *
+   * @return A matrix service
+   *
+   * @throws IOException If the message store cannot be opened
+   */
+
+  public static GMatrixService create(
+    final GMatrixServiceConfiguration configuration,
+    final GMetrics metrics)
+    throws IOException
   {
     final var executor =
       Executors.newVirtualThreadPerTaskExecutor();
+    final var transport =
+      configuration.transport();
+    final var httpExecutor =
+      Executors.newFixedThreadPool(
+        transport.executorThreads(),
+        Thread.ofPlatform()
+          .daemon()
+          .name("com.io7m.garriga.matrix.http-", 0L)
+          .factory()
+      );
     final var httpClient =
-      HttpClient.newHttpClient();
+      HttpClient.newBuilder()
+        .connectTimeout(configuration.timeouts().connectTimeout())
+        .version(transport.version())
+        .executor(httpExecutor)
+        .build();
+    final var sessions =
+      GMatrixSessionStore.create(
+        configuration,
+        configuration.persistenceConfiguration()
+          .map(p -> Path.of(p.directory()).resolve("session.json"))
+      );
     final var service =
-      new GMatrixService(executor, configuration, httpClient);
+      new GMatrixService(
+        executor,
+        configuration,
+        httpExecutor,
+        httpClient,
+        sessions,
+        metrics
+      );
+
+    try {
+      service.openLanes();
+    } catch (final IOException e) {
+      service.lanes.values().forEach(GMatrixServiceLane::close);
+      executor.close();
+      httpClient.close();
+      httpExecutor.close();
+      throw e;
+    }
 
+    for (final var lane : service.lanes.values()) {
+      executor.execute(lane::run);
+    }
     executor.execute(service::run);
+    if (transport.keepAliveInterval().isPresent()) {
+      executor.execute(service::keepAlive);
+    }
     return service;
   }
 
+  private void openLanes()
+    throws IOException
+  {
+    final var channelDefault =
+      this.configuration.matrixChannel();
+
+    this.laneDefault = this.openLane(channelDefault, true);
+    this.lanes.put(channelDefault, this.laneDefault);
+
+    for (final var route : this.configuration.routes()) {
+      final var channel = route.channel();
+      if (!this.lanes.containsKey(channel)) {
+        this.lanes.put(channel, this.openLane(channel, false));
+      }
+    }
+  }
+
+  private GMatrixServiceLane openLane(
+    final String channel,
+    final boolean isDefault)
+    throws IOException
+  {
+    final var messageQueue =
+      GMatrixMessageQueue.create(
+        openStore(this.configuration, channel, isDefault),
+        this.configuration.queueLimits(),
+        this.configuration.priorities(),
+        this.configuration.superseding()
+      );
+
+    return new GMatrixServiceLane(
+      this,
+      this.configuration,
+      channel,
+      isDefault,
+      this.closed,
+      messageQueue,
+      this.client,
+      this.eventIndex,
+      this.sessions.session(),
+      this.metrics
+    );
+  }
+
+  /*
+   * The default room uses the configured persistence directory directly,
+   * so that stores created before routes existed remain in use. Every
+   * other room has a directory of its own, named after a hash of the
+   * room alias so that any alias yields a valid file name.
+   */
+
+  private static GMatrixMessageStoreType openStore(
+    final GMatrixServiceConfiguration configuration,
+    final String channel,
+    final boolean isDefault)
+    throws IOException
+  {
+    final var persistenceOpt =
+      configuration.persistenceConfiguration();
+
+    if (persistenceOpt.isPresent()) {
+      final var persistence = persistenceOpt.get();
+      if (isDefault) {
+        return GMatrixMessageStoreMapped.open(persistence);
+      }
+
+      final var directory =
+        Path.of(persistence.directory())
+          .resolve("rooms")
+          .resolve(laneDirectoryName(channel));
+
+      return GMatrixMessageStoreMapped.open(
+        new GMatrixPersistenceConfiguration(
+          directory.toString(),
+          persistence.segmentSize(),
+          persistence.sync()
+        )
+      );
+    }
+    return GMatrixMessageStoreMemory.create();
+  }
+
+  private static String laneDirectoryName(
+    final String channel)
+  {
+    try {
+      final var digest =
+        MessageDigest.getInstance("SHA-256")
+          .digest(channel.getBytes(StandardCharsets.UTF_8));
+      return "room-" + HexFormat.of().formatHex(digest, 0, 8);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   @Override
   public String description()
   {
@@ -115,165 +323,270 @@ public final class GMatrixService
   {
     if (this.closed.compareAndSet(false, true)) {
       this.executor.close();
+      this.lanes.values().forEach(GMatrixServiceLane::close);
+      this.httpClient.close();
+      this.httpExecutor.close();
     }
   }
 
   @Override
   public void run()
   {
-    while (!this.closed.get()) {
-      try {
-        this.connect();
-      } catch (final Exception e) {
-        LOG.error("Failed to connect: ", e);
-        this.fail(e);
-        this.pause();
+    try {
+      if (this.configuration.transport().warmUp()) {
+        this.warmUp();
       }
+      this.watch();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 
-      this.status.set(CONNECTED);
-
-      try {
-        while (!this.closed.get()) {
-          final var message =
-            this.messageQueue.poll(1L, TimeUnit.SECONDS);
-
-          final var queueSize = this.messageQueue.size();
-          if (queueSize > 0) {
-            LOG.info("Message queue size: {}", queueSize);
-          }
-
-          if (message != null) {
-            try {
-              this.client.roomSendMessage(
-                this.token,
-                this.roomId,
-                message
-              );
-              this.pauseLong();
-            } catch (final Exception e) {
-              LOG.error("Failed to process message: ", e);
-              this.fail(e);
-              this.pauseLong();
-            }
-          }
+  /*
+   * Establishing a connection (and, in particular, negotiating TLS) is
+   * usually the most expensive part of the first request made to the
+   * server. Warming up the connection means that the first message sent
+   * after a quiet period doesn't pay that cost.
+   */
+
+  private void warmUp()
+    throws InterruptedException
+  {
+    try {
+      this.client.versions();
+    } catch (final IOException e) {
+      LOG.debug("Failed to warm up connection: ", e);
+    }
+  }
+
+  /*
+   * Pooled connections are closed by the HTTP client after a period of
+   * inactivity, so a cheap request is made whenever the connection has
+   * been idle for the keep-alive interval.
+   */
+
+  private void keepAlive()
+  {
+    final var interval =
+      this.configuration.transport().keepAliveInterval().orElseThrow();
+    final var wait =
+      Math.min(1_000L, interval.toMillis());
+
+    try {
+      while (!this.closed.get()) {
+        Thread.sleep(wait);
+        if (this.client.idleTime().compareTo(interval) >= 0) {
+          this.warmUp();
         }
-      } catch (final InterruptedException e) {
-        Thread.currentThread().interrupt();
       }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
   }
 
-  private void connect()
-    throws IOException, InterruptedException
+  /*
+   * Every request has a deadline, so a send should never outlive the
+   * stall threshold. If one does anyway, the lane is marked as
+   * unhealthy and the send is failed so that its messages are retried
+   * and the in-flight window (and any messages waiting on the same alerts)
+   * can make progress again.
+   */
+
+  private void watch()
+    throws InterruptedException
   {
-    this.login();
-    this.fetchRoom();
-    this.joinRoom();
+    final var threshold =
+      this.configuration.timeouts().stallThreshold();
+    final var interval =
+      Math.max(10L, Math.min(1_000L, threshold.toMillis() / 4L));
+
+    while (!this.closed.get()) {
+      Thread.sleep(interval);
+      for (final var lane : this.lanes.values()) {
+        lane.checkStalled(threshold);
+      }
+    }
   }
 
-  private void joinRoom()
+  /**
+   * Retrieve the current access token, logging in if necessary. The login
+   * is shared by all lanes.
+   *
+   * @return The access token
+   *
+   * @throws IOException          On errors
+   * @throws InterruptedException If the operation is interrupted
+   */
+
+  synchronized String accessToken()
     throws IOException, InterruptedException
   {
-    this.client.roomJoin(this.token, this.roomId);
-    LOG.info("Joined room.");
+    var session = this.sessions.session();
+    if (session.accessTokenOpt().isEmpty()) {
+      session = this.login(session);
+      this.sessions.update(session);
+    }
+    return session.accessToken();
   }
 
-  private void fetchRoom()
-    throws IOException, InterruptedException
+  /**
+   * @return The current access token, if logged in
+   */
+
+  synchronized Optional<String> accessTokenIfPresent()
   {
-    final var response =
-      this.client.roomResolveAlias(
-        this.token,
-        this.configuration.matrixChannel());
+    return this.sessions.session().accessTokenOpt();
+  }
 
-    switch (response) {
-      case final GMatrixJSON.MError r -> {
-        throw new IOException(
-          "Matrix server said: %s %s".formatted(r.errorCode, r.errorMessage)
-        );
-      }
-      case final GMatrixJSON.MLoginResponse r -> {
-        throw new IOException(
-          "Matrix responded with an unexpected message: %s".formatted(r)
-        );
-      }
-      case final GMatrixJSON.MRoomResolveAliasResponse r -> {
-        this.roomId = r.roomId;
-      }
+  /**
+   * Discard the login, if the current access token is the given token.
+   * A lane that fails with an old token therefore cannot discard a login
+   * that another lane has only just made.
+   *
+   * @param accessToken The access token that the server rejected
+   */
+
+  synchronized void invalidateLogin(
+    final String accessToken)
+  {
+    final var session = this.sessions.session();
+    if (Objects.equals(session.accessToken(), accessToken)) {
+      this.sessions.update(session.withoutLogin());
+    }
+  }
+
+  /**
+   * Record the state of the default room in the session.
+   *
+   * @param roomId The room ID, or {@code null} if the room must be resolved
+   * @param joined {@code true} if the room has been joined
+   */
+
+  synchronized void saveRoom(
+    final String roomId,
+    final boolean joined)
+  {
+    final var session = this.sessions.session();
+    if (roomId == null) {
+      this.sessions.update(session.withoutRoom());
+    } else {
+      this.sessions.update(session.withRoomId(roomId).withJoined(joined));
     }
   }
 
-  private void login()
+  private GMatrixSession login(
+    final GMatrixSession session)
     throws IOException, InterruptedException
   {
     LOG.info(
-      "Connecting to matrix server {}",
+      "Logging in to matrix server {}",
       this.configuration.matrixServerBase()
     );
 
-    this.client =
-      GMatrixClient.create(
-        this.httpClient,
-        this.configuration.matrixServerBase()
-      );
+    this.loginAttempts.increment();
 
-    final var response =
-      this.client.login(
-        this.configuration.matrixUser(),
-        this.configuration.matrixPassword()
-      );
+    final GMatrixJSON.MMatrixJSONResponseType response;
+    try {
+      response =
+        this.client.login(
+          this.configuration.matrixUser(),
+          this.configuration.matrixPassword(),
+          Optional.ofNullable(session.deviceId())
+        );
+    } catch (final IOException e) {
+      this.loginFailures.increment();
+      throw e;
+    }
 
-    switch (response) {
+    return switch (response) {
       case final GMatrixJSON.MError r -> {
-        throw new IOException(
-          "Matrix server said: %s %s".formatted(r.errorCode, r.errorMessage)
-        );
+        this.loginFailures.increment();
+        throw errorOf(r);
       }
       case final GMatrixJSON.MLoginResponse r -> {
-        this.token = r.accessToken;
         LOG.info("Logged in to matrix server.");
+        yield session.withLogin(r.accessToken, r.deviceId);
       }
       case final GMatrixJSON.MRoomResolveAliasResponse r -> {
+        this.loginFailures.increment();
         throw new IOException(
           "Matrix responded with an unexpected message: %s".formatted(r)
         );
       }
-    }
-  }
-
-  private <E extends Exception> void fail(final E e)
-  {
-    this.status.set(new Failed(e.getMessage()));
+    };
   }
 
-  private void pause()
+  static GMatrixRequestException errorOf(
+    final GMatrixJSON.MError error)
   {
-    try {
-      Thread.sleep(1_000L);
-    } catch (final InterruptedException ex) {
-      Thread.currentThread().interrupt();
-    }
+    return new GMatrixRequestException(
+      "Matrix server said: %s %s"
+        .formatted(error.errorCode, error.errorMessage),
+      0,
+      Optional.ofNullable(error.errorCode),
+      Optional.ofNullable(error.retryAfterMs)
+        .map(ms -> Duration.ofMillis(ms.longValue()))
+    );
   }
 
-  private void pauseLong()
-  {
-    try {
-      Thread.sleep(5_000L);
-    } catch (final InterruptedException ex) {
-      Thread.currentThread().interrupt();
-    }
-  }
+  /*
+   * The service is only healthy if every lane is.
+   */
 
   @Override
   public GMatrixServiceStatusType status()
   {
-    return this.status.get();
+    for (final var lane : this.lanes.values()) {
+      final var laneStatus = lane.status();
+      if (laneStatus instanceof UnhealthyType) {
+        return laneStatus;
+      }
+    }
+    return CONNECTED;
   }
 
+  /*
+   * Messages are delivered by the lane for their channel. A message for a
+   * channel that has no lane (because it was routed by a configuration
+   * that has since changed) goes to the default room.
+   */
+
   @Override
   public void send(
     final GMatrixMessage message)
+    throws IOException
   {
-    this.messageQueue.add(Objects.requireNonNull(message, "message"));
+    Objects.requireNonNull(message, "message");
+
+    if (message.status() == GMatrixAlertStatus.FIRING
+        && message.timeStarted() > 0L
+        && message.timeReceived() > 0L) {
+      this.alertAge.recordNanos(message.timeReceived() - message.timeStarted());
+    }
+
+    final var event = new GEventMatrixEnqueue();
+    event.begin();
+
+    final var channel = message.channel();
+    final var lane =
+      channel.isEmpty()
+        ? this.laneDefault
+        : this.lanes.getOrDefault(channel, this.laneDefault);
+
+    try {
+      lane.send(message);
+      event.accepted = true;
+    } finally {
+      if (event.shouldCommit()) {
+        event.channel = lane.channel();
+        event.fingerprint = message.fingerprint();
+        event.alertStatus = message.status().name();
+        event.priority = message.priority().name();
+        event.textLength = message.text().length();
+        event.htmlLength = message.html().length();
+        event.queueDepth = lane.queueSize();
+        event.commit();
+      }
+    }
   }
 }
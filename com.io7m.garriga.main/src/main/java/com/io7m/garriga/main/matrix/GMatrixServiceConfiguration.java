@@ -21,7 +21,9 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import java.net.URI;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * The Matrix service configuration.
@@ -30,6 +32,19 @@ import java.util.Objects;
  * @param matrixServerBase The Matrix server
  * @param matrixPassword   The Matrix password
  * @param matrixUser       The Matrix username
+ * @param rateLimit        The rate limiting configuration
+ * @param batching         The message batching configuration
+ * @param persistence      The persistent queue configuration, or
+ *                         {@code null} if messages are only held in memory
+ * @param queueLimits      The message queue capacity configuration
+ * @param retry            The message retry configuration
+ * @param pipelining       The message pipelining configuration
+ * @param timeouts         The request timeout configuration
+ * @param transport        The HTTP transport configuration
+ * @param editing          The message editing configuration
+ * @param routes           The routing rules, tried in order
+ * @param priorities       The message priority configuration
+ * @param superseding      The configuration for superseding queued messages
  */
 
 @JsonDeserialize
@@ -42,7 +57,31 @@ public record GMatrixServiceConfiguration(
   @JsonProperty(required = true, value = "Password")
   String matrixPassword,
   @JsonProperty(required = true, value = "Channel")
-  String matrixChannel)
+  String matrixChannel,
+  @JsonProperty(required = false, value = "RateLimit")
+  GMatrixRateLimitConfiguration rateLimit,
+  @JsonProperty(required = false, value = "Batching")
+  GMatrixBatchingConfiguration batching,
+  @JsonProperty(required = false, value = "Persistence")
+  GMatrixPersistenceConfiguration persistence,
+  @JsonProperty(required = false, value = "QueueLimits")
+  GMatrixQueueLimitsConfiguration queueLimits,
+  @JsonProperty(required = false, value = "Retry")
+  GMatrixRetryConfiguration retry,
+  @JsonProperty(required = false, value = "Pipelining")
+  GMatrixPipeliningConfiguration pipelining,
+  @JsonProperty(required = false, value = "Timeouts")
+  GMatrixTimeoutConfiguration timeouts,
+  @JsonProperty(required = false, value = "Transport")
+  GMatrixTransportConfiguration transport,
+  @JsonProperty(required = false, value = "Editing")
+  GMatrixEditingConfiguration editing,
+  @JsonProperty(required = false, value = "Routes")
+  List<GMatrixRouteConfiguration> routes,
+  @JsonProperty(required = false, value = "Priorities")
+  GMatrixPriorityConfiguration priorities,
+  @JsonProperty(required = false, value = "Superseding")
+  GMatrixSupersedingConfiguration superseding)
 {
   /**
    * The Matrix service configuration.
@@ -51,6 +90,19 @@ public record GMatrixServiceConfiguration(
    * @param matrixServerBase The Matrix server
    * @param matrixPassword   The Matrix password
    * @param matrixUser       The Matrix username
+   * @param rateLimit        The rate limiting configuration
+   * @param batching         The message batching configuration
+   * @param persistence      The persistent queue configuration, or
+   *                         {@code null} if messages are only held in memory
+   * @param queueLimits      The message queue capacity configuration
+   * @param retry            The message retry configuration
+   * @param pipelining       The message pipelining configuration
+   * @param timeouts         The request timeout configuration
+   * @param transport        The HTTP transport configuration
+   * @param editing          The message editing configuration
+   * @param routes           The routing rules, tried in order
+   * @param priorities       The message priority configuration
+   * @param superseding      The configuration for superseding queued messages
    */
 
   public GMatrixServiceConfiguration
@@ -59,5 +111,58 @@ public record GMatrixServiceConfiguration(
     Objects.requireNonNull(matrixUser, "matrixUser");
     Objects.requireNonNull(matrixPassword, "matrixPassword");
     Objects.requireNonNull(matrixServerBase, "matrixServerBase");
+
+    rateLimit = Objects.requireNonNullElseGet(
+      rateLimit,
+      GMatrixRateLimitConfiguration::defaults
+    );
+    batching = Objects.requireNonNullElseGet(
+      batching,
+      GMatrixBatchingConfiguration::defaults
+    );
+    queueLimits = Objects.requireNonNullElseGet(
+      queueLimits,
+      GMatrixQueueLimitsConfiguration::defaults
+    );
+    retry = Objects.requireNonNullElseGet(
+      retry,
+      GMatrixRetryConfiguration::defaults
+    );
+    pipelining = Objects.requireNonNullElseGet(
+      pipelining,
+      GMatrixPipeliningConfiguration::defaults
+    );
+    timeouts = Objects.requireNonNullElseGet(
+      timeouts,
+      GMatrixTimeoutConfiguration::defaults
+    );
+    transport = Objects.requireNonNullElseGet(
+      transport,
+      GMatrixTransportConfiguration::defaults
+    );
+    editing = Objects.requireNonNullElseGet(
+      editing,
+      GMatrixEditingConfiguration::defaults
+    );
+    routes = List.copyOf(
+      Objects.requireNonNullElseGet(routes, List::of)
+    );
+    priorities = Objects.requireNonNullElseGet(
+      priorities,
+      GMatrixPriorityConfiguration::defaults
+    );
+    superseding = Objects.requireNonNullElseGet(
+      superseding,
+      GMatrixSupersedingConfiguration::defaults
+    );
+  }
+
+  /**
+   * @return The persistent queue configuration, if one is present
+   */
+
+  public Optional<GMatrixPersistenceConfiguration> persistenceConfiguration()
+  {
+    return Optional.ofNullable(this.persistence);
   }
 }
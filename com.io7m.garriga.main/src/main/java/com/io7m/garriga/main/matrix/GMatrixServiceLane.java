@@ -0,0 +1,940 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.io7m.garriga.main.matrix.GMatrixServiceStatusType.UnhealthyType.Failed;
+import com.io7m.garriga.main.metrics.GMetricClock;
+import com.io7m.garriga.main.metrics.GMetricCounter;
+import com.io7m.garriga.main.metrics.GMetricHistogram;
+import com.io7m.garriga.main.metrics.GMetricLatency;
+import com.io7m.garriga.main.metrics.GMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.io7m.garriga.main.matrix.GMatrixServiceStatusType.HealthyType.Connected.CONNECTED;
+import static com.io7m.garriga.main.matrix.GMatrixServiceStatusType.UnhealthyType.Starting.STARTING;
+
+/**
+ * A delivery lane for a single room. Each lane has its own message queue,
+ * rate limiter, and in-flight window, so that a room that is slow (or that
+ * the server is rate limiting) does not delay messages to other rooms.
+ */
+
+final class GMatrixServiceLane
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(GMatrixServiceLane.class);
+
+  private static final Duration RATE_LIMIT_DEFAULT_WAIT =
+    Duration.ofSeconds(5L);
+
+  private final GMatrixService service;
+  private final GMatrixServiceConfiguration configuration;
+  private final String channel;
+  private final boolean isDefault;
+  private final AtomicBoolean closed;
+  private final AtomicReference<GMatrixServiceStatusType> status;
+  private final GMatrixMessageQueue messageQueue;
+  private final GMatrixRateLimiter rateLimiter;
+  private final GMatrixRetryPolicy retryPolicy;
+  private final GMatrixClient client;
+  private final GMatrixEventIndex eventIndex;
+  private final AtomicBoolean reconnect;
+  private final Semaphore inFlight;
+  private final int inFlightMaximum;
+  private final ConcurrentMap<String, CompletableFuture<Void>> inFlightAlerts;
+  private final ConcurrentMap<CompletableFuture<?>, Long> inFlightSends;
+  private final GMetricCounter messagesSent;
+  private final GMetricCounter messagesDiscarded;
+  private final GMetricCounter sendFailures;
+  private final GMetricCounter rateLimited;
+  private final GMetricHistogram sendDuration;
+  private final GMetricLatency latencyQueueWait;
+  private final GMetricLatency latencySend;
+  private final GMetricLatency latencyTotal;
+  private volatile String roomId;
+  private volatile boolean joined;
+
+  GMatrixServiceLane(
+    final GMatrixService inService,
+    final GMatrixServiceConfiguration inConfiguration,
+    final String inChannel,
+    final boolean inIsDefault,
+    final AtomicBoolean inClosed,
+    final GMatrixMessageQueue inMessageQueue,
+    final GMatrixClient inClient,
+    final GMatrixEventIndex inEventIndex,
+    final GMatrixSession inSession,
+    final GMetrics inMetrics)
+  {
+    this.service =
+      Objects.requireNonNull(inService, "service");
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.isDefault =
+      inIsDefault;
+    this.closed =
+      Objects.requireNonNull(inClosed, "closed");
+    this.status =
+      new AtomicReference<>(STARTING);
+    this.messageQueue =
+      Objects.requireNonNull(inMessageQueue, "messageQueue");
+    this.rateLimiter =
+      GMatrixRateLimiter.create(inConfiguration.rateLimit());
+    this.retryPolicy =
+      GMatrixRetryPolicy.create(inConfiguration.retry());
+    this.client =
+      Objects.requireNonNull(inClient, "client");
+    this.eventIndex =
+      Objects.requireNonNull(inEventIndex, "eventIndex");
+    this.reconnect =
+      new AtomicBoolean(false);
+    this.inFlightMaximum =
+      inConfiguration.pipelining().maximumInFlight();
+    this.inFlight =
+      new Semaphore(this.inFlightMaximum);
+    this.inFlightAlerts =
+      new ConcurrentHashMap<>();
+    this.inFlightSends =
+      new ConcurrentHashMap<>();
+
+    Objects.requireNonNull(inMetrics, "metrics");
+    this.messagesSent =
+      inMetrics.counter(
+        "garriga_matrix_messages_sent_total",
+        "The messages delivered to the Matrix server.",
+        "room", inChannel
+      );
+    this.messagesDiscarded =
+      inMetrics.counter(
+        "garriga_matrix_messages_discarded_total",
+        "The messages discarded after failing permanently or too often.",
+        "room", inChannel
+      );
+    this.sendFailures =
+      inMetrics.counter(
+        "garriga_matrix_send_failures_total",
+        "The sends to the Matrix server that failed.",
+        "room", inChannel
+      );
+    this.rateLimited =
+      inMetrics.counter(
+        "garriga_matrix_rate_limited_total",
+        "The sends that the Matrix server refused due to rate limiting.",
+        "room", inChannel
+      );
+    this.sendDuration =
+      inMetrics.histogram(
+        "garriga_matrix_send_duration_seconds",
+        "The time taken to send a message (or batch) to the Matrix server.",
+        GMetricHistogram.LATENCY_BUCKETS,
+        "room", inChannel
+      );
+    this.latencyQueueWait =
+      inMetrics.latency(
+        "garriga_alert_queue_wait_seconds",
+        "The time between an alert being received and its final send starting.",
+        "room", inChannel
+      );
+    this.latencySend =
+      inMetrics.latency(
+        "garriga_alert_send_rtt_seconds",
+        "The round-trip time of successful sends to the Matrix server.",
+        "room", inChannel
+      );
+    this.latencyTotal =
+      inMetrics.latency(
+        "garriga_alert_delivery_seconds",
+        "The time between an alert being received and the Matrix server accepting it.",
+        "room", inChannel
+      );
+    this.registerGauges(inMetrics);
+
+    /*
+     * Only the default room is recorded in the persistent session; rooms
+     * used by routes are resolved again on each startup.
+     */
+
+    if (inIsDefault) {
+      Objects.requireNonNull(inSession, "session");
+      this.roomId = inSession.roomIdOpt().orElse(null);
+      this.joined = inSession.joined();
+    }
+  }
+
+  private void registerGauges(
+    final GMetrics metrics)
+  {
+    final var queue = this.messageQueue;
+    metrics.gauge(
+      "garriga_matrix_queue_depth",
+      "The messages waiting to be sent.",
+      () -> queue.size(),
+      "room", this.channel
+    );
+    metrics.gauge(
+      "garriga_matrix_queue_retrying",
+      "The messages waiting to be retried.",
+      () -> queue.sizeRetrying(),
+      "room", this.channel
+    );
+    metrics.gauge(
+      "garriga_matrix_queue_bytes",
+      "The total size of the messages waiting to be sent.",
+      () -> queue.sizeBytes(),
+      "room", this.channel
+    );
+    metrics.counterFunction(
+      "garriga_matrix_queue_dropped_total",
+      "The messages dropped because the queue was full.",
+      queue::droppedCount,
+      "room", this.channel
+    );
+    metrics.counterFunction(
+      "garriga_matrix_queue_superseded_total",
+      "The queued messages replaced by newer messages for the same alert.",
+      queue::supersededCount,
+      "room", this.channel
+    );
+    metrics.gauge(
+      "garriga_matrix_in_flight",
+      "The sends currently awaiting a response.",
+      () -> this.inFlightMaximum - this.inFlight.availablePermits(),
+      "room", this.channel
+    );
+    metrics.gauge(
+      "garriga_matrix_send_rate",
+      "The current send rate limit, in messages per second.",
+      this.rateLimiter::rate,
+      "room", this.channel
+    );
+  }
+
+  /**
+   * @return The channel (room alias) to which this lane delivers messages
+   */
+
+  String channel()
+  {
+    return this.channel;
+  }
+
+  /**
+   * @return The status of the lane
+   */
+
+  GMatrixServiceStatusType status()
+  {
+    return this.status.get();
+  }
+
+  /**
+   * Enqueue a message.
+   *
+   * @param message The message
+   *
+   * @throws IOException On errors
+   */
+
+  void send(
+    final GMatrixMessage message)
+    throws IOException
+  {
+    try {
+      this.messageQueue.add(message);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+  }
+
+  /**
+   * @return The number of messages waiting to be sent
+   */
+
+  int queueSize()
+  {
+    return this.messageQueue.size();
+  }
+
+  /**
+   * Close the lane's message queue. The lane must have stopped running.
+   */
+
+  void close()
+  {
+    try {
+      this.messageQueue.close();
+    } catch (final IOException e) {
+      LOG.error("[{}] Failed to close message queue: ", this.channel, e);
+    }
+  }
+
+  /**
+   * Run the lane until the service is closed.
+   */
+
+  void run()
+  {
+    try {
+      while (!this.closed.get()) {
+        try {
+          this.connect();
+        } catch (final IOException e) {
+          LOG.error("[{}] Failed to connect: ", this.channel, e);
+          this.fail(e);
+          this.pause();
+          continue;
+        }
+
+        this.status.set(CONNECTED);
+        this.reconnect.set(false);
+
+        while (!this.closed.get() && !this.reconnect.get()) {
+          try {
+            this.processQueue();
+          } catch (final IOException e) {
+            LOG.error("[{}] Failed to read message queue: ", this.channel, e);
+            this.fail(e);
+            this.pauseLong();
+          }
+        }
+      }
+
+      this.awaitAllInFlight();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /*
+   * Give messages that are in flight a chance to complete (and therefore
+   * be acknowledged) before the message store is closed.
+   */
+
+  private void awaitAllInFlight()
+    throws InterruptedException
+  {
+    if (!this.inFlight.tryAcquire(
+      this.inFlightMaximum, 30L, TimeUnit.SECONDS)) {
+      LOG.warn("[{}] Messages were still in flight at shutdown.", this.channel);
+    }
+  }
+
+  private void processQueue()
+    throws IOException, InterruptedException
+  {
+    final var first =
+      this.messageQueue.poll(1L, TimeUnit.SECONDS);
+
+    if (first.isEmpty()) {
+      return;
+    }
+
+    final var event = new GEventMatrixDequeue();
+    event.begin();
+
+    final var batch =
+      new GMatrixMessageBatch(this.configuration.batching());
+    final var taken =
+      new ArrayList<GMatrixQueuedMessage>();
+
+    batch.tryAdd(first.get().message());
+    taken.add(first.get());
+
+    /*
+     * A message that may already have been sent is sent again together
+     * with exactly the messages it was sent with (less any that have been
+     * superseded or discarded since), and with the same transaction ID,
+     * so that the server does not deliver it twice.
+     *
+     * Otherwise, a message about an alert that has already been described
+     * by an earlier message is sent on its own, so that it can be sent as
+     * an edit of that message. Such messages are never combined with
+     * others.
+     */
+
+    final var transactionIdPrevious = first.get().transactionId();
+    if (!transactionIdPrevious.isEmpty()) {
+      for (final var member :
+        this.messageQueue.pollTransaction(transactionIdPrevious)) {
+        batch.add(member.message());
+        taken.add(member);
+      }
+    } else if (!this.isEditable(first.get().message())) {
+      while (!batch.isFull()) {
+        final var next =
+          this.messageQueue.pollIf(m -> !this.isEditable(m) && batch.tryAdd(m));
+        if (next.isEmpty()) {
+          break;
+        }
+        taken.add(next.get());
+      }
+    }
+
+    final var count = batch.size();
+    if (count > 1) {
+      LOG.debug(
+        "[{}] Sending a batch of {} messages",
+        this.channel,
+        Integer.valueOf(count)
+      );
+    }
+
+    final var queueSize = this.messageQueue.size();
+    if (queueSize > 0) {
+      LOG.info(
+        "[{}] Message queue size: {}",
+        this.channel,
+        Integer.valueOf(queueSize)
+      );
+    }
+
+    final String transactionId;
+    final List<GMatrixQueuedMessage> assigned;
+    if (transactionIdPrevious.isEmpty()) {
+      transactionId = GMatrixTransactionIds.transactionIdFor(taken);
+      assigned = this.messageQueue.assign(taken, transactionId);
+    } else {
+      transactionId = transactionIdPrevious;
+      assigned = taken;
+    }
+
+    final var fingerprints =
+      fingerprintsOf(assigned);
+
+    this.awaitInFlight(fingerprints);
+    this.inFlight.acquire();
+    this.rateLimiter.acquire();
+
+    /*
+     * Messages are left in the store without being acknowledged if the
+     * service is shutting down, so that a persistent store will deliver
+     * them on the next startup.
+     */
+
+    if (this.closed.get()) {
+      this.inFlight.release();
+      this.commitDequeue(event, assigned, false, false);
+      return;
+    }
+
+    /*
+     * Another lane may have discarded the shared login since this lane
+     * last connected.
+     */
+
+    final var accessToken = this.service.accessTokenIfPresent();
+    if (this.reconnect.get() || accessToken.isEmpty()) {
+      this.reconnect.set(true);
+      this.inFlight.release();
+      this.messageQueue.requeue(assigned, Duration.ZERO);
+      this.commitDequeue(event, assigned, false, false);
+      return;
+    }
+
+    final var slot = new CompletableFuture<Void>();
+    for (final var fingerprint : fingerprints) {
+      this.inFlightAlerts.put(fingerprint, slot);
+    }
+
+    final var room = this.roomId;
+    final var replaces = this.replacementFor(assigned, room);
+    this.commitDequeue(event, assigned, replaces.isPresent(), true);
+
+    CompletableFuture<Optional<String>> future;
+    try {
+      future = this.client.roomSendMessageAsync(
+        accessToken.get(),
+        room,
+        transactionId,
+        batch.combine(),
+        replaces
+      );
+    } catch (final IOException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+
+    final var send = future;
+    final var timeSent = GMetricClock.now();
+    final var timeStart = System.nanoTime();
+    this.inFlightSends.put(send, Long.valueOf(timeStart));
+    send.whenComplete((eventId, error) -> {
+      final var elapsed = System.nanoTime() - timeStart;
+      this.sendDuration.observeNanos(elapsed);
+      if (error == null) {
+        this.recordLatencies(assigned, timeSent, elapsed);
+      }
+      try {
+        this.onSendCompleted(
+          assigned, accessToken.get(), room, replaces, eventId, error);
+      } finally {
+        this.inFlightSends.remove(send);
+        for (final var fingerprint : fingerprints) {
+          this.inFlightAlerts.remove(fingerprint, slot);
+        }
+        slot.complete(null);
+        this.inFlight.release();
+      }
+    });
+  }
+
+  private void commitDequeue(
+    final GEventMatrixDequeue event,
+    final List<GMatrixQueuedMessage> taken,
+    final boolean edit,
+    final boolean sent)
+  {
+    if (event.shouldCommit()) {
+      event.channel = this.channel;
+      event.messages = taken.size();
+      event.queueDepth = this.messageQueue.size();
+      event.edit = edit;
+      event.sent = sent;
+      event.commit();
+    }
+  }
+
+  /**
+   * Fail any send that has been in flight for longer than the given
+   * threshold.
+   *
+   * @param threshold The stall threshold
+   */
+
+  void checkStalled(
+    final Duration threshold)
+  {
+    final var timeNow = System.nanoTime();
+    for (final var entry : this.inFlightSends.entrySet()) {
+      final var age =
+        Duration.ofNanos(timeNow - entry.getValue().longValue());
+
+      if (age.compareTo(threshold) > 0) {
+        final var message =
+          "A request to the Matrix server has been in flight for %s"
+            .formatted(age);
+
+        /*
+         * Failing the send cancels the HTTP exchange, and the usual
+         * failure handling marks the lane as failed and retries the
+         * messages. The status is not set here, as the send may have
+         * completed successfully in the meantime.
+         */
+
+        if (entry.getKey().completeExceptionally(
+          new HttpTimeoutException(message))) {
+          LOG.error("[{}] {}; abandoning it.", this.channel, message);
+        }
+      }
+    }
+  }
+
+  private boolean isEditable(
+    final GMatrixMessage message)
+  {
+    if (!this.configuration.editing().enabled()) {
+      return false;
+    }
+
+    final var fingerprint = message.fingerprint();
+    if (fingerprint.isEmpty()) {
+      return false;
+    }
+
+    /*
+     * An alert that is currently in flight may be about to be added to
+     * the index, and so is treated as if it already had been.
+     */
+
+    return this.eventIndex.contains(fingerprint)
+           || this.inFlightAlerts.containsKey(fingerprint);
+  }
+
+  private Optional<String> replacementFor(
+    final List<GMatrixQueuedMessage> taken,
+    final String room)
+  {
+    if (!this.configuration.editing().enabled() || !isAlone(taken)) {
+      return Optional.empty();
+    }
+
+    final var fingerprint = taken.get(0).message().fingerprint();
+    if (fingerprint.isEmpty()) {
+      return Optional.empty();
+    }
+    return this.eventIndex.find(fingerprint, room);
+  }
+
+  private void recordEvent(
+    final List<GMatrixQueuedMessage> taken,
+    final String room,
+    final Optional<String> replaces,
+    final Optional<String> eventId)
+  {
+    if (!this.configuration.editing().enabled()
+        || !isAlone(taken)
+        || replaces.isPresent()
+        || eventId.isEmpty()) {
+      return;
+    }
+
+    final var fingerprint = taken.get(0).message().fingerprint();
+    if (!fingerprint.isEmpty()) {
+      this.eventIndex.put(fingerprint, room, eventId.get());
+    }
+  }
+
+  /*
+   * A message that was sent as part of a batch is not the only message
+   * described by the resulting event, even if the other messages of the
+   * batch have since been superseded.
+   */
+
+  private static boolean isAlone(
+    final List<GMatrixQueuedMessage> taken)
+  {
+    if (taken.size() != 1) {
+      return false;
+    }
+
+    final var message = taken.get(0);
+    return message.transactionId()
+      .equals(GMatrixTransactionIds.transactionIdFor(message.id()));
+  }
+
+  private static Set<String> fingerprintsOf(
+    final List<GMatrixQueuedMessage> messages)
+  {
+    final var results = new HashSet<String>(messages.size());
+    for (final var message : messages) {
+      final var fingerprint = message.message().fingerprint();
+      if (!fingerprint.isEmpty()) {
+        results.add(fingerprint);
+      }
+    }
+    return results;
+  }
+
+  /*
+   * Wait until no message describing any of the given alerts is in flight,
+   * so that messages about the same alert are delivered in order.
+   */
+
+  private void awaitInFlight(
+    final Set<String> fingerprints)
+    throws InterruptedException
+  {
+    for (final var fingerprint : fingerprints) {
+      final var slot = this.inFlightAlerts.get(fingerprint);
+      if (slot != null) {
+        try {
+          slot.get();
+        } catch (final ExecutionException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+  }
+
+  /*
+   * The wall clock is used for the queue wait and the total latency, as
+   * messages may have been received before a restart. Messages with an
+   * unknown receipt time are ignored.
+   */
+
+  private void recordLatencies(
+    final List<GMatrixQueuedMessage> taken,
+    final long timeSent,
+    final long elapsed)
+  {
+    this.latencySend.recordNanos(elapsed);
+
+    final var timeNow = GMetricClock.now();
+    for (final var queued : taken) {
+      final var timeReceived = queued.message().timeReceived();
+      if (timeReceived > 0L) {
+        this.latencyQueueWait.recordNanos(timeSent - timeReceived);
+        this.latencyTotal.recordNanos(timeNow - timeReceived);
+      }
+    }
+  }
+
+  private void onSendCompleted(
+    final List<GMatrixQueuedMessage> taken,
+    final String accessToken,
+    final String room,
+    final Optional<String> replaces,
+    final Optional<String> eventId,
+    final Throwable error)
+  {
+    try {
+      if (error == null) {
+        this.messagesSent.add(taken.size());
+        this.rateLimiter.onSuccess();
+        this.status.set(CONNECTED);
+        this.recordEvent(taken, room, replaces, eventId);
+        this.messageQueue.acknowledge(taken);
+        return;
+      }
+
+      this.sendFailures.increment();
+
+      final var cause =
+        error instanceof CompletionException && error.getCause() != null
+          ? error.getCause()
+          : error;
+
+      if (cause instanceof final GMatrixRequestException e) {
+        if (e.isRateLimited()) {
+          final var retryAfter =
+            e.retryAfter().orElse(RATE_LIMIT_DEFAULT_WAIT);
+
+          this.rateLimited.increment();
+          this.rateLimiter.onRateLimited(retryAfter);
+          LOG.warn(
+            "[{}] Rate limited by the server (retry after {}); rate is now {}/s",
+            this.channel,
+            retryAfter,
+            Double.valueOf(this.rateLimiter.rate())
+          );
+          this.messageQueue.requeue(taken, retryAfter);
+          return;
+        }
+
+        if (e.isUnknownToken() || e.isForbidden()) {
+          LOG.warn(
+            "[{}] Session is no longer valid: {}",
+            this.channel,
+            e.getMessage()
+          );
+          this.invalidateSession(e, accessToken);
+          this.messageQueue.requeue(taken, Duration.ZERO);
+          return;
+        }
+
+        /*
+         * The server may refuse to accept an edit (if the original event
+         * has been redacted, for example). The message is sent again as
+         * a new message rather than being discarded.
+         */
+
+        if (e.isPermanent() && replaces.isPresent()) {
+          LOG.warn(
+            "[{}] Server refused an edit of event {}: {}",
+            this.channel,
+            replaces.get(),
+            e.getMessage()
+          );
+          this.eventIndex.remove(taken.get(0).message().fingerprint());
+          this.messageQueue.requeue(taken, Duration.ZERO);
+          return;
+        }
+
+        if (e.isPermanent()) {
+          LOG.error("[{}] Failed to process message: ", this.channel, e);
+          this.fail(e);
+          this.messagesDiscarded.add(taken.size());
+          this.messageQueue.acknowledge(taken);
+          return;
+        }
+      }
+
+      LOG.error("[{}] Failed to process message: ", this.channel, cause);
+      this.fail(cause);
+      this.retryOrDiscard(taken);
+    } catch (final IOException e) {
+      LOG.error("[{}] Failed to update message queue: ", this.channel, e);
+    }
+  }
+
+  /*
+   * The messages of a failed batch are retried with a single delay. They
+   * keep the transaction ID that they were assigned, so that they are
+   * sent again as the same batch with the same ID.
+   */
+
+  private void retryOrDiscard(
+    final List<GMatrixQueuedMessage> messages)
+    throws IOException
+  {
+    final var timeNow = GMetricClock.now();
+    final var retries = new ArrayList<GMatrixQueuedMessage>(messages.size());
+    var attemptsMaximum = 0;
+
+    for (final var message : messages) {
+      final var attempts =
+        message.attempts() + 1;
+      final var age =
+        Duration.ofNanos(timeNow - message.timeAccepted());
+
+      if (this.retryPolicy.isExhausted(attempts, age)) {
+        LOG.error(
+          "[{}] Discarding message {} after {} attempts (age {}).",
+          this.channel,
+          Long.valueOf(message.id()),
+          Integer.valueOf(attempts),
+          age
+        );
+        this.messagesDiscarded.increment();
+        this.messageQueue.acknowledge(message);
+        continue;
+      }
+
+      retries.add(message);
+      attemptsMaximum = Math.max(attemptsMaximum, attempts);
+    }
+
+    if (retries.isEmpty()) {
+      return;
+    }
+
+    final var delay = this.retryPolicy.delay(attemptsMaximum);
+    LOG.warn(
+      "[{}] Retrying {} messages in {} (attempt {}).",
+      this.channel,
+      Integer.valueOf(retries.size()),
+      delay,
+      Integer.valueOf(attemptsMaximum)
+    );
+    this.messageQueue.retry(retries, delay);
+  }
+
+  /*
+   * Connecting reuses as much of the cached state as possible, so that
+   * a reconnection normally makes no requests at all.
+   */
+
+  private void connect()
+    throws IOException, InterruptedException
+  {
+    final var accessToken = this.service.accessToken();
+
+    try {
+      if (this.roomId == null) {
+        this.setRoom(this.fetchRoom(accessToken), false);
+      }
+      if (!this.joined) {
+        this.client.roomJoin(accessToken, this.roomId);
+        LOG.info("[{}] Joined room.", this.channel);
+        this.setRoom(this.roomId, true);
+      }
+    } catch (final GMatrixRequestException e) {
+      if (e.isUnknownToken()) {
+        this.service.invalidateLogin(accessToken);
+      }
+      throw e;
+    }
+  }
+
+  private String fetchRoom(
+    final String accessToken)
+    throws IOException, InterruptedException
+  {
+    final var response =
+      this.client.roomResolveAlias(accessToken, this.channel);
+
+    return switch (response) {
+      case final GMatrixJSON.MError r -> {
+        throw GMatrixService.errorOf(r);
+      }
+      case final GMatrixJSON.MLoginResponse r -> {
+        throw new IOException(
+          "Matrix responded with an unexpected message: %s".formatted(r)
+        );
+      }
+      case final GMatrixJSON.MRoomResolveAliasResponse r -> {
+        yield r.roomId;
+      }
+    };
+  }
+
+  private void setRoom(
+    final String newRoomId,
+    final boolean newJoined)
+  {
+    this.roomId = newRoomId;
+    this.joined = newJoined;
+
+    if (this.isDefault) {
+      this.service.saveRoom(newRoomId, newJoined);
+    }
+  }
+
+  /*
+   * An unknown token requires a full login. Being forbidden from sending
+   * usually means that we are no longer in the room, so the room is
+   * resolved and joined again.
+   */
+
+  private void invalidateSession(
+    final GMatrixRequestException e,
+    final String accessToken)
+  {
+    if (e.isUnknownToken()) {
+      this.service.invalidateLogin(accessToken);
+    } else {
+      this.setRoom(null, false);
+    }
+    this.reconnect.set(true);
+  }
+
+  private void fail(final Throwable e)
+  {
+    this.status.set(new Failed(e.getMessage()));
+  }
+
+  private void pause()
+  {
+    try {
+      Thread.sleep(1_000L);
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void pauseLong()
+  {
+    try {
+      Thread.sleep(5_000L);
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
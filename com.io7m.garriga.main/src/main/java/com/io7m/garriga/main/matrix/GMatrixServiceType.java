@@ -19,6 +19,8 @@ package com.io7m.garriga.main.matrix;
 
 import com.io7m.repetoir.core.RPServiceType;
 
+import java.io.IOException;
+
 /**
  * The matrix service.
  */
@@ -33,10 +35,15 @@ public interface GMatrixServiceType
   GMatrixServiceStatusType status();
 
   /**
-   * Send a message.
+   * Send a message. The message has been accepted for delivery when this
+   * method returns.
    *
    * @param message The message
+   *
+   * @throws GMatrixQueueFullException If the message queue is full
+   * @throws IOException               If the message could not be accepted
    */
 
-  void send(GMatrixMessage message);
+  void send(GMatrixMessage message)
+    throws IOException;
 }
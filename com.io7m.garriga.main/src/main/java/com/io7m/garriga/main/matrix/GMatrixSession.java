@@ -0,0 +1,244 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.net.URI;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The state of a Matrix session. Reusing a session across reconnections
+ * avoids logging in (and resolving and joining the room) each time.
+ *
+ * @param serverBase  The Matrix server
+ * @param user        The Matrix username
+ * @param channel     The Matrix channel name
+ * @param accessToken The access token, or {@code null} if not logged in
+ * @param deviceId    The device ID, or {@code null} if not known
+ * @param roomId      The resolved room ID, or {@code null} if not resolved
+ * @param joined      {@code true} if the room has been joined
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixSession(
+  @JsonProperty(required = true, value = "ServerBase")
+  URI serverBase,
+  @JsonProperty(required = true, value = "User")
+  String user,
+  @JsonProperty(required = true, value = "Channel")
+  String channel,
+  @JsonProperty(required = false, value = "AccessToken")
+  String accessToken,
+  @JsonProperty(required = false, value = "DeviceID")
+  String deviceId,
+  @JsonProperty(required = false, value = "RoomID")
+  String roomId,
+  @JsonProperty(required = true, value = "Joined")
+  boolean joined)
+{
+  /**
+   * The state of a Matrix session.
+   *
+   * @param serverBase  The Matrix server
+   * @param user        The Matrix username
+   * @param channel     The Matrix channel name
+   * @param accessToken The access token, or {@code null} if not logged in
+   * @param deviceId    The device ID, or {@code null} if not known
+   * @param roomId      The resolved room ID, or {@code null} if not resolved
+   * @param joined      {@code true} if the room has been joined
+   */
+
+  public GMatrixSession
+  {
+    Objects.requireNonNull(serverBase, "serverBase");
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(channel, "channel");
+  }
+
+  /**
+   * Create an empty session for the given configuration.
+   *
+   * @param configuration The configuration
+   *
+   * @return An empty session
+   */
+
+  public static GMatrixSession empty(
+    final GMatrixServiceConfiguration configuration)
+  {
+    return new GMatrixSession(
+      configuration.matrixServerBase(),
+      configuration.matrixUser(),
+      configuration.matrixChannel(),
+      null,
+      null,
+      null,
+      false
+    );
+  }
+
+  /**
+   * @param configuration The configuration
+   *
+   * @return {@code true} if this session was created for the given server,
+   * user, and channel
+   */
+
+  public boolean isFor(
+    final GMatrixServiceConfiguration configuration)
+  {
+    return Objects.equals(this.serverBase, configuration.matrixServerBase())
+           && Objects.equals(this.user, configuration.matrixUser())
+           && Objects.equals(this.channel, configuration.matrixChannel());
+  }
+
+  /**
+   * @return The access token, if logged in
+   */
+
+  public Optional<String> accessTokenOpt()
+  {
+    return Optional.ofNullable(this.accessToken);
+  }
+
+  /**
+   * @return The resolved room ID, if resolved
+   */
+
+  public Optional<String> roomIdOpt()
+  {
+    return Optional.ofNullable(this.roomId);
+  }
+
+  /**
+   * @param newAccessToken The access token
+   * @param newDeviceId    The device ID
+   *
+   * @return This session with the given credentials
+   */
+
+  public GMatrixSession withLogin(
+    final String newAccessToken,
+    final String newDeviceId)
+  {
+    return new GMatrixSession(
+      this.serverBase,
+      this.user,
+      this.channel,
+      Objects.requireNonNull(newAccessToken, "accessToken"),
+      Objects.requireNonNullElse(newDeviceId, this.deviceId),
+      this.roomId,
+      this.joined
+    );
+  }
+
+  /**
+   * The access token has been rejected by the server. The device ID is
+   * retained so that logging in again reuses the same device.
+   *
+   * @return This session without an access token
+   */
+
+  public GMatrixSession withoutLogin()
+  {
+    return new GMatrixSession(
+      this.serverBase,
+      this.user,
+      this.channel,
+      null,
+      this.deviceId,
+      this.roomId,
+      this.joined
+    );
+  }
+
+  /**
+   * @param newRoomId The resolved room ID
+   *
+   * @return This session with the given room ID
+   */
+
+  public GMatrixSession withRoomId(
+    final String newRoomId)
+  {
+    return new GMatrixSession(
+      this.serverBase,
+      this.user,
+      this.channel,
+      this.accessToken,
+      this.deviceId,
+      Objects.requireNonNull(newRoomId, "roomId"),
+      this.joined
+    );
+  }
+
+  /**
+   * The room must be resolved and joined again.
+   *
+   * @return This session without a room
+   */
+
+  public GMatrixSession withoutRoom()
+  {
+    return new GMatrixSession(
+      this.serverBase,
+      this.user,
+      this.channel,
+      this.accessToken,
+      this.deviceId,
+      null,
+      false
+    );
+  }
+
+  /**
+   * @param newJoined {@code true} if the room has been joined
+   *
+   * @return This session with the given membership state
+   */
+
+  public GMatrixSession withJoined(
+    final boolean newJoined)
+  {
+    return new GMatrixSession(
+      this.serverBase,
+      this.user,
+      this.channel,
+      this.accessToken,
+      this.deviceId,
+      this.roomId,
+      newJoined
+    );
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[GMatrixSession %s %s %s %s %s]".formatted(
+      this.user,
+      this.deviceId,
+      this.roomId,
+      this.accessToken == null ? "(no token)" : "(token)",
+      Boolean.valueOf(this.joined)
+    );
+  }
+}
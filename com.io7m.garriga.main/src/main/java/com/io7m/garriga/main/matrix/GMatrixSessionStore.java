@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.io7m.dixmont.core.DmJsonRestrictedDeserializers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Objects;
+import java.util.Optional;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A store for Matrix session state. Sessions are always held in memory,
+ * and are additionally written to a file if one is specified. The file
+ * contains an access token, and so is created readable only by its owner
+ * where the filesystem supports it.
+ */
+
+public final class GMatrixSessionStore
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(GMatrixSessionStore.class);
+
+  private final Path file;
+  private final ObjectMapper mapper;
+  private GMatrixSession session;
+
+  private GMatrixSessionStore(
+    final GMatrixServiceConfiguration inConfiguration,
+    final Path inFile)
+  {
+    Objects.requireNonNull(inConfiguration, "configuration");
+
+    this.file =
+      inFile;
+    this.mapper =
+      createMapper();
+    this.session =
+      GMatrixSession.empty(inConfiguration);
+  }
+
+  private static ObjectMapper createMapper()
+  {
+    final JsonMapper mapper =
+      JsonMapper.builder()
+        .build();
+
+    final var deserializers =
+      DmJsonRestrictedDeserializers.builder()
+        .allowClass(GMatrixSession.class)
+        .allowClass(URI.class)
+        .allowClass(String.class)
+        .allowClass(boolean.class)
+        .build();
+
+    final var simpleModule = new SimpleModule();
+    simpleModule.setDeserializers(deserializers);
+    mapper.registerModule(simpleModule);
+    return mapper;
+  }
+
+  /**
+   * Create a session store. If a file is specified and contains a session
+   * for the configured server, user, and channel, that session is loaded.
+   * A file that cannot be read is logged and otherwise ignored.
+   *
+   * @param configuration The configuration
+   * @param file          The file, if sessions should be persisted
+   *
+   * @return A session store
+   */
+
+  public static GMatrixSessionStore create(
+    final GMatrixServiceConfiguration configuration,
+    final Optional<Path> file)
+  {
+    final var store =
+      new GMatrixSessionStore(configuration, file.orElse(null));
+
+    if (store.file != null && Files.isRegularFile(store.file)) {
+      try {
+        final var loaded =
+          store.mapper.readValue(store.file.toFile(), GMatrixSession.class);
+        if (loaded.isFor(configuration)) {
+          store.session = loaded;
+          LOG.info("Loaded session {}", loaded);
+        } else {
+          LOG.info("Ignoring session for a different server, user, or room.");
+        }
+      } catch (final IOException e) {
+        LOG.warn("Unable to load session from {}: ", store.file, e);
+      }
+    }
+    return store;
+  }
+
+  /**
+   * @return The current session
+   */
+
+  public synchronized GMatrixSession session()
+  {
+    return this.session;
+  }
+
+  /**
+   * Replace the current session. A failure to write the session to a file
+   * is logged and otherwise ignored, as the session is still valid in
+   * memory.
+   *
+   * @param newSession The new session
+   */
+
+  public synchronized void update(
+    final GMatrixSession newSession)
+  {
+    Objects.requireNonNull(newSession, "session");
+
+    if (Objects.equals(this.session, newSession)) {
+      return;
+    }
+
+    this.session = newSession;
+    if (this.file != null) {
+      try {
+        this.write(newSession);
+      } catch (final IOException e) {
+        LOG.warn("Unable to save session to {}: ", this.file, e);
+      }
+    }
+  }
+
+  private void write(
+    final GMatrixSession newSession)
+    throws IOException
+  {
+    final var temporary =
+      this.file.resolveSibling(this.file.getFileName() + ".tmp");
+
+    Files.deleteIfExists(temporary);
+    try {
+      Files.createFile(
+        temporary,
+        PosixFilePermissions.asFileAttribute(
+          PosixFilePermissions.fromString("rw-------"))
+      );
+    } catch (final UnsupportedOperationException e) {
+      Files.createFile(temporary);
+    }
+
+    Files.write(temporary, this.mapper.writeValueAsBytes(newSession));
+    Files.move(temporary, this.file, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+}
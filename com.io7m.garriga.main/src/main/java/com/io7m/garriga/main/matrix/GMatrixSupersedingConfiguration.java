@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * The configuration for superseding queued messages. When enabled, a
+ * message about an alert replaces any message about the same alert (sent
+ * by the same AlertManager receiver) that is still waiting in the queue,
+ * and a resolution cancels out a waiting notification that the alert was
+ * firing if nothing about the alert has been sent yet.
+ *
+ * @param enabled        {@code true} if waiting messages may be replaced
+ * @param cancelResolved {@code true} if a resolution may cancel out a
+ *                       waiting notification that the alert was firing
+ * @param maximumEntries The maximum number of sent alerts remembered, in
+ *                       order to decide whether an alert has been sent
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixSupersedingConfiguration(
+  @JsonProperty(required = true, value = "Enabled")
+  boolean enabled,
+  @JsonProperty(required = true, value = "CancelResolved")
+  boolean cancelResolved,
+  @JsonProperty(required = true, value = "MaximumEntries")
+  int maximumEntries)
+{
+  /**
+   * The configuration for superseding queued messages.
+   *
+   * @param enabled        {@code true} if waiting messages may be replaced
+   * @param cancelResolved {@code true} if a resolution may cancel out a
+   *                       waiting notification that the alert was firing
+   * @param maximumEntries The maximum number of sent alerts remembered, in
+   *                       order to decide whether an alert has been sent
+   */
+
+  public GMatrixSupersedingConfiguration
+  {
+    if (maximumEntries < 1) {
+      throw new IllegalArgumentException(
+        "Maximum entries %d must be positive"
+          .formatted(Integer.valueOf(maximumEntries))
+      );
+    }
+  }
+
+  /**
+   * @return The default superseding configuration
+   */
+
+  public static GMatrixSupersedingConfiguration defaults()
+  {
+    return new GMatrixSupersedingConfiguration(true, true, 10_000);
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.time.Duration;
+
+/**
+ * The timeouts applied to requests made to the Matrix server.
+ *
+ * @param connectTimeoutMs The maximum time to wait for a connection to
+ *                         be established
+ * @param requestTimeoutMs The maximum time to wait for the server to start
+ *                         responding to a request
+ * @param deadlineMs       The maximum time that a request may take in
+ *                         total, including reading the response
+ * @param stallThresholdMs The time after which a request that is still in
+ *                         flight is considered to be stuck
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixTimeoutConfiguration(
+  @JsonProperty(required = true, value = "ConnectTimeoutMilliseconds")
+  long connectTimeoutMs,
+  @JsonProperty(required = true, value = "RequestTimeoutMilliseconds")
+  long requestTimeoutMs,
+  @JsonProperty(required = true, value = "DeadlineMilliseconds")
+  long deadlineMs,
+  @JsonProperty(required = true, value = "StallThresholdMilliseconds")
+  long stallThresholdMs)
+{
+  /**
+   * The timeouts applied to requests made to the Matrix server.
+   *
+   * @param connectTimeoutMs The maximum time to wait for a connection to
+   *                         be established
+   * @param requestTimeoutMs The maximum time to wait for the server to start
+   *                         responding to a request
+   * @param deadlineMs       The maximum time that a request may take in
+   *                         total, including reading the response
+   * @param stallThresholdMs The time after which a request that is still in
+   *                         flight is considered to be stuck
+   */
+
+  public GMatrixTimeoutConfiguration
+  {
+    if (connectTimeoutMs < 1L) {
+      throw new IllegalArgumentException(
+        "Connect timeout %d must be positive"
+          .formatted(Long.valueOf(connectTimeoutMs))
+      );
+    }
+    if (requestTimeoutMs < 1L) {
+      throw new IllegalArgumentException(
+        "Request timeout %d must be positive"
+          .formatted(Long.valueOf(requestTimeoutMs))
+      );
+    }
+    if (deadlineMs < requestTimeoutMs) {
+      throw new IllegalArgumentException(
+        "Deadline %d must be >= the request timeout %d"
+          .formatted(
+            Long.valueOf(deadlineMs),
+            Long.valueOf(requestTimeoutMs))
+      );
+    }
+    if (stallThresholdMs < deadlineMs) {
+      throw new IllegalArgumentException(
+        "Stall threshold %d must be >= the deadline %d"
+          .formatted(
+            Long.valueOf(stallThresholdMs),
+            Long.valueOf(deadlineMs))
+      );
+    }
+  }
+
+  /**
+   * @return The default timeout configuration
+   */
+
+  public static GMatrixTimeoutConfiguration defaults()
+  {
+    return new GMatrixTimeoutConfiguration(
+      10_000L,
+      30_000L,
+      60_000L,
+      120_000L
+    );
+  }
+
+  /**
+   * @return The connect timeout
+   */
+
+  public Duration connectTimeout()
+  {
+    return Duration.ofMillis(this.connectTimeoutMs);
+  }
+
+  /**
+   * @return The request timeout
+   */
+
+  public Duration requestTimeout()
+  {
+    return Duration.ofMillis(this.requestTimeoutMs);
+  }
+
+  /**
+   * @return The total request deadline
+   */
+
+  public Duration deadline()
+  {
+    return Duration.ofMillis(this.deadlineMs);
+  }
+
+  /**
+   * @return The stall threshold
+   */
+
+  public Duration stallThreshold()
+  {
+    return Duration.ofMillis(this.stallThresholdMs);
+  }
+}
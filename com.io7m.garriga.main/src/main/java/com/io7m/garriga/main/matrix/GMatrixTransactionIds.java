@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * <p>Functions for producing Matrix transaction IDs.</p>
+ *
+ * <p>The Matrix server uses the transaction ID of a message to recognize
+ * requests that are retries of messages it has already accepted, so a
+ * transaction ID must be unique and must be the same each time a given
+ * message is sent. Message stores assign each message an ID that combines
+ * the wall clock time (in the high bits) with a counter (in the low bits),
+ * so IDs are unique across restarts even when no messages survive a
+ * restart. Transaction IDs are derived from those message IDs.</p>
+ */
+
+public final class GMatrixTransactionIds
+{
+  private static final int COUNTER_BITS = 20;
+
+  private GMatrixTransactionIds()
+  {
+
+  }
+
+  /**
+   * Determine the first message ID that a store should assign, given the
+   * current time and the highest ID that the store has seen. IDs assigned
+   * from this point onwards will not collide with any ID assigned by an
+   * earlier instance of the store, as long as the earlier instance did
+   * not assign more than {@code 2^20} IDs per millisecond on average.
+   *
+   * @param timeMillis The current time in milliseconds since the epoch
+   * @param idHighest  The highest ID that the store has seen
+   *
+   * @return The first ID to assign
+   */
+
+  public static long firstId(
+    final long timeMillis,
+    final long idHighest)
+  {
+    return Math.max(idHighest + 1L, timeMillis << COUNTER_BITS);
+  }
+
+  /**
+   * Determine the transaction ID for a message sent on its own.
+   *
+   * @param id The message ID
+   *
+   * @return The transaction ID
+   */
+
+  public static String transactionIdFor(
+    final long id)
+  {
+    return "g%016x".formatted(Long.valueOf(id));
+  }
+
+  /**
+   * Determine the transaction ID for a message, or for a batch of messages
+   * combined into one Matrix message. The transaction ID depends only on
+   * the set of message IDs, and not on their order.
+   *
+   * @param messages The messages
+   *
+   * @return The transaction ID
+   */
+
+  public static String transactionIdFor(
+    final List<GMatrixQueuedMessage> messages)
+  {
+    if (messages.isEmpty()) {
+      throw new IllegalArgumentException("At least one message is required.");
+    }
+
+    final var ids =
+      messages.stream()
+        .mapToLong(GMatrixQueuedMessage::id)
+        .sorted()
+        .toArray();
+
+    if (ids.length == 1) {
+      return transactionIdFor(ids[0]);
+    }
+
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    final var buffer = ByteBuffer.allocate(Long.BYTES);
+    for (final var id : ids) {
+      buffer.clear();
+      buffer.putLong(id);
+      digest.update(buffer.array());
+    }
+
+    final var hash = HexFormat.of().formatHex(digest.digest(), 0, 8);
+    return "g%016x.%s".formatted(Long.valueOf(ids[0]), hash);
+  }
+}
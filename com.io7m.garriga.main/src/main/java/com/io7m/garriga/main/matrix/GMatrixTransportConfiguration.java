@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.matrix;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The configuration of the HTTP transport used to talk to the Matrix
+ * server.
+ *
+ * @param preferHTTP2          {@code true} if HTTP/2 should be negotiated
+ *                             where the server supports it
+ * @param executorThreads      The number of threads dedicated to the HTTP
+ *                             client
+ * @param warmUp               {@code true} if a connection to the server
+ *                             should be established at startup, before
+ *                             any messages need to be sent
+ * @param keepAliveIntervalSeconds The idle time after which a request is
+ *                             made to keep the connection open, or
+ *                             {@code 0} to allow idle connections to close
+ */
+
+@JsonDeserialize
+@JsonSerialize
+public record GMatrixTransportConfiguration(
+  @JsonProperty(required = true, value = "PreferHTTP2")
+  boolean preferHTTP2,
+  @JsonProperty(required = true, value = "ExecutorThreads")
+  int executorThreads,
+  @JsonProperty(required = true, value = "WarmUp")
+  boolean warmUp,
+  @JsonProperty(required = true, value = "KeepAliveIntervalSeconds")
+  long keepAliveIntervalSeconds)
+{
+  /**
+   * The configuration of the HTTP transport used to talk to the Matrix
+   * server.
+   *
+   * @param preferHTTP2          {@code true} if HTTP/2 should be negotiated
+   *                             where the server supports it
+   * @param executorThreads      The number of threads dedicated to the HTTP
+   *                             client
+   * @param warmUp               {@code true} if a connection to the server
+   *                             should be established at startup, before
+   *                             any messages need to be sent
+   * @param keepAliveIntervalSeconds The idle time after which a request is
+   *                             made to keep the connection open, or
+   *                             {@code 0} to allow idle connections to close
+   */
+
+  public GMatrixTransportConfiguration
+  {
+    if (executorThreads < 1) {
+      throw new IllegalArgumentException(
+        "Executor threads %d must be positive"
+          .formatted(Integer.valueOf(executorThreads))
+      );
+    }
+    if (keepAliveIntervalSeconds < 0L) {
+      throw new IllegalArgumentException(
+        "Keep-alive interval %d must be non-negative"
+          .formatted(Long.valueOf(keepAliveIntervalSeconds))
+      );
+    }
+  }
+
+  /**
+   * The default keep-alive interval is slightly shorter than the default
+   * idle timeout of pooled connections in the JDK HTTP client.
+   *
+   * @return The default transport configuration
+   */
+
+  public static GMatrixTransportConfiguration defaults()
+  {
+    return new GMatrixTransportConfiguration(true, 2, true, 25L);
+  }
+
+  /**
+   * @return The HTTP version to request
+   */
+
+  public HttpClient.Version version()
+  {
+    if (this.preferHTTP2) {
+      return HttpClient.Version.HTTP_2;
+    }
+    return HttpClient.Version.HTTP_1_1;
+  }
+
+  /**
+   * @return The keep-alive interval, if keep-alive requests are enabled
+   */
+
+  public Optional<Duration> keepAliveInterval()
+  {
+    if (this.keepAliveIntervalSeconds == 0L) {
+      return Optional.empty();
+    }
+    return Optional.of(
+      Duration.ofSeconds(this.keepAliveIntervalSeconds)
+    );
+  }
+}
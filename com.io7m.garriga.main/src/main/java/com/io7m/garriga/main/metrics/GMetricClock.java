@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.metrics;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Wall clock times used to measure latencies that begin outside the
+ * server (such as the time an alert started) or that must survive a
+ * restart (such as the time a queued message was received). Times are
+ * given in nanoseconds since the Unix epoch, and {@code 0} denotes an
+ * unknown time.
+ */
+
+public final class GMetricClock
+{
+  private GMetricClock()
+  {
+
+  }
+
+  /**
+   * @return The current time in nanoseconds since the epoch
+   */
+
+  public static long now()
+  {
+    return ofInstant(Instant.now());
+  }
+
+  /**
+   * Convert the given time to nanoseconds since the epoch.
+   *
+   * @param time The time
+   *
+   * @return The time, or {@code 0} if the time is not representable
+   */
+
+  public static long ofInstant(
+    final Instant time)
+  {
+    Objects.requireNonNull(time, "time");
+
+    try {
+      return Math.addExact(
+        Math.multiplyExact(time.getEpochSecond(), 1_000_000_000L),
+        time.getNano()
+      );
+    } catch (final ArithmeticException e) {
+      return 0L;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing counter. Increments never block, and
+ * contended increments are spread across cells rather than retried.
+ */
+
+public final class GMetricCounter
+{
+  private final LongAdder value;
+
+  GMetricCounter()
+  {
+    this.value = new LongAdder();
+  }
+
+  /**
+   * Increment the counter by one.
+   */
+
+  public void increment()
+  {
+    this.value.increment();
+  }
+
+  /**
+   * Increment the counter.
+   *
+   * @param amount The amount, which must not be negative
+   */
+
+  public void add(
+    final long amount)
+  {
+    if (amount < 0L) {
+      throw new IllegalArgumentException(
+        "Amount %d must be non-negative".formatted(Long.valueOf(amount))
+      );
+    }
+    this.value.add(amount);
+  }
+
+  /**
+   * @return The current value
+   */
+
+  public long get()
+  {
+    return this.value.sum();
+  }
+}
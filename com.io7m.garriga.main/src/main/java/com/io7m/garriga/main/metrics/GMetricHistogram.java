@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.metrics;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram with fixed bucket boundaries. Each bucket is a separate
+ * striped counter, so observations never block; bucket counts are only
+ * accumulated when the histogram is read.
+ */
+
+public final class GMetricHistogram
+{
+  /**
+   * Bucket boundaries, in seconds, suitable for request latencies.
+   */
+
+  public static final double[] LATENCY_BUCKETS = {
+    0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0, 30.0,
+  };
+
+  private final double[] bounds;
+  private final LongAdder[] counts;
+  private final DoubleAdder sum;
+
+  GMetricHistogram(
+    final double[] inBounds)
+  {
+    Objects.requireNonNull(inBounds, "bounds");
+
+    for (int index = 1; index < inBounds.length; ++index) {
+      if (!(inBounds[index - 1] < inBounds[index])) {
+        throw new IllegalArgumentException(
+          "Bucket bounds must be strictly increasing");
+      }
+    }
+
+    this.bounds = inBounds.clone();
+    this.counts = new LongAdder[inBounds.length + 1];
+    for (int index = 0; index < this.counts.length; ++index) {
+      this.counts[index] = new LongAdder();
+    }
+    this.sum = new DoubleAdder();
+  }
+
+  /**
+   * Record an observation.
+   *
+   * @param value The observed value
+   */
+
+  public void observe(
+    final double value)
+  {
+    var index = Arrays.binarySearch(this.bounds, value);
+    if (index < 0) {
+      index = -(index + 1);
+    }
+    this.counts[index].increment();
+    this.sum.add(value);
+  }
+
+  /**
+   * Record an observed duration, in seconds.
+   *
+   * @param nanos The duration in nanoseconds
+   */
+
+  public void observeNanos(
+    final long nanos)
+  {
+    this.observe(nanos / 1_000_000_000.0);
+  }
+
+  /**
+   * Record an observed duration, in seconds.
+   *
+   * @param duration The duration
+   */
+
+  public void observe(
+    final Duration duration)
+  {
+    this.observeNanos(duration.toNanos());
+  }
+
+  /**
+   * @return The upper bounds of the buckets, excluding the final
+   * unbounded bucket
+   */
+
+  public double[] bounds()
+  {
+    return this.bounds.clone();
+  }
+
+  /**
+   * @return The cumulative count of each bucket, including the final
+   * unbounded bucket
+   */
+
+  public long[] cumulativeCounts()
+  {
+    final var result = new long[this.counts.length];
+    var total = 0L;
+    for (int index = 0; index < this.counts.length; ++index) {
+      total += this.counts[index].sum();
+      result[index] = total;
+    }
+    return result;
+  }
+
+  /**
+   * @return The sum of the observed values
+   */
+
+  public double sum()
+  {
+    return this.sum.sum();
+  }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.metrics;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A latency recorder with bounded relative error, in the style of
+ * HdrHistogram. Values are recorded with microsecond resolution into
+ * buckets whose width grows with the magnitude of the value, so that any
+ * reported value is within 1% of a recorded value regardless of whether
+ * it is a few microseconds or several days. Recording never blocks, and
+ * the recorder occupies a fixed amount of memory.
+ *
+ * Quantiles describe recent values only, so that they reflect the current
+ * behaviour of the server rather than its entire lifetime. Values are
+ * recorded into a ring of {@link #WINDOWS} windows of
+ * {@link #WINDOW_DURATION} each, the oldest of which is cleared and reused
+ * as each window elapses, and quantiles are computed over the windows
+ * that have not yet been reused. The count and sum of values (and the
+ * maximum) cover the lifetime of the recorder.
+ */
+
+public final class GMetricLatency
+{
+  /**
+   * The quantiles reported by default.
+   */
+
+  public static final double[] QUANTILES = {
+    0.5, 0.9, 0.99, 0.999, 1.0,
+  };
+
+  /*
+   * Values below 2^SUB_BITS are counted exactly. Above that, each power of
+   * two is divided into 2^(SUB_BITS - 1) equal buckets, which bounds the
+   * relative error at 1/128.
+   */
+
+  /**
+   * The number of windows over which quantiles are computed.
+   */
+
+  public static final int WINDOWS = 5;
+
+  /**
+   * The duration of each window.
+   */
+
+  public static final Duration WINDOW_DURATION = Duration.ofMinutes(2L);
+
+  private static final long WINDOW_NANOS = WINDOW_DURATION.toNanos();
+  private static final int SUB_BITS = 8;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int SUB_HALF = SUB_COUNT >>> 1;
+  private static final long VALUE_MAXIMUM = (1L << 62) - 1L;
+  private static final int BUCKETS =
+    SUB_COUNT + ((62 - SUB_BITS) * SUB_HALF);
+
+  private final LongSupplier clock;
+  private final long timeOrigin;
+  private final Window[] windows;
+  private final LongAdder count;
+  private final LongAdder sum;
+  private final AtomicLong maximum;
+
+  private static final class Window
+  {
+    private final AtomicLongArray counts;
+    private final AtomicLong maximum;
+    private volatile long period;
+
+    Window()
+    {
+      this.counts = new AtomicLongArray(BUCKETS);
+      this.maximum = new AtomicLong();
+      this.period = -1L;
+    }
+  }
+
+  GMetricLatency(
+    final LongSupplier inClock)
+  {
+    this.clock = Objects.requireNonNull(inClock, "clock");
+    this.timeOrigin = inClock.getAsLong();
+    this.windows = new Window[WINDOWS];
+    for (int index = 0; index < WINDOWS; ++index) {
+      this.windows[index] = new Window();
+    }
+    this.count = new LongAdder();
+    this.sum = new LongAdder();
+    this.maximum = new AtomicLong();
+  }
+
+  /**
+   * Create a latency recorder that is not registered with any metrics.
+   *
+   * @param clock A monotonic clock returning nanoseconds
+   *
+   * @return The recorder
+   */
+
+  public static GMetricLatency createWithClock(
+    final LongSupplier clock)
+  {
+    return new GMetricLatency(clock);
+  }
+
+  private long period()
+  {
+    return (this.clock.getAsLong() - this.timeOrigin) / WINDOW_NANOS;
+  }
+
+  /*
+   * A window is cleared by the first caller to notice that it belongs to
+   * an earlier period. A value recorded concurrently with the clearing
+   * may be lost or counted in the new period, which is harmless for the
+   * purposes of computing quantiles.
+   */
+
+  private Window windowFor(
+    final long period)
+  {
+    final var window = this.windows[(int) (period % WINDOWS)];
+    if (window.period != period) {
+      synchronized (window) {
+        if (window.period != period) {
+          for (int index = 0; index < BUCKETS; ++index) {
+            window.counts.set(index, 0L);
+          }
+          window.maximum.set(0L);
+          window.period = period;
+        }
+      }
+    }
+    return window;
+  }
+
+  static int indexOf(
+    final long micros)
+  {
+    if (micros < SUB_COUNT) {
+      return (int) micros;
+    }
+
+    final var exponent = 63 - Long.numberOfLeadingZeros(micros);
+    final var shift = exponent - (SUB_BITS - 1);
+    final var sub = (int) (micros >>> shift) - SUB_HALF;
+    return SUB_COUNT + ((shift - 1) * SUB_HALF) + sub;
+  }
+
+  static long highestEquivalentOf(
+    final int index)
+  {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+
+    final var k = index - SUB_COUNT;
+    final var shift = (k / SUB_HALF) + 1;
+    final long sub = (k % SUB_HALF) + SUB_HALF;
+    return ((sub + 1L) << shift) - 1L;
+  }
+
+  /**
+   * Record a latency. Negative values (which can only be caused by clocks
+   * that disagree) are recorded as zero.
+   *
+   * @param nanos The latency in nanoseconds
+   */
+
+  public void recordNanos(
+    final long nanos)
+  {
+    final var clamped = Math.max(0L, nanos);
+    final var micros = Math.min(VALUE_MAXIMUM, clamped / 1_000L);
+
+    final var window = this.windowFor(this.period());
+    window.counts.incrementAndGet(indexOf(micros));
+    window.maximum.accumulateAndGet(clamped, Math::max);
+    this.count.increment();
+    this.sum.add(clamped);
+    this.maximum.accumulateAndGet(clamped, Math::max);
+  }
+
+  /**
+   * Record a latency.
+   *
+   * @param duration The latency
+   */
+
+  public void record(
+    final Duration duration)
+  {
+    Objects.requireNonNull(duration, "duration");
+    this.recordNanos(duration.toNanos());
+  }
+
+  /**
+   * @return The number of recorded values
+   */
+
+  public long count()
+  {
+    return this.count.sum();
+  }
+
+  /**
+   * @return The sum of the recorded values in nanoseconds
+   */
+
+  public long sumNanos()
+  {
+    return this.sum.sum();
+  }
+
+  /**
+   * @return The largest recorded value in nanoseconds
+   */
+
+  public long maximumNanos()
+  {
+    return this.maximum.get();
+  }
+
+  /**
+   * Determine the value at the given quantile of the recent values.
+   *
+   * @param quantile The quantile in the range {@code [0, 1]}
+   *
+   * @return The value in nanoseconds, or {@code 0} if nothing has been
+   * recorded recently
+   */
+
+  public long quantileNanos(
+    final double quantile)
+  {
+    return this.quantilesNanos(new double[]{quantile})[0];
+  }
+
+  /**
+   * Determine the values at the given quantiles of the recent values. All
+   * values are computed from the same snapshot of the recorder.
+   *
+   * @param quantiles The quantiles in the range {@code [0, 1]}, in
+   *                  increasing order
+   *
+   * @return The values in nanoseconds
+   */
+
+  public long[] quantilesNanos(
+    final double[] quantiles)
+  {
+    Objects.requireNonNull(quantiles, "quantiles");
+
+    final var period = this.period();
+    final var snapshot = new long[BUCKETS];
+    var total = 0L;
+    var maximumNanos = 0L;
+    for (final var window : this.windows) {
+      final var age = period - window.period;
+      if (age < 0L || age >= WINDOWS) {
+        continue;
+      }
+      for (int index = 0; index < BUCKETS; ++index) {
+        final var c = window.counts.get(index);
+        snapshot[index] += c;
+        total += c;
+      }
+      maximumNanos = Math.max(maximumNanos, window.maximum.get());
+    }
+
+    final var results = new long[quantiles.length];
+    if (total == 0L) {
+      return results;
+    }
+
+    final var maximumMicros = maximumNanos / 1_000L;
+    var index = 0;
+    var seen = snapshot[0];
+    for (int q = 0; q < quantiles.length; ++q) {
+      final var quantile = quantiles[q];
+      if (!(quantile >= 0.0 && quantile <= 1.0)) {
+        throw new IllegalArgumentException(
+          "Quantile %s must be in the range [0, 1]"
+            .formatted(Double.valueOf(quantile)));
+      }
+
+      final var target =
+        Math.max(1L, (long) Math.ceil(quantile * total));
+      while (seen < target && index < BUCKETS - 1) {
+        ++index;
+        seen += snapshot[index];
+      }
+
+      final var micros =
+        Math.min(highestEquivalentOf(index), maximumMicros);
+      results[q] = micros * 1_000L;
+    }
+    return results;
+  }
+}
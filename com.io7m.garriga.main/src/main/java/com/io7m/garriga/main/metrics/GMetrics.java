@@ -0,0 +1,502 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.main.metrics;
+
+import com.io7m.repetoir.core.RPServiceType;
+
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * A registry of metrics, exposed in the Prometheus text format. Metrics are
+ * registered once, when the component that updates them is created;
+ * updating a metric never touches the registry, and so never takes a lock.
+ */
+
+public final class GMetrics implements RPServiceType
+{
+  private static final Pattern VALID_NAME =
+    Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+  private static final Pattern VALID_LABEL =
+    Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+  private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+  private final LinkedHashMap<String, Family> families;
+
+  private enum Type
+  {
+    COUNTER("counter"),
+    GAUGE("gauge"),
+    HISTOGRAM("histogram"),
+    SUMMARY("summary");
+
+    private final String text;
+
+    Type(
+      final String inText)
+    {
+      this.text = inText;
+    }
+  }
+
+  private sealed interface SampleType
+  {
+
+  }
+
+  private record Counter(GMetricCounter counter)
+    implements SampleType
+  {
+
+  }
+
+  private record CounterFunction(LongSupplier supplier)
+    implements SampleType
+  {
+
+  }
+
+  private record Gauge(DoubleSupplier supplier)
+    implements SampleType
+  {
+
+  }
+
+  private record Histogram(GMetricHistogram histogram)
+    implements SampleType
+  {
+
+  }
+
+  private record Latency(GMetricLatency latency)
+    implements SampleType
+  {
+
+  }
+
+  /*
+   * Series are keyed by their rendered label set (such as
+   * {@code room="#a:example.com"}), which is computed once at
+   * registration.
+   */
+
+  private record Family(
+    String name,
+    String help,
+    Type type,
+    LinkedHashMap<String, SampleType> series)
+  {
+
+  }
+
+  private GMetrics()
+  {
+    this.families = new LinkedHashMap<>();
+  }
+
+  /**
+   * Create an empty registry.
+   *
+   * @return A registry
+   */
+
+  public static GMetrics create()
+  {
+    return new GMetrics();
+  }
+
+  /**
+   * Register a counter, or return the existing counter with the same name
+   * and labels.
+   *
+   * @param name   The metric name
+   * @param help   The metric description
+   * @param labels Alternating label names and values
+   *
+   * @return The counter
+   */
+
+  public GMetricCounter counter(
+    final String name,
+    final String help,
+    final String... labels)
+  {
+    final var sample =
+      this.register(name, help, Type.COUNTER, labels, false, () -> {
+        return new Counter(new GMetricCounter());
+      });
+
+    if (sample instanceof final Counter counter) {
+      return counter.counter;
+    }
+    throw new IllegalArgumentException(
+      "Metric %s is not a plain counter".formatted(name));
+  }
+
+  /**
+   * Register a counter whose value is read from the given function when
+   * the metrics are collected, replacing any existing series with the same
+   * name and labels.
+   *
+   * @param name     The metric name
+   * @param help     The metric description
+   * @param supplier The value supplier
+   * @param labels   Alternating label names and values
+   */
+
+  public void counterFunction(
+    final String name,
+    final String help,
+    final LongSupplier supplier,
+    final String... labels)
+  {
+    Objects.requireNonNull(supplier, "supplier");
+    this.register(name, help, Type.COUNTER, labels, true, () -> {
+      return new CounterFunction(supplier);
+    });
+  }
+
+  /**
+   * Register a gauge whose value is read from the given function when the
+   * metrics are collected, replacing any existing series with the same
+   * name and labels.
+   *
+   * @param name     The metric name
+   * @param help     The metric description
+   * @param supplier The value supplier
+   * @param labels   Alternating label names and values
+   */
+
+  public void gauge(
+    final String name,
+    final String help,
+    final DoubleSupplier supplier,
+    final String... labels)
+  {
+    Objects.requireNonNull(supplier, "supplier");
+    this.register(name, help, Type.GAUGE, labels, true, () -> {
+      return new Gauge(supplier);
+    });
+  }
+
+  /**
+   * Register a histogram, or return the existing histogram with the same
+   * name and labels.
+   *
+   * @param name   The metric name
+   * @param help   The metric description
+   * @param bounds The bucket upper bounds, in increasing order
+   * @param labels Alternating label names and values
+   *
+   * @return The histogram
+   */
+
+  public GMetricHistogram histogram(
+    final String name,
+    final String help,
+    final double[] bounds,
+    final String... labels)
+  {
+    final var sample =
+      this.register(name, help, Type.HISTOGRAM, labels, false, () -> {
+        return new Histogram(new GMetricHistogram(bounds));
+      });
+    return ((Histogram) sample).histogram;
+  }
+
+  /**
+   * Register a latency recorder, or return the existing recorder with the
+   * same name and labels. Latencies are exposed as a summary with the
+   * quantiles given in {@link GMetricLatency#QUANTILES}, in seconds,
+   * computed over recent values.
+   *
+   * @param name   The metric name
+   * @param help   The metric description
+   * @param labels Alternating label names and values
+   *
+   * @return The recorder
+   */
+
+  public GMetricLatency latency(
+    final String name,
+    final String help,
+    final String... labels)
+  {
+    final var sample =
+      this.register(name, help, Type.SUMMARY, labels, false, () -> {
+        return new Latency(new GMetricLatency(System::nanoTime));
+      });
+    return ((Latency) sample).latency;
+  }
+
+  private synchronized SampleType register(
+    final String name,
+    final String help,
+    final Type type,
+    final String[] labels,
+    final boolean replace,
+    final Supplier<SampleType> creator)
+  {
+    Objects.requireNonNull(name, "name");
+    Objects.requireNonNull(help, "help");
+
+    if (!VALID_NAME.matcher(name).matches()) {
+      throw new IllegalArgumentException(
+        "Invalid metric name: %s".formatted(name));
+    }
+
+    final var family =
+      this.families.computeIfAbsent(
+        name,
+        k -> new Family(name, help, type, new LinkedHashMap<>())
+      );
+
+    if (family.type != type) {
+      throw new IllegalArgumentException(
+        "Metric %s is already registered as a %s"
+          .formatted(name, family.type.text)
+      );
+    }
+
+    final var key = renderLabels(labels);
+    if (!replace) {
+      final var existing = family.series.get(key);
+      if (existing != null) {
+        return existing;
+      }
+    }
+
+    final var sample = creator.get();
+    family.series.put(key, sample);
+    return sample;
+  }
+
+  private static String renderLabels(
+    final String[] labels)
+  {
+    Objects.requireNonNull(labels, "labels");
+
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException(
+        "Labels must be given as name/value pairs");
+    }
+
+    final var text = new StringBuilder();
+    for (int index = 0; index < labels.length; index += 2) {
+      final var name = labels[index];
+      final var value = labels[index + 1];
+      if (!VALID_LABEL.matcher(name).matches()
+          || "le".equals(name)
+          || "quantile".equals(name)) {
+        throw new IllegalArgumentException(
+          "Invalid label name: %s".formatted(name));
+      }
+      if (index > 0) {
+        text.append(',');
+      }
+      text.append(name);
+      text.append("=\"");
+      escapeLabelValue(text, value);
+      text.append('"');
+    }
+    return text.toString();
+  }
+
+  private static void escapeLabelValue(
+    final StringBuilder text,
+    final String value)
+  {
+    for (int index = 0; index < value.length(); ++index) {
+      final var c = value.charAt(index);
+      switch (c) {
+        case '\\' -> text.append("\\\\");
+        case '"' -> text.append("\\\"");
+        case '\n' -> text.append("\\n");
+        default -> text.append(c);
+      }
+    }
+  }
+
+  /**
+   * @return The current values of all metrics, in the Prometheus text
+   * exposition format (version 0.0.4)
+   */
+
+  public synchronized String text()
+  {
+    final var text = new StringBuilder(4096);
+    for (final var family : this.families.values()) {
+      text.append("# HELP ");
+      text.append(family.name);
+      text.append(' ');
+      text.append(family.help.replace("\\", "\\\\").replace("\n", "\\n"));
+      text.append('\n');
+      text.append("# TYPE ");
+      text.append(family.name);
+      text.append(' ');
+      text.append(family.type.text);
+      text.append('\n');
+
+      for (final var entry : family.series.entrySet()) {
+        writeSeries(text, family.name, entry.getKey(), entry.getValue());
+      }
+    }
+    return text.toString();
+  }
+
+  private static void writeSeries(
+    final StringBuilder text,
+    final String name,
+    final String labels,
+    final SampleType sample)
+  {
+    switch (sample) {
+      case final Counter c -> {
+        writeSample(text, name, labels, Long.toString(c.counter.get()));
+      }
+      case final CounterFunction c -> {
+        writeSample(text, name, labels, Long.toString(c.supplier.getAsLong()));
+      }
+      case final Gauge g -> {
+        writeSample(text, name, labels, formatDouble(g.supplier.getAsDouble()));
+      }
+      case final Histogram h -> {
+        writeHistogram(text, name, labels, h.histogram);
+      }
+      case final Latency l -> {
+        writeSummary(text, name, labels, l.latency);
+      }
+    }
+  }
+
+  private static void writeSummary(
+    final StringBuilder text,
+    final String name,
+    final String labels,
+    final GMetricLatency latency)
+  {
+    final var quantiles = GMetricLatency.QUANTILES;
+    final var values = latency.quantilesNanos(quantiles);
+    final var prefix = labels.isEmpty() ? "" : labels + ",";
+
+    for (int index = 0; index < quantiles.length; ++index) {
+      writeSample(
+        text,
+        name,
+        "%squantile=\"%s\"".formatted(prefix, formatDouble(quantiles[index])),
+        formatDouble(values[index] / NANOS_PER_SECOND)
+      );
+    }
+
+    writeSample(
+      text,
+      name + "_sum",
+      labels,
+      formatDouble(latency.sumNanos() / NANOS_PER_SECOND)
+    );
+    writeSample(
+      text,
+      name + "_count",
+      labels,
+      Long.toString(latency.count())
+    );
+  }
+
+  private static void writeHistogram(
+    final StringBuilder text,
+    final String name,
+    final String labels,
+    final GMetricHistogram histogram)
+  {
+    final var bounds = histogram.bounds();
+    final var counts = histogram.cumulativeCounts();
+    final var prefix = labels.isEmpty() ? "" : labels + ",";
+
+    for (int index = 0; index < counts.length; ++index) {
+      final var bound =
+        index < bounds.length ? formatDouble(bounds[index]) : "+Inf";
+      writeSample(
+        text,
+        name + "_bucket",
+        "%sle=\"%s\"".formatted(prefix, bound),
+        Long.toString(counts[index])
+      );
+    }
+
+    writeSample(
+      text,
+      name + "_sum",
+      labels,
+      formatDouble(histogram.sum())
+    );
+    writeSample(
+      text,
+      name + "_count",
+      labels,
+      Long.toString(counts[counts.length - 1])
+    );
+  }
+
+  private static void writeSample(
+    final StringBuilder text,
+    final String name,
+    final String labels,
+    final String value)
+  {
+    text.append(name);
+    if (!labels.isEmpty()) {
+      text.append('{');
+      text.append(labels);
+      text.append('}');
+    }
+    text.append(' ');
+    text.append(value);
+    text.append('\n');
+  }
+
+  private static String formatDouble(
+    final double value)
+  {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    }
+    if (Double.isInfinite(value)) {
+      return value > 0.0 ? "+Inf" : "-Inf";
+    }
+    return Double.toString(value);
+  }
+
+  @Override
+  public String description()
+  {
+    return "Metrics service.";
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[%s 0x%s]".formatted(
+      this.getClass().getSimpleName(),
+      Integer.toUnsignedString(this.hashCode(), 16)
+    );
+  }
+}
@@ -18,8 +18,11 @@
 package com.io7m.garriga.main.server;
 
 import com.io7m.garriga.main.http.GHTTPServer;
+import com.io7m.garriga.main.jfr.GFlightRecorder;
+import com.io7m.garriga.main.matrix.GMatrixRouter;
 import com.io7m.garriga.main.matrix.GMatrixService;
 import com.io7m.garriga.main.matrix.GMatrixServiceType;
+import com.io7m.garriga.main.metrics.GMetrics;
 import com.io7m.repetoir.core.RPServiceDirectory;
 import com.io7m.repetoir.core.RPServiceDirectoryWritableType;
 
@@ -76,10 +79,29 @@ public final class GServer implements AutoCloseable
   {
     if (this.closed.compareAndSet(true, false)) {
       this.services = new RPServiceDirectory();
+
+      final var metrics = GMetrics.create();
+      this.services.register(GMetrics.class, metrics);
+
+      final var admin =
+        this.configuration.httpServerConfiguration().admin();
+      this.services.register(
+        GFlightRecorder.class,
+        GFlightRecorder.create(
+          admin.recordingMaximumAge(),
+          admin.recordingMaximumSize()
+        )
+      );
+
+      this.services.register(
+        GMatrixRouter.class,
+        GMatrixRouter.create(this.configuration.matrixConfiguration())
+      );
       this.services.register(
         GMatrixServiceType.class,
         GMatrixService.create(
-          this.configuration.matrixConfiguration()
+          this.configuration.matrixConfiguration(),
+          metrics
         )
       );
       this.services.register(
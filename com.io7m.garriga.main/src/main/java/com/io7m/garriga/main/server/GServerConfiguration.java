@@ -24,8 +24,29 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.io7m.dixmont.core.DmJsonRestrictedDeserializers;
+import com.io7m.garriga.main.http.GAdminConfiguration;
+import com.io7m.garriga.main.http.GDeduplicationConfiguration;
 import com.io7m.garriga.main.http.GHTTPServerConfiguration;
+import com.io7m.garriga.main.http.GIngestConfiguration;
+import com.io7m.garriga.main.http.GRenderCacheConfiguration;
+import com.io7m.garriga.main.http.GRequestLimitsConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixBatchingConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixEditingConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixLabelMatchOperator;
+import com.io7m.garriga.main.matrix.GMatrixLabelMatcherConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixOverflowPolicy;
+import com.io7m.garriga.main.matrix.GMatrixPersistenceConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixPipeliningConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixPriority;
+import com.io7m.garriga.main.matrix.GMatrixPriorityConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixQueueLimitsConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixRateLimitConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixRetryConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixRouteConfiguration;
 import com.io7m.garriga.main.matrix.GMatrixServiceConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixSupersedingConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixTimeoutConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixTransportConfiguration;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -96,9 +117,40 @@ public record GServerConfiguration(
       DmJsonRestrictedDeserializers.builder()
         .allowClass(GServerConfiguration.class)
         .allowClass(GHTTPServerConfiguration.class)
+        .allowClass(GDeduplicationConfiguration.class)
+        .allowClass(GIngestConfiguration.class)
+        .allowClass(GRequestLimitsConfiguration.class)
+        .allowClass(GRenderCacheConfiguration.class)
+        .allowClass(GAdminConfiguration.class)
         .allowClass(GMatrixServiceConfiguration.class)
+        .allowClass(GMatrixRateLimitConfiguration.class)
+        .allowClass(GMatrixBatchingConfiguration.class)
+        .allowClass(GMatrixPersistenceConfiguration.class)
+        .allowClass(GMatrixQueueLimitsConfiguration.class)
+        .allowClass(GMatrixOverflowPolicy.class)
+        .allowClass(GMatrixRetryConfiguration.class)
+        .allowClass(GMatrixPipeliningConfiguration.class)
+        .allowClass(GMatrixTimeoutConfiguration.class)
+        .allowClass(GMatrixTransportConfiguration.class)
+        .allowClass(GMatrixEditingConfiguration.class)
+        .allowClass(GMatrixRouteConfiguration.class)
+        .allowClass(GMatrixLabelMatcherConfiguration.class)
+        .allowClass(GMatrixLabelMatchOperator.class)
+        .allowClass(GMatrixPriorityConfiguration.class)
+        .allowClass(GMatrixPriority.class)
+        .allowClass(GMatrixSupersedingConfiguration.class)
+        .allowClassName(
+          "java.util.List<com.io7m.garriga.main.matrix.GMatrixRouteConfiguration>")
+        .allowClassName(
+          "java.util.List<com.io7m.garriga.main.matrix.GMatrixLabelMatcherConfiguration>")
+        .allowClassName(
+          "java.util.Map<java.lang.String,com.io7m.garriga.main.matrix.GMatrixPriority>")
         .allowClass(URI.class)
         .allowClass(int.class)
+        .allowClass(long.class)
+        .allowClass(Long.class)
+        .allowClass(double.class)
+        .allowClass(boolean.class)
         .allowClass(String.class)
         .build();
 
@@ -23,6 +23,7 @@ module com.io7m.garriga.main
   requires static org.osgi.annotation.versioning;
   requires static org.osgi.annotation.bundle;
 
+  requires com.fasterxml.jackson.core;
   requires com.fasterxml.jackson.databind;
   requires com.io7m.dixmont.core;
   requires com.io7m.quarrel.core;
@@ -30,6 +31,7 @@ module com.io7m.garriga.main
   requires com.io7m.repetoir.core;
   requires io.helidon.webserver;
   requires java.net.http;
+  requires jdk.jfr;
   requires jul.to.slf4j;
   requires org.apache.commons.text;
   requires org.slf4j;
@@ -49,4 +51,8 @@ module com.io7m.garriga.main
     to com.io7m.garriga.tests;
   exports com.io7m.garriga.main.http
     to com.io7m.garriga.tests;
+  exports com.io7m.garriga.main.jfr
+    to com.io7m.garriga.tests;
+  exports com.io7m.garriga.main.metrics
+    to com.io7m.garriga.tests;
 }
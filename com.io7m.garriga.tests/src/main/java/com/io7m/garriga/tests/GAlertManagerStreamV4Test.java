@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.http.GAlertManagerStreamV4;
+import com.io7m.garriga.main.http.GMessageV4ObjectMappers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GAlertManagerStreamV4Test
+{
+  private static final String ALERT = """
+    {
+      "status": "firing",
+      "labels": { "alertname": "A%1$s" },
+      "annotations": {},
+      "startsAt": "2024-06-13T17:06:10.763Z",
+      "endsAt": "0001-01-01T00:00:00Z",
+      "generatorURL": "/graph",
+      "fingerprint": "%1$s"
+    }
+    """;
+
+  private GAlertManagerStreamV4 reader;
+  private List<String> received;
+
+  private static InputStream resource(
+    final String name)
+    throws IOException
+  {
+    final var path =
+      "/com/io7m/garriga/tests/%s".formatted(name);
+    final var url =
+      GAlertManagerStreamV4Test.class.getResource(path);
+
+    return url.openStream();
+  }
+
+  private static InputStream text(
+    final String text)
+  {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @BeforeEach
+  public void setup()
+  {
+    this.reader =
+      GAlertManagerStreamV4.create(GMessageV4ObjectMappers.createMapper());
+    this.received =
+      new ArrayList<>();
+  }
+
+  /*
+   * A message with the fields in the order in which AlertManager writes
+   * them, omitting the named field.
+   */
+
+  private static String message(
+    final String omitted,
+    final String alerts)
+  {
+    final var fields = new LinkedHashMap<String, String>();
+    fields.put("receiver", "\"r\"");
+    fields.put("status", "\"firing\"");
+    fields.put("alerts", "[ %s ]".formatted(alerts));
+    fields.put("groupLabels", "{}");
+    fields.put("commonLabels", "{}");
+    fields.put("commonAnnotations", "{}");
+    fields.put("externalURL", "\"http://localhost\"");
+    fields.put("version", "\"4\"");
+    fields.put("groupKey", "\"g\"");
+    fields.put("truncatedAlerts", "0");
+    fields.remove(omitted);
+
+    final var text = new StringBuilder();
+    text.append("{");
+    for (final var entry : fields.entrySet()) {
+      if (text.length() > 1) {
+        text.append(", ");
+      }
+      text.append("\"%s\": %s".formatted(entry.getKey(), entry.getValue()));
+    }
+    text.append("}");
+    return text.toString();
+  }
+
+  private int read(
+    final String json)
+    throws IOException
+  {
+    return this.reader.read(text(json), (receiver, alert) -> {
+      this.received.add(receiver + " " + alert.fingerprint());
+    });
+  }
+
+  @Test
+  public void testMessage()
+    throws Exception
+  {
+    try (var stream = resource("msg-0.json")) {
+      final var count =
+        this.reader.read(stream, (receiver, alert) -> {
+          this.received.add(receiver + " " + alert.fingerprint());
+        });
+
+      assertEquals(2, count);
+    }
+
+    assertEquals(
+      List.of(
+        "matrix-webhook 530731b28264424f",
+        "matrix-webhook 983929006a0177d3"
+      ),
+      this.received
+    );
+  }
+
+  /**
+   * Alerts are passed on as they are read, and so an alert is seen before
+   * a later malformed alert fails.
+   */
+
+  @Test
+  public void testAlertsPassedOnImmediately()
+  {
+    final var json =
+      message("", "%s, { \"status\": 23 }".formatted(ALERT.formatted("x")));
+
+    assertThrows(IOException.class, () -> this.read(json));
+    assertEquals(List.of("r x"), this.received);
+  }
+
+  @Test
+  public void testUnknownFieldsIgnored()
+    throws Exception
+  {
+    final var alerts =
+      "%s, %s".formatted(ALERT.formatted("x"), ALERT.formatted("y"));
+    final var json =
+      message("", alerts)
+        .replaceFirst("\\{", "{ \"extra\": { \"a\": [ 1, { \"b\": null } ] },");
+
+    assertEquals(2, this.read(json));
+    assertEquals(List.of("r x", "r y"), this.received);
+  }
+
+  /**
+   * Integers are accepted as numbers or strings.
+   */
+
+  @Test
+  public void testIntegerForms()
+    throws Exception
+  {
+    final var json =
+      message("", ALERT.formatted("x"))
+        .replace("\"version\": \"4\"", "\"version\": 4")
+        .replace("\"truncatedAlerts\": 0", "\"truncatedAlerts\": \"0\"");
+
+    assertEquals(1, this.read(json));
+  }
+
+  @Test
+  public void testMissingFields()
+  {
+    for (final var field : List.of(
+      "version",
+      "groupKey",
+      "truncatedAlerts",
+      "status",
+      "receiver",
+      "groupLabels",
+      "commonLabels",
+      "commonAnnotations",
+      "externalURL",
+      "alerts")) {
+      final var ex =
+        assertThrows(
+          IOException.class,
+          () -> this.read(message(field, ALERT.formatted("x")))
+        );
+      assertTrue(ex.getMessage().contains(field), ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testWrongTypes()
+  {
+    final var cases = List.of(
+      message("", "").replace("\"version\": \"4\"", "\"version\": \"x\""),
+      message("", "").replace("\"version\": \"4\"", "\"version\": null"),
+      message("", "").replace("\"groupKey\": \"g\"", "\"groupKey\": 23"),
+      message("", "").replace("\"groupLabels\": {}", "\"groupLabels\": []"),
+      message("", "").replace("\"receiver\": \"r\"", "\"receiver\": {}"),
+      message("", "").replace("\"alerts\": [  ]", "\"alerts\": {}")
+    );
+
+    for (final var json : cases) {
+      assertThrows(IOException.class, () -> this.read(json));
+    }
+  }
+
+  @Test
+  public void testNotObject()
+  {
+    assertThrows(IOException.class, () -> this.read("[]"));
+  }
+}
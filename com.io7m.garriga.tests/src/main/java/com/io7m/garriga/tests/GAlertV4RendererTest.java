@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.http.GAlertV4;
+import com.io7m.garriga.main.http.GAlertV4Renderer;
+import org.apache.commons.text.StringEscapeUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class GAlertV4RendererTest
+{
+  private static GAlertV4 alert(
+    final String status,
+    final Map<String, String> labels,
+    final Map<String, String> annotations)
+  {
+    return new GAlertV4(
+      status,
+      labels,
+      annotations,
+      "2024-06-13T17:06:10.763Z",
+      "0001-01-01T00:00:00Z",
+      "/graph",
+      "530731b28264424f"
+    );
+  }
+
+  @Test
+  public void testFiring()
+  {
+    final var rendered =
+      GAlertV4Renderer.render(
+        alert(
+          "firing",
+          Map.of("severity", "critical", "alertname", "HostDown"),
+          Map.of("summary", "Host <x> is down", "a_very_long_annotation", "y")
+        )
+      );
+
+    assertEquals(
+      """
+        ALERT FIRING!
+        # alertname        : HostDown
+        # severity         : critical
+
+        @ a_very_long_annotation : y
+        @ summary          : Host <x> is down
+        """,
+      rendered.text()
+    );
+
+    assertEquals(
+      "<p>🚨 <b data-mx-color=\"#ff0000\">ALERT FIRING!</b></p>"
+      + "<p><table>"
+      + "<tr><td><tt>alertname</tt></td><td><tt>HostDown</tt></td></tr>"
+      + "<tr><td><tt>severity</tt></td><td><tt>critical</tt></td></tr>"
+      + "</table></p>"
+      + "<p><table>"
+      + "<tr><td><tt>a_very_long_annotation</tt></td><td><tt>y</tt></td></tr>"
+      + "<tr><td><tt>summary</tt></td><td><tt>Host &lt;x&gt; is down</tt></td></tr>"
+      + "</table></p>",
+      rendered.html()
+    );
+  }
+
+  @Test
+  public void testResolved()
+  {
+    final var rendered =
+      GAlertV4Renderer.render(alert("RESOLVED", Map.of(), Map.of()));
+
+    assertEquals("Alert resolved.\n\n", rendered.text());
+    assertEquals(
+      "<p>✅ <span data-mx-color=\"#00aa00\">Alert resolved.</b></p>"
+      + "<p><table></table></p>"
+      + "<p><table></table></p>",
+      rendered.html()
+    );
+  }
+
+  @Test
+  public void testOtherStatus()
+  {
+    final var rendered =
+      GAlertV4Renderer.render(alert("<odd>", Map.of(), Map.of()));
+
+    assertEquals("Alert <odd>.\n\n", rendered.text());
+    assertEquals(
+      "<p>Alert &lt;odd&gt;</p>"
+      + "<p><table></table></p>"
+      + "<p><table></table></p>",
+      rendered.html()
+    );
+  }
+
+  /**
+   * The fast path of the escaper must agree with escapeXml11 on any
+   * text, including control characters and unpaired surrogates.
+   */
+
+  @Test
+  public void testEscapingAgrees()
+  {
+    final var rng = new Random(0x1234L);
+    final var alphabet =
+      "abcXYZ019 \t\r\n&<>\"'\u0000\u0001\u000b\u007f\u0085\u0090"
+      + " é퟿😀�￾￿";
+
+    for (int test = 0; test < 10_000; ++test) {
+      final var text = new StringBuilder();
+      final var length = rng.nextInt(8);
+      for (int index = 0; index < length; ++index) {
+        text.append(alphabet.charAt(rng.nextInt(alphabet.length())));
+      }
+
+      final var value = text.toString();
+      final var rendered =
+        GAlertV4Renderer.render(alert("x", Map.of("k", value), Map.of()));
+
+      assertEquals(
+        "<p>Alert x</p><p><table>"
+        + "<tr><td><tt>k</tt></td><td><tt>%s</tt></td></tr>"
+          .formatted(StringEscapeUtils.escapeXml11(value))
+        + "</table></p><p><table></table></p>",
+        rendered.html()
+      );
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.http.GContentEncodingException;
+import com.io7m.garriga.main.http.GContentEncodings;
+import com.io7m.garriga.main.http.GRequestTooLargeException;
+import com.io7m.garriga.main.http.GUnsupportedContentEncodingException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GContentEncodingsTest
+{
+  private static final byte[] TEXT =
+    "{\"alerts\": [], \"groupKey\": \"x\"}".repeat(100)
+      .getBytes(StandardCharsets.UTF_8);
+
+  private static byte[] gzip(
+    final byte[] data)
+    throws IOException
+  {
+    final var bytes = new ByteArrayOutputStream();
+    try (var output = new GZIPOutputStream(bytes)) {
+      output.write(data);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static byte[] deflate(
+    final byte[] data)
+    throws IOException
+  {
+    final var bytes = new ByteArrayOutputStream();
+    try (var output = new DeflaterOutputStream(bytes)) {
+      output.write(data);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static String decode(
+    final byte[] data,
+    final String encoding,
+    final long maximumSize)
+    throws IOException
+  {
+    try (var stream = GContentEncodings.decode(
+      new ByteArrayInputStream(data),
+      Optional.ofNullable(encoding),
+      maximumSize)) {
+      return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  public void testIdentity()
+    throws Exception
+  {
+    final var expected = new String(TEXT, StandardCharsets.UTF_8);
+    assertEquals(expected, decode(TEXT, null, 1_000_000L));
+    assertEquals(expected, decode(TEXT, "identity", 1_000_000L));
+  }
+
+  @Test
+  public void testGzip()
+    throws Exception
+  {
+    final var compressed = gzip(TEXT);
+    assertTrue(compressed.length < TEXT.length);
+
+    final var expected = new String(TEXT, StandardCharsets.UTF_8);
+    assertEquals(expected, decode(compressed, "gzip", 1_000_000L));
+    assertEquals(expected, decode(compressed, "X-GZIP", 1_000_000L));
+  }
+
+  @Test
+  public void testDeflate()
+    throws Exception
+  {
+    final var expected = new String(TEXT, StandardCharsets.UTF_8);
+    assertEquals(expected, decode(deflate(TEXT), "deflate", 1_000_000L));
+  }
+
+  @Test
+  public void testChained()
+    throws Exception
+  {
+    final var expected = new String(TEXT, StandardCharsets.UTF_8);
+    assertEquals(
+      expected,
+      decode(gzip(deflate(TEXT)), "deflate, gzip", 1_000_000L)
+    );
+  }
+
+  @Test
+  public void testUnsupported()
+  {
+    final var ex =
+      assertThrows(GUnsupportedContentEncodingException.class, () -> {
+        decode(TEXT, "gzip, br", 1_000_000L);
+      });
+    assertEquals("br", ex.encoding());
+  }
+
+  @Test
+  public void testDecompressedTooLarge()
+    throws Exception
+  {
+    final var compressed = gzip(new byte[10_000_000]);
+    assertTrue(compressed.length < 100_000);
+
+    final var ex =
+      assertThrows(GRequestTooLargeException.class, () -> {
+        decode(compressed, "gzip", 1_000_000L);
+      });
+    assertEquals(1_000_000L, ex.limit());
+  }
+
+  @Test
+  public void testNotGzip()
+  {
+    assertThrows(GContentEncodingException.class, () -> {
+      decode(TEXT, "gzip", 1_000_000L);
+    });
+    assertThrows(GContentEncodingException.class, () -> {
+      decode(new byte[0], "gzip", 1_000_000L);
+    });
+  }
+
+  @Test
+  public void testCorrupt()
+    throws Exception
+  {
+    final var compressed = deflate(TEXT);
+    for (int index = 2; index < compressed.length; ++index) {
+      compressed[index] = (byte) 0xff;
+    }
+
+    assertThrows(GContentEncodingException.class, () -> {
+      decode(compressed, "deflate", 1_000_000L);
+    });
+  }
+
+  @Test
+  public void testTruncated()
+    throws Exception
+  {
+    final var compressed = gzip(TEXT);
+    final var truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+    assertThrows(GContentEncodingException.class, () -> {
+      decode(truncated, "gzip", 1_000_000L);
+    });
+  }
+}
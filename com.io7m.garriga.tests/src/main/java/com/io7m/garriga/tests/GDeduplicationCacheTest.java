@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.http.GDeduplicationCache;
+import com.io7m.garriga.main.http.GDeduplicationConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.io7m.garriga.main.matrix.GMatrixAlertStatus.FIRING;
+import static com.io7m.garriga.main.matrix.GMatrixAlertStatus.RESOLVED;
+import static com.io7m.garriga.main.matrix.GMatrixAlertStatus.UNKNOWN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GDeduplicationCacheTest
+{
+  private static final long SECOND = 1_000_000_000L;
+
+  private long time;
+  private GDeduplicationCache cache;
+
+  @BeforeEach
+  public void setup()
+  {
+    this.time = 0L;
+    this.cache =
+      GDeduplicationCache.createWithClock(
+        new GDeduplicationConfiguration(3, 60L, 10L),
+        () -> this.time
+      );
+  }
+
+  @Test
+  public void testRepeatSuppressed()
+  {
+    assertTrue(this.cache.admit("a", FIRING));
+    assertFalse(this.cache.admit("a", FIRING));
+
+    this.time += 59L * SECOND;
+    assertFalse(this.cache.admit("a", FIRING));
+
+    this.time += SECOND;
+    assertTrue(this.cache.admit("a", FIRING));
+  }
+
+  @Test
+  public void testStatusChangeNotSuppressed()
+  {
+    assertTrue(this.cache.admit("a", FIRING));
+    assertTrue(this.cache.admit("a", RESOLVED));
+    assertFalse(this.cache.admit("a", RESOLVED));
+    assertTrue(this.cache.admit("a", FIRING));
+  }
+
+  @Test
+  public void testWindowPerStatus()
+  {
+    assertTrue(this.cache.admit("a", RESOLVED));
+    this.time += 10L * SECOND;
+    assertTrue(this.cache.admit("a", RESOLVED));
+  }
+
+  @Test
+  public void testUnsuppressible()
+  {
+    assertTrue(this.cache.admit("", FIRING));
+    assertTrue(this.cache.admit("", FIRING));
+    assertTrue(this.cache.admit("a", UNKNOWN));
+    assertTrue(this.cache.admit("a", UNKNOWN));
+    assertEquals(0, this.cache.size());
+  }
+
+  @Test
+  public void testForget()
+  {
+    assertTrue(this.cache.admit("a", FIRING));
+    this.cache.forget("a", RESOLVED);
+    assertFalse(this.cache.admit("a", FIRING));
+    this.cache.forget("a", FIRING);
+    assertTrue(this.cache.admit("a", FIRING));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted()
+  {
+    assertTrue(this.cache.admit("a", FIRING));
+    assertTrue(this.cache.admit("b", FIRING));
+    assertTrue(this.cache.admit("c", FIRING));
+    assertFalse(this.cache.admit("a", FIRING));
+    assertTrue(this.cache.admit("d", FIRING));
+    assertEquals(3, this.cache.size());
+
+    assertFalse(this.cache.admit("a", FIRING));
+    assertTrue(this.cache.admit("b", FIRING));
+  }
+
+  @Test
+  public void testExpiredEvicted()
+  {
+    assertTrue(this.cache.admit("a", RESOLVED));
+    assertTrue(this.cache.admit("b", RESOLVED));
+    this.time += 10L * SECOND;
+    assertTrue(this.cache.admit("c", FIRING));
+    assertEquals(1, this.cache.size());
+  }
+
+  @Test
+  public void testConfigurationInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GDeduplicationConfiguration(0, 1L, 1L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GDeduplicationConfiguration(1, -1L, 1L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GDeduplicationConfiguration(1, 1L, -1L);
+    });
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.http.GAlertV4;
+import com.io7m.garriga.main.http.GAlertV4Renderer;
+import com.io7m.garriga.main.matrix.GMatrixClient;
+import com.io7m.garriga.main.matrix.GMatrixTimeoutConfiguration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GEventsTest
+{
+  @TempDir
+  Path directory;
+
+  private interface ActionType
+  {
+    void run()
+      throws Exception;
+  }
+
+  private List<RecordedEvent> record(
+    final String name,
+    final ActionType action)
+    throws Exception
+  {
+    final var file = this.directory.resolve("events.jfr");
+    try (var recording = new Recording()) {
+      recording.enable(name);
+      recording.start();
+      action.run();
+      recording.stop();
+      recording.dump(file);
+    }
+    return RecordingFile.readAllEvents(file)
+      .stream()
+      .filter(e -> e.getEventType().getName().equals(name))
+      .toList();
+  }
+
+  @Test
+  public void testAlertRender()
+    throws Exception
+  {
+    final var alert =
+      new GAlertV4(
+        "firing",
+        Map.of("alertname", "x", "severity", "page"),
+        Map.of("summary", "Something happened."),
+        "2024-06-13T17:06:10.763Z",
+        "0001-01-01T00:00:00Z",
+        "/graph",
+        "abcd"
+      );
+
+    final var rendered = new GAlertV4Renderer.Rendered[1];
+    final var events =
+      this.record("com.io7m.garriga.AlertRender", () -> {
+        rendered[0] = GAlertV4Renderer.render(alert);
+      });
+
+    assertEquals(1, events.size());
+    final var event = events.get(0);
+    assertEquals("abcd", event.getString("fingerprint"));
+    assertEquals("firing", event.getString("alertStatus"));
+    assertEquals(2, event.getInt("labels"));
+    assertEquals(1, event.getInt("annotations"));
+    assertEquals(rendered[0].text().length(), event.getInt("textLength"));
+    assertEquals(rendered[0].html().length(), event.getInt("htmlLength"));
+  }
+
+  @Test
+  public void testMatrixRequest()
+    throws Exception
+  {
+    try (var server = GFakeMatrixServer.start();
+         var http = HttpClient.newHttpClient()) {
+      final var client =
+        GMatrixClient.create(
+          http,
+          server.baseURI(),
+          GMatrixTimeoutConfiguration.defaults()
+        );
+
+      final var events =
+        this.record("com.io7m.garriga.MatrixRequest", client::versions);
+
+      assertEquals(1, events.size());
+      final var event = events.get(0);
+      assertEquals("GET", event.getString("method"));
+      assertEquals("/_matrix/client/versions", event.getString("path"));
+      assertEquals(200, event.getInt("status"));
+      assertTrue(event.getLong("responseSize") > 0L);
+      assertTrue(event.getDuration("requestDuration").toNanos() > 0L);
+    }
+  }
+}
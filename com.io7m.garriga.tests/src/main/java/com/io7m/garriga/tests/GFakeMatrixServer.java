@@ -0,0 +1,339 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fake Matrix server that accepts logins, room lookups, room joins, and
+ * messages, and records the messages it receives.
+ */
+
+public final class GFakeMatrixServer implements AutoCloseable
+{
+  private final HttpServer server;
+  private final List<Received> received;
+  private final AtomicInteger logins;
+  private final AtomicInteger versions;
+  private final AtomicInteger inFlight;
+  private final AtomicInteger inFlightMaximum;
+  private volatile Duration sendDelay;
+  private volatile Duration sendStall;
+
+  /**
+   * A message received by the server.
+   *
+   * @param roomId        The room ID
+   * @param transactionId The transaction ID
+   * @param body          The raw JSON body
+   */
+
+  public record Received(
+    String roomId,
+    String transactionId,
+    String body)
+  {
+
+  }
+
+  private GFakeMatrixServer(
+    final HttpServer inServer)
+  {
+    this.server = inServer;
+    this.received = new ArrayList<>();
+    this.logins = new AtomicInteger(0);
+    this.versions = new AtomicInteger(0);
+    this.inFlight = new AtomicInteger(0);
+    this.inFlightMaximum = new AtomicInteger(0);
+    this.sendDelay = Duration.ZERO;
+    this.sendStall = Duration.ZERO;
+  }
+
+  /**
+   * Start a fake server on an ephemeral port.
+   *
+   * @return The server
+   *
+   * @throws IOException On errors
+   */
+
+  public static GFakeMatrixServer start()
+    throws IOException
+  {
+    final var httpServer =
+      HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+        0
+      );
+
+    final var server = new GFakeMatrixServer(httpServer);
+    httpServer.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    httpServer.createContext("/_matrix/client/versions", server::versions);
+    httpServer.createContext("/_matrix/client/r0/login", server::login);
+    httpServer.createContext("/_matrix/client/r0/directory", server::alias);
+    httpServer.createContext("/_matrix/client/r0/rooms", server::rooms);
+    httpServer.start();
+    return server;
+  }
+
+  /**
+   * @return The base URI of the server
+   */
+
+  public URI baseURI()
+  {
+    return URI.create(
+      "http://127.0.0.1:%d/".formatted(
+        Integer.valueOf(this.server.getAddress().getPort()))
+    );
+  }
+
+  /**
+   * @param delay The time to wait before answering each message
+   */
+
+  public void setSendDelay(
+    final Duration delay)
+  {
+    this.sendDelay = delay;
+  }
+
+  /**
+   * @param stall The time to stall halfway through each response to a
+   *              message, after the response headers have been sent
+   */
+
+  public void setSendStall(
+    final Duration stall)
+  {
+    this.sendStall = stall;
+  }
+
+  /**
+   * @return The messages received so far, in the order they arrived
+   */
+
+  public List<Received> received()
+  {
+    synchronized (this.received) {
+      return List.copyOf(this.received);
+    }
+  }
+
+  /**
+   * Wait until at least {@code count} messages have been received.
+   *
+   * @param count   The number of messages
+   * @param timeout The maximum time to wait
+   *
+   * @return The messages received so far
+   *
+   * @throws InterruptedException If interrupted
+   */
+
+  public List<Received> awaitReceived(
+    final int count,
+    final Duration timeout)
+    throws InterruptedException
+  {
+    final var deadline = System.nanoTime() + timeout.toNanos();
+    while (System.nanoTime() < deadline) {
+      final var results = this.received();
+      if (results.size() >= count) {
+        return results;
+      }
+      Thread.sleep(10L);
+    }
+    return this.received();
+  }
+
+  /**
+   * @return The number of logins
+   */
+
+  public int logins()
+  {
+    return this.logins.get();
+  }
+
+  /**
+   * @return The number of requests for the supported versions
+   */
+
+  public int versions()
+  {
+    return this.versions.get();
+  }
+
+  /**
+   * @return The largest number of messages that were in flight at once
+   */
+
+  public int inFlightMaximum()
+  {
+    return this.inFlightMaximum.get();
+  }
+
+  private void versions(
+    final HttpExchange exchange)
+    throws IOException
+  {
+    this.versions.incrementAndGet();
+    respond(exchange, 200, """
+      {"versions":["r0.6.1","v1.1"]}
+      """);
+  }
+
+  private void login(
+    final HttpExchange exchange)
+    throws IOException
+  {
+    exchange.getRequestBody().readAllBytes();
+    this.logins.incrementAndGet();
+    respond(exchange, 200, """
+      {"user_id":"@someone:example.com","access_token":"token","device_id":"DEVICE"}
+      """);
+  }
+
+  /*
+   * Each alias "#name:server" resolves to the room "!name:server".
+   */
+
+  private void alias(
+    final HttpExchange exchange)
+    throws IOException
+  {
+    final var path =
+      exchange.getRequestURI().getRawPath();
+    final var alias =
+      URLDecoder.decode(
+        path.substring(path.lastIndexOf('/') + 1),
+        StandardCharsets.UTF_8
+      );
+
+    respond(exchange, 200, """
+      {"room_id":"!%s"}
+      """.formatted(alias.substring(1)));
+  }
+
+  private void rooms(
+    final HttpExchange exchange)
+    throws IOException
+  {
+    final var path = exchange.getRequestURI().getRawPath();
+    if (path.endsWith("/join")) {
+      respond(exchange, 200, """
+        {"room_id":"!room:example.com"}
+        """);
+      return;
+    }
+
+    final var body =
+      new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    final var transactionId =
+      path.substring(path.lastIndexOf('/') + 1);
+    final var roomStart =
+      path.indexOf("/rooms/") + "/rooms/".length();
+    final var roomId =
+      URLDecoder.decode(
+        path.substring(roomStart, path.indexOf('/', roomStart)),
+        StandardCharsets.UTF_8
+      );
+
+    final var now = this.inFlight.incrementAndGet();
+    this.inFlightMaximum.accumulateAndGet(now, Math::max);
+    try {
+      final var delay = this.sendDelay;
+      if (!delay.isZero()) {
+        Thread.sleep(delay.toMillis());
+      }
+      synchronized (this.received) {
+        this.received.add(new Received(roomId, transactionId, body));
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      this.inFlight.decrementAndGet();
+    }
+
+    final var stall = this.sendStall;
+    if (!stall.isZero()) {
+      respondStalled(exchange, stall, """
+        {"event_id":"$%s"}
+        """.formatted(transactionId));
+      return;
+    }
+
+    respond(exchange, 200, """
+      {"event_id":"$%s"}
+      """.formatted(transactionId));
+  }
+
+  private static void respondStalled(
+    final HttpExchange exchange,
+    final Duration stall,
+    final String text)
+    throws IOException
+  {
+    final var data = text.trim().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, data.length);
+    try (var output = exchange.getResponseBody()) {
+      output.write(data, 0, data.length / 2);
+      output.flush();
+      Thread.sleep(stall.toMillis());
+      output.write(data, data.length / 2, data.length - (data.length / 2));
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (final IOException e) {
+      // The client gave up on the response.
+    }
+  }
+
+  private static void respond(
+    final HttpExchange exchange,
+    final int status,
+    final String text)
+    throws IOException
+  {
+    final var data = text.trim().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, data.length);
+    try (var output = exchange.getResponseBody()) {
+      output.write(data);
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    this.server.stop(0);
+  }
+}
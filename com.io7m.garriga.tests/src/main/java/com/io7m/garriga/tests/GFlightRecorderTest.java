@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.http.GAlertV4;
+import com.io7m.garriga.main.http.GAlertV4Renderer;
+import com.io7m.garriga.main.jfr.GFlightRecorder;
+import com.io7m.garriga.main.jfr.GFlightRecorder.Settings;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Map;
+
+import static com.io7m.garriga.main.jfr.GFlightRecorder.Settings.DEFAULT;
+import static com.io7m.garriga.main.jfr.GFlightRecorder.Settings.PROFILE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GFlightRecorderTest
+{
+  /**
+   * A recording can be started, snapshotted, and stopped.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  public void testStartSnapshotStop()
+    throws Exception
+  {
+    try (var recorder =
+           GFlightRecorder.create(Duration.ofMinutes(1L), 10_000_000L)) {
+      assertFalse(recorder.isRunning());
+      assertTrue(recorder.snapshot().isEmpty());
+
+      assertTrue(recorder.start(DEFAULT));
+      assertFalse(recorder.start(DEFAULT));
+      assertTrue(recorder.isRunning());
+
+      GAlertV4Renderer.render(
+        new GAlertV4(
+          "firing",
+          Map.of("alertname", "x"),
+          Map.of(),
+          "2024-06-13T17:06:10.763Z",
+          "0001-01-01T00:00:00Z",
+          "/graph",
+          "abcd"
+        )
+      );
+
+      final var file = recorder.snapshot().orElseThrow();
+      try {
+        assertTrue(Files.size(file) > 0L);
+        assertFalse(RecordingFile.readAllEvents(file).isEmpty());
+      } finally {
+        Files.deleteIfExists(file);
+      }
+
+      assertTrue(recorder.isRunning());
+      assertTrue(recorder.stop());
+      assertFalse(recorder.stop());
+      assertFalse(recorder.isRunning());
+    }
+  }
+
+  /**
+   * Settings names are parsed.
+   */
+
+  @Test
+  public void testSettingsNames()
+  {
+    assertEquals(DEFAULT, Settings.ofName("default").orElseThrow());
+    assertEquals(PROFILE, Settings.ofName("profile").orElseThrow());
+    assertTrue(Settings.ofName("nonexistent").isEmpty());
+  }
+}
@@ -44,7 +44,12 @@ public final class GHTTPServerTest
       new GHTTPServerConfiguration(
         "::",
         6000,
-        "abcd"
+        "abcd",
+        null,
+        null,
+        null,
+        null,
+        null
       )
     )) {
       assertNotNull(server.description());
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.http.GHandlerMetrics;
+import com.io7m.garriga.main.metrics.GMetrics;
+import com.io7m.repetoir.core.RPServiceDirectory;
+import io.helidon.common.uri.UriPath;
+import io.helidon.http.HeaderNames;
+import io.helidon.http.HttpPrologue;
+import io.helidon.http.Method;
+import io.helidon.webserver.http.ServerRequest;
+import io.helidon.webserver.http.ServerResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.mockito.internal.verification.Times;
+
+public final class GHandlerMetricsTest
+{
+  private RPServiceDirectory services;
+  private GMetrics metrics;
+  private GHandlerMetrics handler;
+  private ServerRequest request;
+  private ServerResponse response;
+  private HttpPrologue prologue;
+
+  @BeforeEach
+  public void setup()
+  {
+    this.services =
+      new RPServiceDirectory();
+    this.metrics =
+      GMetrics.create();
+    this.services.register(GMetrics.class, this.metrics);
+
+    this.request =
+      Mockito.mock(ServerRequest.class);
+    this.response =
+      Mockito.mock(ServerResponse.class);
+    this.prologue =
+      Mockito.mock(HttpPrologue.class);
+
+    Mockito.when(this.request.prologue())
+      .thenReturn(this.prologue);
+    Mockito.when(this.prologue.uriPath())
+      .thenReturn(UriPath.create("/metrics"));
+    Mockito.when(this.prologue.method())
+      .thenReturn(Method.GET);
+
+    this.handler =
+      new GHandlerMetrics(this.services);
+  }
+
+  @Test
+  public void testMetrics()
+  {
+    this.metrics.counter("a_total", "Things.").add(23L);
+
+    this.handler.handle(this.request, this.response);
+
+    Mockito.verify(this.response, new Times(1))
+      .status(200);
+    Mockito.verify(this.response, new Times(1))
+      .header(
+        HeaderNames.CONTENT_TYPE,
+        "text/plain; version=0.0.4; charset=utf-8"
+      );
+    Mockito.verify(this.response, new Times(1))
+      .send("""
+              # HELP a_total Things.
+              # TYPE a_total counter
+              a_total 23
+              """);
+  }
+}
@@ -21,8 +21,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.io7m.garriga.main.http.GAlertManagerRequestV4;
 import com.io7m.garriga.main.http.GHTTPServerConfiguration;
 import com.io7m.garriga.main.http.GHandlerV4;
+import com.io7m.garriga.main.http.GIngestConfiguration;
 import com.io7m.garriga.main.http.GMessageV4ObjectMappers;
+import com.io7m.garriga.main.http.GRequestLimitsConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixQueueFullException;
 import com.io7m.garriga.main.matrix.GMatrixServiceType;
+import com.io7m.garriga.main.metrics.GMetrics;
 import com.io7m.repetoir.core.RPServiceDirectory;
 import io.helidon.common.uri.UriPath;
 import io.helidon.http.HeaderNames;
@@ -41,12 +45,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Optional;
 import java.util.OptionalLong;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 
 public final class GHandlerV4Test
@@ -114,7 +123,7 @@ public final class GHandlerV4Test
     this.handler =
       new GHandlerV4(
         this.services,
-        new GHTTPServerConfiguration("::", 6000, "abcd"));
+        new GHTTPServerConfiguration("::", 6000, "abcd", null, null, null, null, null));
   }
 
   @Test
@@ -187,6 +196,257 @@ public final class GHandlerV4Test
       .status(413);
   }
 
+  @Test
+  public void testChunkedOK()
+    throws Exception
+  {
+    final byte[] data;
+    try (var s = resource("msg-0.json")) {
+      data = s.readAllBytes();
+    }
+
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(data));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.empty());
+
+    this.handler.handle(this.request, this.response);
+
+    Mockito.verify(this.matrix, new Times(2))
+      .send(any());
+    Mockito.verify(this.response, new Times(1))
+      .status(200);
+  }
+
+  @Test
+  public void testMetrics()
+    throws Exception
+  {
+    final var metrics = GMetrics.create();
+    this.services.register(GMetrics.class, metrics);
+    this.handler =
+      new GHandlerV4(
+        this.services,
+        new GHTTPServerConfiguration("::", 6000, "abcd", null, null, null, null, null));
+
+    final byte[] data;
+    try (var s = resource("msg-0.json")) {
+      data = s.readAllBytes();
+    }
+
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(data));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.of(data.length));
+
+    this.handler.handle(this.request, this.response);
+
+    final var text = metrics.text();
+    assertTrue(text.contains("garriga_webhook_requests_total{code=\"200\"} 1\n"));
+    assertTrue(text.contains("garriga_webhook_requests_total{code=\"401\"} 0\n"));
+    assertTrue(text.contains("garriga_webhook_alerts_total 2\n"));
+    assertTrue(text.contains("garriga_webhook_request_duration_seconds_count 1\n"));
+    assertTrue(text.contains("garriga_render_cache_misses_total 2\n"));
+  }
+
+  @Test
+  public void testGzip()
+    throws Exception
+  {
+    final var bytes = new ByteArrayOutputStream();
+    try (var s = resource("msg-0.json");
+         var output = new GZIPOutputStream(bytes)) {
+      s.transferTo(output);
+    }
+    final var data = bytes.toByteArray();
+
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(data));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.value(HeaderNames.CONTENT_ENCODING))
+      .thenReturn(Optional.of("gzip"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.of(data.length));
+
+    this.handler.handle(this.request, this.response);
+
+    Mockito.verify(this.matrix, new Times(2))
+      .send(any());
+    Mockito.verify(this.response, new Times(1))
+      .status(200);
+  }
+
+  @Test
+  public void testMalformed()
+    throws Exception
+  {
+    final var data =
+      "{ \"receiver\": \"r\", \"alerts\": [] }"
+        .getBytes(StandardCharsets.UTF_8);
+
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(data));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.of(data.length));
+
+    this.handler.handle(this.request, this.response);
+
+    Mockito.verifyNoMoreInteractions(this.matrix);
+    Mockito.verify(this.response, new Times(1))
+      .status(400);
+  }
+
+  /**
+   * Alerts are queued as they are read, and so the alerts that precede an
+   * error in a malformed request are delivered even though the request is
+   * refused.
+   */
+
+  @Test
+  public void testMalformedPartialDelivery()
+    throws Exception
+  {
+    final var data = """
+      {
+        "receiver": "r",
+        "alerts": [
+          {
+            "status": "firing",
+            "labels": { "alertname": "A" },
+            "annotations": {},
+            "startsAt": "2024-06-13T17:06:10.763Z",
+            "endsAt": "0001-01-01T00:00:00Z",
+            "generatorURL": "/graph",
+            "fingerprint": "x"
+          },
+          { "status": 23 }
+        ]
+      }
+      """.getBytes(StandardCharsets.UTF_8);
+
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(data));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.of(data.length));
+
+    this.handler.handle(this.request, this.response);
+
+    Mockito.verify(this.matrix, new Times(1))
+      .send(any());
+    Mockito.verify(this.response, new Times(1))
+      .status(400);
+  }
+
+  @Test
+  public void testCorruptEncoding()
+    throws Exception
+  {
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(new byte[16]));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.value(HeaderNames.CONTENT_ENCODING))
+      .thenReturn(Optional.of("gzip"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.of(16L));
+
+    this.handler.handle(this.request, this.response);
+
+    Mockito.verifyNoMoreInteractions(this.matrix);
+    Mockito.verify(this.response, new Times(1))
+      .status(400);
+  }
+
+  @Test
+  public void testUnsupportedEncoding()
+    throws Exception
+  {
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(new byte[16]));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.value(HeaderNames.CONTENT_ENCODING))
+      .thenReturn(Optional.of("br"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.of(16L));
+
+    this.handler.handle(this.request, this.response);
+
+    Mockito.verifyNoMoreInteractions(this.matrix);
+    Mockito.verify(this.response, new Times(1))
+      .status(415);
+  }
+
+  @Test
+  public void testChunkedTooLarge()
+    throws Exception
+  {
+    final byte[] data;
+    try (var s = resource("msg-0.json")) {
+      data = s.readAllBytes();
+    }
+
+    final var limitedHandler =
+      new GHandlerV4(
+        this.services,
+        new GHTTPServerConfiguration(
+          "::",
+          6000,
+          "abcd",
+          null,
+          null,
+          new GRequestLimitsConfiguration(100L, Long.valueOf(100L)),
+          null,
+          null
+        ));
+
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(data));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.empty());
+
+    limitedHandler.handle(this.request, this.response);
+
+    Mockito.verifyNoMoreInteractions(this.matrix);
+    Mockito.verify(this.response, new Times(1))
+      .status(413);
+  }
+
   @Test
   public void testOK()
     throws Exception
@@ -213,4 +473,142 @@ public final class GHandlerV4Test
     Mockito.verify(this.response, new Times(1))
       .status(200);
   }
+
+  @Test
+  public void testRepeatSuppressed()
+    throws Exception
+  {
+    final byte[] data;
+    try (var s = resource("msg-0.json")) {
+      data = s.readAllBytes();
+    }
+
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(data))
+      .thenReturn(new ByteArrayInputStream(data));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.of(data.length));
+
+    this.handler.handle(this.request, this.response);
+    this.handler.handle(this.request, this.response);
+
+    Mockito.verify(this.matrix, new Times(2))
+      .send(any());
+    Mockito.verify(this.response, new Times(2))
+      .status(200);
+  }
+
+  @Test
+  public void testQueueFullNotSuppressed()
+    throws Exception
+  {
+    final byte[] data;
+    try (var s = resource("msg-0.json")) {
+      data = s.readAllBytes();
+    }
+
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(data))
+      .thenReturn(new ByteArrayInputStream(data));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.of(data.length));
+
+    Mockito.doThrow(
+        new GMatrixQueueFullException("Full!", Duration.ofSeconds(30L)))
+      .doNothing()
+      .when(this.matrix)
+      .send(any());
+
+    this.handler.handle(this.request, this.response);
+    this.handler.handle(this.request, this.response);
+
+    Mockito.verify(this.matrix, new Times(3))
+      .send(any());
+    Mockito.verify(this.response, new Times(1))
+      .status(503);
+    Mockito.verify(this.response, new Times(1))
+      .status(200);
+  }
+
+  @Test
+  public void testQueueFull()
+    throws Exception
+  {
+    final byte[] data;
+    try (var s = resource("msg-0.json")) {
+      data = s.readAllBytes();
+    }
+
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(data));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.of(data.length));
+
+    Mockito.doThrow(
+        new GMatrixQueueFullException("Full!", Duration.ofSeconds(30L)))
+      .when(this.matrix)
+      .send(any());
+
+    this.handler.handle(this.request, this.response);
+
+    Mockito.verify(this.response, new Times(1))
+      .status(503);
+    Mockito.verify(this.response, new Times(1))
+      .header(HeaderNames.RETRY_AFTER, "30");
+  }
+
+  @Test
+  public void testAsynchronous()
+    throws Exception
+  {
+    final byte[] data;
+    try (var s = resource("msg-0.json")) {
+      data = s.readAllBytes();
+    }
+
+    Mockito.when(this.request.content())
+      .thenReturn(this.readable);
+    Mockito.when(this.readable.inputStream())
+      .thenReturn(new ByteArrayInputStream(data));
+
+    Mockito.when(this.headers.value(HeaderNames.AUTHORIZATION))
+      .thenReturn(Optional.of("Bearer abcd"));
+    Mockito.when(this.headers.contentLength())
+      .thenReturn(OptionalLong.of(data.length));
+
+    try (var asyncHandler = new GHandlerV4(
+      this.services,
+      new GHTTPServerConfiguration(
+        "::",
+        6000,
+        "abcd",
+        null,
+        new GIngestConfiguration(true, 10, 1, 5L),
+        null,
+        null,
+        null
+      ))) {
+      asyncHandler.handle(this.request, this.response);
+
+      Mockito.verify(this.response, new Times(1))
+        .status(202);
+      Mockito.verify(this.matrix, Mockito.timeout(5_000L).times(2))
+        .send(any());
+    }
+  }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.http.GIngestConfiguration;
+import com.io7m.garriga.main.http.GIngestStage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GIngestStageTest
+{
+  @Test
+  public void testProcessed()
+    throws Exception
+  {
+    final var done = new CountDownLatch(3);
+    final var configuration = new GIngestConfiguration(true, 10, 2, 5L);
+
+    try (var stage = GIngestStage.create(configuration, (body, time) -> {
+      if (body.length == 0) {
+        done.countDown();
+        throw new IOException("Empty!");
+      }
+      done.countDown();
+    })) {
+      assertTrue(stage.offer(new byte[1]));
+      assertTrue(stage.offer(new byte[0]));
+      assertTrue(stage.offer(new byte[1]));
+      assertTrue(done.await(5L, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testCounts()
+    throws Exception
+  {
+    final var configuration = new GIngestConfiguration(true, 10, 1, 5L);
+    final GIngestStage stage;
+
+    try (var s = GIngestStage.create(configuration, (body, time) -> {
+      if (body.length == 0) {
+        throw new IOException("Empty!");
+      }
+    })) {
+      stage = s;
+      s.offer(new byte[1]);
+      s.offer(new byte[0]);
+      s.offer(new byte[1]);
+    }
+
+    assertEquals(3L, stage.accepted());
+    assertEquals(2L, stage.processed());
+    assertEquals(1L, stage.failed());
+    assertEquals(0, stage.size());
+    assertFalse(stage.offer(new byte[1]));
+    assertEquals(1L, stage.rejected());
+  }
+
+  @Test
+  public void testTimeReceived()
+    throws Exception
+  {
+    final var received = new AtomicLong();
+    final var done = new CountDownLatch(1);
+    final var configuration = new GIngestConfiguration(true, 10, 1, 5L);
+
+    try (var stage = GIngestStage.create(configuration, (body, time) -> {
+      received.set(time);
+      done.countDown();
+    })) {
+      assertTrue(stage.offer(new byte[1], 23L));
+      assertTrue(done.await(5L, TimeUnit.SECONDS));
+    }
+
+    assertEquals(23L, received.get());
+  }
+
+  @Test
+  public void testFull()
+    throws Exception
+  {
+    final var release = new CountDownLatch(1);
+    final var started = new CountDownLatch(1);
+    final var configuration = new GIngestConfiguration(true, 1, 1, 5L);
+
+    try (var stage = GIngestStage.create(configuration, (body, time) -> {
+      started.countDown();
+      release.await();
+    })) {
+      assertTrue(stage.offer(new byte[1]));
+      assertTrue(started.await(5L, TimeUnit.SECONDS));
+      assertTrue(stage.offer(new byte[1]));
+      assertFalse(stage.offer(new byte[1]));
+      assertEquals(1L, stage.rejected());
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testConfigurationInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GIngestConfiguration(true, 0, 1, 5L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GIngestConfiguration(true, 1, 0, 5L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GIngestConfiguration(true, 1, 1, 0L);
+    });
+  }
+}
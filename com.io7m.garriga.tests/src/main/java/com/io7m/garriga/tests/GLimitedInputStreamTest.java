@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.http.GLimitedInputStream;
+import com.io7m.garriga.main.http.GRequestTooLargeException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class GLimitedInputStreamTest
+{
+  @Test
+  public void testWithinLimit()
+    throws Exception
+  {
+    final var data = new byte[100];
+    try (var stream =
+           GLimitedInputStream.create(new ByteArrayInputStream(data), 100L)) {
+      assertEquals(100, stream.readAllBytes().length);
+      assertEquals(100L, stream.count());
+    }
+  }
+
+  @Test
+  public void testExceeded()
+    throws Exception
+  {
+    final var data = new byte[101];
+    try (var stream =
+           GLimitedInputStream.create(new ByteArrayInputStream(data), 100L)) {
+      final var ex =
+        assertThrows(GRequestTooLargeException.class, stream::readAllBytes);
+      assertEquals(100L, ex.limit());
+      assertEquals(101L, stream.count());
+    }
+  }
+
+  @Test
+  public void testExceededSingleBytes()
+    throws Exception
+  {
+    final var data = new byte[3];
+    try (var stream =
+           GLimitedInputStream.create(new ByteArrayInputStream(data), 2L)) {
+      assertEquals(0, stream.read());
+      assertEquals(0, stream.read());
+      assertThrows(GRequestTooLargeException.class, stream::read);
+      assertThrows(GRequestTooLargeException.class, stream::read);
+    }
+  }
+
+  @Test
+  public void testReadsAtMostOnePastLimit()
+    throws Exception
+  {
+    final var source = new ByteArrayInputStream(new byte[1000]);
+    try (var stream = GLimitedInputStream.create(source, 10L)) {
+      final var buffer = new byte[1000];
+      assertEquals(10, stream.read(buffer, 0, 10));
+      assertThrows(
+        GRequestTooLargeException.class,
+        () -> stream.read(buffer, 0, 1000));
+    }
+    assertEquals(989, source.available());
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.matrix.GMatrixEditingConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixEventIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GMatrixEventIndexTest
+{
+  private static final long SECOND = 1_000_000_000L;
+
+  private long time;
+  private GMatrixEventIndex index;
+
+  @BeforeEach
+  public void setup()
+  {
+    this.time = 0L;
+    this.index =
+      GMatrixEventIndex.createWithClock(
+        new GMatrixEditingConfiguration(true, 2, 60L),
+        () -> this.time
+      );
+  }
+
+  @Test
+  public void testFind()
+  {
+    assertEquals(Optional.empty(), this.index.find("a", "!r"));
+    this.index.put("a", "!r", "$e");
+    assertEquals(Optional.of("$e"), this.index.find("a", "!r"));
+    assertTrue(this.index.contains("a"));
+  }
+
+  @Test
+  public void testOtherRoom()
+  {
+    this.index.put("a", "!r", "$e");
+    assertEquals(Optional.empty(), this.index.find("a", "!s"));
+  }
+
+  @Test
+  public void testExpired()
+  {
+    this.index.put("a", "!r", "$e");
+    this.time += 60L * SECOND;
+    assertEquals(Optional.empty(), this.index.find("a", "!r"));
+    assertFalse(this.index.contains("a"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted()
+  {
+    this.index.put("a", "!r", "$a");
+    this.index.put("b", "!r", "$b");
+    this.index.find("a", "!r");
+    this.index.put("c", "!r", "$c");
+
+    assertEquals(2, this.index.size());
+    assertTrue(this.index.contains("a"));
+    assertFalse(this.index.contains("b"));
+    assertTrue(this.index.contains("c"));
+  }
+
+  @Test
+  public void testRemove()
+  {
+    this.index.put("a", "!r", "$a");
+    this.index.remove("a");
+    assertFalse(this.index.contains("a"));
+  }
+
+  @Test
+  public void testConfigurationInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixEditingConfiguration(true, 0, 1L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixEditingConfiguration(true, 1, 0L);
+    });
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.matrix.GMatrixBatchingConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixMessage;
+import com.io7m.garriga.main.matrix.GMatrixMessageBatch;
+import org.junit.jupiter.api.Test;
+
+import static com.io7m.garriga.main.matrix.GMatrixAlertStatus.FIRING;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GMatrixMessageBatchTest
+{
+  @Test
+  public void testJSONSize()
+  {
+    assertEquals(0L, GMatrixMessageBatch.jsonSize(""));
+    assertEquals(3L, GMatrixMessageBatch.jsonSize("abc"));
+    assertEquals(4L, GMatrixMessageBatch.jsonSize("a\nb"));
+    assertEquals(6L, GMatrixMessageBatch.jsonSize("\u0001"));
+    assertEquals(3L, GMatrixMessageBatch.jsonSize("✅"));
+    assertEquals(4L, GMatrixMessageBatch.jsonSize("🚨"));
+  }
+
+  @Test
+  public void testSingle()
+  {
+    final var batch =
+      new GMatrixMessageBatch(GMatrixBatchingConfiguration.defaults());
+    final var message =
+      GMatrixMessage.create("a", "<p>a</p>", FIRING, "");
+
+    assertTrue(batch.tryAdd(message));
+    assertSame(message, batch.combine());
+  }
+
+  @Test
+  public void testCombine()
+  {
+    final var batch =
+      new GMatrixMessageBatch(GMatrixBatchingConfiguration.defaults());
+
+    assertTrue(batch.tryAdd(GMatrixMessage.create("a\n", "<p>a</p>", FIRING, "")));
+    assertTrue(batch.tryAdd(GMatrixMessage.create("b\n", "<p>b</p>", FIRING, "")));
+
+    final var combined = batch.combine();
+    assertEquals("a\n\nb\n", combined.text());
+    assertEquals("<p>a</p><hr/><p>b</p>", combined.html());
+  }
+
+  @Test
+  public void testLimitCount()
+  {
+    final var batch =
+      new GMatrixMessageBatch(new GMatrixBatchingConfiguration(2, 1000));
+
+    assertTrue(batch.tryAdd(GMatrixMessage.create("a", "a", FIRING, "")));
+    assertFalse(batch.isFull());
+    assertTrue(batch.tryAdd(GMatrixMessage.create("b", "b", FIRING, "")));
+    assertTrue(batch.isFull());
+    assertFalse(batch.tryAdd(GMatrixMessage.create("c", "c", FIRING, "")));
+    assertEquals(2, batch.size());
+  }
+
+  @Test
+  public void testLimitBytes()
+  {
+    final var batch =
+      new GMatrixMessageBatch(new GMatrixBatchingConfiguration(10, 10));
+
+    assertTrue(batch.tryAdd(
+      GMatrixMessage.create("aaaaaaaaaa", "aaaaaaaaaa", FIRING, "")
+    ));
+    assertFalse(batch.tryAdd(GMatrixMessage.create("b", "b", FIRING, "")));
+    assertEquals(1, batch.size());
+  }
+
+  @Test
+  public void testConfigurationInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixBatchingConfiguration(0, 1000);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixBatchingConfiguration(1, 0);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixBatchingConfiguration(1, 65536);
+    });
+  }
+}
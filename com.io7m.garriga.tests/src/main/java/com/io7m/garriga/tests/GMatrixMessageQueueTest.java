@@ -0,0 +1,510 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.matrix.GMatrixAlertStatus;
+import com.io7m.garriga.main.matrix.GMatrixMessage;
+import com.io7m.garriga.main.matrix.GMatrixMessageQueue;
+import com.io7m.garriga.main.matrix.GMatrixMessageStoreMemory;
+import com.io7m.garriga.main.matrix.GMatrixOverflowPolicy;
+import com.io7m.garriga.main.matrix.GMatrixPriority;
+import com.io7m.garriga.main.matrix.GMatrixPriorityConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixQueueFullException;
+import com.io7m.garriga.main.matrix.GMatrixQueueLimitsConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixSupersedingConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.io7m.garriga.main.matrix.GMatrixAlertStatus.FIRING;
+import static com.io7m.garriga.main.matrix.GMatrixAlertStatus.RESOLVED;
+import static com.io7m.garriga.main.matrix.GMatrixPriority.HIGH;
+import static com.io7m.garriga.main.matrix.GMatrixPriority.LOW;
+import static com.io7m.garriga.main.matrix.GMatrixPriority.NORMAL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GMatrixMessageQueueTest
+{
+  private static GMatrixMessageQueue queue(
+    final GMatrixOverflowPolicy policy)
+    throws Exception
+  {
+    return GMatrixMessageQueue.create(
+      GMatrixMessageStoreMemory.create(),
+      new GMatrixQueueLimitsConfiguration(3, 1000L, policy, 100L, 7)
+    );
+  }
+
+  private static GMatrixMessage message(
+    final String text,
+    final GMatrixAlertStatus status)
+  {
+    return GMatrixMessage.create(text, text, status, text);
+  }
+
+  private static GMatrixMessage message(
+    final String text,
+    final GMatrixPriority priority)
+  {
+    return new GMatrixMessage(
+      text, text, FIRING, text, "", priority, "", 0L, 0L);
+  }
+
+  private static GMatrixMessageQueue queuePrioritized(
+    final GMatrixOverflowPolicy policy,
+    final int starvationLimit)
+    throws Exception
+  {
+    return GMatrixMessageQueue.create(
+      GMatrixMessageStoreMemory.create(),
+      new GMatrixQueueLimitsConfiguration(100, 100_000L, policy, 100L, 7),
+      new GMatrixPriorityConfiguration(
+        "severity",
+        Map.of(),
+        NORMAL,
+        starvationLimit
+      ),
+      GMatrixSupersedingConfiguration.defaults()
+    );
+  }
+
+  private static GMatrixMessage received(
+    final String text,
+    final String receiver,
+    final String fingerprint,
+    final GMatrixAlertStatus status)
+  {
+    return new GMatrixMessage(
+      text, text, status, fingerprint, "", NORMAL, receiver, 0L, 0L);
+  }
+
+  private static GMatrixMessageQueue queueSuperseding(
+    final boolean cancelResolved)
+    throws Exception
+  {
+    return GMatrixMessageQueue.create(
+      GMatrixMessageStoreMemory.create(),
+      new GMatrixQueueLimitsConfiguration(
+        3, 100_000L, GMatrixOverflowPolicy.REJECT, 100L, 7),
+      GMatrixPriorityConfiguration.defaults(),
+      new GMatrixSupersedingConfiguration(true, cancelResolved, 100)
+    );
+  }
+
+  private static List<String> drain(
+    final GMatrixMessageQueue queue)
+    throws Exception
+  {
+    final var results = new ArrayList<String>();
+    while (true) {
+      final var next = queue.poll(0L, TimeUnit.SECONDS);
+      if (next.isEmpty()) {
+        return results;
+      }
+      results.add(next.get().message().text());
+    }
+  }
+
+  @Test
+  public void testReject()
+    throws Exception
+  {
+    try (var queue = queue(GMatrixOverflowPolicy.REJECT)) {
+      queue.add(message("a", FIRING));
+      queue.add(message("b", FIRING));
+      queue.add(message("c", FIRING));
+
+      final var ex =
+        assertThrows(GMatrixQueueFullException.class, () -> {
+          queue.add(message("d", FIRING));
+        });
+
+      assertEquals(Duration.ofSeconds(7L), ex.retryAfter());
+      assertEquals(List.of("a", "b", "c"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testRejectBytes()
+    throws Exception
+  {
+    try (var queue = queue(GMatrixOverflowPolicy.REJECT)) {
+      queue.add(message("a".repeat(400), FIRING));
+
+      assertThrows(GMatrixQueueFullException.class, () -> {
+        queue.add(message("b".repeat(400), FIRING));
+      });
+      assertEquals(800L, queue.sizeBytes());
+    }
+  }
+
+  @Test
+  public void testEmptyAlwaysAccepts()
+    throws Exception
+  {
+    try (var queue = queue(GMatrixOverflowPolicy.REJECT)) {
+      queue.add(message("a".repeat(2000), FIRING));
+      assertEquals(1, queue.size());
+    }
+  }
+
+  @Test
+  public void testDropOldest()
+    throws Exception
+  {
+    try (var queue = queue(GMatrixOverflowPolicy.DROP_OLDEST)) {
+      queue.add(message("a", FIRING));
+      queue.add(message("b", RESOLVED));
+      queue.add(message("c", FIRING));
+      queue.add(message("d", FIRING));
+
+      assertEquals(1L, queue.droppedCount());
+      assertEquals(List.of("b", "c", "d"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testDropResolvedFirst()
+    throws Exception
+  {
+    try (var queue = queue(GMatrixOverflowPolicy.DROP_RESOLVED_FIRST)) {
+      queue.add(message("a", FIRING));
+      queue.add(message("b", RESOLVED));
+      queue.add(message("c", FIRING));
+      queue.add(message("d", FIRING));
+      queue.add(message("e", FIRING));
+
+      assertEquals(2L, queue.droppedCount());
+      assertEquals(List.of("c", "d", "e"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testBlockTimeout()
+    throws Exception
+  {
+    try (var queue = queue(GMatrixOverflowPolicy.BLOCK)) {
+      queue.add(message("a", FIRING));
+      queue.add(message("b", FIRING));
+      queue.add(message("c", FIRING));
+
+      assertThrows(GMatrixQueueFullException.class, () -> {
+        queue.add(message("d", FIRING));
+      });
+    }
+  }
+
+  @Test
+  public void testBlockWaits()
+    throws Exception
+  {
+    try (var queue = GMatrixMessageQueue.create(
+      GMatrixMessageStoreMemory.create(),
+      new GMatrixQueueLimitsConfiguration(
+        1, 1000L, GMatrixOverflowPolicy.BLOCK, 10_000L, 7))) {
+      queue.add(message("a", FIRING));
+
+      final var consumer = Thread.ofVirtual().start(() -> {
+        try {
+          Thread.sleep(100L);
+          queue.poll(1L, TimeUnit.SECONDS);
+        } catch (final Exception e) {
+          throw new IllegalStateException(e);
+        }
+      });
+
+      queue.add(message("b", FIRING));
+      consumer.join();
+      assertEquals(List.of("b"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testRetryDoesNotBlockNewer()
+    throws Exception
+  {
+    final var time = new AtomicLong(0L);
+
+    try (var queue = GMatrixMessageQueue.createWithClock(
+      GMatrixMessageStoreMemory.create(),
+      GMatrixQueueLimitsConfiguration.defaults(),
+      time::get)) {
+      queue.add(message("a", FIRING));
+
+      final var taken = queue.poll(0L, TimeUnit.SECONDS).orElseThrow();
+      assertEquals(0, taken.attempts());
+      queue.retry(taken, Duration.ofSeconds(10L));
+      assertEquals(1, queue.sizeRetrying());
+
+      queue.add(message("b", FIRING));
+      queue.add(message("c", FIRING));
+
+      /*
+       * Newer messages are delivered while the retry is waiting.
+       */
+
+      assertEquals(
+        "b",
+        queue.poll(0L, TimeUnit.SECONDS).orElseThrow().message().text()
+      );
+
+      /*
+       * Once the delay has elapsed, the retry goes ahead of waiting messages.
+       */
+
+      time.set(Duration.ofSeconds(10L).toNanos());
+
+      final var retried = queue.poll(0L, TimeUnit.SECONDS).orElseThrow();
+      assertEquals("a", retried.message().text());
+      assertEquals(1, retried.attempts());
+      assertEquals(List.of("c"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testRetryKeepsBatch()
+    throws Exception
+  {
+    try (var queue = GMatrixMessageQueue.create(
+      GMatrixMessageStoreMemory.create(),
+      GMatrixQueueLimitsConfiguration.defaults())) {
+      queue.add(message("a", FIRING));
+      queue.add(message("b", FIRING));
+
+      final var first = queue.poll(0L, TimeUnit.SECONDS).orElseThrow();
+      final var second = queue.pollIf(m -> true).orElseThrow();
+      final var assigned = queue.assign(List.of(first, second), "g0.txn");
+      assertEquals("g0.txn", assigned.get(0).transactionId());
+      assertEquals("g0.txn", assigned.get(1).transactionId());
+
+      queue.retry(assigned, Duration.ZERO);
+      queue.add(message("c", FIRING));
+
+      /*
+       * The retried messages are never combined with newer messages, and
+       * are taken together with the messages they were first sent with.
+       */
+
+      final var retried = queue.poll(0L, TimeUnit.SECONDS).orElseThrow();
+      assertEquals("a", retried.message().text());
+      assertEquals("g0.txn", retried.transactionId());
+      assertTrue(queue.pollIf(m -> true).isEmpty());
+
+      final var members = queue.pollTransaction("g0.txn");
+      assertEquals(1, members.size());
+      assertEquals("b", members.get(0).message().text());
+      assertEquals(1, members.get(0).attempts());
+
+      assertEquals(List.of("c"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testRetryWakesConsumer()
+    throws Exception
+  {
+    try (var queue = queue(GMatrixOverflowPolicy.REJECT)) {
+      queue.add(message("a", FIRING));
+
+      final var taken = queue.poll(0L, TimeUnit.SECONDS).orElseThrow();
+      queue.retry(taken, Duration.ofMillis(100L));
+      assertTrue(queue.poll(0L, TimeUnit.SECONDS).isEmpty());
+
+      final var retried = queue.poll(10L, TimeUnit.SECONDS).orElseThrow();
+      assertEquals("a", retried.message().text());
+    }
+  }
+
+  @Test
+  public void testRetryDroppedFirst()
+    throws Exception
+  {
+    try (var queue = queue(GMatrixOverflowPolicy.DROP_OLDEST)) {
+      queue.add(message("a", FIRING));
+      queue.retry(
+        queue.poll(0L, TimeUnit.SECONDS).orElseThrow(),
+        Duration.ofHours(1L)
+      );
+
+      queue.add(message("b", FIRING));
+      queue.add(message("c", FIRING));
+      queue.add(message("d", FIRING));
+
+      assertEquals(1L, queue.droppedCount());
+      assertEquals(0, queue.sizeRetrying());
+      assertEquals(List.of("b", "c", "d"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testPriorityOrder()
+    throws Exception
+  {
+    try (var queue = queuePrioritized(GMatrixOverflowPolicy.REJECT, 100)) {
+      queue.add(message("l0", LOW));
+      queue.add(message("n0", NORMAL));
+      queue.add(message("h0", HIGH));
+      queue.add(message("l1", LOW));
+      queue.add(message("h1", HIGH));
+
+      assertEquals(List.of("h0", "h1", "n0", "l0", "l1"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testStarvationLimit()
+    throws Exception
+  {
+    try (var queue = queuePrioritized(GMatrixOverflowPolicy.REJECT, 2)) {
+      queue.add(message("l0", LOW));
+      queue.add(message("l1", LOW));
+      for (int index = 0; index < 5; ++index) {
+        queue.add(message("h" + index, HIGH));
+      }
+
+      assertEquals(
+        List.of("h0", "h1", "l0", "h2", "h3", "l1", "h4"),
+        drain(queue)
+      );
+    }
+  }
+
+  @Test
+  public void testDropOldestLowestPriority()
+    throws Exception
+  {
+    try (var queue = queue(GMatrixOverflowPolicy.DROP_OLDEST)) {
+      queue.add(message("h0", HIGH));
+      queue.add(message("l0", LOW));
+      queue.add(message("n0", NORMAL));
+      queue.add(message("h1", HIGH));
+
+      assertEquals(1L, queue.droppedCount());
+      assertEquals(List.of("h0", "h1", "n0"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testPriorityOf()
+  {
+    final var priorities = GMatrixPriorityConfiguration.defaults();
+    assertEquals(HIGH, priorities.priorityOf(Map.of("severity", "critical")));
+    assertEquals(LOW, priorities.priorityOf(Map.of("severity", "info")));
+    assertEquals(NORMAL, priorities.priorityOf(Map.of("severity", "what")));
+    assertEquals(NORMAL, priorities.priorityOf(Map.of()));
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixPriorityConfiguration("severity", Map.of(), NORMAL, 0);
+    });
+  }
+
+  @Test
+  public void testSupersede()
+    throws Exception
+  {
+    try (var queue = queueSuperseding(true)) {
+      queue.add(received("a0", "g", "a", FIRING));
+      queue.add(received("b0", "g", "b", FIRING));
+      queue.add(received("a1", "g", "a", FIRING));
+      queue.add(received("a2", "g", "a", FIRING));
+      queue.add(received("a3", "other", "a", FIRING));
+
+      assertEquals(2L, queue.supersededCount());
+      assertEquals(List.of("b0", "a2", "a3"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testSupersedeAcceptedWhenFull()
+    throws Exception
+  {
+    try (var queue = queueSuperseding(true)) {
+      queue.add(received("a0", "g", "a", FIRING));
+      queue.add(received("b0", "g", "b", FIRING));
+      queue.add(received("c0", "g", "c", FIRING));
+      queue.add(received("c1", "g", "c", FIRING));
+
+      assertThrows(GMatrixQueueFullException.class, () -> {
+        queue.add(received("d0", "g", "d", FIRING));
+      });
+      assertEquals(List.of("a0", "b0", "c1"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testResolvedCancels()
+    throws Exception
+  {
+    try (var queue = queueSuperseding(true)) {
+      queue.add(received("a0", "g", "a", FIRING));
+      queue.add(received("a1", "g", "a", FIRING));
+      queue.add(received("a2", "g", "a", RESOLVED));
+
+      assertEquals(0, queue.size());
+      assertEquals(List.of(), drain(queue));
+    }
+  }
+
+  @Test
+  public void testResolvedReplacesWhenCancelDisabled()
+    throws Exception
+  {
+    try (var queue = queueSuperseding(false)) {
+      queue.add(received("a0", "g", "a", FIRING));
+      queue.add(received("a1", "g", "a", RESOLVED));
+
+      assertEquals(List.of("a1"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testResolvedAfterTakenDoesNotCancel()
+    throws Exception
+  {
+    try (var queue = queueSuperseding(true)) {
+      queue.add(received("a0", "g", "a", FIRING));
+      assertEquals(List.of("a0"), drain(queue));
+
+      queue.add(received("a1", "g", "a", FIRING));
+      queue.add(received("a2", "g", "a", RESOLVED));
+      assertEquals(List.of("a2"), drain(queue));
+    }
+  }
+
+  @Test
+  public void testRetrySuperseded()
+    throws Exception
+  {
+    try (var queue = queueSuperseding(true)) {
+      queue.add(received("a0", "g", "a", FIRING));
+      final var taken = queue.poll(0L, TimeUnit.SECONDS).orElseThrow();
+
+      queue.add(received("a1", "g", "a", RESOLVED));
+      queue.retry(taken, Duration.ZERO);
+
+      assertEquals(0, queue.sizeRetrying());
+      assertEquals(List.of("a1"), drain(queue));
+    }
+  }
+}
@@ -0,0 +1,546 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.matrix.GMatrixMessage;
+import com.io7m.garriga.main.matrix.GMatrixMessageQueue;
+import com.io7m.garriga.main.matrix.GMatrixMessageStoreMapped;
+import com.io7m.garriga.main.matrix.GMatrixPersistenceConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixPriority;
+import com.io7m.garriga.main.matrix.GMatrixQueueLimitsConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixTransactionIds;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+import static com.io7m.garriga.main.matrix.GMatrixAlertStatus.FIRING;
+import static com.io7m.garriga.main.matrix.GMatrixAlertStatus.RESOLVED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GMatrixMessageStoreMappedTest
+{
+  @TempDir
+  Path directory;
+
+  private GMatrixPersistenceConfiguration configuration()
+  {
+    return new GMatrixPersistenceConfiguration(
+      this.directory.toString(),
+      GMatrixPersistenceConfiguration.SEGMENT_SIZE_MINIMUM,
+      true
+    );
+  }
+
+  private long segmentCount()
+    throws IOException
+  {
+    try (var stream = Files.list(this.directory)) {
+      return stream.filter(p -> p.toString().endsWith(".seg")).count();
+    }
+  }
+
+  @Test
+  public void testReplay()
+    throws Exception
+  {
+    final long id0;
+    final long id1;
+    final long id2;
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      id0 = store.append(GMatrixMessage.create("a", "<p>a</p>", FIRING, "fa"));
+      id1 = store.append(GMatrixMessage.create("b", "<p>b</p>", FIRING, ""));
+      id2 = store.append(GMatrixMessage.create("c", "<p>ç</p>", FIRING, ""));
+      store.sync();
+      store.acknowledge(id1);
+    }
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      assertEquals(List.of(id0, id2), store.pending());
+      assertEquals(
+        GMatrixMessage.create("a", "<p>a</p>", FIRING, "fa"),
+        store.read(id0)
+      );
+      assertEquals(
+        GMatrixMessage.create("c", "<p>ç</p>", FIRING, ""),
+        store.read(id2)
+      );
+      assertThrows(IOException.class, () -> store.read(id1));
+
+      final var id3 =
+        store.append(GMatrixMessage.create("d", "<p>d</p>", FIRING, ""));
+      assertTrue(id3 > id2);
+    }
+  }
+
+  @Test
+  public void testExtendedFieldsReplay()
+    throws Exception
+  {
+    final var message =
+      new GMatrixMessage(
+        "a",
+        "<p>a</p>",
+        FIRING,
+        "fa",
+        "#ops:example.com",
+        GMatrixPriority.LOW,
+        "{}:{alertname=\"x\"}",
+        0L,
+        0L
+      );
+
+    final long id0;
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      id0 = store.append(message);
+      store.sync();
+    }
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      assertEquals(message, store.read(id0));
+    }
+  }
+
+  @Test
+  public void testTimesReplay()
+    throws Exception
+  {
+    final var message =
+      new GMatrixMessage(
+        "a",
+        "<p>a</p>",
+        FIRING,
+        "fa",
+        "",
+        GMatrixPriority.NORMAL,
+        "",
+        1_718_298_370_763_000_000L,
+        1_718_298_310_000_000_000L
+      );
+
+    final long id0;
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      id0 = store.append(message);
+      store.sync();
+    }
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      assertEquals(message, store.read(id0));
+    }
+  }
+
+  /**
+   * Write a segment containing a message record, followed by an initial
+   * state record, for each of the given payloads, with IDs starting at 1.
+   */
+
+  private void writeSegment(
+    final byte[]... payloads)
+    throws IOException
+  {
+    final var buffer =
+      ByteBuffer.allocate(GMatrixPersistenceConfiguration.SEGMENT_SIZE_MINIMUM);
+
+    buffer.putInt(0x4752_4C47);
+    buffer.putInt(1);
+
+    final var state =
+      ByteBuffer.allocate(1 + 4 + 8 + 4)
+        .put((byte) 1)
+        .putInt(0)
+        .putLong(0L)
+        .putInt(0)
+        .array();
+
+    var id = 1L;
+    for (final var payload : payloads) {
+      writeRecord(buffer, (byte) 1, id, payload);
+      writeRecord(buffer, (byte) 3, id, state);
+      ++id;
+    }
+
+    Files.write(
+      this.directory.resolve("0000000000000000.seg"),
+      buffer.array()
+    );
+  }
+
+  private static void writeRecord(
+    final ByteBuffer buffer,
+    final byte type,
+    final long id,
+    final byte[] payload)
+  {
+    final var position = buffer.position();
+    final var length = 17 + payload.length;
+    buffer.putInt(length);
+    buffer.putInt(0);
+    buffer.put(type);
+    buffer.putLong(id);
+    buffer.put(payload);
+
+    final var crc = new CRC32C();
+    crc.update(buffer.slice(position + 8, length - 8));
+    buffer.putInt(position + 4, (int) crc.getValue());
+  }
+
+  private static byte[] payload(
+    final int version,
+    final String text,
+    final String html,
+    final byte... trailing)
+  {
+    final var textBytes = text.getBytes(StandardCharsets.UTF_8);
+    final var htmlBytes = html.getBytes(StandardCharsets.UTF_8);
+    final var buffer =
+      ByteBuffer.allocate(
+        1 + 4 + textBytes.length + 4 + htmlBytes.length + trailing.length);
+
+    buffer.put((byte) version);
+    buffer.putInt(textBytes.length);
+    buffer.put(textBytes);
+    buffer.putInt(htmlBytes.length);
+    buffer.put(htmlBytes);
+    buffer.put(trailing);
+    return buffer.array();
+  }
+
+  @Test
+  public void testVersionUnrecognized()
+    throws Exception
+  {
+    this.writeSegment(payload(100, "a", "<p>a</p>"));
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      assertThrows(IOException.class, () -> store.read(1L));
+    }
+  }
+
+  @Test
+  public void testTruncated()
+    throws Exception
+  {
+    this.writeSegment(payload(1, "a", "<p>a</p>", (byte) 0));
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      assertThrows(IOException.class, () -> store.read(1L));
+    }
+  }
+
+  @Test
+  public void testTrailingBytes()
+    throws Exception
+  {
+    final var trailing =
+      ByteBuffer.allocate(1 + 4 + 1 + 4 + 1 + 1 + 4 + 1 + 8 + 8 + 1);
+
+    trailing.put((byte) RESOLVED.ordinal());
+    trailing.putInt(1);
+    trailing.put((byte) 'f');
+    trailing.putInt(1);
+    trailing.put((byte) 'c');
+    trailing.put((byte) GMatrixPriority.HIGH.ordinal());
+    trailing.putInt(1);
+    trailing.put((byte) 'r');
+    trailing.putLong(23L);
+    trailing.putLong(17L);
+    trailing.put((byte) 0);
+
+    this.writeSegment(payload(1, "a", "<p>a</p>", trailing.array()));
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      assertThrows(IOException.class, () -> store.read(1L));
+    }
+  }
+
+  @Test
+  public void testSegmentsDeleted()
+    throws Exception
+  {
+    final var text = "x".repeat(100_000);
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      for (int index = 0; index < 30; ++index) {
+        final var id = store.append(GMatrixMessage.create(text, text, FIRING, ""));
+        store.sync();
+        store.acknowledge(id);
+      }
+      assertEquals(1L, this.segmentCount());
+      assertEquals(List.of(), store.pending());
+    }
+  }
+
+  @Test
+  public void testSegmentsRetained()
+    throws Exception
+  {
+    final var text = "x".repeat(100_000);
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      final var first =
+        store.append(GMatrixMessage.create("first", "first", FIRING, ""));
+      for (int index = 0; index < 30; ++index) {
+        final var id = store.append(GMatrixMessage.create(text, text, FIRING, ""));
+        store.acknowledge(id);
+      }
+      store.sync();
+      assertTrue(this.segmentCount() > 1L);
+
+      store.acknowledge(first);
+      assertEquals(1L, this.segmentCount());
+    }
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      assertEquals(List.of(), store.pending());
+    }
+  }
+
+  @Test
+  public void testTooLarge()
+    throws Exception
+  {
+    final var text =
+      "x".repeat(GMatrixPersistenceConfiguration.SEGMENT_SIZE_MINIMUM);
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      assertThrows(IOException.class, () -> {
+        store.append(GMatrixMessage.create(text, text, FIRING, ""));
+      });
+    }
+  }
+
+  @Test
+  public void testClosed()
+    throws Exception
+  {
+    final var store = GMatrixMessageStoreMapped.open(this.configuration());
+    final var id = store.append(GMatrixMessage.create("a", "a", FIRING, ""));
+    store.close();
+    store.close();
+
+    assertThrows(IOException.class, () -> {
+      store.append(GMatrixMessage.create("b", "b", FIRING, ""));
+    });
+    assertThrows(IOException.class, () -> store.read(id));
+    assertThrows(IOException.class, () -> store.acknowledge(id));
+  }
+
+  @Test
+  public void testCorruptRecordStopsReplay()
+    throws Exception
+  {
+    final long id0;
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      id0 = store.append(GMatrixMessage.create("a", "a", FIRING, ""));
+      store.append(GMatrixMessage.create("b", "b", FIRING, ""));
+      store.sync();
+    }
+
+    /*
+     * Damage the last byte of the second message record, which follows
+     * the first message record and its state record.
+     */
+
+    this.damageRecord(2);
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      assertEquals(List.of(id0), store.pending());
+
+      final var id2 = store.append(GMatrixMessage.create("c", "c", FIRING, ""));
+      store.sync();
+      assertEquals(List.of(id0, id2), store.pending());
+    }
+  }
+
+  /**
+   * A message whose state record was lost was never durably accepted, and
+   * is discarded.
+   */
+
+  @Test
+  public void testMissingStateDiscarded()
+    throws Exception
+  {
+    final long id0;
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      id0 = store.append(GMatrixMessage.create("a", "a", FIRING, ""));
+      store.append(GMatrixMessage.create("b", "b", FIRING, ""));
+      store.sync();
+    }
+
+    this.damageRecord(3);
+
+    try (var store = GMatrixMessageStoreMapped.open(this.configuration())) {
+      assertEquals(List.of(id0), store.pending());
+      assertEquals(0, store.state(id0).attempts());
+    }
+  }
+
+  /**
+   * Damage the last byte of the record with the given index in the first
+   * segment.
+   */
+
+  private void damageRecord(
+    final int record)
+    throws IOException
+  {
+    final Path file;
+    try (var stream = Files.list(this.directory)) {
+      file = stream.findFirst().orElseThrow();
+    }
+    try (var channel =
+           FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      final var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, 4096L);
+      var offset = 8;
+      for (int index = 0; index < record; ++index) {
+        offset += buffer.getInt(offset);
+      }
+      offset += buffer.getInt(offset) - 1;
+      buffer.put(offset, (byte) (buffer.get(offset) ^ 0xff));
+      buffer.force();
+    }
+  }
+
+  @Test
+  public void testQueueReplay()
+    throws Exception
+  {
+    try (var queue = GMatrixMessageQueue.create(
+      GMatrixMessageStoreMapped.open(this.configuration()),
+      GMatrixQueueLimitsConfiguration.defaults())) {
+      queue.add(GMatrixMessage.create("a", "a", FIRING, ""));
+      queue.add(GMatrixMessage.create("b", "b", FIRING, ""));
+
+      final var taken = queue.poll(1L, TimeUnit.SECONDS).orElseThrow();
+      assertEquals("a", taken.message().text());
+      queue.acknowledge(taken);
+
+      /*
+       * A message that was taken but not acknowledged is delivered again.
+       */
+
+      final var unacknowledged = queue.poll(1L, TimeUnit.SECONDS).orElseThrow();
+      assertEquals("b", unacknowledged.message().text());
+    }
+
+    try (var queue = GMatrixMessageQueue.create(
+      GMatrixMessageStoreMapped.open(this.configuration()),
+      GMatrixQueueLimitsConfiguration.defaults())) {
+      assertEquals(1, queue.size());
+      assertEquals(
+        "b",
+        queue.poll(1L, TimeUnit.SECONDS).orElseThrow().message().text()
+      );
+    }
+  }
+
+  @Test
+  public void testQueueStateReplay()
+    throws Exception
+  {
+    final long timeAccepted;
+
+    try (var queue = GMatrixMessageQueue.create(
+      GMatrixMessageStoreMapped.open(this.configuration()),
+      GMatrixQueueLimitsConfiguration.defaults())) {
+      queue.add(GMatrixMessage.create("a", "a", FIRING, ""));
+
+      final var taken = queue.poll(1L, TimeUnit.SECONDS).orElseThrow();
+      assertEquals(0, taken.attempts());
+      timeAccepted = taken.timeAccepted();
+      assertTrue(timeAccepted > 0L);
+
+      queue.retry(taken, Duration.ZERO);
+      final var retried = queue.poll(1L, TimeUnit.SECONDS).orElseThrow();
+      queue.retry(retried, Duration.ZERO);
+    }
+
+    /*
+     * The attempts and the time of acceptance survive a restart, so that
+     * the retry limits cannot be evaded by restarting.
+     */
+
+    try (var queue = GMatrixMessageQueue.create(
+      GMatrixMessageStoreMapped.open(this.configuration()),
+      GMatrixQueueLimitsConfiguration.defaults())) {
+      final var taken = queue.poll(1L, TimeUnit.SECONDS).orElseThrow();
+      assertEquals(2, taken.attempts());
+      assertEquals(timeAccepted, taken.timeAccepted());
+    }
+  }
+
+  @Test
+  public void testQueueBatchReplay()
+    throws Exception
+  {
+    try (var queue = GMatrixMessageQueue.create(
+      GMatrixMessageStoreMapped.open(this.configuration()),
+      GMatrixQueueLimitsConfiguration.defaults())) {
+      queue.add(GMatrixMessage.create("a", "a", FIRING, ""));
+      queue.add(GMatrixMessage.create("b", "b", FIRING, ""));
+      queue.add(GMatrixMessage.create("c", "c", FIRING, ""));
+
+      final var first = queue.poll(1L, TimeUnit.SECONDS).orElseThrow();
+      final var second = queue.pollIf(m -> true).orElseThrow();
+      queue.assign(List.of(first, second), "g0.txn");
+
+      final var third = queue.poll(1L, TimeUnit.SECONDS).orElseThrow();
+      queue.assign(List.of(third), "g1");
+    }
+
+    /*
+     * The batch is restored with its transaction ID, and the message that
+     * may have been sent on its own is sent on its own again.
+     */
+
+    try (var queue = GMatrixMessageQueue.create(
+      GMatrixMessageStoreMapped.open(this.configuration()),
+      GMatrixQueueLimitsConfiguration.defaults())) {
+      final var first = queue.poll(1L, TimeUnit.SECONDS).orElseThrow();
+      assertEquals("a", first.message().text());
+      assertEquals("g0.txn", first.transactionId());
+
+      final var members = queue.pollTransaction("g0.txn");
+      assertEquals(1, members.size());
+      assertEquals("b", members.get(0).message().text());
+
+      final var third = queue.poll(1L, TimeUnit.SECONDS).orElseThrow();
+      assertEquals("c", third.message().text());
+      assertEquals(
+        GMatrixTransactionIds.transactionIdFor(third.id()),
+        third.transactionId()
+      );
+    }
+  }
+}
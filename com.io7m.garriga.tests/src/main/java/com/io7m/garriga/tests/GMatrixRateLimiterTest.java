@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.matrix.GMatrixRateLimitConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixRateLimiter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class GMatrixRateLimiterTest
+{
+  private long time;
+  private GMatrixRateLimiter limiter;
+
+  @BeforeEach
+  public void setup()
+  {
+    this.time = 0L;
+    this.limiter =
+      GMatrixRateLimiter.createWithClock(
+        new GMatrixRateLimitConfiguration(10.0, 1.0, 2, 1.0),
+        () -> this.time
+      );
+  }
+
+  @Test
+  public void testBurst()
+  {
+    assertEquals(0L, this.limiter.reserve());
+    assertEquals(0L, this.limiter.reserve());
+    assertEquals(100_000_000L, this.limiter.reserve());
+  }
+
+  @Test
+  public void testRefill()
+  {
+    assertEquals(0L, this.limiter.reserve());
+    assertEquals(0L, this.limiter.reserve());
+
+    this.time += 1_000_000_000L;
+    assertEquals(0L, this.limiter.reserve());
+    assertEquals(0L, this.limiter.reserve());
+    assertEquals(100_000_000L, this.limiter.reserve());
+  }
+
+  @Test
+  public void testRateLimited()
+  {
+    this.limiter.onRateLimited(Duration.ofSeconds(3L));
+    assertEquals(5.0, this.limiter.rate());
+
+    /*
+     * The server asked us to wait three seconds, and the bucket was
+     * emptied, so the first permit arrives one token later.
+     */
+
+    assertEquals(3_200_000_000L, this.limiter.reserve());
+  }
+
+  @Test
+  public void testRecovery()
+  {
+    this.limiter.onRateLimited(Duration.ZERO);
+    this.limiter.onRateLimited(Duration.ZERO);
+    this.limiter.onRateLimited(Duration.ZERO);
+    this.limiter.onRateLimited(Duration.ZERO);
+    this.limiter.onRateLimited(Duration.ZERO);
+    assertEquals(1.0, this.limiter.rate());
+
+    for (int index = 0; index < 20; ++index) {
+      this.limiter.onSuccess();
+    }
+    assertEquals(10.0, this.limiter.rate());
+  }
+
+  @Test
+  public void testConfigurationInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixRateLimitConfiguration(10.0, 0.0, 1, 1.0);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixRateLimitConfiguration(1.0, 2.0, 1, 1.0);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixRateLimitConfiguration(2.0, 1.0, 0, 1.0);
+    });
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.matrix.GMatrixRetryConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixRetryPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GMatrixRetryPolicyTest
+{
+  private static final GMatrixRetryConfiguration CONFIGURATION =
+    new GMatrixRetryConfiguration(1_000L, 10_000L, 2.0, 0.5, 5, 60L);
+
+  @Test
+  public void testExponential()
+  {
+    final var policy =
+      GMatrixRetryPolicy.createWithRandom(CONFIGURATION, () -> 0.0);
+
+    assertEquals(Duration.ofMillis(1_000L), policy.delay(1));
+    assertEquals(Duration.ofMillis(2_000L), policy.delay(2));
+    assertEquals(Duration.ofMillis(4_000L), policy.delay(3));
+    assertEquals(Duration.ofMillis(8_000L), policy.delay(4));
+    assertEquals(Duration.ofMillis(10_000L), policy.delay(5));
+    assertEquals(Duration.ofMillis(10_000L), policy.delay(1_000));
+  }
+
+  @Test
+  public void testJitter()
+  {
+    final var policy =
+      GMatrixRetryPolicy.createWithRandom(CONFIGURATION, () -> 0.5);
+
+    assertEquals(Duration.ofMillis(750L), policy.delay(1));
+    assertEquals(Duration.ofMillis(7_500L), policy.delay(10));
+  }
+
+  @Test
+  public void testExhausted()
+  {
+    final var policy =
+      GMatrixRetryPolicy.create(CONFIGURATION);
+
+    assertFalse(policy.isExhausted(4, Duration.ofSeconds(60L)));
+    assertTrue(policy.isExhausted(5, Duration.ZERO));
+    assertTrue(policy.isExhausted(1, Duration.ofSeconds(61L)));
+  }
+
+  @Test
+  public void testConfigurationInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixRetryConfiguration(-1L, 10_000L, 2.0, 0.5, 5, 60L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixRetryConfiguration(1_000L, 100L, 2.0, 0.5, 5, 60L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixRetryConfiguration(1_000L, 10_000L, 0.5, 0.5, 5, 60L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixRetryConfiguration(1_000L, 10_000L, 2.0, 1.5, 5, 60L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixRetryConfiguration(1_000L, 10_000L, 2.0, 0.5, 0, 60L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixRetryConfiguration(1_000L, 10_000L, 2.0, 0.5, 5, 0L);
+    });
+  }
+}
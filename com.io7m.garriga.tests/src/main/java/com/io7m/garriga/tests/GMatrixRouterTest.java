@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.matrix.GMatrixLabelMatcherConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixRouteConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixRouter;
+import com.io7m.garriga.main.matrix.GMatrixServiceConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.io7m.garriga.main.matrix.GMatrixLabelMatchOperator.EQUALS;
+import static com.io7m.garriga.main.matrix.GMatrixLabelMatchOperator.MATCHES;
+import static com.io7m.garriga.main.matrix.GMatrixLabelMatchOperator.NOT_EQUALS;
+import static com.io7m.garriga.main.matrix.GMatrixLabelMatchOperator.NOT_MATCHES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class GMatrixRouterTest
+{
+  private static GMatrixRouter router(
+    final GMatrixRouteConfiguration... routes)
+  {
+    return GMatrixRouter.create(
+      new GMatrixServiceConfiguration(
+        URI.create("https://matrix.example.com"),
+        "@someone:matrix.example.com",
+        "password",
+        "#default:matrix.example.com",
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        List.of(routes),
+        null,
+        null
+      )
+    );
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    final var router = router();
+    assertEquals("", router.route(Map.of("team", "ops")));
+    assertEquals(Set.of(), router.channels());
+    assertEquals("", GMatrixRouter.empty().route(Map.of()));
+  }
+
+  @Test
+  public void testFirstMatchWins()
+  {
+    final var router = router(
+      new GMatrixRouteConfiguration(
+        "#critical:example.com",
+        List.of(
+          new GMatrixLabelMatcherConfiguration("severity", EQUALS, "critical"),
+          new GMatrixLabelMatcherConfiguration("team", MATCHES, "ops|infra")
+        )
+      ),
+      new GMatrixRouteConfiguration(
+        "#ops:example.com",
+        List.of(
+          new GMatrixLabelMatcherConfiguration("team", MATCHES, "ops|infra")
+        )
+      )
+    );
+
+    assertEquals(
+      "#critical:example.com",
+      router.route(Map.of("team", "ops", "severity", "critical")));
+    assertEquals(
+      "#ops:example.com",
+      router.route(Map.of("team", "infra", "severity", "warning")));
+    assertEquals(
+      "",
+      router.route(Map.of("team", "web", "severity", "critical")));
+    assertEquals(
+      "",
+      router.route(Map.of("team", "opsx")));
+  }
+
+  @Test
+  public void testNegatedAndMissing()
+  {
+    final var router = router(
+      new GMatrixRouteConfiguration(
+        "#prod:example.com",
+        List.of(
+          new GMatrixLabelMatcherConfiguration("env", NOT_EQUALS, "staging"),
+          new GMatrixLabelMatcherConfiguration("env", NOT_MATCHES, "dev.*")
+        )
+      )
+    );
+
+    assertEquals("#prod:example.com", router.route(Map.of("env", "prod")));
+    assertEquals("#prod:example.com", router.route(Map.of()));
+    assertEquals("", router.route(Map.of("env", "staging")));
+    assertEquals("", router.route(Map.of("env", "dev-1")));
+  }
+
+  @Test
+  public void testEmptyValueMatchesMissing()
+  {
+    final var router = router(
+      new GMatrixRouteConfiguration(
+        "#unowned:example.com",
+        List.of(new GMatrixLabelMatcherConfiguration("team", EQUALS, ""))
+      )
+    );
+
+    assertEquals("#unowned:example.com", router.route(Map.of()));
+    assertEquals("", router.route(Map.of("team", "ops")));
+  }
+
+  @Test
+  public void testConfigurationInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixLabelMatcherConfiguration("team", MATCHES, "(");
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixRouteConfiguration(" ", List.of());
+    });
+  }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.io7m.garriga.main.matrix.GMatrixBatchingConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixMessage;
+import com.io7m.garriga.main.matrix.GMatrixPipeliningConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixPriority;
+import com.io7m.garriga.main.matrix.GMatrixRetryConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixRouteConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixService;
+import com.io7m.garriga.main.matrix.GMatrixServiceConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixServiceStatusType.UnhealthyType.Failed;
+import com.io7m.garriga.main.matrix.GMatrixTimeoutConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixTransportConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.io7m.garriga.main.matrix.GMatrixAlertStatus.FIRING;
+import static com.io7m.garriga.main.matrix.GMatrixAlertStatus.RESOLVED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GMatrixServiceTest
+{
+  private GFakeMatrixServer server;
+
+  @BeforeEach
+  public void setup()
+    throws Exception
+  {
+    this.server = GFakeMatrixServer.start();
+    this.server.setSendDelay(Duration.ofMillis(100L));
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    this.server.close();
+  }
+
+  private GMatrixServiceConfiguration configuration()
+  {
+    return this.configuration(null, null, null);
+  }
+
+  private GMatrixServiceConfiguration configuration(
+    final GMatrixRetryConfiguration retry,
+    final GMatrixTimeoutConfiguration timeouts,
+    final GMatrixTransportConfiguration transport)
+  {
+    return this.configuration(retry, timeouts, transport, null);
+  }
+
+  private GMatrixServiceConfiguration configuration(
+    final GMatrixRetryConfiguration retry,
+    final GMatrixTimeoutConfiguration timeouts,
+    final GMatrixTransportConfiguration transport,
+    final List<GMatrixRouteConfiguration> routes)
+  {
+    return new GMatrixServiceConfiguration(
+      this.server.baseURI(),
+      "@someone:example.com",
+      "password",
+      "#room:example.com",
+      null,
+      new GMatrixBatchingConfiguration(1, 32_000),
+      null,
+      null,
+      retry,
+      new GMatrixPipeliningConfiguration(4),
+      timeouts,
+      transport,
+      null,
+      routes,
+      null,
+      null
+    );
+  }
+
+  private static GMatrixMessage routed(
+    final String text,
+    final String channel)
+  {
+    return new GMatrixMessage(
+      text, text, FIRING, text, channel, GMatrixPriority.NORMAL, "", 0L, 0L);
+  }
+
+  private static List<String> bodies(
+    final List<GFakeMatrixServer.Received> received)
+    throws Exception
+  {
+    final var mapper = new ObjectMapper();
+    final var results = new ArrayList<String>();
+    for (final var r : received) {
+      final var tree = mapper.readTree(r.body());
+      final var edited = tree.get("m.new_content");
+      if (edited != null) {
+        results.add(edited.get("body").asText());
+      } else {
+        results.add(tree.get("body").asText());
+      }
+    }
+    return results;
+  }
+
+  @Test
+  public void testPipelined()
+    throws Exception
+  {
+    try (var service = GMatrixService.create(this.configuration())) {
+      for (int index = 0; index < 8; ++index) {
+        final var text = Integer.toString(index);
+        service.send(GMatrixMessage.create(text, text, FIRING, text));
+      }
+
+      final var received =
+        this.server.awaitReceived(8, Duration.ofSeconds(10L));
+
+      assertEquals(8, received.size());
+      assertTrue(this.server.inFlightMaximum() > 1);
+      assertEquals(1, this.server.logins());
+    }
+  }
+
+  @Test
+  public void testOrderedPerFingerprint()
+    throws Exception
+  {
+    try (var service = GMatrixService.create(this.configuration())) {
+      final var expected = new ArrayList<String>();
+      for (int index = 0; index < 8; ++index) {
+        final var text = Integer.toString(index);
+        expected.add(text);
+        service.send(GMatrixMessage.create(text, text, FIRING, "same"));
+      }
+
+      final var received =
+        this.server.awaitReceived(8, Duration.ofSeconds(10L));
+
+      assertEquals(expected, bodies(received));
+      assertEquals(1, this.server.inFlightMaximum());
+    }
+  }
+
+  /**
+   * A server that stalls in the middle of a response is abandoned once the
+   * request deadline expires, the service reports itself as unhealthy,
+   * and the message is delivered once the server recovers.
+   */
+
+  @Test
+  public void testDeadline()
+    throws Exception
+  {
+    this.server.setSendDelay(Duration.ZERO);
+    this.server.setSendStall(Duration.ofSeconds(30L));
+
+    final var configuration =
+      this.configuration(
+        new GMatrixRetryConfiguration(100L, 100L, 1.0, 0.0, 50, 60L),
+        new GMatrixTimeoutConfiguration(1_000L, 500L, 500L, 1_000L),
+        null
+      );
+
+    try (var service = GMatrixService.create(configuration)) {
+      service.send(GMatrixMessage.create("x", "x", FIRING, "x"));
+
+      final var timeEnd =
+        System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+      while (!(service.status() instanceof Failed)) {
+        assertTrue(System.nanoTime() < timeEnd);
+        Thread.sleep(10L);
+      }
+
+      final var failed = assertInstanceOf(Failed.class, service.status());
+      assertTrue(
+        failed.message().contains("did not complete within"),
+        failed.message()
+      );
+
+      this.server.setSendStall(Duration.ZERO);
+      final var received =
+        this.server.awaitReceived(2, Duration.ofSeconds(10L));
+
+      /*
+       * The server records the abandoned message as well as the retried
+       * message, but both carry the same transaction ID.
+       */
+
+      assertTrue(received.size() >= 2);
+      assertEquals(
+        received.get(0).transactionId(),
+        received.get(received.size() - 1).transactionId()
+      );
+    }
+  }
+
+  /**
+   * A resolution is sent as an edit of the message that described the
+   * alert firing.
+   */
+
+  @Test
+  public void testEditResolved()
+    throws Exception
+  {
+    this.server.setSendDelay(Duration.ZERO);
+
+    try (var service = GMatrixService.create(this.configuration())) {
+      service.send(GMatrixMessage.create("fire", "fire", FIRING, "a"));
+      final var first =
+        this.server.awaitReceived(1, Duration.ofSeconds(10L));
+      assertEquals(1, first.size());
+
+      service.send(GMatrixMessage.create("ok", "ok", RESOLVED, "a"));
+      final var received =
+        this.server.awaitReceived(2, Duration.ofSeconds(10L));
+      assertEquals(2, received.size());
+
+      final var mapper = new ObjectMapper();
+      final var edit = mapper.readTree(received.get(1).body());
+      final var relation = edit.get("m.relates_to");
+      assertEquals("m.replace", relation.get("rel_type").asText());
+      assertEquals(
+        "$" + received.get(0).transactionId(),
+        relation.get("event_id").asText()
+      );
+      assertEquals(List.of("fire", "ok"), bodies(received));
+    }
+  }
+
+  /**
+   * The connection is warmed up at startup, and kept open while idle.
+   */
+
+  /**
+   * Messages are delivered to the room for their channel, and messages
+   * for channels that have no route are delivered to the default room.
+   */
+
+  @Test
+  public void testRouted()
+    throws Exception
+  {
+    final var configuration =
+      this.configuration(
+        null,
+        null,
+        null,
+        List.of(new GMatrixRouteConfiguration("#ops:example.com", List.of()))
+      );
+
+    try (var service = GMatrixService.create(configuration)) {
+      service.send(routed("a", ""));
+      service.send(routed("b", "#ops:example.com"));
+      service.send(routed("c", "#gone:example.com"));
+
+      final var received =
+        this.server.awaitReceived(3, Duration.ofSeconds(10L));
+
+      assertEquals(3, received.size());
+      for (final var r : received) {
+        final var body = bodies(List.of(r)).get(0);
+        if (body.equals("b")) {
+          assertEquals("!ops:example.com", r.roomId());
+        } else {
+          assertEquals("!room:example.com", r.roomId());
+        }
+      }
+      assertEquals(1, this.server.logins());
+    }
+  }
+
+  @Test
+  public void testWarmUpAndKeepAlive()
+    throws Exception
+  {
+    final var configuration =
+      this.configuration(
+        null,
+        null,
+        new GMatrixTransportConfiguration(false, 1, true, 1L)
+      );
+
+    try (var service = GMatrixService.create(configuration)) {
+      final var timeEnd =
+        System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+      while (this.server.versions() < 3) {
+        assertTrue(System.nanoTime() < timeEnd);
+        Thread.sleep(10L);
+      }
+    }
+  }
+
+  @Test
+  public void testTransportConfigurationInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixTransportConfiguration(true, 0, true, 1L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixTransportConfiguration(true, 1, true, -1L);
+    });
+  }
+
+  @Test
+  public void testTimeoutConfigurationInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixTimeoutConfiguration(0L, 1L, 1L, 1L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixTimeoutConfiguration(1L, 0L, 1L, 1L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixTimeoutConfiguration(1L, 2L, 1L, 2L);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new GMatrixTimeoutConfiguration(1L, 1L, 2L, 1L);
+    });
+  }
+}
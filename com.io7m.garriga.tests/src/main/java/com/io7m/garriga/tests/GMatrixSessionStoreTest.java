@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.matrix.GMatrixServiceConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixSession;
+import com.io7m.garriga.main.matrix.GMatrixSessionStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GMatrixSessionStoreTest
+{
+  @TempDir
+  Path directory;
+
+  private static GMatrixServiceConfiguration configuration(
+    final String channel)
+  {
+    return new GMatrixServiceConfiguration(
+      URI.create("https://matrix.example.com"),
+      "@someone:matrix.example.com",
+      "password",
+      channel,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null
+    );
+  }
+
+  @Test
+  public void testRoundTrip()
+    throws Exception
+  {
+    final var file =
+      this.directory.resolve("session.json");
+    final var configuration =
+      configuration("#lobby:matrix.example.com");
+
+    final var store0 =
+      GMatrixSessionStore.create(configuration, Optional.of(file));
+
+    assertEquals(GMatrixSession.empty(configuration), store0.session());
+
+    final var session =
+      store0.session()
+        .withLogin("token", "DEVICE")
+        .withRoomId("!room:matrix.example.com")
+        .withJoined(true);
+
+    store0.update(session);
+    assertTrue(Files.isRegularFile(file));
+
+    final var store1 =
+      GMatrixSessionStore.create(configuration, Optional.of(file));
+
+    assertEquals(session, store1.session());
+  }
+
+  @Test
+  public void testDifferentChannel()
+    throws Exception
+  {
+    final var file =
+      this.directory.resolve("session.json");
+
+    final var store0 =
+      GMatrixSessionStore.create(
+        configuration("#lobby:matrix.example.com"),
+        Optional.of(file)
+      );
+
+    store0.update(store0.session().withLogin("token", "DEVICE"));
+
+    final var configuration =
+      configuration("#other:matrix.example.com");
+    final var store1 =
+      GMatrixSessionStore.create(configuration, Optional.of(file));
+
+    assertEquals(GMatrixSession.empty(configuration), store1.session());
+  }
+
+  @Test
+  public void testWithoutLoginKeepsDevice()
+  {
+    final var session =
+      GMatrixSession.empty(configuration("#lobby:matrix.example.com"))
+        .withLogin("token", "DEVICE")
+        .withRoomId("!room:matrix.example.com")
+        .withJoined(true)
+        .withoutLogin();
+
+    assertEquals(Optional.empty(), session.accessTokenOpt());
+    assertEquals("DEVICE", session.deviceId());
+    assertTrue(session.joined());
+
+    final var left = session.withoutRoom();
+    assertEquals(Optional.empty(), left.roomIdOpt());
+    assertFalse(left.joined());
+  }
+
+  @Test
+  public void testMemoryOnly()
+  {
+    final var store =
+      GMatrixSessionStore.create(
+        configuration("#lobby:matrix.example.com"),
+        Optional.empty()
+      );
+
+    store.update(store.session().withLogin("token", "DEVICE"));
+    assertEquals(Optional.of("token"), store.session().accessTokenOpt());
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.matrix.GMatrixMessage;
+import com.io7m.garriga.main.matrix.GMatrixMessageStoreMapped;
+import com.io7m.garriga.main.matrix.GMatrixMessageStoreMemory;
+import com.io7m.garriga.main.matrix.GMatrixPersistenceConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixQueuedMessage;
+import com.io7m.garriga.main.matrix.GMatrixTransactionIds;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.io7m.garriga.main.matrix.GMatrixAlertStatus.FIRING;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GMatrixTransactionIdsTest
+{
+  @TempDir
+  Path directory;
+
+  private static GMatrixQueuedMessage queued(
+    final long id)
+  {
+    return new GMatrixQueuedMessage(
+      id,
+      GMatrixMessage.create("x", "x", FIRING, ""),
+      0,
+      0L
+    );
+  }
+
+  @Test
+  public void testFirstId()
+  {
+    assertEquals(1000L << 20, GMatrixTransactionIds.firstId(1000L, 0L));
+    assertEquals(1000L << 20, GMatrixTransactionIds.firstId(1000L, -1L));
+    assertEquals(
+      (1000L << 20) + 2L,
+      GMatrixTransactionIds.firstId(999L, (1000L << 20) + 1L)
+    );
+  }
+
+  @Test
+  public void testTransactionIdSingle()
+  {
+    assertEquals(
+      "g00000000000000ff",
+      GMatrixTransactionIds.transactionIdFor(List.of(queued(0xffL)))
+    );
+  }
+
+  @Test
+  public void testTransactionIdBatch()
+  {
+    final var ab =
+      GMatrixTransactionIds.transactionIdFor(List.of(queued(1L), queued(2L)));
+    final var ba =
+      GMatrixTransactionIds.transactionIdFor(List.of(queued(2L), queued(1L)));
+    final var ac =
+      GMatrixTransactionIds.transactionIdFor(List.of(queued(1L), queued(3L)));
+    final var a =
+      GMatrixTransactionIds.transactionIdFor(List.of(queued(1L)));
+
+    assertEquals(ab, ba);
+    assertNotEquals(ab, ac);
+    assertNotEquals(ab, a);
+    assertTrue(ab.startsWith("g0000000000000001."));
+  }
+
+  @Test
+  public void testTransactionIdEmpty()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      GMatrixTransactionIds.transactionIdFor(List.of());
+    });
+  }
+
+  @Test
+  public void testMemoryStoreIdsUnique()
+    throws Exception
+  {
+    final long id0;
+    try (var store = GMatrixMessageStoreMemory.create()) {
+      id0 = store.append(GMatrixMessage.create("a", "a", FIRING, ""));
+    }
+
+    Thread.sleep(2L);
+
+    try (var store = GMatrixMessageStoreMemory.create()) {
+      assertTrue(store.append(GMatrixMessage.create("b", "b", FIRING, "")) > id0);
+    }
+  }
+
+  @Test
+  public void testMappedStoreIdsUniqueWhenEmpty()
+    throws Exception
+  {
+    final var configuration =
+      new GMatrixPersistenceConfiguration(
+        this.directory.toString(),
+        GMatrixPersistenceConfiguration.SEGMENT_SIZE_MINIMUM,
+        true
+      );
+
+    final long id0;
+    try (var store = GMatrixMessageStoreMapped.open(configuration)) {
+      id0 = store.append(GMatrixMessage.create("a", "a", FIRING, ""));
+      store.acknowledge(id0);
+      store.sync();
+    }
+
+    try (var store = GMatrixMessageStoreMapped.open(configuration)) {
+      assertTrue(store.pending().isEmpty());
+      assertTrue(store.append(GMatrixMessage.create("b", "b", FIRING, "")) > id0);
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.metrics.GMetricClock;
+import com.io7m.garriga.main.metrics.GMetricLatency;
+import com.io7m.garriga.main.metrics.GMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GMetricLatencyTest
+{
+  @Test
+  public void testEmpty()
+  {
+    final var latency = GMetrics.create().latency("x_seconds", "X.");
+    assertEquals(0L, latency.count());
+    assertEquals(0L, latency.quantileNanos(0.99));
+  }
+
+  @Test
+  public void testPrecision()
+  {
+    final var metrics = GMetrics.create();
+
+    for (long micros = 1L; micros < 1_000_000_000_000L; micros *= 7L) {
+      final var latency =
+        metrics.latency("x_seconds", "X.", "v", Long.toString(micros));
+      final var nanos = micros * 1_000L;
+      latency.recordNanos(nanos);
+      latency.recordNanos(nanos * 2L);
+
+      final var median = latency.quantileNanos(0.5);
+      assertTrue(
+        median >= nanos && median <= nanos + (nanos / 100L),
+        "%d must be within 1%% of %d".formatted(
+          Long.valueOf(median), Long.valueOf(nanos))
+      );
+      assertEquals(nanos * 2L, latency.quantileNanos(1.0));
+    }
+  }
+
+  @Test
+  public void testQuantiles()
+  {
+    final var latency = GMetrics.create().latency("x_seconds", "X.");
+    for (int index = 1; index <= 1000; ++index) {
+      latency.record(Duration.ofMillis(index));
+    }
+
+    final var values =
+      latency.quantilesNanos(new double[]{0.5, 0.9, 0.99, 1.0});
+
+    assertWithin(Duration.ofMillis(500L).toNanos(), values[0]);
+    assertWithin(Duration.ofMillis(900L).toNanos(), values[1]);
+    assertWithin(Duration.ofMillis(990L).toNanos(), values[2]);
+    assertEquals(Duration.ofMillis(1000L).toNanos(), values[3]);
+    assertEquals(1000L, latency.count());
+    assertEquals(Duration.ofMillis(500_500L).toNanos(), latency.sumNanos());
+    assertEquals(Duration.ofMillis(1000L).toNanos(), latency.maximumNanos());
+  }
+
+  /**
+   * Quantiles only describe values recorded in the most recent windows,
+   * whereas the count and sum cover everything.
+   */
+
+  @Test
+  public void testWindowed()
+  {
+    final var time = new AtomicLong();
+    final var latency = GMetricLatency.createWithClock(time::get);
+    final var window = GMetricLatency.WINDOW_DURATION.toNanos();
+
+    latency.record(Duration.ofSeconds(10L));
+    time.addAndGet(window);
+    latency.record(Duration.ofSeconds(1L));
+    assertEquals(Duration.ofSeconds(10L).toNanos(), latency.quantileNanos(1.0));
+
+    time.addAndGet(window * (GMetricLatency.WINDOWS - 1));
+    assertEquals(Duration.ofSeconds(1L).toNanos(), latency.quantileNanos(1.0));
+
+    time.addAndGet(window);
+    assertEquals(0L, latency.quantileNanos(1.0));
+
+    latency.record(Duration.ofSeconds(2L));
+    assertEquals(Duration.ofSeconds(2L).toNanos(), latency.quantileNanos(0.5));
+    assertEquals(3L, latency.count());
+    assertEquals(Duration.ofSeconds(13L).toNanos(), latency.sumNanos());
+    assertEquals(Duration.ofSeconds(10L).toNanos(), latency.maximumNanos());
+  }
+
+  @Test
+  public void testNegativeClamped()
+  {
+    final var latency = GMetrics.create().latency("x_seconds", "X.");
+    latency.recordNanos(-1000L);
+    assertEquals(1L, latency.count());
+    assertEquals(0L, latency.quantileNanos(1.0));
+  }
+
+  @Test
+  public void testQuantileInvalid()
+  {
+    final var latency = GMetrics.create().latency("x_seconds", "X.");
+    latency.recordNanos(1000L);
+    assertThrows(IllegalArgumentException.class, () -> {
+      latency.quantileNanos(1.5);
+    });
+  }
+
+  @Test
+  public void testSummaryText()
+  {
+    final var metrics = GMetrics.create();
+    final var latency = metrics.latency("x_seconds", "X.", "a", "b");
+    latency.recordNanos(2_000_000_000L);
+
+    assertEquals(
+      """
+        # HELP x_seconds X.
+        # TYPE x_seconds summary
+        x_seconds{a="b",quantile="0.5"} 2.0
+        x_seconds{a="b",quantile="0.9"} 2.0
+        x_seconds{a="b",quantile="0.99"} 2.0
+        x_seconds{a="b",quantile="0.999"} 2.0
+        x_seconds{a="b",quantile="1.0"} 2.0
+        x_seconds_sum{a="b"} 2.0
+        x_seconds_count{a="b"} 1
+        """,
+      metrics.text()
+    );
+  }
+
+  @Test
+  public void testClock()
+  {
+    assertEquals(
+      1_718_298_370_763_000_000L,
+      GMetricClock.ofInstant(Instant.parse("2024-06-13T17:06:10.763Z"))
+    );
+    assertEquals(
+      0L,
+      GMetricClock.ofInstant(Instant.parse("0001-01-01T00:00:00Z"))
+    );
+  }
+
+  private static void assertWithin(
+    final long expected,
+    final long received)
+  {
+    assertTrue(
+      Math.abs(expected - received) <= expected / 100L,
+      "%d must be within 1%% of %d".formatted(
+        Long.valueOf(received), Long.valueOf(expected))
+    );
+  }
+}
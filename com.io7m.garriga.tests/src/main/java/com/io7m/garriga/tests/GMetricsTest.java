@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.metrics.GMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class GMetricsTest
+{
+  @Test
+  public void testCounter()
+  {
+    final var metrics = GMetrics.create();
+    final var c0 = metrics.counter("a_total", "Things.");
+    final var c1 = metrics.counter("a_total", "Things.");
+    assertSame(c0, c1);
+
+    c0.increment();
+    c1.add(2L);
+    assertEquals(3L, c0.get());
+
+    assertEquals(
+      """
+        # HELP a_total Things.
+        # TYPE a_total counter
+        a_total 3
+        """,
+      metrics.text()
+    );
+  }
+
+  @Test
+  public void testLabels()
+  {
+    final var metrics = GMetrics.create();
+    metrics.counter("a_total", "Things.", "room", "#x:example.com")
+      .increment();
+    metrics.counter("a_total", "Things.", "room", "q\"\\\n")
+      .add(2L);
+
+    assertEquals(
+      """
+        # HELP a_total Things.
+        # TYPE a_total counter
+        a_total{room="#x:example.com"} 1
+        a_total{room="q\\"\\\\\\n"} 2
+        """,
+      metrics.text()
+    );
+  }
+
+  @Test
+  public void testFunctions()
+  {
+    final var metrics = GMetrics.create();
+    final var value = new AtomicLong(5L);
+    metrics.counterFunction("b_total", "B.", value::get);
+    metrics.gauge("c", "C.", () -> 2.5);
+    value.set(7L);
+
+    assertEquals(
+      """
+        # HELP b_total B.
+        # TYPE b_total counter
+        b_total 7
+        # HELP c C.
+        # TYPE c gauge
+        c 2.5
+        """,
+      metrics.text()
+    );
+
+    metrics.gauge("c", "C.", () -> 3.0);
+    assertEquals(
+      """
+        # HELP b_total B.
+        # TYPE b_total counter
+        b_total 7
+        # HELP c C.
+        # TYPE c gauge
+        c 3.0
+        """,
+      metrics.text()
+    );
+  }
+
+  @Test
+  public void testHistogram()
+  {
+    final var metrics = GMetrics.create();
+    final var h =
+      metrics.histogram("d_seconds", "D.", new double[]{0.1, 1.0}, "x", "y");
+
+    h.observe(0.05);
+    h.observe(0.5);
+    h.observe(0.5);
+    h.observe(4.0);
+
+    assertEquals(
+      """
+        # HELP d_seconds D.
+        # TYPE d_seconds histogram
+        d_seconds_bucket{x="y",le="0.1"} 1
+        d_seconds_bucket{x="y",le="1.0"} 3
+        d_seconds_bucket{x="y",le="+Inf"} 4
+        d_seconds_sum{x="y"} 5.05
+        d_seconds_count{x="y"} 4
+        """,
+      metrics.text()
+    );
+  }
+
+  @Test
+  public void testTypeMismatch()
+  {
+    final var metrics = GMetrics.create();
+    metrics.gauge("e", "E.", () -> 1.0);
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      metrics.counter("e", "E.");
+    });
+  }
+
+  @Test
+  public void testInvalidNames()
+  {
+    final var metrics = GMetrics.create();
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      metrics.counter("not valid", "E.");
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      metrics.counter("f_total", "F.", "le", "x");
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      metrics.counter("f_total", "F.", "odd");
+    });
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2024 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.garriga.tests;
+
+import com.io7m.garriga.main.http.GAlertV4;
+import com.io7m.garriga.main.http.GAlertV4Renderer;
+import com.io7m.garriga.main.http.GRenderCache;
+import com.io7m.garriga.main.http.GRenderCacheConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GRenderCacheTest
+{
+  private static GAlertV4 alert(
+    final String fingerprint,
+    final String status,
+    final Map<String, String> labels)
+  {
+    return new GAlertV4(
+      status,
+      labels,
+      Map.of("summary", "Something happened."),
+      "2024-06-13T17:06:10.763Z",
+      "0001-01-01T00:00:00Z",
+      "/graph",
+      fingerprint
+    );
+  }
+
+  @Test
+  public void testRepeatReused()
+  {
+    final var cache =
+      GRenderCache.create(GRenderCacheConfiguration.defaults());
+
+    final var r0 =
+      cache.render(alert("a", "firing", new HashMap<>(Map.of("x", "y"))));
+    final var r1 =
+      cache.render(alert("a", "firing", new HashMap<>(Map.of("x", "y"))));
+
+    assertSame(r0, r1);
+    assertEquals(1L, cache.hits());
+    assertEquals(1L, cache.misses());
+    assertEquals(1, cache.size());
+    assertEquals(
+      GAlertV4Renderer.render(alert("a", "firing", Map.of("x", "y"))),
+      r1
+    );
+  }
+
+  @Test
+  public void testChangesNotReused()
+  {
+    final var cache =
+      GRenderCache.create(GRenderCacheConfiguration.defaults());
+
+    final var r0 = cache.render(alert("a", "firing", Map.of("x", "y")));
+    final var r1 = cache.render(alert("a", "resolved", Map.of("x", "y")));
+    final var r2 = cache.render(alert("a", "firing", Map.of("x", "z")));
+    final var r3 = cache.render(alert("b", "firing", Map.of("x", "y")));
+
+    assertNotSame(r0, r1);
+    assertNotSame(r0, r2);
+    assertNotSame(r0, r3);
+    assertEquals(0L, cache.hits());
+    assertEquals(4L, cache.misses());
+    assertTrue(r2.text().contains("z"));
+  }
+
+  @Test
+  public void testEvictedBySize()
+  {
+    final var weight =
+      sizeOf(GAlertV4Renderer.render(alert("a", "firing", Map.of())));
+    final var cache =
+      GRenderCache.create(new GRenderCacheConfiguration(true, weight * 2L));
+
+    cache.render(alert("a", "firing", Map.of()));
+    cache.render(alert("b", "firing", Map.of()));
+    assertEquals(2, cache.size());
+
+    /*
+     * "a" was used most recently, so "b" is evicted.
+     */
+
+    cache.render(alert("a", "firing", Map.of()));
+    cache.render(alert("c", "firing", Map.of()));
+    assertEquals(2, cache.size());
+    assertTrue(cache.characters() <= weight * 2L);
+
+    cache.render(alert("a", "firing", Map.of()));
+    assertEquals(2L, cache.hits());
+    cache.render(alert("b", "firing", Map.of()));
+    assertEquals(2L, cache.hits());
+  }
+
+  @Test
+  public void testOversizedNotCached()
+  {
+    final var cache =
+      GRenderCache.create(new GRenderCacheConfiguration(true, 10L));
+
+    cache.render(alert("a", "firing", Map.of()));
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.characters());
+  }
+
+  @Test
+  public void testDisabled()
+  {
+    final var cache =
+      GRenderCache.create(new GRenderCacheConfiguration(false, 1000L));
+
+    cache.render(alert("a", "firing", Map.of()));
+    cache.render(alert("a", "firing", Map.of()));
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.hits());
+  }
+
+  private static long sizeOf(
+    final GAlertV4Renderer.Rendered rendered)
+  {
+    return (long) rendered.text().length() + rendered.html().length();
+  }
+}
@@ -17,6 +17,27 @@
 
 package com.io7m.garriga.tests;
 
+import com.io7m.garriga.main.http.GAdminConfiguration;
+import com.io7m.garriga.main.http.GDeduplicationConfiguration;
+import com.io7m.garriga.main.http.GIngestConfiguration;
+import com.io7m.garriga.main.http.GRenderCacheConfiguration;
+import com.io7m.garriga.main.http.GRequestLimitsConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixBatchingConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixEditingConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixLabelMatchOperator;
+import com.io7m.garriga.main.matrix.GMatrixLabelMatcherConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixOverflowPolicy;
+import com.io7m.garriga.main.matrix.GMatrixPersistenceConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixPipeliningConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixPriority;
+import com.io7m.garriga.main.matrix.GMatrixPriorityConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixQueueLimitsConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixRateLimitConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixRetryConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixRouteConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixSupersedingConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixTimeoutConfiguration;
+import com.io7m.garriga.main.matrix.GMatrixTransportConfiguration;
 import com.io7m.garriga.main.server.GServerConfiguration;
 import org.junit.jupiter.api.DynamicTest;
 import org.junit.jupiter.api.Test;
@@ -27,6 +48,8 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -58,7 +81,8 @@ public final class GServerConfigurationTest
         "error-config-1.json",
         "error-config-2.json",
         "error-config-3.json",
-        "error-config-4.json")
+        "error-config-4.json",
+        "error-config-5.json")
       .map(file -> {
         return DynamicTest.dynamicTest("testParseError_" + file, () -> {
           parseError(file);
@@ -75,15 +99,149 @@ public final class GServerConfigurationTest
       final var http = c.httpServerConfiguration();
       assertEquals("::", http.listenAddress());
       assertEquals(6000, http.listenPort());
+      assertEquals(
+        GDeduplicationConfiguration.defaults(), http.deduplication());
+      assertEquals(GIngestConfiguration.defaults(), http.ingest());
+      assertEquals(GRequestLimitsConfiguration.defaults(), http.requestLimits());
+      assertEquals(GRenderCacheConfiguration.defaults(), http.renderCache());
+      assertEquals(GAdminConfiguration.defaults(), http.admin());
 
       final var matrix = c.matrixConfiguration();
       assertEquals("#lobby:matrix.example.com", matrix.matrixChannel());
       assertEquals("5ad02f638d672e0004d2614e9a37a96ccdf8fd5d1edce3247f41fdbbf5d4a475", matrix.matrixPassword());
       assertEquals("@someone:matrix.example.com", matrix.matrixUser());
       assertEquals(URI.create("https://matrix.example.com"), matrix.matrixServerBase());
+      assertEquals(GMatrixRateLimitConfiguration.defaults(), matrix.rateLimit());
+      assertEquals(GMatrixQueueLimitsConfiguration.defaults(), matrix.queueLimits());
+      assertEquals(GMatrixPriorityConfiguration.defaults(), matrix.priorities());
+      assertEquals(List.of(), matrix.routes());
+      assertEquals(
+        GMatrixSupersedingConfiguration.defaults(), matrix.superseding());
     }
   }
 
+  @Test
+  public void testOKAllSections()
+    throws Exception
+  {
+    try (var s = resource("ok-config-1.json")) {
+      final var c = GServerConfiguration.open(s);
+      final var http = c.httpServerConfiguration();
+      assertEquals(
+        new GRequestLimitsConfiguration(1_000_000L, Long.valueOf(10_000_000L)),
+        http.requestLimits()
+      );
+      assertEquals(
+        new GIngestConfiguration(true, 100, 2, 7L),
+        http.ingest()
+      );
+      assertEquals(
+        new GDeduplicationConfiguration(1000, 600L, 60L),
+        http.deduplication()
+      );
+      assertEquals(
+        new GRenderCacheConfiguration(false, 50_000L),
+        http.renderCache()
+      );
+      assertEquals(
+        new GAdminConfiguration(
+          true,
+          "8c6e9d3e1fa4a61e3e2bd0d8b0c1a7f4",
+          3600L,
+          20_000_000L
+        ),
+        http.admin()
+      );
+
+      final var matrix = c.matrixConfiguration();
+      assertEquals(
+        new GMatrixRateLimitConfiguration(10.0, 0.5, 5, 0.25),
+        matrix.rateLimit()
+      );
+      assertEquals(
+        new GMatrixBatchingConfiguration(20, 30_000),
+        matrix.batching()
+      );
+      assertEquals(
+        new GMatrixPersistenceConfiguration("/var/lib/garriga", 2_097_152, true),
+        matrix.persistence()
+      );
+      assertEquals(
+        new GMatrixQueueLimitsConfiguration(
+          500,
+          5_000_000L,
+          GMatrixOverflowPolicy.DROP_RESOLVED_FIRST,
+          250L,
+          3
+        ),
+        matrix.queueLimits()
+      );
+      assertEquals(
+        new GMatrixRetryConfiguration(100L, 30_000L, 3.0, 0.5, 8, 1800L),
+        matrix.retry()
+      );
+      assertEquals(
+        new GMatrixPipeliningConfiguration(4),
+        matrix.pipelining()
+      );
+      assertEquals(
+        new GMatrixTimeoutConfiguration(2000L, 5000L, 15_000L, 20_000L),
+        matrix.timeouts()
+      );
+      assertEquals(
+        new GMatrixTransportConfiguration(false, 3, false, 45L),
+        matrix.transport()
+      );
+      assertEquals(
+        new GMatrixEditingConfiguration(false, 200, 7200L),
+        matrix.editing()
+      );
+      assertEquals(
+        List.of(
+          new GMatrixRouteConfiguration(
+            "#ops:matrix.example.com",
+            List.of(
+              new GMatrixLabelMatcherConfiguration(
+                "team",
+                GMatrixLabelMatchOperator.EQUALS,
+                "ops"
+              ),
+              new GMatrixLabelMatcherConfiguration(
+                "alertname",
+                GMatrixLabelMatchOperator.NOT_MATCHES,
+                "Watchdog|InfoInhibitor"
+              )
+            )
+          )
+        ),
+        matrix.routes()
+      );
+      assertEquals(
+        new GMatrixPriorityConfiguration(
+          "severity",
+          Map.of(
+            "critical", GMatrixPriority.HIGH,
+            "info", GMatrixPriority.LOW
+          ),
+          GMatrixPriority.NORMAL,
+          4
+        ),
+        matrix.priorities()
+      );
+      assertEquals(
+        new GMatrixSupersedingConfiguration(true, true, 5000),
+        matrix.superseding()
+      );
+    }
+  }
+
+  @Test
+  public void testRequestLimitsDecompressedDefault()
+  {
+    final var limits = new GRequestLimitsConfiguration(5000L, null);
+    assertEquals(5000L, limits.maximumDecompressedSize().longValue());
+  }
+
   private static void parseError(
     final String name)
     throws IOException
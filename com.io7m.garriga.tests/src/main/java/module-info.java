@@ -27,9 +27,12 @@ open module com.io7m.garriga.tests
   requires org.junit.platform.launcher;
 
   requires io.helidon.webserver;
+  requires jdk.httpserver;
+  requires jdk.jfr;
   requires com.fasterxml.jackson.databind;
   requires com.io7m.garriga.main;
   requires com.io7m.repetoir.core;
+  requires org.apache.commons.text;
   requires org.mockito;
   requires org.slf4j;
 